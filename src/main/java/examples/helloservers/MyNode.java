@@ -1,7 +1,6 @@
 package examples.helloservers;
 
 import java.util.ArrayList;
-import java.util.Random;
 
 import modules.logger.Logger;
 import modules.logger.OperaLogger;
@@ -18,11 +17,6 @@ public class MyNode implements BaseNode {
    */
   private static final int MAX_SLEEP_TIME_MS = 1000;
 
-  /**
-   * Random number generator.
-   */
-  private static final Random RNG = new Random();
-
   /**
    * List of all the nodes in the network.
    */
@@ -83,7 +77,7 @@ public class MyNode implements BaseNode {
     if (allId.isEmpty()) {
       return;
     }
-    int ind = RNG.nextInt(allId.size());
+    int ind = network.getRandom().nextInt(allId.size());
     HelloEvent helloMessage = new HelloEvent(msg);
     boolean success = network.send(allId.get(ind), helloMessage);
     if (success) {
@@ -98,28 +92,19 @@ public class MyNode implements BaseNode {
   }
 
   /**
-   * This is a callback method which is called when a new message is received. It sleeps for a random time
-   * and then sends a message back to the sender node.
+   * This is a callback method which is called when a new message is received. It sends a message back to the sender
+   * node after a random time, on a timer rather than holding the thread of the message.
    *
    * @param originId the ID of the sender node.
    * @param msg      the content of the message.
    */
   @Override
   public void onNewMessage(final Identifier originId, final Event msg) {
-    try {
-      Thread.sleep(RNG.nextInt(MAX_SLEEP_TIME_MS));
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-    }
-
     this.logger.info("received message from {} with content {}", originId, msg);
 
     HelloEvent helloMessage = (HelloEvent) msg;
-    if (helloMessage.getMsg().equals("Hello")) {
-      this.sendNewMessage("Thank You");
-    } else {
-      this.sendNewMessage("Hello");
-    }
+    String reply = helloMessage.getMsg().equals("Hello") ? "Thank You" : "Hello";
+    network.schedule(network.getRandom().nextInt(MAX_SLEEP_TIME_MS), () -> this.sendNewMessage(reply));
   }
 
   /**
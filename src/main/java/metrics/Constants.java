@@ -6,6 +6,8 @@ package metrics;
 public class Constants {
 
   public static final String IDENTIFIER = "id";
+  public static final String EVENT_TYPE = "event_type";
+  public static final String GROUP = "group";
 
   /**
    * General namespaces used for metric collection. By the general we mean those
@@ -0,0 +1,169 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LogLinearHistogram is a fixed-memory, lock-free histogram of non-negative long values with a bounded relative error,
+ * in the spirit of HdrHistogram. Values are grouped by their power of two, and each power of two is split into
+ * SUB_BUCKET_COUNT linear sub-buckets, hence any recorded value is reported back with a relative error of at most
+ * 1 / SUB_BUCKET_COUNT (i.e., below 1%), and values smaller than 2 * SUB_BUCKET_COUNT are exact.
+ * The number of buckets only depends on the highest trackable value, e.g., about 2K buckets (16KB) cover one hour
+ * in milliseconds. Values above the highest trackable value are recorded in the last bucket, while the exact
+ * maximum is still kept.
+ * Recording is a handful of atomic increments and never blocks, which makes the histogram suitable for the message
+ * path, whereas percentiles are computed on demand from a non-atomic snapshot of the buckets.
+ */
+public class LogLinearHistogram {
+  /**
+   * Number of bits of linear resolution within each power of two.
+   */
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  private final long highestTrackableValue;
+  private final AtomicLongArray counts;
+  private final LongAdder totalCount;
+  private final LongAdder totalSum;
+  private final AtomicLong max;
+
+  /**
+   * Creates a histogram tracking values in [0, highestTrackableValue] with a bounded relative error.
+   *
+   * @param highestTrackableValue highest value to be tracked with bounded error, larger values are clamped.
+   * @throws IllegalArgumentException if highestTrackableValue is not positive.
+   */
+  public LogLinearHistogram(long highestTrackableValue) throws IllegalArgumentException {
+    if (highestTrackableValue <= 0) {
+      throw new IllegalArgumentException("highest trackable value must be positive: " + highestTrackableValue);
+    }
+    this.highestTrackableValue = highestTrackableValue;
+    this.counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+    this.totalCount = new LongAdder();
+    this.totalSum = new LongAdder();
+    this.max = new AtomicLong();
+  }
+
+  /**
+   * Records a value in the histogram. Negative values are recorded as zero.
+   *
+   * @param value value to record.
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    this.counts.incrementAndGet(bucketIndex(Math.min(value, this.highestTrackableValue)));
+    this.totalCount.increment();
+    this.totalSum.add(value);
+
+    long currentMax = this.max.get();
+    while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+      currentMax = this.max.get();
+    }
+  }
+
+  /**
+   * Returns the total number of recorded values.
+   *
+   * @return total number of recorded values.
+   */
+  public long getCount() {
+    return this.totalCount.sum();
+  }
+
+  /**
+   * Returns the sum of all recorded values.
+   *
+   * @return sum of all recorded values.
+   */
+  public long getSum() {
+    return this.totalSum.sum();
+  }
+
+  /**
+   * Returns the exact maximum of recorded values.
+   *
+   * @return maximum recorded value, or zero if no value is recorded.
+   */
+  public long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Returns the mean of recorded values.
+   *
+   * @return mean of recorded values, or zero if no value is recorded.
+   */
+  public double getMean() {
+    long count = this.getCount();
+    return count == 0 ? 0 : (double) this.getSum() / count;
+  }
+
+  /**
+   * Returns the value at the given percentile, i.e., the smallest value such that the given percentage of recorded
+   * values are less than or equal to it, up to the relative error of the histogram.
+   *
+   * @param percentile percentile in [0, 100].
+   * @return value at the given percentile, or zero if no value is recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    return this.getValuesAtPercentiles(percentile)[0];
+  }
+
+  /**
+   * Returns the values at the given percentiles from a single pass over the buckets.
+   *
+   * @param percentiles percentiles in [0, 100], in increasing order.
+   * @return values at the given percentiles, zeros if no value is recorded.
+   * @throws IllegalArgumentException if the percentiles are out of range or not in increasing order.
+   */
+  public long[] getValuesAtPercentiles(double... percentiles) throws IllegalArgumentException {
+    long[] snapshot = new long[this.counts.length()];
+    long total = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      snapshot[i] = this.counts.get(i);
+      total += snapshot[i];
+    }
+
+    long[] values = new long[percentiles.length];
+    if (total == 0) {
+      return values;
+    }
+
+    long maxValue = this.getMax();
+    long cumulative = 0;
+    int bucket = -1;
+    for (int p = 0; p < percentiles.length; p++) {
+      if (percentiles[p] < 0 || percentiles[p] > 100 || (p > 0 && percentiles[p] < percentiles[p - 1])) {
+        throw new IllegalArgumentException("percentiles must be increasing values in [0, 100]");
+      }
+      long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * total));
+      while (cumulative < rank && bucket < snapshot.length - 1) {
+        bucket++;
+        cumulative += snapshot[bucket];
+      }
+      // the highest value of the bucket is reported, but never beyond the exact maximum.
+      values[p] = Math.min(highestValueOf(bucket), maxValue);
+    }
+    return values;
+  }
+
+  /**
+   * Returns the index of the bucket holding the given non-negative value.
+   */
+  private static int bucketIndex(long value) {
+    int shift = Math.max(0, (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS);
+    return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  /**
+   * Returns the highest value that falls into the bucket of the given index.
+   */
+  private static long highestValueOf(int index) {
+    int shift = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+    long subBucket = index - ((long) shift << SUB_BUCKET_BITS);
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,184 @@
+package metrics;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import metrics.integration.MetricsBackendType;
+import node.Identifier;
+
+/**
+ * MetricsConfig holds the simulation-wide configuration of metric collectors. It must be set before the metric
+ * collectors are created, i.e., before the simulator is instantiated, since collectors decide how to export their
+ * per-node data on creation.
+ */
+public class MetricsConfig {
+  /**
+   * Number of nodes from which the simulator switches to the aggregated mode on its own.
+   */
+  public static final int AGGREGATION_NODE_THRESHOLD = 1000;
+  /**
+   * Group of nodes whose group is not resolved.
+   */
+  public static final String DEFAULT_GROUP = "all";
+  /**
+   * System property selecting the metrics backend, i.e., one of MetricsBackendType.
+   */
+  public static final String BACKEND_PROPERTY = "opera.metrics.backend";
+  /**
+   * System property of the directory the in-process metrics sink writes to.
+   */
+  public static final String OUTPUT_DIR_PROPERTY = "opera.metrics.dir";
+  /**
+   * System property of the sampling interval of the in-process metrics sink in milliseconds.
+   */
+  public static final String SAMPLING_INTERVAL_PROPERTY = "opera.metrics.interval.ms";
+  private static final int DEFAULT_TOP_K = 10;
+  private static final String DEFAULT_OUTPUT_DIR = "metrics-out";
+  private static final long DEFAULT_SAMPLING_INTERVAL_MS = 1000;
+
+  private static volatile Mode mode = Mode.PER_NODE;
+  private static volatile int topK = DEFAULT_TOP_K;
+  private static volatile Function<Identifier, String> groupResolver = id -> DEFAULT_GROUP;
+  /**
+   * Backend set through setBackendType, or null until it is read from BACKEND_PROPERTY on first use.
+   */
+  private static volatile MetricsBackendType backendType = null;
+  private static volatile Path outputDir = Paths.get(System.getProperty(OUTPUT_DIR_PROPERTY, DEFAULT_OUTPUT_DIR));
+  private static volatile long samplingIntervalMs = Long.getLong(SAMPLING_INTERVAL_PROPERTY, DEFAULT_SAMPLING_INTERVAL_MS);
+
+  private MetricsConfig() {
+  }
+
+  public static Mode getMode() {
+    return mode;
+  }
+
+  public static void setMode(Mode mode) {
+    MetricsConfig.mode = mode;
+  }
+
+  public static boolean isAggregated() {
+    return mode == Mode.AGGREGATED;
+  }
+
+  public static int getTopK() {
+    return topK;
+  }
+
+  /**
+   * Sets the number of outlier nodes exported per metric in the aggregated mode.
+   *
+   * @param topK number of outlier nodes exported per metric.
+   * @throws IllegalArgumentException if topK is negative.
+   */
+  public static void setTopK(int topK) throws IllegalArgumentException {
+    if (topK < 0) {
+      throw new IllegalArgumentException("top k must be non-negative: " + topK);
+    }
+    MetricsConfig.topK = topK;
+  }
+
+  /**
+   * Sets the resolver of the group of each node, e.g., its name space, which metrics are rolled up by in the aggregated
+   * mode. The resolver must return a small, bounded set of groups.
+   *
+   * @param groupResolver resolver of the group of each node, returning null for nodes with no group.
+   */
+  public static void setGroupResolver(Function<Identifier, String> groupResolver) {
+    MetricsConfig.groupResolver = groupResolver;
+  }
+
+  public static Function<Identifier, String> getGroupResolver() {
+    return groupResolver;
+  }
+
+  /**
+   * Returns the group of the given node.
+   *
+   * @param id identifier of the node.
+   * @return the group of the node, or DEFAULT_GROUP if it has no group.
+   */
+  public static String groupOf(Identifier id) {
+    String group = groupResolver.apply(id);
+    return group == null ? DEFAULT_GROUP : group;
+  }
+
+  /**
+   * Returns the backend the simulator ships its metrics to, read from the BACKEND_PROPERTY system property on first use
+   * unless set through setBackendType.
+   *
+   * @return type of the metrics backend.
+   * @throws IllegalArgumentException if BACKEND_PROPERTY is not the name of a MetricsBackendType.
+   */
+  public static MetricsBackendType getBackendType() throws IllegalArgumentException {
+    MetricsBackendType type = backendType;
+    if (type == null) {
+      String value = System.getProperty(BACKEND_PROPERTY, MetricsBackendType.PROMETHEUS.name());
+      try {
+        type = MetricsBackendType.valueOf(value);
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException(BACKEND_PROPERTY + " must be one of " + Arrays.toString(MetricsBackendType.values()) + ": " + value, e);
+      }
+      backendType = type;
+    }
+    return type;
+  }
+
+  /**
+   * Sets the backend the simulator ships its metrics to. Defaults to the value of the BACKEND_PROPERTY system property,
+   * or PROMETHEUS if not set.
+   *
+   * @param backendType type of the metrics backend.
+   */
+  public static void setBackendType(MetricsBackendType backendType) {
+    MetricsConfig.backendType = backendType;
+  }
+
+  public static Path getOutputDir() {
+    return outputDir;
+  }
+
+  /**
+   * Sets the directory the in-process metrics sink writes its files to. Defaults to the value of the
+   * OUTPUT_DIR_PROPERTY system property, or metrics-out if not set.
+   *
+   * @param outputDir directory of the metrics files.
+   */
+  public static void setOutputDir(Path outputDir) {
+    MetricsConfig.outputDir = outputDir;
+  }
+
+  public static long getSamplingIntervalMs() {
+    return samplingIntervalMs;
+  }
+
+  /**
+   * Sets the sampling interval of the in-process metrics sink.
+   *
+   * @param samplingIntervalMs sampling interval in milliseconds.
+   * @throws IllegalArgumentException if the interval is not positive.
+   */
+  public static void setSamplingIntervalMs(long samplingIntervalMs) throws IllegalArgumentException {
+    if (samplingIntervalMs <= 0) {
+      throw new IllegalArgumentException("sampling interval must be positive: " + samplingIntervalMs);
+    }
+    MetricsConfig.samplingIntervalMs = samplingIntervalMs;
+  }
+
+  /**
+   * Modes of exporting per-node metrics.
+   */
+  public enum Mode {
+    /**
+     * Every node is exported as a distinct series labelled by its identifier.
+     */
+    PER_NODE,
+    /**
+     * Exact per-node values are kept in-process, but only their rollups per group, their distribution over nodes, and
+     * the top-k outlier nodes are exported, so the number of exported series does not grow with the number of nodes.
+     */
+    AGGREGATED
+  }
+}
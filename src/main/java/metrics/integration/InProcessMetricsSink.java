@@ -0,0 +1,292 @@
+package metrics.integration;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import modules.logger.Logger;
+import modules.logger.OperaLogger;
+import simulator.SimulationClock;
+
+/**
+ * InProcessMetricsSink samples every metric of a collector registry at a fixed interval into columnar arrays, i.e., a
+ * timestamp column and one column of doubles per series, and writes them to a CSV file and a binary columnar file when
+ * terminated. It needs neither docker nor an HTTP server, hence it fits headless and batch simulation runs.
+ * A series which is not present at a sample, e.g., since it is created later on, holds NaN at that sample.
+ * Samples are taken and timestamped in modelled time, i.e., at the time scale of SimulationClock from the epoch time the
+ * sink is created at.
+ *
+ * <p>The binary file is laid out as: magic (int), version (int), rows (int), columns (int), rows timestamps in
+ * milliseconds (long), then for each column its series name (modified UTF-8) followed by its rows values (double).
+ */
+public class InProcessMetricsSink implements MetricsBackend {
+  /**
+   * Name of the CSV file written on termination.
+   */
+  public static final String CSV_FILE = "metrics.csv";
+  /**
+   * Name of the binary columnar file written on termination.
+   */
+  public static final String BINARY_FILE = "metrics.bin";
+  /**
+   * Magic number of the binary columnar file, i.e., "OPMC".
+   */
+  public static final int BINARY_MAGIC = 0x4F504D43;
+  public static final int BINARY_VERSION = 1;
+  private static final String TIMESTAMP_COLUMN = "timestamp_ms";
+  private static final int INITIAL_ROWS = 64;
+
+  private final Logger logger = OperaLogger.getLoggerForSimulator(InProcessMetricsSink.class.getCanonicalName());
+  private final CollectorRegistry registry;
+  private final Path outputDir;
+  private final long intervalMs;
+  private final long originEpochMs = System.currentTimeMillis();
+  private final long originModelledNanos = SimulationClock.nanoTime();
+  /**
+   * Series names in the order of their first appearance, i.e., the order of the columns.
+   */
+  private final List<String> seriesNames = new ArrayList<>();
+  private final HashMap<String, double[]> columns = new HashMap<>();
+  private long[] timestamps = new long[INITIAL_ROWS];
+  private int rows;
+  private ScheduledExecutorService sampler;
+
+  /**
+   * Creates an in-process sink over the default registry.
+   *
+   * @param outputDir  directory the metrics files are written to.
+   * @param intervalMs sampling interval in modelled milliseconds.
+   */
+  public InProcessMetricsSink(Path outputDir, long intervalMs) {
+    this(CollectorRegistry.defaultRegistry, outputDir, intervalMs);
+  }
+
+  /**
+   * Creates an in-process sink.
+   *
+   * @param registry   registry whose metrics are sampled.
+   * @param outputDir  directory the metrics files are written to.
+   * @param intervalMs sampling interval in modelled milliseconds.
+   * @throws IllegalArgumentException if the interval is not positive.
+   */
+  public InProcessMetricsSink(CollectorRegistry registry, Path outputDir, long intervalMs) throws IllegalArgumentException {
+    if (intervalMs <= 0) {
+      throw new IllegalArgumentException("sampling interval must be positive: " + intervalMs);
+    }
+    this.registry = registry;
+    this.outputDir = outputDir;
+    this.intervalMs = intervalMs;
+  }
+
+  @Override
+  public synchronized void start() throws IllegalStateException {
+    if (this.sampler != null) {
+      throw new IllegalStateException("in-process metrics sink already started");
+    }
+    this.sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "metrics-sink");
+      t.setDaemon(true);
+      return t;
+    });
+    this.sampler.scheduleAtFixedRate(this::sampleSafely, 0, Math.max(1, SimulationClock.toWallNanos(this.intervalMs)), TimeUnit.NANOSECONDS);
+    logger.info("in-process metrics sink started, sampling every {} ms into {}", this.intervalMs, this.outputDir);
+  }
+
+  /**
+   * Stops sampling, takes a final sample, and writes the CSV and binary columnar files.
+   *
+   * @throws IllegalStateException if the sampler is interrupted, or the files cannot be written.
+   */
+  @Override
+  public void terminate() throws IllegalStateException {
+    ScheduledExecutorService s;
+    synchronized (this) {
+      s = this.sampler;
+      this.sampler = null;
+    }
+    if (s != null) {
+      s.shutdown();
+      try {
+        if (!s.awaitTermination(this.intervalMs + 1000, TimeUnit.MILLISECONDS)) {
+          s.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while stopping metrics sampler", e);
+      }
+    }
+    this.sample();
+
+    try {
+      Files.createDirectories(this.outputDir);
+      this.writeCsv(this.outputDir.resolve(CSV_FILE));
+      this.writeBinary(this.outputDir.resolve(BINARY_FILE));
+    } catch (IOException e) {
+      throw new IllegalStateException("could not write metrics to " + this.outputDir, e);
+    }
+    logger.info("in-process metrics sink wrote {} samples of {} series to {}", this.rows, this.seriesNames.size(), this.outputDir);
+  }
+
+  /**
+   * Samples all the metrics of the registry into a new row.
+   */
+  synchronized void sample() {
+    if (this.rows == this.timestamps.length) {
+      this.grow();
+    }
+    int row = this.rows;
+    this.timestamps[row] = this.originEpochMs + TimeUnit.NANOSECONDS.toMillis(SimulationClock.nanoTime() - this.originModelledNanos);
+    Enumeration<Collector.MetricFamilySamples> families = this.registry.metricFamilySamples();
+    while (families.hasMoreElements()) {
+      for (Collector.MetricFamilySamples.Sample sample : families.nextElement().samples) {
+        this.column(seriesName(sample))[row] = sample.value;
+      }
+    }
+    this.rows++;
+  }
+
+  /**
+   * Returns the names of the sampled series, in the order of the columns.
+   *
+   * @return names of the sampled series.
+   */
+  public synchronized List<String> getSeriesNames() {
+    return Collections.unmodifiableList(new ArrayList<>(this.seriesNames));
+  }
+
+  /**
+   * Returns the number of samples taken so far.
+   *
+   * @return number of samples taken so far.
+   */
+  public synchronized int getRows() {
+    return this.rows;
+  }
+
+  /**
+   * Returns a copy of the sampled values of the given series.
+   *
+   * @param seriesName name of the series, as in the CSV header.
+   * @return sampled values of the series, or null if the series was never sampled.
+   */
+  public synchronized double[] getColumn(String seriesName) {
+    double[] column = this.columns.get(seriesName);
+    return column == null ? null : Arrays.copyOf(column, this.rows);
+  }
+
+  private void sampleSafely() {
+    try {
+      this.sample();
+    } catch (RuntimeException e) {
+      // an exception would silently cancel the periodic sampling.
+      logger.error("could not sample metrics", e);
+    }
+  }
+
+  private double[] column(String seriesName) {
+    double[] column = this.columns.get(seriesName);
+    if (column == null) {
+      column = new double[this.timestamps.length];
+      Arrays.fill(column, Double.NaN);
+      this.columns.put(seriesName, column);
+      this.seriesNames.add(seriesName);
+    }
+    return column;
+  }
+
+  private void grow() {
+    int capacity = this.timestamps.length * 2;
+    this.timestamps = Arrays.copyOf(this.timestamps, capacity);
+    for (String name : this.seriesNames) {
+      double[] column = Arrays.copyOf(this.columns.get(name), capacity);
+      Arrays.fill(column, this.rows, capacity, Double.NaN);
+      this.columns.put(name, column);
+    }
+  }
+
+  private synchronized void writeCsv(Path path) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writer.write(TIMESTAMP_COLUMN);
+      for (String name : this.seriesNames) {
+        writer.write(',');
+        writer.write(escapeCsv(name));
+      }
+      writer.write('\n');
+
+      StringBuilder line = new StringBuilder();
+      for (int row = 0; row < this.rows; row++) {
+        line.setLength(0);
+        line.append(this.timestamps[row]);
+        for (String name : this.seriesNames) {
+          line.append(',');
+          double value = this.columns.get(name)[row];
+          if (!Double.isNaN(value)) {
+            line.append(value);
+          }
+        }
+        line.append('\n');
+        writer.write(line.toString());
+      }
+    }
+  }
+
+  private synchronized void writeBinary(Path path) throws IOException {
+    try (OutputStream file = Files.newOutputStream(path);
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+      out.writeInt(BINARY_MAGIC);
+      out.writeInt(BINARY_VERSION);
+      out.writeInt(this.rows);
+      out.writeInt(this.seriesNames.size());
+      for (int row = 0; row < this.rows; row++) {
+        out.writeLong(this.timestamps[row]);
+      }
+      for (String name : this.seriesNames) {
+        out.writeUTF(name);
+        double[] column = this.columns.get(name);
+        for (int row = 0; row < this.rows; row++) {
+          out.writeDouble(column[row]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the name of a series in the Prometheus exposition format, e.g., name{label="value"}.
+   */
+  private static String seriesName(Collector.MetricFamilySamples.Sample sample) {
+    if (sample.labelNames.isEmpty()) {
+      return sample.name;
+    }
+    StringBuilder name = new StringBuilder(sample.name).append('{');
+    for (int i = 0; i < sample.labelNames.size(); i++) {
+      if (i > 0) {
+        name.append(',');
+      }
+      name.append(sample.labelNames.get(i)).append("=\"").append(sample.labelValues.get(i)).append('"');
+    }
+    return name.append('}').toString();
+  }
+
+  private static String escapeCsv(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+}
@@ -0,0 +1,23 @@
+package metrics.integration;
+
+/**
+ * MetricsBackend is where the metrics registered by Opera collectors are shipped to during a simulation, e.g., a
+ * Prometheus exposer scraped by a dockerized Prometheus and Grafana stack, or an in-process sink writing the metrics
+ * to files at the end of the run. The simulator starts its backend before starting the nodes, and terminates it once
+ * all nodes are terminated.
+ */
+public interface MetricsBackend {
+  /**
+   * Starts the backend.
+   *
+   * @throws IllegalStateException if the backend cannot be started.
+   */
+  void start() throws IllegalStateException;
+
+  /**
+   * Terminates the backend, flushing any metrics it holds.
+   *
+   * @throws IllegalStateException if the backend cannot be terminated.
+   */
+  void terminate() throws IllegalStateException;
+}
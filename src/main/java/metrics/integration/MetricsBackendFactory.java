@@ -0,0 +1,45 @@
+package metrics.integration;
+
+import metrics.MetricsConfig;
+
+/**
+ * MetricsBackendFactory creates the metrics backends.
+ */
+public class MetricsBackendFactory {
+  private MetricsBackendFactory() {
+  }
+
+  /**
+   * Creates the metrics backend configured in MetricsConfig.
+   *
+   * @return new metrics backend instance according to the configuration.
+   */
+  public static MetricsBackend newBackend() {
+    return newBackend(MetricsConfig.getBackendType());
+  }
+
+  /**
+   * get a new metrics backend instance.
+   *
+   * @param type type of the backend.
+   * @return new metrics backend instance according to the given type.
+   */
+  public static MetricsBackend newBackend(MetricsBackendType type) {
+    switch (type) {
+      case PROMETHEUS:
+        return new PrometheusBackend(true);
+
+      case PROMETHEUS_EXPOSER:
+        return new PrometheusBackend(false);
+
+      case IN_PROCESS:
+        return new InProcessMetricsSink(MetricsConfig.getOutputDir(), MetricsConfig.getSamplingIntervalMs());
+
+      case NONE:
+        return new NoopMetricsBackend();
+
+      default:
+        throw new IllegalArgumentException("wrong metrics backend type: " + type);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package metrics.integration;
+
+/**
+ * Types of metrics backends.
+ */
+public enum MetricsBackendType {
+  /**
+   * Prometheus exposer along with the dockerized Prometheus and Grafana stack (see MetricsNetwork).
+   */
+  PROMETHEUS,
+  /**
+   * Prometheus exposer only, for an externally managed Prometheus server, no docker container is started.
+   */
+  PROMETHEUS_EXPOSER,
+  /**
+   * In-process sink sampling all metrics into columnar arrays, written to files on termination.
+   */
+  IN_PROCESS,
+  /**
+   * No backend, metrics are collected but not shipped anywhere.
+   */
+  NONE
+}
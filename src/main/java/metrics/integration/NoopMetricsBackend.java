@@ -0,0 +1,14 @@
+package metrics.integration;
+
+/**
+ * NoopMetricsBackend ships metrics nowhere, metrics are still collected in-process, e.g., for end-of-run reports.
+ */
+public class NoopMetricsBackend implements MetricsBackend {
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void terminate() {
+  }
+}
@@ -0,0 +1,42 @@
+package metrics.integration;
+
+import modules.logger.Logger;
+import modules.logger.OperaLogger;
+
+/**
+ * PrometheusBackend exposes the metrics through the Prometheus exposer HTTP server, and optionally runs the dockerized
+ * Prometheus and Grafana stack scraping it. The docker client is only created when the stack is started, so the
+ * exposer-only backend never touches docker.
+ */
+public class PrometheusBackend implements MetricsBackend {
+  private final Logger logger = OperaLogger.getLoggerForSimulator(PrometheusBackend.class.getCanonicalName());
+  private final MetricServer metricServer;
+  private final boolean runDockerStack;
+
+  /**
+   * Creates a Prometheus backend.
+   *
+   * @param runDockerStack true to run the dockerized Prometheus and Grafana stack on start, false to only expose the
+   *                       metrics.
+   */
+  public PrometheusBackend(boolean runDockerStack) {
+    this.metricServer = new MetricServer();
+    this.runDockerStack = runDockerStack;
+  }
+
+  @Override
+  public void start() throws IllegalStateException {
+    this.metricServer.start();
+    if (this.runDockerStack) {
+      new MetricsNetwork().runMetricsTestNet();
+    } else {
+      logger.info("dockerized metrics stack is skipped, metrics are only exposed");
+    }
+  }
+
+  @Override
+  public void terminate() throws IllegalStateException {
+    this.metricServer.terminate();
+    logger.info("metric server terminated");
+  }
+}
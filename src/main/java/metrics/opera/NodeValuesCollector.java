@@ -0,0 +1,346 @@
+package metrics.opera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import io.prometheus.client.SummaryMetricFamily;
+import metrics.Constants;
+import metrics.MetricsConfig;
+import node.Identifier;
+
+/**
+ * NodeValuesCollector keeps the exact value of a metric for every node in-process, and exports it on scrape according
+ * to the mode of MetricsConfig at its creation:
+ * in the per-node mode, each node is exported as a series labelled by its identifier;
+ * in the aggregated mode, only the sum of the values per node group, the distribution of the values over nodes, and
+ * the top-k nodes with the highest values are exported, hence the number of series does not depend on the number of
+ * nodes.
+ * Values are either accumulated (counters) or set (gauges), accumulation is striped per node.
+ * In the aggregated mode, the rollups per group and the distribution over nodes are maintained on write, so a scrape
+ * costs the number of groups and sketch buckets plus a single pass for the top-k nodes, rather than a sort of all nodes.
+ */
+class NodeValuesCollector extends Collector {
+  private static final List<Double> NODE_QUANTILES = Collections.unmodifiableList(Arrays.asList(0.5, 0.9, 0.99));
+
+  private final String fullName;
+  private final String helpMessage;
+  private final boolean monotonic;
+  private final boolean aggregated;
+  private final ConcurrentHashMap<Identifier, Cell> cells;
+  /**
+   * Sum of the values of the nodes of each group, only maintained in the aggregated mode.
+   */
+  private final ConcurrentHashMap<String, DoubleAdder> groups;
+  /**
+   * Distribution of the values over nodes, only maintained in the aggregated mode.
+   */
+  private final Sketch sketch;
+
+  /**
+   * Creates a collector of per-node values, the collector is not registered.
+   *
+   * @param fullName    full name of the metric, i.e., including its namespace and subsystem.
+   * @param helpMessage a hint message describing what this metric represents.
+   * @param monotonic   true for counters, whose values are accumulated, and false for gauges, whose values are set.
+   */
+  NodeValuesCollector(String fullName, String helpMessage, boolean monotonic) {
+    this.fullName = fullName;
+    this.helpMessage = helpMessage;
+    this.monotonic = monotonic;
+    this.aggregated = MetricsConfig.isAggregated();
+    this.cells = new ConcurrentHashMap<>();
+    this.groups = new ConcurrentHashMap<>();
+    this.sketch = new Sketch();
+  }
+
+  /**
+   * Returns true if metrics with the given labels must be backed by a NodeValuesCollector, i.e., if the aggregated mode
+   * is on and the metrics are only labelled by node identifier.
+   */
+  static boolean aggregates(String... labelNames) {
+    return MetricsConfig.isAggregated() && labelNames.length == 1 && Constants.IDENTIFIER.equals(labelNames[0]);
+  }
+
+  /**
+   * Adds the given value to the value of the node.
+   */
+  void add(Identifier id, double value) {
+    Cell cell = this.cell(id);
+    double old = cell.add(value);
+    if (this.aggregated) {
+      cell.group.add(value);
+      this.sketch.move(old, old + value);
+    }
+  }
+
+  /**
+   * Sets the value of the node.
+   */
+  void set(Identifier id, double value) {
+    Cell cell = this.cell(id);
+    double old = cell.set(value);
+    if (this.aggregated) {
+      cell.group.add(value - old);
+      this.sketch.move(old, value);
+    }
+  }
+
+  /**
+   * Returns the value of the node, zero if it has none.
+   */
+  double get(Identifier id) {
+    Cell cell = this.cells.get(id);
+    return cell == null ? 0 : cell.get();
+  }
+
+  /**
+   * Exports the values of nodes, either per node or aggregated, it is invoked by the registry on each scrape.
+   *
+   * @return the samples of this collector.
+   */
+  @Override
+  public List<MetricFamilySamples> collect() {
+    List<MetricFamilySamples> samples = new ArrayList<>();
+    if (!this.aggregated) {
+      List<String> labelNames = Collections.singletonList(Constants.IDENTIFIER);
+      if (this.monotonic) {
+        CounterMetricFamily family = new CounterMetricFamily(this.fullName, this.helpMessage, labelNames);
+        for (Map.Entry<Identifier, Cell> entry : this.cells.entrySet()) {
+          family.addMetric(Collections.singletonList(entry.getKey().toString()), entry.getValue().get());
+        }
+        samples.add(family);
+      } else {
+        GaugeMetricFamily family = new GaugeMetricFamily(this.fullName, this.helpMessage, labelNames);
+        for (Map.Entry<Identifier, Cell> entry : this.cells.entrySet()) {
+          family.addMetric(Collections.singletonList(entry.getKey().toString()), entry.getValue().get());
+        }
+        samples.add(family);
+      }
+      return samples;
+    }
+
+    // rollups per group of nodes, maintained on write.
+    double sum = 0;
+    List<String> groupLabel = Collections.singletonList(Constants.GROUP);
+    if (this.monotonic) {
+      CounterMetricFamily family = new CounterMetricFamily(this.fullName, this.helpMessage, groupLabel);
+      for (Map.Entry<String, DoubleAdder> group : this.groups.entrySet()) {
+        double value = group.getValue().sum();
+        family.addMetric(Collections.singletonList(group.getKey()), value);
+        sum += value;
+      }
+      samples.add(family);
+    } else {
+      GaugeMetricFamily family = new GaugeMetricFamily(this.fullName, this.helpMessage, groupLabel);
+      for (Map.Entry<String, DoubleAdder> group : this.groups.entrySet()) {
+        double value = group.getValue().sum();
+        family.addMetric(Collections.singletonList(group.getKey()), value);
+        sum += value;
+      }
+      samples.add(family);
+    }
+
+    // distribution of the values over nodes, read from the sketch maintained on write.
+    SummaryMetricFamily distribution = new SummaryMetricFamily(baseName() + "_nodes",
+                                                               "distribution over nodes of " + this.helpMessage,
+                                                               Collections.emptyList(),
+                                                               NODE_QUANTILES);
+    distribution.addMetric(Collections.emptyList(), this.cells.size(), sum, this.sketch.quantiles(NODE_QUANTILES));
+    samples.add(distribution);
+
+    // top-k outlier nodes, kept in a min-heap of size k.
+    int topK = MetricsConfig.getTopK();
+    PriorityQueue<Outlier> top = new PriorityQueue<>(topK + 1, Comparator.comparingDouble(outlier -> outlier.value));
+    for (Map.Entry<Identifier, Cell> entry : this.cells.entrySet()) {
+      if (topK == 0) {
+        break;
+      }
+      double value = entry.getValue().get();
+      if (top.size() < topK) {
+        top.add(new Outlier(entry.getKey(), value));
+      } else if (value > top.peek().value) {
+        top.poll();
+        top.add(new Outlier(entry.getKey(), value));
+      }
+    }
+    GaugeMetricFamily outliers = new GaugeMetricFamily(baseName() + "_top",
+                                                       "top " + topK + " nodes of " + this.helpMessage,
+                                                       Collections.singletonList(Constants.IDENTIFIER));
+    for (Outlier outlier : top) {
+      outliers.addMetric(Collections.singletonList(outlier.id.toString()), outlier.value);
+    }
+    samples.add(outliers);
+    return samples;
+  }
+
+  /**
+   * Returns the name of the metric without the total suffix of counters, to derive the names of its rollups.
+   */
+  private String baseName() {
+    return this.fullName.endsWith("_total") ? this.fullName.substring(0, this.fullName.length() - "_total".length()) : this.fullName;
+  }
+
+  /**
+   * Returns the cell of the node, creating it on first use. In the aggregated mode, the group of the node is resolved
+   * once on creation, and the node enters the distribution with a zero value.
+   */
+  private Cell cell(Identifier id) {
+    Cell cell = this.cells.get(id);
+    if (cell == null) {
+      cell = this.cells.computeIfAbsent(id, k -> {
+        if (!this.aggregated) {
+          return new Cell(null);
+        }
+        this.sketch.move(Double.NaN, 0);
+        return new Cell(this.groups.computeIfAbsent(MetricsConfig.groupOf(k), group -> new DoubleAdder()));
+      });
+    }
+    return cell;
+  }
+
+  /**
+   * Value of a single node, updated atomically so that each write knows the value it replaces.
+   */
+  private static class Cell {
+    private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+    /**
+     * Rollup of the group of the node, or null in the per-node mode.
+     */
+    private final DoubleAdder group;
+
+    private Cell(DoubleAdder group) {
+      this.group = group;
+    }
+
+    private double get() {
+      return Double.longBitsToDouble(this.bits.get());
+    }
+
+    /**
+     * Adds the given value, and returns the former value.
+     */
+    private double add(double value) {
+      long current = this.bits.get();
+      while (!this.bits.compareAndSet(current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value))) {
+        current = this.bits.get();
+      }
+      return Double.longBitsToDouble(current);
+    }
+
+    /**
+     * Sets the given value, and returns the former value.
+     */
+    private double set(double value) {
+      return Double.longBitsToDouble(this.bits.getAndSet(Double.doubleToRawLongBits(value)));
+    }
+  }
+
+  /**
+   * Node of the top-k heap, holding the value read when the node was offered.
+   */
+  private static class Outlier {
+    private final Identifier id;
+    private final double value;
+
+    private Outlier(Identifier id, double value) {
+      this.id = id;
+      this.value = value;
+    }
+  }
+
+  /**
+   * Sketch counts the nodes per log-linear bucket of their values, in the spirit of LogLinearHistogram: the bucket of a
+   * value is the sign, exponent and top SUB_BUCKET_BITS of the mantissa of its bits, hence quantiles are reported with a
+   * relative error below 1%, and the number of buckets only depends on the spread of the values, not on the number of
+   * nodes. Moving a node from one value to another is two striped increments, and concurrent moves commute.
+   */
+  private static class Sketch {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int MANTISSA_SHIFT = 52 - SUB_BUCKET_BITS;
+
+    private final ConcurrentHashMap<Long, LongAdder> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * Moves a node from the bucket of its former value to the bucket of its new value, NaN standing for no value.
+     */
+    private void move(double from, double to) {
+      long fromBucket = bucketOf(from);
+      long toBucket = bucketOf(to);
+      if (fromBucket == toBucket && !Double.isNaN(from)) {
+        return;
+      }
+      if (!Double.isNaN(from)) {
+        // the bucket may not exist yet if a concurrent move into it has not run, the counts converge once it has.
+        this.buckets.computeIfAbsent(fromBucket, k -> new LongAdder()).decrement();
+      }
+      this.buckets.computeIfAbsent(toBucket, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Returns the values at the given quantiles from a snapshot of the buckets, zeros if no node is counted.
+     */
+    private List<Double> quantiles(List<Double> quantiles) {
+      List<Map.Entry<Long, Long>> snapshot = new ArrayList<>(this.buckets.size());
+      long total = 0;
+      for (Map.Entry<Long, LongAdder> bucket : this.buckets.entrySet()) {
+        long count = bucket.getValue().sum();
+        if (count > 0) {
+          snapshot.add(Map.entry(bucket.getKey(), count));
+          total += count;
+        }
+      }
+      snapshot.sort(Map.Entry.comparingByKey());
+
+      List<Double> values = new ArrayList<>(quantiles.size());
+      long cumulative = 0;
+      int bucket = -1;
+      for (double quantile : quantiles) {
+        if (total == 0) {
+          values.add(0.0);
+          continue;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        while (cumulative < rank && bucket < snapshot.size() - 1) {
+          bucket++;
+          cumulative += snapshot.get(bucket).getValue();
+        }
+        values.add(valueOf(snapshot.get(bucket).getKey()));
+      }
+      return values;
+    }
+
+    /**
+     * Returns the bucket of the given value, buckets being ordered as their values.
+     */
+    private static long bucketOf(double value) {
+      if (value == 0 || Double.isNaN(value)) {
+        return 0;
+      }
+      long magnitude = Double.doubleToRawLongBits(Math.abs(value)) >>> MANTISSA_SHIFT;
+      return value > 0 ? magnitude : -magnitude;
+    }
+
+    /**
+     * Returns the middle value of the given bucket.
+     */
+    private static double valueOf(long bucket) {
+      if (bucket == 0) {
+        return 0;
+      }
+      double magnitude = Double.longBitsToDouble((Math.abs(bucket) << MANTISSA_SHIFT) | (1L << (MANTISSA_SHIFT - 1)));
+      return bucket > 0 ? magnitude : -magnitude;
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package metrics.opera;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import metrics.Counter;
 import node.Identifier;
 
@@ -8,6 +10,15 @@ import node.Identifier;
  */
 public class OperaCounter implements Counter {
   private final io.prometheus.client.Counter counter;
+  /**
+   * Label children of the counter per node identifier, so that the identifier is encoded into its label value once
+   * rather than on every increment.
+   */
+  private final ConcurrentHashMap<Identifier, io.prometheus.client.Counter.Child> children = new ConcurrentHashMap<>();
+  /**
+   * Per-node values of the counter in the aggregated mode of MetricsConfig, null otherwise.
+   */
+  private final NodeValuesCollector nodeValues;
 
   /**
    * Registers a counter collector.
@@ -20,8 +31,14 @@ public class OperaCounter implements Counter {
    * @param labelNames  label names for this metric.
    */
   public OperaCounter(String name, String namespace, String subsystem, String helpMessage, String... labelNames) {
+    if (NodeValuesCollector.aggregates(labelNames)) {
+      this.counter = null;
+      this.nodeValues = new NodeValuesCollector(namespace + "_" + subsystem + "_" + name, helpMessage, true).register();
+      return;
+    }
     this.counter = io.prometheus.client.Counter.build().namespace(namespace).subsystem(subsystem).name(name).help(
       helpMessage).labelNames(labelNames).register();
+    this.nodeValues = null;
   }
 
   /**
@@ -36,6 +53,7 @@ public class OperaCounter implements Counter {
   public OperaCounter(String name, String namespace, String subsystem, String helpMessage) {
     this.counter = io.prometheus.client.Counter.build().namespace(namespace).subsystem(subsystem).name(name).help(
       helpMessage).register();
+    this.nodeValues = null;
   }
 
   /**
@@ -45,7 +63,11 @@ public class OperaCounter implements Counter {
    */
   @Override
   public void increment(Identifier id) {
-    this.counter.labels(id.toString()).inc();
+    if (this.nodeValues != null) {
+      this.nodeValues.add(id, 1);
+      return;
+    }
+    this.child(id).inc();
   }
 
   /**
@@ -57,7 +79,11 @@ public class OperaCounter implements Counter {
    */
   @Override
   public void increment(String name, Identifier id, double value) {
-    this.counter.labels(id.toString()).inc(value);
+    if (this.nodeValues != null) {
+      this.nodeValues.add(id, value);
+      return;
+    }
+    this.child(id).inc(value);
   }
 
   /**
@@ -78,7 +104,11 @@ public class OperaCounter implements Counter {
    */
   @Override
   public void decrement(String name, Identifier id, double value) {
-    this.counter.labels(id.toString()).inc(-value);
+    if (this.nodeValues != null) {
+      this.nodeValues.add(id, -value);
+      return;
+    }
+    this.child(id).inc(-value);
   }
 
   /**
@@ -89,6 +119,21 @@ public class OperaCounter implements Counter {
    */
   @Override
   public void decrement(String name, Identifier id) {
-    this.counter.labels(id.toString()).inc(-1);
+    if (this.nodeValues != null) {
+      this.nodeValues.add(id, -1);
+      return;
+    }
+    this.child(id).inc(-1);
+  }
+
+  /**
+   * Returns the label child of the counter for the given identifier, creating it on first use.
+   */
+  private io.prometheus.client.Counter.Child child(Identifier id) {
+    io.prometheus.client.Counter.Child child = this.children.get(id);
+    if (child == null) {
+      child = this.children.computeIfAbsent(id, k -> this.counter.labels(k.toString()));
+    }
+    return child;
   }
 }
@@ -1,5 +1,7 @@
 package metrics.opera;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import metrics.Gauge;
 import node.Identifier;
 
@@ -8,6 +10,15 @@ import node.Identifier;
  */
 public class OperaGauge implements Gauge {
   private final io.prometheus.client.Gauge gauge;
+  /**
+   * Label children of the gauge per node identifier, so that the identifier is encoded into its label value once
+   * rather than on every update.
+   */
+  private final ConcurrentHashMap<Identifier, io.prometheus.client.Gauge.Child> children = new ConcurrentHashMap<>();
+  /**
+   * Per-node values of the gauge in the aggregated mode of MetricsConfig, null otherwise.
+   */
+  private final NodeValuesCollector nodeValues;
 
   /**
    * Registers a gauge.
@@ -20,8 +31,14 @@ public class OperaGauge implements Gauge {
    * @param labelNames  label names for this metric.
    */
   public OperaGauge(String name, String namespace, String subsystem, String helpMessage, String... labelNames) {
+    if (NodeValuesCollector.aggregates(labelNames)) {
+      this.gauge = null;
+      this.nodeValues = new NodeValuesCollector(namespace + "_" + subsystem + "_" + name, helpMessage, false).register();
+      return;
+    }
     this.gauge = io.prometheus.client.Gauge.build().namespace(namespace).subsystem(subsystem).name(name).help(
       helpMessage).labelNames(labelNames).register();
+    this.nodeValues = null;
   }
 
   /**
@@ -32,7 +49,11 @@ public class OperaGauge implements Gauge {
    */
   @Override
   public void set(Identifier id, double value) {
-    this.gauge.labels(id.toString()).set(value);
+    if (this.nodeValues != null) {
+      this.nodeValues.set(id, value);
+      return;
+    }
+    this.child(id).set(value);
   }
 
   /**
@@ -44,4 +65,15 @@ public class OperaGauge implements Gauge {
   public void set(double value) {
     this.gauge.set(value);
   }
+
+  /**
+   * Returns the label child of the gauge for the given identifier, creating it on first use.
+   */
+  private io.prometheus.client.Gauge.Child child(Identifier id) {
+    io.prometheus.client.Gauge.Child child = this.children.get(id);
+    if (child == null) {
+      child = this.children.computeIfAbsent(id, k -> this.gauge.labels(k.toString()));
+    }
+    return child;
+  }
 }
@@ -1,6 +1,10 @@
 package metrics.opera;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+import metrics.Constants;
 import metrics.Histogram;
+import metrics.MetricsConfig;
 import node.Identifier;
 
 /**
@@ -8,6 +12,17 @@ import node.Identifier;
  */
 public class OperaHistogram implements Histogram {
   private final io.prometheus.client.Histogram histogram;
+  /**
+   * Label children of the histogram per node identifier, so that the identifier is encoded into its label value once
+   * rather than on every observation.
+   */
+  private final ConcurrentHashMap<Identifier, io.prometheus.client.Histogram.Child> children = new ConcurrentHashMap<>();
+  /**
+   * In the aggregated mode of MetricsConfig, observations are bucketed per node group rather than per node, and only
+   * the per-node sums of observations are kept, in nodeSums, to export the outlier nodes. Both are unused otherwise.
+   */
+  private final boolean aggregated;
+  private final NodeValuesCollector nodeSums;
 
   /**
    * Constructor for HistogramMetric.
@@ -25,14 +40,22 @@ public class OperaHistogram implements Histogram {
    * @param labelNames  label names for this metric.
    */
   public OperaHistogram(String name, String namespace, String subsystem, String helpMessage, double[] buckets, String... labelNames) {
+    this.aggregated = NodeValuesCollector.aggregates(labelNames);
     this.histogram = io.prometheus.client.Histogram.build()
                                                    .buckets(buckets)
                                                    .namespace(namespace)
                                                    .name(name)
                                                    .subsystem(subsystem)
                                                    .help(helpMessage)
-                                                   .labelNames(labelNames)
+                                                   .labelNames(this.aggregated ? new String[]{Constants.GROUP} : labelNames)
                                                    .register();
+    if (this.aggregated) {
+      this.nodeSums = new NodeValuesCollector(namespace + "_" + subsystem + "_" + name + "_node_sum",
+                                              "sum of " + helpMessage,
+                                              true).register();
+    } else {
+      this.nodeSums = null;
+    }
   }
 
   /**
@@ -57,16 +80,33 @@ public class OperaHistogram implements Histogram {
                                                    .subsystem(subsystem)
                                                    .help(helpMessage)
                                                    .register();
+    this.aggregated = false;
+    this.nodeSums = null;
   }
 
 
   @Override
   public void observe(Identifier id, double value) {
-    this.histogram.labels(id.toString()).observe(value);
+    this.child(id).observe(value);
+    if (this.aggregated) {
+      this.nodeSums.add(id, value);
+    }
   }
 
   @Override
   public void observe(double value) {
     this.histogram.observe(value);
   }
+
+  /**
+   * Returns the label child of the histogram for the given identifier, i.e., the child of its node or of its node group
+   * in the aggregated mode, creating it on first use.
+   */
+  private io.prometheus.client.Histogram.Child child(Identifier id) {
+    io.prometheus.client.Histogram.Child child = this.children.get(id);
+    if (child == null) {
+      child = this.children.computeIfAbsent(id, k -> this.histogram.labels(this.aggregated ? MetricsConfig.groupOf(k) : k.toString()));
+    }
+    return child;
+  }
 }
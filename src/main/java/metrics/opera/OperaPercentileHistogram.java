@@ -0,0 +1,124 @@
+package metrics.opera;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.SummaryMetricFamily;
+import metrics.LogLinearHistogram;
+
+/**
+ * Implements a percentile histogram collector for Opera, backed by a LogLinearHistogram. As opposed to OperaHistogram,
+ * whose resolution is bound to its predefined buckets, it tracks the whole distribution with a bounded relative error,
+ * and exports its p50, p90, p99 and p99.9 as a Prometheus summary. The histogram is aggregated over all nodes, since
+ * keeping one per node would multiply its memory by the number of nodes.
+ * All percentile histograms are also kept in a static registry so that their percentiles can be reported at the end of
+ * the simulation regardless of whether Prometheus is scraped.
+ */
+public class OperaPercentileHistogram extends Collector {
+  /**
+   * Percentiles exported to Prometheus and end-of-run reports.
+   */
+  private static final double[] PERCENTILES = new double[]{50, 90, 99, 99.9};
+  private static final List<OperaPercentileHistogram> registry = new CopyOnWriteArrayList<>();
+
+  private final String fullName;
+  private final String helpMessage;
+  private final List<Double> quantiles;
+  private final LogLinearHistogram histogram;
+
+  /**
+   * Registers a percentile histogram collector.
+   *
+   * @param name                  name of histogram metric.
+   * @param namespace             namespace of histogram metric, normally refers to a distinct class of opera, e.g., middleware.
+   * @param subsystem             either the same as namespace for monolith classes, or the subclass for which we collect
+   *                              metrics, e.g., network.latency generator within middleware.
+   * @param helpMessage           a hint message describing what this metric represents.
+   * @param highestTrackableValue highest value to be tracked with bounded error, larger values are clamped.
+   */
+  public OperaPercentileHistogram(String name, String namespace, String subsystem, String helpMessage, long highestTrackableValue) {
+    this.fullName = namespace + "_" + subsystem + "_" + name;
+    this.helpMessage = helpMessage;
+    this.histogram = new LogLinearHistogram(highestTrackableValue);
+    List<Double> quantiles = new ArrayList<>();
+    for (double percentile : PERCENTILES) {
+      quantiles.add(percentile / 100);
+    }
+    this.quantiles = Collections.unmodifiableList(quantiles);
+    this.register();
+    registry.add(this);
+  }
+
+  /**
+   * Records a value in the histogram.
+   *
+   * @param value value to record.
+   */
+  public void observe(long value) {
+    this.histogram.record(value);
+  }
+
+  /**
+   * Returns the value at the given percentile.
+   *
+   * @param percentile percentile in [0, 100].
+   * @return value at the given percentile, or zero if no value is recorded.
+   */
+  public long getValueAtPercentile(double percentile) {
+    return this.histogram.getValueAtPercentile(percentile);
+  }
+
+  /**
+   * Exports the count, sum and percentiles of the histogram as a summary, it is invoked by the registry on each scrape.
+   *
+   * @return the samples of this histogram.
+   */
+  @Override
+  public List<MetricFamilySamples> collect() {
+    long[] values = this.histogram.getValuesAtPercentiles(PERCENTILES);
+    List<Double> quantileValues = new ArrayList<>(values.length);
+    for (long value : values) {
+      quantileValues.add((double) value);
+    }
+
+    SummaryMetricFamily family = new SummaryMetricFamily(this.fullName, this.helpMessage, Collections.emptyList(), this.quantiles);
+    family.addMetric(Collections.emptyList(), this.histogram.getCount(), this.histogram.getSum(), quantileValues);
+    List<MetricFamilySamples> samples = new ArrayList<>();
+    samples.add(family);
+    return samples;
+  }
+
+  /**
+   * Returns a one line summary of the histogram, i.e., its count, mean, percentiles and maximum.
+   *
+   * @return summary of the histogram.
+   */
+  @Override
+  public String toString() {
+    long[] values = this.histogram.getValuesAtPercentiles(PERCENTILES);
+    StringBuilder builder = new StringBuilder(this.fullName);
+    builder.append(String.format(" count=%d mean=%.2f", this.histogram.getCount(), this.histogram.getMean()));
+    for (int i = 0; i < PERCENTILES.length; i++) {
+      builder.append(String.format(" p%s=%d", new DecimalFormat("0.#").format(PERCENTILES[i]), values[i]));
+    }
+    builder.append(" max=").append(this.histogram.getMax());
+    return builder.toString();
+  }
+
+  /**
+   * Returns the summaries of all percentile histograms created so far, meant for end-of-run reports.
+   *
+   * @return one line summary per percentile histogram.
+   */
+  public static List<String> report() {
+    List<String> lines = new ArrayList<>();
+    for (OperaPercentileHistogram histogram : registry) {
+      lines.add(histogram.toString());
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,98 @@
+package metrics.opera;
+
+import java.util.List;
+
+import io.prometheus.client.Collector;
+import metrics.Counter;
+import node.Identifier;
+
+/**
+ * Implements a striped Counter collector for Opera. As opposed to OperaCounter, increments do not touch the
+ * Prometheus client at all; they are accumulated in a striped DoubleAdder per node identifier, which scales with
+ * the number of concurrently incrementing threads, and are only folded into Prometheus samples when the registry
+ * is scraped. This is meant for counters on the message path, e.g., total messages sent and received, which are
+ * incremented far more often than they are scraped. In the aggregated mode of MetricsConfig, only the rollups of
+ * the per-node values are exported (see NodeValuesCollector).
+ */
+public class OperaStripedCounter extends Collector implements Counter {
+  private final NodeValuesCollector values;
+
+  /**
+   * Registers a striped counter collector.
+   *
+   * @param name        name of counter metric.
+   * @param namespace   namespace of counter metric, normally refers to a distinct class of opera, e.g., middleware.
+   * @param subsystem   either the same as namespace for monolith classes, or the subclass for which we collect metrics,
+   *                    e.g., network.latency generator within middleware.
+   * @param helpMessage a hint message describing what this metric represents.
+   */
+  public OperaStripedCounter(String name, String namespace, String subsystem, String helpMessage) {
+    this.values = new NodeValuesCollector(namespace + "_" + subsystem + "_" + name, helpMessage, true);
+    this.register();
+  }
+
+  /**
+   * Increment the counter with a specific name and identifier.
+   *
+   * @param id the node id on which the metric will be registered.
+   */
+  @Override
+  public void increment(Identifier id) {
+    this.values.add(id, 1);
+  }
+
+  /**
+   * Increment the counter with a specific name and identifier by a specific value.
+   *
+   * @param name  name of the metric.
+   * @param id    the node id on which the metric will be registered.
+   * @param value value by which metric is incremented.
+   */
+  @Override
+  public void increment(String name, Identifier id, double value) {
+    this.values.add(id, value);
+  }
+
+  /**
+   * Decrement the counter with a specific name and identifier.
+   *
+   * @param name name of the metric.
+   * @param id   the node id on which the metric will be registered.
+   */
+  @Override
+  public void decrement(String name, Identifier id) {
+    this.values.add(id, -1);
+  }
+
+  /**
+   * Decrement the counter with a specific name and identifier by a specific value.
+   *
+   * @param name  name of the metric.
+   * @param id    the node id on which the metric will be registered.
+   * @param value value by which metric is decremented.
+   */
+  @Override
+  public void decrement(String name, Identifier id, double value) {
+    this.values.add(id, -value);
+  }
+
+  /**
+   * Returns the current value of the counter for the given identifier.
+   *
+   * @param id the node id.
+   * @return the current value of the counter for the given identifier, zero if it was never incremented.
+   */
+  public double get(Identifier id) {
+    return this.values.get(id);
+  }
+
+  /**
+   * Folds the striped accumulators into Prometheus samples, it is invoked by the registry on each scrape.
+   *
+   * @return the samples of this counter, either one per node identifier or its rollups.
+   */
+  @Override
+  public List<MetricFamilySamples> collect() {
+    return this.values.collect();
+  }
+}
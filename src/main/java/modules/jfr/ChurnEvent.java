@@ -0,0 +1,34 @@
+package modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a node arriving to or departing from a churn simulation.
+ */
+@Name("opera.simulator.Churn")
+@Label("Churn")
+@Category({"Opera", "Simulator"})
+@Description("Arrival or departure of a node in a churn simulation")
+@StackTrace(false)
+public class ChurnEvent extends jdk.jfr.Event {
+  public static final String ARRIVAL = "arrival";
+  public static final String DEPARTURE = "departure";
+
+  @Label("Node Id")
+  public String nodeId;
+
+  @Label("Kind")
+  public String kind;
+
+  @Label("Session Length")
+  @Timespan(Timespan.MILLISECONDS)
+  public long sessionLength;
+
+  @Label("Online Nodes")
+  public int onlineNodes;
+}
@@ -0,0 +1,40 @@
+package modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of encoding an event into bytes, or decoding bytes into an event.
+ */
+@Name("opera.network.Encoder")
+@Label("Encoder")
+@Category({"Opera", "Network"})
+@Description("Encoding an event into bytes, or decoding bytes into an event")
+@StackTrace(false)
+public class EncoderEvent extends jdk.jfr.Event {
+  /**
+   * Operation of encoding an event.
+   */
+  public static final String ENCODE = "encode";
+  /**
+   * Operation of decoding an event.
+   */
+  public static final String DECODE = "decode";
+
+  @Label("Node Id")
+  public String nodeId;
+
+  @Label("Operation")
+  public String operation;
+
+  @Label("Event Type")
+  public String eventType;
+
+  @Label("Size")
+  @DataAmount
+  public int size;
+}
@@ -0,0 +1,36 @@
+package modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of receiving a message through Network, covering its decoding and its handling by the node.
+ */
+@Name("opera.network.Receive")
+@Label("Network Receive")
+@Category({"Opera", "Network"})
+@Description("Receiving a message from a remote node, including decoding and handling it")
+@StackTrace(false)
+public class NetworkReceiveEvent extends jdk.jfr.Event {
+  @Label("Node Id")
+  public String nodeId;
+
+  @Label("Origin Id")
+  public String originId;
+
+  @Label("Event Type")
+  public String eventType;
+
+  @Label("Size")
+  @DataAmount
+  public int size;
+
+  @Label("Propagation Delay")
+  @Timespan(Timespan.NANOSECONDS)
+  public long propagationDelay;
+}
@@ -0,0 +1,35 @@
+package modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of sending an encoded event through Network, covering the simulated latency and the underlay
+ * send.
+ */
+@Name("opera.network.Send")
+@Label("Network Send")
+@Category({"Opera", "Network"})
+@Description("Sending an encoded event to a remote node, including the simulated latency")
+@StackTrace(false)
+public class NetworkSendEvent extends jdk.jfr.Event {
+  @Label("Node Id")
+  public String nodeId;
+
+  @Label("Target Id")
+  public String targetId;
+
+  @Label("Event Type")
+  public String eventType;
+
+  @Label("Size")
+  @DataAmount
+  public int size;
+
+  @Label("Success")
+  public boolean success;
+}
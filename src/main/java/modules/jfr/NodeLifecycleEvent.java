@@ -0,0 +1,27 @@
+package modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of a lifecycle callback of a node, i.e., onCreate, onStart, or onStop.
+ */
+@Name("opera.node.Lifecycle")
+@Label("Node Lifecycle")
+@Category({"Opera", "Node"})
+@Description("Lifecycle callback of a node, i.e., onCreate, onStart, or onStop")
+@StackTrace(false)
+public class NodeLifecycleEvent extends jdk.jfr.Event {
+  public static final String CREATE = "onCreate";
+  public static final String START = "onStart";
+  public static final String STOP = "onStop";
+
+  @Label("Node Id")
+  public String nodeId;
+
+  @Label("Phase")
+  public String phase;
+}
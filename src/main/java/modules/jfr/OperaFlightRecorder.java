@@ -0,0 +1,87 @@
+package modules.jfr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * OperaFlightRecorder starts flight recordings of the Opera events with the settings profile shipped with the project,
+ * i.e., jfr/opera.jfc on the classpath. A recording can also be started without any code change through the JVM
+ * options, e.g., -XX:StartFlightRecording:settings=default,settings=src/main/resources/jfr/opera.jfc,filename=opera.jfr
+ * which records the Opera events along with the default JDK events.
+ */
+public class OperaFlightRecorder {
+  /**
+   * Classpath resource of the settings profile of the Opera events.
+   */
+  public static final String SETTINGS_RESOURCE = "/jfr/opera.jfc";
+  /**
+   * System property of the file to record the Opera events to, through the simulator, if set.
+   */
+  public static final String RECORDING_FILE_PROPERTY = "opera.jfr.file";
+
+  private OperaFlightRecorder() {
+  }
+
+  /**
+   * Returns the file the simulator should record the Opera events to.
+   *
+   * @return the file set by the RECORDING_FILE_PROPERTY system property, or null if not set.
+   */
+  public static Path recordingFile() {
+    String file = System.getProperty(RECORDING_FILE_PROPERTY);
+    return file == null ? null : Paths.get(file);
+  }
+
+  /**
+   * Loads the settings profile of the Opera events.
+   *
+   * @return the settings profile.
+   * @throws UncheckedIOException if the profile cannot be read.
+   * @throws IllegalStateException if the profile is missing or malformed.
+   */
+  public static Configuration settings() throws UncheckedIOException, IllegalStateException {
+    try (InputStream in = OperaFlightRecorder.class.getResourceAsStream(SETTINGS_RESOURCE)) {
+      if (in == null) {
+        throw new IllegalStateException("missing flight recorder settings: " + SETTINGS_RESOURCE);
+      }
+      try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+        return Configuration.create(reader);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not read flight recorder settings: " + SETTINGS_RESOURCE, e);
+    } catch (ParseException e) {
+      throw new IllegalStateException("malformed flight recorder settings: " + SETTINGS_RESOURCE, e);
+    }
+  }
+
+  /**
+   * Starts a recording of the Opera events, which is dumped to the destination once stopped.
+   *
+   * @param destination file the recording is dumped to.
+   * @return the started recording.
+   * @throws UncheckedIOException if the destination is not writable.
+   * @throws IllegalStateException if the settings profile is missing or malformed.
+   */
+  public static Recording start(Path destination) throws UncheckedIOException, IllegalStateException {
+    Recording recording = new Recording(settings());
+    recording.setName("opera");
+    try {
+      recording.setDestination(destination);
+    } catch (IOException e) {
+      recording.close();
+      throw new UncheckedIOException("could not set flight recording destination: " + destination, e);
+    }
+    recording.start();
+    return recording;
+  }
+}
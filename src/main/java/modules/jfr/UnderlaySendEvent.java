@@ -0,0 +1,37 @@
+package modules.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event of sending a message through an underlay, e.g., TCP, UDP, or Java RMI.
+ */
+@Name("opera.network.UnderlaySend")
+@Label("Underlay Send")
+@Category({"Opera", "Network"})
+@Description("Sending a message through the underlay transport")
+@StackTrace(false)
+public class UnderlaySendEvent extends jdk.jfr.Event {
+  @Label("Node Id")
+  public String nodeId;
+
+  @Label("Target Address")
+  public String targetAddress;
+
+  @Label("Underlay")
+  public String underlay;
+
+  @Label("Event Type")
+  public String eventType;
+
+  @Label("Size")
+  @DataAmount
+  public int size;
+
+  @Label("Success")
+  public boolean success;
+}
@@ -1,15 +1,29 @@
 package modules.logger;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import org.slf4j.MDC;
 import org.slf4j.Marker;
 import org.slf4j.MarkerFactory;
 
 /**
  * Encapsulates logger for opera project. This class empowers the fatal level log on top of the slf4j logger.
+ * Every call is guarded by the level of the underlying logger, so a disabled call neither formats its message nor
+ * touches its arguments. The fields of the logger, e.g., the node identifier, are not concatenated to the message;
+ * they are bound to the MDC of the logging thread for the duration of an enabled call instead, so that the layout of
+ * the appender decides how to render them (the "prefix" key holds all fields rendered as "key: value ").
  */
 public class Logger {
+  /**
+   * MDC key of all the fields of the logger rendered as a single prefix.
+   */
+  public static final String PREFIX_KEY = "prefix";
   private final org.slf4j.Logger logger;
   private final Marker fatal = MarkerFactory.getMarker("FATAL");
+  private final Map<String, String> fields = new LinkedHashMap<>();
   private String prefix;
 
   /**
@@ -22,16 +36,37 @@ public class Logger {
   }
 
   /**
-   * Adds a prefix to the log message.
+   * Adds a structured field to the log messages, e.g., the identifier of the node.
+   *
+   * @param key   key of the field in the MDC.
+   * @param value value of the field.
+   */
+  public void addField(String key, String value) {
+    this.fields.put(key, value);
+    StringBuilder rendered = new StringBuilder();
+    for (Map.Entry<String, String> field : this.fields.entrySet()) {
+      rendered.append(field.getKey()).append(": ").append(field.getValue()).append(' ');
+    }
+    this.prefix = rendered.toString();
+  }
+
+  /**
+   * Adds a prefix to the log messages.
    *
    * @param prefix prefix to be added.
+   * @deprecated the prefix is a structured field now, use addField instead.
    */
+  @Deprecated
   public void addPrefix(String prefix) {
-    if (this.prefix == null) {
-      this.prefix = prefix + " ";
-    } else {
-      this.prefix += prefix + " ";
-    }
+    this.addField(PREFIX_KEY, prefix);
+  }
+
+  public boolean isTraceEnabled() {
+    return this.logger.isTraceEnabled();
+  }
+
+  public boolean isDebugEnabled() {
+    return this.logger.isDebugEnabled();
   }
 
   /**
@@ -41,10 +76,11 @@ public class Logger {
    */
   @SuppressFBWarnings(value = "DM_EXIT", justification = "expected to exit the program")
   public void fatal(String message) {
-    if (this.prefix != null) {
-      this.logger.error(this.fatal, this.prefix + message);
-    } else {
+    this.bind();
+    try {
       this.logger.error(this.fatal, message);
+    } finally {
+      this.unbind();
     }
     System.exit(1);
   }
@@ -57,12 +93,12 @@ public class Logger {
    */
   @SuppressFBWarnings(value = "DM_EXIT", justification = "expected to exit the program")
   public void fatal(String message, Throwable t) {
-    if (this.prefix != null) {
-      this.logger.error(this.fatal, this.prefix + message, t);
-    } else {
+    this.bind();
+    try {
       this.logger.error(this.fatal, message, t);
+    } finally {
+      this.unbind();
     }
-
     System.exit(1);
   }
 
@@ -74,12 +110,12 @@ public class Logger {
    */
   @SuppressFBWarnings(value = "DM_EXIT", justification = "expected to exit the program")
   public void fatal(String message, Object... args) {
-    if (this.prefix != null) {
-      this.logger.error(this.fatal, this.prefix + message, args);
-    } else {
+    this.bind();
+    try {
       this.logger.error(this.fatal, message, args);
+    } finally {
+      this.unbind();
     }
-
     System.exit(1);
   }
 
@@ -92,12 +128,12 @@ public class Logger {
    */
   @SuppressFBWarnings(value = "DM_EXIT", justification = "expected to exit the program")
   public void fatal(String message, Throwable t, Object... args) {
-    if (this.prefix != null) {
-      this.logger.error(this.fatal, this.prefix + message, t, args);
-    } else {
-      this.logger.error(this.fatal, message, t, args);
+    this.bind();
+    try {
+      this.logger.error(this.fatal, message, withThrowable(args, t));
+    } finally {
+      this.unbind();
     }
-
     System.exit(1);
   }
 
@@ -107,10 +143,13 @@ public class Logger {
    * @param message message to be logged.
    */
   public void warn(String message) {
-    if (this.prefix != null) {
-      this.logger.warn(this.prefix + message);
-    } else {
-      this.logger.warn(message);
+    if (this.logger.isWarnEnabled()) {
+      this.bind();
+      try {
+        this.logger.warn(message);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -121,10 +160,13 @@ public class Logger {
    * @param t       throwable to be logged.
    */
   public void warn(String message, Throwable t) {
-    if (this.prefix != null) {
-      this.logger.warn(this.prefix + message, t);
-    } else {
-      this.logger.warn(message, t);
+    if (this.logger.isWarnEnabled()) {
+      this.bind();
+      try {
+        this.logger.warn(message, t);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -135,10 +177,13 @@ public class Logger {
    * @param args    arguments to be logged.
    */
   public void warn(String message, Object... args) {
-    if (this.prefix != null) {
-      this.logger.warn(this.prefix + message, args);
-    } else {
-      this.logger.warn(message, args);
+    if (this.logger.isWarnEnabled()) {
+      this.bind();
+      try {
+        this.logger.warn(message, args);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -150,10 +195,13 @@ public class Logger {
    * @param args    arguments to be logged.
    */
   public void warn(String message, Throwable t, Object... args) {
-    if (this.prefix != null) {
-      this.logger.warn(this.prefix + message, t, args);
-    } else {
-      this.logger.warn(message, t, args);
+    if (this.logger.isWarnEnabled()) {
+      this.bind();
+      try {
+        this.logger.warn(message, withThrowable(args, t));
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -163,10 +211,48 @@ public class Logger {
    * @param message message to be logged.
    */
   public void info(String message) {
-    if (this.prefix != null) {
-      this.logger.info(this.prefix + message);
-    } else {
-      this.logger.info(message);
+    if (this.logger.isInfoEnabled()) {
+      this.bind();
+      try {
+        this.logger.info(message);
+      } finally {
+        this.unbind();
+      }
+    }
+  }
+
+  /**
+   * Logs the given message with info level.
+   *
+   * @param message message to be logged.
+   * @param arg     argument to be logged.
+   */
+  public void info(String message, Object arg) {
+    if (this.logger.isInfoEnabled()) {
+      this.bind();
+      try {
+        this.logger.info(message, arg);
+      } finally {
+        this.unbind();
+      }
+    }
+  }
+
+  /**
+   * Logs the given message with info level.
+   *
+   * @param message message to be logged.
+   * @param arg1    first argument to be logged.
+   * @param arg2    second argument to be logged.
+   */
+  public void info(String message, Object arg1, Object arg2) {
+    if (this.logger.isInfoEnabled()) {
+      this.bind();
+      try {
+        this.logger.info(message, arg1, arg2);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -177,10 +263,13 @@ public class Logger {
    * @param args    arguments to be logged.
    */
   public void info(String message, Object... args) {
-    if (this.prefix != null) {
-      this.logger.info(this.prefix + message, args);
-    } else {
-      this.logger.info(message, args);
+    if (this.logger.isInfoEnabled()) {
+      this.bind();
+      try {
+        this.logger.info(message, args);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -190,10 +279,48 @@ public class Logger {
    * @param message message to be logged.
    */
   public void debug(String message) {
-    if (this.prefix != null) {
-      this.logger.debug(this.prefix + message);
-    } else {
-      this.logger.debug(message);
+    if (this.logger.isDebugEnabled()) {
+      this.bind();
+      try {
+        this.logger.debug(message);
+      } finally {
+        this.unbind();
+      }
+    }
+  }
+
+  /**
+   * Logs the given message with debug level.
+   *
+   * @param message message to be logged.
+   * @param arg     argument to be logged.
+   */
+  public void debug(String message, Object arg) {
+    if (this.logger.isDebugEnabled()) {
+      this.bind();
+      try {
+        this.logger.debug(message, arg);
+      } finally {
+        this.unbind();
+      }
+    }
+  }
+
+  /**
+   * Logs the given message with debug level.
+   *
+   * @param message message to be logged.
+   * @param arg1    first argument to be logged.
+   * @param arg2    second argument to be logged.
+   */
+  public void debug(String message, Object arg1, Object arg2) {
+    if (this.logger.isDebugEnabled()) {
+      this.bind();
+      try {
+        this.logger.debug(message, arg1, arg2);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -204,10 +331,13 @@ public class Logger {
    * @param args    arguments to be logged.
    */
   public void debug(String message, Object... args) {
-    if (this.prefix != null) {
-      this.logger.debug(this.prefix + message, args);
-    } else {
-      this.logger.debug(message, args);
+    if (this.logger.isDebugEnabled()) {
+      this.bind();
+      try {
+        this.logger.debug(message, args);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -217,10 +347,48 @@ public class Logger {
    * @param message message to be logged.
    */
   public void trace(String message) {
-    if (this.prefix != null) {
-      this.logger.trace(this.prefix + message);
-    } else {
-      this.logger.trace(message);
+    if (this.logger.isTraceEnabled()) {
+      this.bind();
+      try {
+        this.logger.trace(message);
+      } finally {
+        this.unbind();
+      }
+    }
+  }
+
+  /**
+   * Logs the given message with trace level.
+   *
+   * @param message message to be logged.
+   * @param arg     argument to be logged.
+   */
+  public void trace(String message, Object arg) {
+    if (this.logger.isTraceEnabled()) {
+      this.bind();
+      try {
+        this.logger.trace(message, arg);
+      } finally {
+        this.unbind();
+      }
+    }
+  }
+
+  /**
+   * Logs the given message with trace level.
+   *
+   * @param message message to be logged.
+   * @param arg1    first argument to be logged.
+   * @param arg2    second argument to be logged.
+   */
+  public void trace(String message, Object arg1, Object arg2) {
+    if (this.logger.isTraceEnabled()) {
+      this.bind();
+      try {
+        this.logger.trace(message, arg1, arg2);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -231,10 +399,13 @@ public class Logger {
    * @param args    arguments to be logged.
    */
   public void trace(String message, Object... args) {
-    if (this.prefix != null) {
-      this.logger.trace(this.prefix + message, args);
-    } else {
-      this.logger.trace(message, args);
+    if (this.logger.isTraceEnabled()) {
+      this.bind();
+      try {
+        this.logger.trace(message, args);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -244,10 +415,13 @@ public class Logger {
    * @param message message to be logged.
    */
   public void error(String message) {
-    if (this.prefix != null) {
-      this.logger.error(this.prefix + message);
-    } else {
-      this.logger.error(message);
+    if (this.logger.isErrorEnabled()) {
+      this.bind();
+      try {
+        this.logger.error(message);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -258,10 +432,13 @@ public class Logger {
    * @param t       throwable to be logged.
    */
   public void error(String message, Throwable t) {
-    if (this.prefix != null) {
-      this.logger.error(this.prefix + message, t);
-    } else {
-      this.logger.error(message, t);
+    if (this.logger.isErrorEnabled()) {
+      this.bind();
+      try {
+        this.logger.error(message, t);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -269,13 +446,16 @@ public class Logger {
    * Logs the given message with error level.
    *
    * @param message message to be logged.
-   * @param args    arguments to be used in the message.
+   * @param args    arguments to be logged.
    */
   public void error(String message, Object... args) {
-    if (this.prefix != null) {
-      this.logger.error(this.prefix + message, args);
-    } else {
-      this.logger.error(message, args);
+    if (this.logger.isErrorEnabled()) {
+      this.bind();
+      try {
+        this.logger.error(message, args);
+      } finally {
+        this.unbind();
+      }
     }
   }
 
@@ -287,10 +467,48 @@ public class Logger {
    * @param args    arguments to be logged.
    */
   public void error(String message, Throwable t, Object... args) {
-    if (this.prefix != null) {
-      this.logger.error(this.prefix + message, t, args);
-    } else {
-      this.logger.error(message, t, args);
+    if (this.logger.isErrorEnabled()) {
+      this.bind();
+      try {
+        this.logger.error(message, withThrowable(args, t));
+      } finally {
+        this.unbind();
+      }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Binds the fields of this logger to the MDC of the current thread.
+   */
+  private void bind() {
+    if (this.prefix == null) {
+      return;
+    }
+    for (Map.Entry<String, String> field : this.fields.entrySet()) {
+      MDC.put(field.getKey(), field.getValue());
+    }
+    MDC.put(PREFIX_KEY, this.prefix);
+  }
+
+  /**
+   * Unbinds the fields of this logger from the MDC of the current thread.
+   */
+  private void unbind() {
+    if (this.prefix == null) {
+      return;
+    }
+    for (String key : this.fields.keySet()) {
+      MDC.remove(key);
+    }
+    MDC.remove(PREFIX_KEY);
+  }
+
+  /**
+   * Appends the throwable to the arguments, where slf4j expects it to be logged with its stack trace.
+   */
+  private static Object[] withThrowable(Object[] args, Throwable t) {
+    Object[] all = Arrays.copyOf(args, args.length + 1);
+    all[args.length] = t;
+    return all;
+  }
+}
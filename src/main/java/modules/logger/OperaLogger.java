@@ -7,11 +7,24 @@ import org.slf4j.LoggerFactory;
  * Encapsulates logger for opera project.
  */
 public class OperaLogger {
+  /**
+   * MDC key of the identifier of the node.
+   */
+  public static final String NODE_ID_KEY = "node_id";
+  /**
+   * MDC key of the component of the node, or of the simulator.
+   */
+  public static final String COMPONENT_KEY = "component";
   /**
    * Logger prefix that is used to filter out logs generated by this project.
    */
   private static final String LOGGER_NAME = "io.github.yhassanzadeh13";
 
+  static {
+    // the asynchronous appender only flushes its buffer on shutdown of log4j, e.g., before the exit on a fatal log.
+    Runtime.getRuntime().addShutdownHook(new Thread(OperaLogger::shutdownLogging, "logger-shutdown"));
+  }
+
   /**
    * Creates a logger for the given class name prefixed by the logger name.
    *
@@ -20,8 +33,8 @@ public class OperaLogger {
    */
   public static Logger getLoggerForNodeComponent(String className, Identifier nodeId, String component) {
     Logger logger = new Logger(LoggerFactory.getLogger(LOGGER_NAME + "." + className));
-    logger.addPrefix("node_id: " + nodeId.toString());
-    logger.addPrefix("component: " + component);
+    logger.addField(NODE_ID_KEY, nodeId.toString());
+    logger.addField(COMPONENT_KEY, component);
     return logger;
   }
 
@@ -33,7 +46,7 @@ public class OperaLogger {
    */
   public static Logger getLoggerForNodeComponent(String className, Identifier nodeId) {
     Logger logger = new Logger(LoggerFactory.getLogger(LOGGER_NAME + "." + className));
-    logger.addPrefix("node_id: " + nodeId.toString());
+    logger.addField(NODE_ID_KEY, nodeId.toString());
     return logger;
   }
 
@@ -45,7 +58,19 @@ public class OperaLogger {
    */
   public static Logger getLoggerForSimulator(String className) {
     Logger logger = new Logger(LoggerFactory.getLogger(LOGGER_NAME + "." + className));
-    logger.addPrefix("simulator-");
+    logger.addField(COMPONENT_KEY, "simulator");
     return logger;
   }
-}
\ No newline at end of file
+
+  /**
+   * Shuts the logging backend down, flushing its asynchronous appenders. The backend is only known at runtime, hence it
+   * is reached reflectively, and nothing is done for backends other than log4j.
+   */
+  private static void shutdownLogging() {
+    try {
+      Class.forName("org.apache.log4j.LogManager").getMethod("shutdown").invoke(null);
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // not log4j, nothing to flush.
+    }
+  }
+}
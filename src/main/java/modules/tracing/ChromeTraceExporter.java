@@ -0,0 +1,126 @@
+package modules.tracing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * ChromeTraceExporter writes spans in the Chrome trace-event JSON format, which can be opened in chrome://tracing or
+ * Perfetto. Each node is shown as a thread, each span as a complete event on the receiving node covering the handling
+ * of its message, and each message as a flow arrow from the span that sent it.
+ */
+public class ChromeTraceExporter {
+  private static final int PID = 1;
+
+  private ChromeTraceExporter() {
+  }
+
+  /**
+   * Writes the spans to a file.
+   *
+   * @param spans the spans.
+   * @param path  the file.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void export(List<Span> spans, Path path) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      export(spans, writer);
+    }
+  }
+
+  /**
+   * Writes the spans to a writer.
+   *
+   * @param spans  the spans.
+   * @param writer the writer.
+   * @throws IOException if the writer fails.
+   */
+  public static void export(List<Span> spans, Writer writer) throws IOException {
+    long origin = Long.MAX_VALUE;
+    for (Span span : spans) {
+      origin = Math.min(origin, span.getSentNanos());
+    }
+    HashMap<String, Integer> threads = new HashMap<>();
+    HashMap<Long, Span> bySpanId = new HashMap<>();
+    for (Span span : spans) {
+      bySpanId.put(span.getSpanId(), span);
+    }
+
+    StringBuilder json = new StringBuilder("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+    boolean first = true;
+    // one thread per node.
+    for (Span span : spans) {
+      if (!threads.containsKey(span.getNodeId())) {
+        int tid = threads.size() + 1;
+        threads.put(span.getNodeId(), tid);
+        first = separate(json, first);
+        json.append("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":").append(PID).append(",\"tid\":").append(tid)
+            .append(",\"args\":{\"name\":\"").append(escape(span.getNodeId())).append("\"}}");
+      }
+    }
+
+    for (Span span : spans) {
+      int tid = threads.get(span.getNodeId());
+      first = separate(json, first);
+      json.append("{\"name\":\"").append(escape(span.getName()))
+          .append("\",\"cat\":\"opera\",\"ph\":\"X\",\"pid\":").append(PID).append(",\"tid\":").append(tid)
+          .append(",\"ts\":").append(micros(span.getReceivedNanos() - origin))
+          .append(",\"dur\":").append(micros(span.getHandlingNanos()))
+          .append(",\"args\":{\"trace\":\"").append(Long.toHexString(span.getTraceId()))
+          .append("\",\"span\":\"").append(Long.toHexString(span.getSpanId()))
+          .append("\",\"parent\":\"").append(Long.toHexString(span.getParentSpanId()))
+          .append("\",\"hop\":").append(span.getHopCount())
+          .append(",\"origin\":\"").append(escape(span.getOriginId()))
+          .append("\",\"network_us\":").append(micros(span.getNetworkNanos()))
+          .append("}}");
+
+      // flow arrow from the sending span, if recorded, to this one.
+      Span parent = bySpanId.get(span.getParentSpanId());
+      if (parent != null) {
+        String flowId = Long.toHexString(span.getSpanId());
+        first = separate(json, first);
+        json.append("{\"name\":\"message\",\"cat\":\"opera\",\"ph\":\"s\",\"id\":\"").append(flowId)
+            .append("\",\"pid\":").append(PID).append(",\"tid\":").append(threads.get(parent.getNodeId()))
+            .append(",\"ts\":").append(micros(span.getSentNanos() - origin)).append('}');
+        json.append(",{\"name\":\"message\",\"cat\":\"opera\",\"ph\":\"f\",\"bp\":\"e\",\"id\":\"").append(flowId)
+            .append("\",\"pid\":").append(PID).append(",\"tid\":").append(tid)
+            .append(",\"ts\":").append(micros(span.getReceivedNanos() - origin)).append('}');
+      }
+      writer.write(json.toString());
+      json.setLength(0);
+    }
+    json.append("]}");
+    writer.write(json.toString());
+  }
+
+  private static boolean separate(StringBuilder json, boolean first) {
+    if (!first) {
+      json.append(',');
+    }
+    return false;
+  }
+
+  private static String micros(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1000.0);
+  }
+
+  private static String escape(String value) {
+    StringBuilder escaped = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        escaped.append('\\').append(c);
+      } else if (c < 0x20) {
+        escaped.append(String.format("\\u%04x", (int) c));
+      } else {
+        escaped.append(c);
+      }
+    }
+    return escaped.toString();
+  }
+}
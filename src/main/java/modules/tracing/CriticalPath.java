@@ -0,0 +1,68 @@
+package modules.tracing;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * CriticalPath is the chain of hops of a trace which ends last, i.e., the chain that determines how long the whole
+ * causal chain of messages took.
+ */
+public final class CriticalPath {
+  private final long traceId;
+  private final List<Span> hops;
+
+  /**
+   * Creates a critical path.
+   *
+   * @param traceId identifier of the trace.
+   * @param hops    hops of the path, from the first to the last one.
+   */
+  CriticalPath(long traceId, List<Span> hops) {
+    this.traceId = traceId;
+    this.hops = Collections.unmodifiableList(hops);
+  }
+
+  public long getTraceId() {
+    return traceId;
+  }
+
+  public List<Span> getHops() {
+    return hops;
+  }
+
+  /**
+   * Returns the time from the send of the first hop to the end of the handling of the last hop.
+   *
+   * @return duration of the path in nanoseconds.
+   */
+  public long getDurationNanos() {
+    return this.hops.get(this.hops.size() - 1).getEndNanos() - this.hops.get(0).getSentNanos();
+  }
+
+  /**
+   * Returns the hop which took the longest, i.e., with the longest network plus handling time.
+   *
+   * @return the slowest hop of the path.
+   */
+  public Span getSlowestHop() {
+    Span slowest = this.hops.get(0);
+    for (Span hop : this.hops) {
+      if (hop.getEndNanos() - hop.getSentNanos() > slowest.getEndNanos() - slowest.getSentNanos()) {
+        slowest = hop;
+      }
+    }
+    return slowest;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder chain = new StringBuilder();
+    for (Span hop : this.hops) {
+      if (chain.length() > 0) {
+        chain.append(" -> ");
+      }
+      chain.append(hop.getName());
+    }
+    return String.format("trace %016x: %s took %d us, slowest hop %s", this.traceId, chain, this.getDurationNanos() / 1000, this.getSlowestHop());
+  }
+}
@@ -0,0 +1,68 @@
+package modules.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CriticalPathAnalyzer computes the critical path of each trace. Since a message is only sent once the message that
+ * caused it is received, the critical path of a trace is the chain of hops from the hop ending last back to the first
+ * hop, following parent spans. Hops overwritten in the ring buffer cut the chain short at the earliest recorded one.
+ */
+public class CriticalPathAnalyzer {
+  private CriticalPathAnalyzer() {
+  }
+
+  /**
+   * Computes the critical path of each trace of the spans.
+   *
+   * @param spans the spans, of any number of traces.
+   * @return the critical paths, from the longest to the shortest.
+   */
+  public static List<CriticalPath> analyze(List<Span> spans) {
+    HashMap<Long, Span> bySpanId = new HashMap<>();
+    HashMap<Long, Span> lastByTrace = new HashMap<>();
+    for (Span span : spans) {
+      bySpanId.put(span.getSpanId(), span);
+      Span last = lastByTrace.get(span.getTraceId());
+      if (last == null || span.getEndNanos() > last.getEndNanos()) {
+        lastByTrace.put(span.getTraceId(), span);
+      }
+    }
+
+    List<CriticalPath> paths = new ArrayList<>(lastByTrace.size());
+    for (Map.Entry<Long, Span> entry : lastByTrace.entrySet()) {
+      List<Span> hops = new ArrayList<>();
+      Span hop = entry.getValue();
+      while (hop != null) {
+        hops.add(hop);
+        hop = hop.getParentSpanId() == TraceContext.NO_PARENT ? null : bySpanId.get(hop.getParentSpanId());
+      }
+      Collections.reverse(hops);
+      paths.add(new CriticalPath(entry.getKey(), hops));
+    }
+    paths.sort(Comparator.comparingLong(CriticalPath::getDurationNanos).reversed());
+    return paths;
+  }
+
+  /**
+   * Returns a human-readable report of the longest critical paths.
+   *
+   * @param spans the spans.
+   * @param limit maximum number of paths reported.
+   * @return one line per path, from the longest to the shortest.
+   */
+  public static List<String> report(List<Span> spans, int limit) {
+    List<String> lines = new ArrayList<>();
+    for (CriticalPath path : analyze(spans)) {
+      if (lines.size() == limit) {
+        break;
+      }
+      lines.add(path.toString());
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,107 @@
+package modules.tracing;
+
+/**
+ * Span is a recorded hop of a trace, i.e., a message from its send until the end of its handling by the receiver. All
+ * times are taken from the clock of the underlay, i.e., the modelled clock of SimulationClock, or the simulated clock of
+ * a latency-aware underlay, which is shared by all nodes of a simulation.
+ */
+public final class Span {
+  private final long traceId;
+  private final long spanId;
+  private final long parentSpanId;
+  private final int hopCount;
+  private final String name;
+  private final String originId;
+  private final String nodeId;
+  private final long sentNanos;
+  private final long receivedNanos;
+  private final long endNanos;
+
+  /**
+   * Creates a span.
+   *
+   * @param context       trace context of the message.
+   * @param name          name of the span, e.g., the type of the event carried by the message.
+   * @param originId      identifier of the sender of the message.
+   * @param nodeId        identifier of the receiver of the message, i.e., the node handling it.
+   * @param sentNanos     time the message was sent.
+   * @param receivedNanos time the message was received.
+   * @param endNanos      time the handling of the message ended.
+   */
+  public Span(TraceContext context, String name, String originId, String nodeId, long sentNanos, long receivedNanos, long endNanos) {
+    this.traceId = context.getTraceId();
+    this.spanId = context.getSpanId();
+    this.parentSpanId = context.getParentSpanId();
+    this.hopCount = context.getHopCount();
+    this.name = name;
+    this.originId = originId;
+    this.nodeId = nodeId;
+    this.sentNanos = sentNanos;
+    this.receivedNanos = receivedNanos;
+    this.endNanos = endNanos;
+  }
+
+  public long getTraceId() {
+    return traceId;
+  }
+
+  public long getSpanId() {
+    return spanId;
+  }
+
+  public long getParentSpanId() {
+    return parentSpanId;
+  }
+
+  public int getHopCount() {
+    return hopCount;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getOriginId() {
+    return originId;
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public long getSentNanos() {
+    return sentNanos;
+  }
+
+  public long getReceivedNanos() {
+    return receivedNanos;
+  }
+
+  public long getEndNanos() {
+    return endNanos;
+  }
+
+  /**
+   * Returns the time the message spent in the network, i.e., from its send to its receipt.
+   *
+   * @return network time of the message in nanoseconds.
+   */
+  public long getNetworkNanos() {
+    return this.receivedNanos - this.sentNanos;
+  }
+
+  /**
+   * Returns the time the receiver spent handling the message.
+   *
+   * @return handling time of the message in nanoseconds.
+   */
+  public long getHandlingNanos() {
+    return this.endNanos - this.receivedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s(%s -> %s, hop %d, network %d us, handling %d us)",
+        this.name, this.originId, this.nodeId, this.hopCount, this.getNetworkNanos() / 1000, this.getHandlingNanos() / 1000);
+  }
+}
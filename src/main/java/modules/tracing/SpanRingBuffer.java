@@ -0,0 +1,74 @@
+package modules.tracing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * SpanRingBuffer keeps the most recent spans in a fixed-size ring, without any lock. Recording a span claims a slot
+ * with a single atomic increment, and once the ring is full, the oldest spans are overwritten.
+ */
+public class SpanRingBuffer {
+  private final AtomicReferenceArray<Span> slots;
+  private final int mask;
+  private final AtomicLong sequence = new AtomicLong();
+
+  /**
+   * Creates a ring buffer.
+   *
+   * @param capacity number of spans kept, rounded up to a power of two.
+   * @throws IllegalArgumentException if capacity is not positive.
+   */
+  public SpanRingBuffer(int capacity) throws IllegalArgumentException {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity must be in (0, 2^30]: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    this.slots = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  /**
+   * Records a span, overwriting the oldest one if the ring is full.
+   *
+   * @param span the span.
+   */
+  public void add(Span span) {
+    this.slots.lazySet((int) (this.sequence.getAndIncrement() & this.mask), span);
+  }
+
+  /**
+   * Returns the total number of spans recorded, including the overwritten ones.
+   *
+   * @return the total number of spans recorded.
+   */
+  public long getRecorded() {
+    return this.sequence.get();
+  }
+
+  public int getCapacity() {
+    return this.slots.length();
+  }
+
+  /**
+   * Returns the spans currently kept, ordered by send time. Spans recorded concurrently may or may not be included.
+   *
+   * @return the spans currently kept.
+   */
+  public List<Span> snapshot() {
+    List<Span> spans = new ArrayList<>(this.slots.length());
+    for (int i = 0; i < this.slots.length(); i++) {
+      Span span = this.slots.get(i);
+      if (span != null) {
+        spans.add(span);
+      }
+    }
+    spans.sort(Comparator.comparingLong(Span::getSentNanos));
+    return spans;
+  }
+}
@@ -0,0 +1,75 @@
+package modules.tracing;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * TraceContext identifies the hop of a causal chain of messages a message belongs to. It is carried by the message
+ * from its sender to its receiver, and every message sent by the receiver while handling it is a child hop of the same
+ * trace.
+ */
+public final class TraceContext implements Serializable {
+  /**
+   * Parent span identifier of the first hop of a trace.
+   */
+  public static final long NO_PARENT = 0;
+
+  private final long traceId;
+  private final long spanId;
+  private final long parentSpanId;
+  private final int hopCount;
+
+  private TraceContext(long traceId, long spanId, long parentSpanId, int hopCount) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.hopCount = hopCount;
+  }
+
+  /**
+   * Creates the context of the first hop of a new trace.
+   *
+   * @return the context of the first hop of a new trace.
+   */
+  public static TraceContext newTrace() {
+    return new TraceContext(newId(), newId(), NO_PARENT, 0);
+  }
+
+  /**
+   * Creates the context of a hop caused by this one, i.e., of a message sent while handling the message of this hop.
+   *
+   * @return the context of the child hop.
+   */
+  public TraceContext child() {
+    return new TraceContext(this.traceId, newId(), this.spanId, this.hopCount + 1);
+  }
+
+  public long getTraceId() {
+    return traceId;
+  }
+
+  public long getSpanId() {
+    return spanId;
+  }
+
+  public long getParentSpanId() {
+    return parentSpanId;
+  }
+
+  public int getHopCount() {
+    return hopCount;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%016x/%016x", this.traceId, this.spanId);
+  }
+
+  private static long newId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == NO_PARENT);
+    return id;
+  }
+}
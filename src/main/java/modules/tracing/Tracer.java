@@ -0,0 +1,137 @@
+package modules.tracing;
+
+/**
+ * Tracer propagates trace contexts along causal chains of messages, and records their hops as spans. While a node
+ * handles a traced message, the context of the message is bound to the handling thread, so that every message the
+ * handler sends is a child hop of it. Work handed over to other threads keeps the context only if wrapped with wrap.
+ *
+ * <p>Tracing is disabled by default. Once enabled, every message sent outside a traced handler starts a new trace.
+ */
+public class Tracer {
+  /**
+   * System property of the Chrome trace-event file the simulator exports the spans to, tracing is enabled if set.
+   */
+  public static final String TRACE_FILE_PROPERTY = "opera.trace.file";
+  /**
+   * System property of the number of spans kept in the ring buffer.
+   */
+  public static final String CAPACITY_PROPERTY = "opera.trace.capacity";
+  private static final int DEFAULT_CAPACITY = 1 << 16;
+
+  private static final ThreadLocal<TraceContext> current = new ThreadLocal<>();
+  private static volatile SpanRingBuffer buffer =
+      System.getProperty(TRACE_FILE_PROPERTY) == null ? null : new SpanRingBuffer(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+  private Tracer() {
+  }
+
+  /**
+   * Enables tracing, discarding the spans recorded so far.
+   *
+   * @param capacity number of most recent spans kept.
+   */
+  public static void enable(int capacity) {
+    buffer = new SpanRingBuffer(capacity);
+  }
+
+  /**
+   * Disables tracing, discarding the spans recorded so far.
+   */
+  public static void disable() {
+    buffer = null;
+  }
+
+  public static boolean isEnabled() {
+    return buffer != null;
+  }
+
+  /**
+   * Returns the context bound to the current thread.
+   *
+   * @return the context bound to the current thread, or null if the thread is not handling a traced message.
+   */
+  public static TraceContext current() {
+    return current.get();
+  }
+
+  /**
+   * Returns the context of a message about to be sent from the current thread.
+   *
+   * @return a child of the current context, a new trace if there is no current context, or null if tracing is disabled.
+   */
+  public static TraceContext contextForSend() {
+    if (buffer == null) {
+      return null;
+    }
+    TraceContext parent = current.get();
+    return parent == null ? TraceContext.newTrace() : parent.child();
+  }
+
+  /**
+   * Binds a context to the current thread.
+   *
+   * @param context the context to bind, may be null.
+   * @return the context previously bound, to be restored through restore.
+   */
+  public static TraceContext enter(TraceContext context) {
+    TraceContext previous = current.get();
+    current.set(context);
+    return previous;
+  }
+
+  /**
+   * Restores the context bound to the current thread before enter.
+   *
+   * @param previous the context returned by enter.
+   */
+  public static void restore(TraceContext previous) {
+    if (previous == null) {
+      current.remove();
+    } else {
+      current.set(previous);
+    }
+  }
+
+  /**
+   * Wraps a task so that it runs with the context of the current thread, e.g., when a handler hands it over to another
+   * thread.
+   *
+   * @param task the task.
+   * @return the task bound to the current context.
+   */
+  public static Runnable wrap(Runnable task) {
+    TraceContext context = current.get();
+    if (context == null) {
+      return task;
+    }
+    return () -> {
+      TraceContext previous = enter(context);
+      try {
+        task.run();
+      } finally {
+        restore(previous);
+      }
+    };
+  }
+
+  /**
+   * Records a span if tracing is enabled.
+   *
+   * @param span the span.
+   */
+  public static void record(Span span) {
+    SpanRingBuffer b = buffer;
+    if (b != null) {
+      b.add(span);
+    }
+  }
+
+  /**
+   * Returns the buffer of recorded spans.
+   *
+   * @return the buffer of recorded spans, or null if tracing is disabled.
+   */
+  public static SpanRingBuffer getBuffer() {
+    return buffer;
+  }
+}
@@ -0,0 +1,209 @@
+package network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.SummaryMetricFamily;
+import metrics.Constants;
+import metrics.LogLinearHistogram;
+import network.model.EventType;
+
+/**
+ * EventTypeCollector breaks down the traffic of the network layer by event type, i.e., the number and bytes of messages
+ * sent and received, the time spent in encoding and decoding them, and their propagation delay. Metrics are only
+ * labelled by event type, not by node, hence their cardinality is bounded by EventType.MAX_EVENT_TYPES.
+ * Statistics are kept in an array indexed by the interned id of the event type and accumulated in striped adders, so
+ * recording does not go through any label lookup; they are folded into Prometheus samples on scrape.
+ */
+public class EventTypeCollector extends Collector {
+  private static final String SUBSYSTEM_EVENT = "event";
+  /**
+   * Highest propagation delay tracked with bounded error, i.e., one hour in microseconds.
+   */
+  private static final long MAX_PROPAGATION_DELAY_US = 3_600_000_000L;
+  private static final double[] PERCENTILES = new double[]{50, 90, 99, 99.9};
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final AtomicReferenceArray<EventTypeStats> stats;
+  private final List<String> labelNames;
+  private final List<Double> quantiles;
+
+  /**
+   * Registers the event type collector.
+   */
+  public EventTypeCollector() {
+    this.stats = new AtomicReferenceArray<>(EventType.MAX_EVENT_TYPES);
+    this.labelNames = Collections.singletonList(Constants.EVENT_TYPE);
+    List<Double> quantiles = new ArrayList<>();
+    for (double percentile : PERCENTILES) {
+      quantiles.add(percentile / 100);
+    }
+    this.quantiles = Collections.unmodifiableList(quantiles);
+    this.register();
+  }
+
+  /**
+   * Is invoked whenever an event is encoded.
+   *
+   * @param type        type of the event.
+   * @param encodeNanos time spent in encoding the event in nanoseconds.
+   */
+  public void onEventEncoded(EventType type, long encodeNanos) {
+    EventTypeStats stats = this.stats(type);
+    stats.encodeCount.increment();
+    stats.encodeNanos.add(encodeNanos);
+  }
+
+  /**
+   * Is invoked whenever a message is sent.
+   *
+   * @param type type of the event carried by the message.
+   * @param size size of the encoded event in bytes.
+   */
+  public void onMessageSent(EventType type, int size) {
+    EventTypeStats stats = this.stats(type);
+    stats.sentCount.increment();
+    stats.sentBytes.add(size);
+  }
+
+  /**
+   * Is invoked whenever a message is received and its event is decoded.
+   *
+   * @param type                  type of the event carried by the message.
+   * @param size                  size of the encoded event in bytes.
+   * @param propagationDelayNanos propagation delay of the message in nanoseconds.
+   * @param decodeNanos           time spent in decoding the event in nanoseconds.
+   */
+  public void onMessageReceived(EventType type, int size, long propagationDelayNanos, long decodeNanos) {
+    EventTypeStats stats = this.stats(type);
+    stats.receivedCount.increment();
+    stats.receivedBytes.add(size);
+    stats.decodeCount.increment();
+    stats.decodeNanos.add(decodeNanos);
+    stats.propagationDelay.record(TimeUnit.NANOSECONDS.toMicros(propagationDelayNanos));
+  }
+
+  /**
+   * Folds the per event type statistics into Prometheus samples, it is invoked by the registry on each scrape.
+   *
+   * @return the samples of this collector.
+   */
+  @Override
+  public List<MetricFamilySamples> collect() {
+    CounterMetricFamily sent = this.counter(Name.SENT_TOTAL, HelpMsg.SENT_TOTAL);
+    CounterMetricFamily sentBytes = this.counter(Name.SENT_BYTES_TOTAL, HelpMsg.SENT_BYTES_TOTAL);
+    CounterMetricFamily received = this.counter(Name.RECEIVED_TOTAL, HelpMsg.RECEIVED_TOTAL);
+    CounterMetricFamily receivedBytes = this.counter(Name.RECEIVED_BYTES_TOTAL, HelpMsg.RECEIVED_BYTES_TOTAL);
+    CounterMetricFamily encodes = this.counter(Name.ENCODE_TOTAL, HelpMsg.ENCODE_TOTAL);
+    CounterMetricFamily encodeSeconds = this.counter(Name.ENCODE_SECONDS_TOTAL, HelpMsg.ENCODE_SECONDS_TOTAL);
+    CounterMetricFamily decodes = this.counter(Name.DECODE_TOTAL, HelpMsg.DECODE_TOTAL);
+    CounterMetricFamily decodeSeconds = this.counter(Name.DECODE_SECONDS_TOTAL, HelpMsg.DECODE_SECONDS_TOTAL);
+    SummaryMetricFamily propagationDelay = new SummaryMetricFamily(fullName(Name.PROPAGATION_DELAY),
+                                                                   HelpMsg.PROPAGATION_DELAY,
+                                                                   this.labelNames,
+                                                                   this.quantiles);
+
+    for (int id = 0; id < this.stats.length(); id++) {
+      EventTypeStats stats = this.stats.get(id);
+      if (stats == null) {
+        continue;
+      }
+      List<String> label = Collections.singletonList(EventType.get(id).getLabel());
+      sent.addMetric(label, stats.sentCount.sum());
+      sentBytes.addMetric(label, stats.sentBytes.sum());
+      received.addMetric(label, stats.receivedCount.sum());
+      receivedBytes.addMetric(label, stats.receivedBytes.sum());
+      encodes.addMetric(label, stats.encodeCount.sum());
+      encodeSeconds.addMetric(label, stats.encodeNanos.sum() / NANOS_PER_SECOND);
+      decodes.addMetric(label, stats.decodeCount.sum());
+      decodeSeconds.addMetric(label, stats.decodeNanos.sum() / NANOS_PER_SECOND);
+
+      long[] values = stats.propagationDelay.getValuesAtPercentiles(PERCENTILES);
+      List<Double> quantileValues = new ArrayList<>(values.length);
+      for (long value : values) {
+        quantileValues.add((double) value);
+      }
+      propagationDelay.addMetric(label,
+                                 stats.propagationDelay.getCount(),
+                                 stats.propagationDelay.getSum(),
+                                 quantileValues);
+    }
+
+    List<MetricFamilySamples> samples = new ArrayList<>();
+    samples.add(sent);
+    samples.add(sentBytes);
+    samples.add(received);
+    samples.add(receivedBytes);
+    samples.add(encodes);
+    samples.add(encodeSeconds);
+    samples.add(decodes);
+    samples.add(decodeSeconds);
+    samples.add(propagationDelay);
+    return samples;
+  }
+
+  /**
+   * Returns the statistics of the given event type, creating them on first use.
+   */
+  private EventTypeStats stats(EventType type) {
+    EventTypeStats stats = this.stats.get(type.getId());
+    if (stats == null) {
+      this.stats.compareAndSet(type.getId(), null, new EventTypeStats());
+      stats = this.stats.get(type.getId());
+    }
+    return stats;
+  }
+
+  private CounterMetricFamily counter(String name, String helpMessage) {
+    return new CounterMetricFamily(fullName(name), helpMessage, this.labelNames);
+  }
+
+  private static String fullName(String name) {
+    return Constants.Namespace.NETWORK + "_" + SUBSYSTEM_EVENT + "_" + name;
+  }
+
+  /**
+   * Statistics of a single event type.
+   */
+  private static class EventTypeStats {
+    private final LongAdder sentCount = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder receivedCount = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder encodeCount = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder decodeCount = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final LogLinearHistogram propagationDelay = new LogLinearHistogram(MAX_PROPAGATION_DELAY_US);
+  }
+
+  private static class Name {
+    public static final String SENT_TOTAL = "sent_total";
+    public static final String SENT_BYTES_TOTAL = "sent_bytes_total";
+    public static final String RECEIVED_TOTAL = "received_total";
+    public static final String RECEIVED_BYTES_TOTAL = "received_bytes_total";
+    public static final String ENCODE_TOTAL = "encode_total";
+    public static final String ENCODE_SECONDS_TOTAL = "encode_seconds_total";
+    public static final String DECODE_TOTAL = "decode_total";
+    public static final String DECODE_SECONDS_TOTAL = "decode_seconds_total";
+    public static final String PROPAGATION_DELAY = "propagation_delay_us";
+  }
+
+  private static class HelpMsg {
+    public static final String SENT_TOTAL = "total messages sent per event type";
+    public static final String SENT_BYTES_TOTAL = "total bytes of messages sent per event type";
+    public static final String RECEIVED_TOTAL = "total messages received per event type";
+    public static final String RECEIVED_BYTES_TOTAL = "total bytes of messages received per event type";
+    public static final String ENCODE_TOTAL = "total events encoded per event type";
+    public static final String ENCODE_SECONDS_TOTAL = "total time spent in encoding events per event type in seconds";
+    public static final String DECODE_TOTAL = "total events decoded per event type";
+    public static final String DECODE_SECONDS_TOTAL = "total time spent in decoding events per event type in seconds";
+    public static final String PROPAGATION_DELAY = "inter-node network latency per event type in microseconds";
+  }
+}
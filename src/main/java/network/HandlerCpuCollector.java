@@ -0,0 +1,299 @@
+package network;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CounterMetricFamily;
+import io.prometheus.client.GaugeMetricFamily;
+import metrics.Constants;
+import metrics.MetricsConfig;
+import network.model.EventType;
+import node.Identifier;
+
+/**
+ * HandlerCpuCollector accounts the time nodes spend in handling received messages, per node and per event type. The
+ * wall time of every handler call is recorded, while its thread CPU time is only measured on a random sample of calls
+ * (one in samplingRate) since reading it costs a system call; the CPU time of all calls is then estimated from the
+ * sampled ones. A handler with a high wall time but a low CPU time is blocked or sleeping rather than computing.
+ * Only the top-k nodes, i.e., MetricsConfig.getTopK(), are exported, so the number of series does not grow with the
+ * number of nodes.
+ */
+public class HandlerCpuCollector extends Collector {
+  /**
+   * System property of the sampling rate, i.e., the CPU time of one in that many handler calls is measured.
+   */
+  public static final String SAMPLING_RATE_PROPERTY = "opera.handler.cpu.sampling";
+  /**
+   * Returned by startCpuSample when the CPU time of the call is not measured.
+   */
+  public static final long NOT_SAMPLED = -1;
+  private static final int DEFAULT_SAMPLING_RATE = 16;
+  private static final String SUBSYSTEM_HANDLER = "handler";
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final ThreadMXBean threads;
+  private final boolean cpuTimeSupported;
+  private final int samplingRate;
+  private final ConcurrentHashMap<Identifier, HandlerStats> nodes = new ConcurrentHashMap<>();
+  private final AtomicReferenceArray<HandlerStats> eventTypes = new AtomicReferenceArray<>(EventType.MAX_EVENT_TYPES);
+
+  /**
+   * Registers the handler collector with the sampling rate of the SAMPLING_RATE_PROPERTY system property.
+   */
+  public HandlerCpuCollector() {
+    this(Integer.getInteger(SAMPLING_RATE_PROPERTY, DEFAULT_SAMPLING_RATE));
+    this.register();
+  }
+
+  /**
+   * Creates a handler collector without registering it.
+   *
+   * @param samplingRate the CPU time of one in samplingRate handler calls is measured.
+   * @throws IllegalArgumentException if the sampling rate is not positive.
+   */
+  HandlerCpuCollector(int samplingRate) throws IllegalArgumentException {
+    if (samplingRate <= 0) {
+      throw new IllegalArgumentException("sampling rate must be positive: " + samplingRate);
+    }
+    this.samplingRate = samplingRate;
+    this.threads = ManagementFactory.getThreadMXBean();
+    this.cpuTimeSupported = enableCpuTime(this.threads);
+  }
+
+  /**
+   * Is invoked right before a handler call, and decides whether the CPU time of the call is measured.
+   *
+   * @return the CPU time of the current thread if the call is sampled, NOT_SAMPLED otherwise.
+   */
+  public long startCpuSample() {
+    if (!this.cpuTimeSupported || (this.samplingRate > 1 && ThreadLocalRandom.current().nextInt(this.samplingRate) != 0)) {
+      return NOT_SAMPLED;
+    }
+    return this.threads.getCurrentThreadCpuTime();
+  }
+
+  /**
+   * Is invoked right after a handler call, on the thread that made the call.
+   *
+   * @param nodeId    identifier of the node handling the message.
+   * @param type      type of the handled event.
+   * @param wallNanos wall time of the call in nanoseconds.
+   * @param cpuStart  value returned by startCpuSample before the call.
+   */
+  public void onHandled(Identifier nodeId, EventType type, long wallNanos, long cpuStart) {
+    long cpuNanos = cpuStart == NOT_SAMPLED ? NOT_SAMPLED : this.threads.getCurrentThreadCpuTime() - cpuStart;
+    this.nodes.computeIfAbsent(nodeId, id -> new HandlerStats()).record(wallNanos, cpuNanos);
+    this.eventTypeStats(type).record(wallNanos, cpuNanos);
+  }
+
+  /**
+   * Exports the handler time per event type, and the top-k hottest nodes by CPU and by wall time.
+   *
+   * @return the samples of this collector.
+   */
+  @Override
+  public List<MetricFamilySamples> collect() {
+    List<String> eventTypeLabel = Collections.singletonList(Constants.EVENT_TYPE);
+    CounterMetricFamily calls = new CounterMetricFamily(fullName(Name.CALLS_TOTAL), HelpMsg.CALLS_TOTAL, eventTypeLabel);
+    CounterMetricFamily wall = new CounterMetricFamily(fullName(Name.WALL_SECONDS_TOTAL), HelpMsg.WALL_SECONDS_TOTAL, eventTypeLabel);
+    GaugeMetricFamily cpu = new GaugeMetricFamily(fullName(Name.CPU_SECONDS), HelpMsg.CPU_SECONDS, eventTypeLabel);
+    for (int id = 0; id < this.eventTypes.length(); id++) {
+      HandlerStats stats = this.eventTypes.get(id);
+      if (stats == null) {
+        continue;
+      }
+      List<String> label = Collections.singletonList(EventType.get(id).getLabel());
+      calls.addMetric(label, stats.calls.sum());
+      wall.addMetric(label, stats.wallNanos.sum() / NANOS_PER_SECOND);
+      cpu.addMetric(label, stats.estimatedCpuNanos() / NANOS_PER_SECOND);
+    }
+
+    List<String> idLabel = Collections.singletonList(Constants.IDENTIFIER);
+    GaugeMetricFamily hotCpu = new GaugeMetricFamily(fullName(Name.HOT_NODE_CPU_SECONDS), HelpMsg.HOT_NODE_CPU_SECONDS, idLabel);
+    for (Map.Entry<Identifier, HandlerStats> node : this.hotNodes(MetricsConfig.getTopK(), true)) {
+      hotCpu.addMetric(Collections.singletonList(node.getKey().toString()), node.getValue().estimatedCpuNanos() / NANOS_PER_SECOND);
+    }
+    GaugeMetricFamily hotWall = new GaugeMetricFamily(fullName(Name.HOT_NODE_WALL_SECONDS), HelpMsg.HOT_NODE_WALL_SECONDS, idLabel);
+    for (Map.Entry<Identifier, HandlerStats> node : this.hotNodes(MetricsConfig.getTopK(), false)) {
+      hotWall.addMetric(Collections.singletonList(node.getKey().toString()), node.getValue().getWallNanos() / NANOS_PER_SECOND);
+    }
+
+    List<MetricFamilySamples> samples = new ArrayList<>();
+    samples.add(calls);
+    samples.add(wall);
+    samples.add(cpu);
+    samples.add(hotCpu);
+    samples.add(hotWall);
+    return samples;
+  }
+
+  /**
+   * Returns a human-readable report of the hottest nodes and event types by CPU time, meant for end-of-run summaries.
+   *
+   * @param limit maximum number of nodes and of event types reported.
+   * @return one line per node and per event type, from the hottest.
+   */
+  public List<String> report(int limit) {
+    List<String> lines = new ArrayList<>();
+    if (!this.cpuTimeSupported) {
+      lines.add("thread CPU time is not supported by this JVM, only wall time is accounted");
+    }
+    for (Map.Entry<Identifier, HandlerStats> node : this.hotNodes(limit, true)) {
+      lines.add("node " + node.getKey() + ": " + node.getValue());
+    }
+
+    List<Map.Entry<EventType, HandlerStats>> types = new ArrayList<>();
+    for (int id = 0; id < this.eventTypes.length(); id++) {
+      HandlerStats stats = this.eventTypes.get(id);
+      if (stats != null) {
+        types.add(Map.entry(EventType.get(id), stats));
+      }
+    }
+    types.sort(Comparator.comparingDouble((Map.Entry<EventType, HandlerStats> e) -> e.getValue().estimatedCpuNanos()).reversed());
+    for (Map.Entry<EventType, HandlerStats> type : types.subList(0, Math.min(limit, types.size()))) {
+      lines.add("handler " + type.getKey().getLabel() + ": " + type.getValue());
+    }
+    return lines;
+  }
+
+  /**
+   * Returns the hottest nodes, by estimated CPU time or by wall time, from the hottest. The nodes are selected in a single
+   * pass with a min-heap of size limit, and their load is read once, as it keeps changing meanwhile.
+   */
+  private List<Map.Entry<Identifier, HandlerStats>> hotNodes(int limit, boolean byCpu) {
+    if (limit <= 0) {
+      return new ArrayList<>();
+    }
+    PriorityQueue<HotNode> heap = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(node -> node.load));
+    for (Map.Entry<Identifier, HandlerStats> node : this.nodes.entrySet()) {
+      double load = byCpu ? node.getValue().estimatedCpuNanos() : node.getValue().getWallNanos();
+      if (heap.size() < limit) {
+        heap.add(new HotNode(node, load));
+      } else if (load > heap.peek().load) {
+        heap.poll();
+        heap.add(new HotNode(node, load));
+      }
+    }
+    List<Map.Entry<Identifier, HandlerStats>> hottest = new ArrayList<>(heap.size());
+    while (!heap.isEmpty()) {
+      hottest.add(heap.poll().node);
+    }
+    Collections.reverse(hottest);
+    return hottest;
+  }
+
+  /**
+   * Returns the statistics of the given event type, creating them on first use.
+   */
+  private HandlerStats eventTypeStats(EventType type) {
+    HandlerStats stats = this.eventTypes.get(type.getId());
+    if (stats == null) {
+      this.eventTypes.compareAndSet(type.getId(), null, new HandlerStats());
+      stats = this.eventTypes.get(type.getId());
+    }
+    return stats;
+  }
+
+  /**
+   * Enables the thread CPU time measurement if supported.
+   *
+   * @return true if the CPU time of the current thread can be measured.
+   */
+  private static boolean enableCpuTime(ThreadMXBean threads) {
+    if (!threads.isCurrentThreadCpuTimeSupported()) {
+      return false;
+    }
+    try {
+      if (!threads.isThreadCpuTimeEnabled()) {
+        threads.setThreadCpuTimeEnabled(true);
+      }
+      return true;
+    } catch (UnsupportedOperationException | SecurityException e) {
+      return false;
+    }
+  }
+
+  private static String fullName(String name) {
+    return Constants.Namespace.NETWORK + "_" + SUBSYSTEM_HANDLER + "_" + name;
+  }
+
+  /**
+   * Handler statistics of a single node or event type.
+   */
+  static class HandlerStats {
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder wallNanos = new LongAdder();
+    private final LongAdder sampledCalls = new LongAdder();
+    private final LongAdder sampledCpuNanos = new LongAdder();
+
+    private void record(long wallNanos, long cpuNanos) {
+      this.calls.increment();
+      this.wallNanos.add(wallNanos);
+      if (cpuNanos != NOT_SAMPLED) {
+        this.sampledCalls.increment();
+        this.sampledCpuNanos.add(cpuNanos);
+      }
+    }
+
+    /**
+     * Returns the CPU time of all calls, extrapolated from the sampled calls.
+     */
+    double estimatedCpuNanos() {
+      long sampled = this.sampledCalls.sum();
+      return sampled == 0 ? 0 : (double) this.sampledCpuNanos.sum() * this.calls.sum() / sampled;
+    }
+
+    long getWallNanos() {
+      return this.wallNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+      long calls = this.calls.sum();
+      long wall = this.wallNanos.sum();
+      double cpu = this.estimatedCpuNanos();
+      return String.format("%d calls, cpu %.1f ms (estimated from %d samples), wall %.1f ms, cpu/wall %.0f%%",
+          calls, cpu / 1e6, this.sampledCalls.sum(), wall / 1e6, wall == 0 ? 0 : 100 * cpu / wall);
+    }
+  }
+
+  /**
+   * Node of the hot node heap, with its load when it was offered.
+   */
+  private static class HotNode {
+    private final Map.Entry<Identifier, HandlerStats> node;
+    private final double load;
+
+    private HotNode(Map.Entry<Identifier, HandlerStats> node, double load) {
+      this.node = node;
+      this.load = load;
+    }
+  }
+
+  private static class Name {
+    public static final String CALLS_TOTAL = "calls_total";
+    public static final String WALL_SECONDS_TOTAL = "wall_seconds_total";
+    public static final String CPU_SECONDS = "cpu_seconds_estimated";
+    public static final String HOT_NODE_CPU_SECONDS = "hot_node_cpu_seconds_estimated";
+    public static final String HOT_NODE_WALL_SECONDS = "hot_node_wall_seconds";
+  }
+
+  private static class HelpMsg {
+    public static final String CALLS_TOTAL = "total handler calls per event type";
+    public static final String WALL_SECONDS_TOTAL = "total wall time spent in handlers per event type in seconds";
+    public static final String CPU_SECONDS = "thread CPU time spent in handlers per event type in seconds, estimated from sampled calls";
+    public static final String HOT_NODE_CPU_SECONDS = "thread CPU time spent in handlers by the top-k hottest nodes in seconds, estimated from sampled calls";
+    public static final String HOT_NODE_WALL_SECONDS = "wall time spent in handlers by the top-k nodes with the highest handler wall time in seconds";
+  }
+}
@@ -3,20 +3,40 @@ package network;
 import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import modules.jfr.EncoderEvent;
+import modules.jfr.NetworkReceiveEvent;
+import modules.jfr.NetworkSendEvent;
+import modules.jfr.NodeLifecycleEvent;
+import modules.jfr.UnderlaySendEvent;
 import modules.logger.Logger;
 import modules.logger.OperaLogger;
+import modules.tracing.Span;
+import modules.tracing.TraceContext;
+import modules.tracing.Tracer;
 import network.encoder.Encoder;
 import network.encoder.serializable.SerializableEncoder;
 import network.exception.OperaNetworkingException;
 import network.latency.LatencyGenerator;
 import network.model.Event;
+import network.model.EventType;
 import network.model.Message;
 import node.BaseNode;
 import node.Identifier;
+import node.NodeDirectory;
 import simulator.Orchestrator;
+import simulator.SimulationClock;
+import utils.timer.HashedTimerWheel;
 
 /**
  * Represents the high level networking layer of the individual nodes. Each instance of this class
@@ -24,16 +44,27 @@ import simulator.Orchestrator;
  * other nodes by interacting with the lower level underlay primitives, e.g., TCP, UDP, etc.
  */
 public class Network {
+  /**
+   * Number of tracked timers above which the fired ones are purged before tracking a new one.
+   */
+  private static final int TIMER_PURGE_THRESHOLD = 64;
+  /**
+   * Seed of the latencies of the networks created without a latency generator, so that they agree on every latency.
+   */
+  private static final long DEFAULT_LATENCY_SEED = 0;
   private final Logger logger;
 
   private final Encoder encoder;
 
   /**
-   * Hash table of the full addresses of all the nodes in the network.
-   * The key is the identifier of the node and the value is a pair of the IP address and the port.
-   * The IP address is a string and the port is an integer.
+   * Directory of all the nodes in the network, i.e., their identifiers and full addresses by index.
    */
-  private final HashMap<Identifier, InetSocketAddress> allFullAddresses;
+  private NodeDirectory directory;
+
+  /**
+   * Index of the node itself in the directory, or -1 if the directory is not set yet.
+   */
+  private int selfIndex = -1;
 
   /**
    * Identifier of the node itself.
@@ -66,30 +97,97 @@ public class Network {
    */
   private BaseNode node;
 
+  /**
+   * Random stream of the node, derived from the simulation seed by the orchestrator.
+   */
+  private Random random;
+
+  /**
+   * Timers of the node which may still fire, cancelled when the node stops.
+   */
+  private final Set<HashedTimerWheel.Timeout> timers = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Whether the node may schedule timers, i.e., it is not stopped.
+   */
+  private volatile boolean timersOpen = true;
+
+  /**
+   * Whether the underlay is terminated, i.e., unbound from its port, rather than at most suspended.
+   */
+  private final AtomicBoolean underlayTerminated = new AtomicBoolean();
+
+  /**
+   * Thread running the last onStop of the node, which a rejoin waits for, or null if the node was never stopped.
+   */
+  private volatile Thread stopThread;
+
+  /**
+   * Whether the node is quiesced for a checkpoint, i.e., its messages are held and its timers are deferred, see quiesce.
+   */
+  private volatile boolean quiesced;
+
+  /**
+   * Number of message handlers and timer tasks of the node which are running, which a quiesce waits for.
+   */
+  private final AtomicInteger active = new AtomicInteger();
+
+  /**
+   * Monitor signalled when the last running handler or timer task of a quiesced node returns, see awaitIdle.
+   */
+  private final Object idle = new Object();
+
+  /**
+   * Messages received while the node is quiesced, guarded by itself.
+   */
+  private final ArrayList<Message> held = new ArrayList<>();
 
   /**
-   * Creates a new network instance.
+   * Timer tasks which fired while the node is quiesced, scheduled again on resumeDelivery, guarded by held. A periodic
+   * task is deferred at most once, however many times it fires meanwhile.
+   */
+  private final LinkedHashSet<GatedTask> deferred = new LinkedHashSet<>();
+
+  /**
+   * Creates a new network instance, whose latencies are drawn from a fixed seed, hence the same on every run.
+   *
+   * @param nodeId       the unique identifier of the node.
+   * @param directory    the directory of all the nodes in the network, or null if it is set later through setDirectory.
+   * @param orchestrator the orchestrator.
+   * @throws IllegalStateException if the orchestrator is null.
+   */
+  public Network(final Identifier nodeId,
+                 final NodeDirectory directory,
+                 final Orchestrator orchestrator) throws IllegalStateException {
+    this(nodeId, directory, orchestrator, new LatencyGenerator(DEFAULT_LATENCY_SEED));
+  }
+
+  /**
+   * Creates a new network instance with the given latency generator, e.g., a seeded one for reproducible simulations.
    *
    * @param nodeId           the unique identifier of the node.
-   * @param allFullAddresses the full addresses of all the nodes in the network.
+   * @param directory        the directory of all the nodes in the network, or null if it is set later.
    * @param orchestrator     the orchestrator.
+   * @param latencyGenerator generator of the simulated latencies between this node and the others.
    * @throws IllegalStateException if the orchestrator is null.
    */
-  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "allFullAddresses is externally mutable")
   public Network(final Identifier nodeId,
-                 final HashMap<Identifier, InetSocketAddress> allFullAddresses,
-                 final Orchestrator orchestrator) throws IllegalStateException {
+                 final NodeDirectory directory,
+                 final Orchestrator orchestrator,
+                 final LatencyGenerator latencyGenerator) throws IllegalStateException {
     if (orchestrator == null) {
       throw new IllegalArgumentException("orchestrator cannot be null");
     }
 
     this.nodeId = nodeId;
     this.logger = OperaLogger.getLoggerForNodeComponent(Network.class.getCanonicalName(), nodeId, "network");
-    this.allFullAddresses = allFullAddresses;
+    this.directory = directory;
+    this.selfIndex = directory == null ? -1 : directory.indexOf(nodeId);
     this.orchestrator = orchestrator;
     this.metricsCollector = OperaMiddlewareCollector.getInstance();
-    this.latencyGenerator = new LatencyGenerator();
+    this.latencyGenerator = latencyGenerator;
     this.encoder = new SerializableEncoder();
+    this.random = new Random();
   }
 
   public Underlay getUnderlay() {
@@ -104,6 +202,20 @@ public class Network {
     return nodeId;
   }
 
+  public NodeDirectory getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Sets the directory of all the nodes in the network, e.g., once the addresses of all the underlays are known.
+   *
+   * @param directory the directory of all the nodes in the network.
+   */
+  public void setDirectory(NodeDirectory directory) {
+    this.directory = directory;
+    this.selfIndex = directory.indexOf(this.nodeId);
+  }
+
   public BaseNode getNode() {
     return node;
   }
@@ -112,6 +224,145 @@ public class Network {
     this.node = node;
   }
 
+  /**
+   * Returns the random stream of the node. Nodes should draw all of their random values from it, so that a simulation
+   * run with the same seed makes the same choices; it is an unseeded stream unless the orchestrator set one.
+   *
+   * @return random stream of the node, safe to share between the threads of the node.
+   */
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP", justification = "the stream is meant to be drawn from by the node")
+  public Random getRandom() {
+    return random;
+  }
+
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "the stream is owned by the node")
+  public void setRandom(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Returns the current time of the node, on the clock its messages are stamped with: the modelled clock of
+   * SimulationClock, or the simulated clock of a latency-aware underlay.
+   *
+   * @return the current time in milliseconds, only meaningful relative to another reading.
+   */
+  public double now() {
+    return underlay.nowNanos() / 1_000_000.0;
+  }
+
+  /**
+   * Sleeps the calling thread of the node for a modelled duration, i.e., durationMs divided by the time scale of the
+   * simulation in wall-clock time. Nodes should sleep through it rather than Thread.sleep so that their delays keep in
+   * proportion to the simulated latencies.
+   *
+   * @param durationMs modelled duration in milliseconds.
+   * @throws InterruptedException  if the calling thread is interrupted.
+   * @throws IllegalStateException if the underlay runs on a simulated clock, on which blocking the thread does not let
+   *                               the time pass.
+   */
+  public void sleep(long durationMs) throws InterruptedException, IllegalStateException {
+    if (underlay.isLatencyAware()) {
+      throw new IllegalStateException("cannot sleep on the simulated clock of " + underlay.getClass().getSimpleName());
+    }
+    SimulationClock.sleep(durationMs);
+  }
+
+  /**
+   * Schedules a task of the node to run once after a modelled delay, on the timer wheel shared by all the nodes rather
+   * than a thread of the node. The timer is cancelled when the node stops; a timer scheduled by a stopped node never
+   * fires.
+   *
+   * @param delayMs modelled delay in milliseconds.
+   * @param task    the task, which should not block for long since it holds a thread of the shared pool.
+   * @return the timer of the task, which cancels it.
+   * @throws IllegalStateException if the underlay runs on a simulated clock.
+   */
+  public HashedTimerWheel.Timeout schedule(long delayMs, Runnable task) throws IllegalStateException {
+    this.checkRealTime();
+    return this.track(HashedTimerWheel.getShared().schedule(SimulationClock.toWallNanos(delayMs), this.gated(task)));
+  }
+
+  /**
+   * Schedules a task of the node to run periodically on the shared timer wheel, with a fixed modelled delay between
+   * the end of a run and the start of the next one. The timer is cancelled when the node stops.
+   *
+   * @param initialDelayMs modelled delay of the first run in milliseconds.
+   * @param periodMs       modelled delay between two runs in milliseconds.
+   * @param task           the task, which should not block for long since it holds a thread of the shared pool.
+   * @return the timer of the task, which cancels all of its next runs.
+   * @throws IllegalArgumentException if the period is not positive.
+   * @throws IllegalStateException    if the underlay runs on a simulated clock.
+   */
+  public HashedTimerWheel.Timeout schedulePeriodically(long initialDelayMs, long periodMs, Runnable task) throws IllegalArgumentException, IllegalStateException {
+    this.checkRealTime();
+    if (periodMs <= 0) {
+      throw new IllegalArgumentException("period must be positive: " + periodMs);
+    }
+    return this.track(HashedTimerWheel.getShared().schedulePeriodically(SimulationClock.toWallNanos(initialDelayMs),
+                                                                        Math.max(1, SimulationClock.toWallNanos(periodMs)),
+                                                                        this.gated(task)));
+  }
+
+  private void checkRealTime() throws IllegalStateException {
+    if (underlay.isLatencyAware()) {
+      throw new IllegalStateException("cannot schedule timers on the simulated clock of " + underlay.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Wraps a timer task of the node so that it is deferred while the node is quiesced, and counts as running otherwise.
+   */
+  private Runnable gated(Runnable task) {
+    return new GatedTask(task);
+  }
+
+  /**
+   * Counts a handler or a timer task of the node as running, unless the node is quiesced.
+   *
+   * @return true if the caller may run, false if the node is quiesced.
+   */
+  private boolean enter() {
+    this.active.incrementAndGet();
+    // quiesce sets the flag before waiting for the count, so either it sees this caller, or this caller sees the flag.
+    if (!this.quiesced) {
+      return true;
+    }
+    this.exit();
+    return false;
+  }
+
+  /**
+   * Counts a handler or a timer task of the node as returned, and signals awaitIdle if it was the last one running.
+   */
+  private void exit() {
+    if (this.active.decrementAndGet() == 0 && this.quiesced) {
+      synchronized (this.idle) {
+        this.idle.notifyAll();
+      }
+    }
+  }
+
+  private HashedTimerWheel.Timeout track(HashedTimerWheel.Timeout timeout) {
+    if (this.timers.size() >= TIMER_PURGE_THRESHOLD) {
+      this.timers.removeIf(HashedTimerWheel.Timeout::isDone);
+    }
+    this.timers.add(timeout);
+    // a timer added while the node stops is cancelled either by stop or here.
+    if (!this.timersOpen) {
+      timeout.cancel();
+    }
+    return timeout;
+  }
+
+  private void cancelTimers() {
+    this.timersOpen = false;
+    // tasks blocked on the network are interrupted, as the replies they wait for are dropped from now on.
+    for (HashedTimerWheel.Timeout timeout : this.timers) {
+      timeout.cancel(true);
+    }
+    this.timers.clear();
+  }
+
   /**
    * Called by the overlay to send requests to the underlay.
    *
@@ -120,91 +371,346 @@ public class Network {
    * @return true if event was sent successfully. false, otherwise.
    */
   public boolean send(Identifier destinationId, Event event) {
-    InetSocketAddress targetAddress = allFullAddresses.get(destinationId);
-
     // encode the event into bytes
     byte[] encodedEvent = null;
     try {
-      encodedEvent = this.encoder.encode(event);
+      encodedEvent = this.encode(event);
     } catch (UncheckedIOException ex) {
       this.logger.error("failed to encode event", ex);
       return false;
     }
-    Message msg = new Message(encodedEvent, this.nodeId, destinationId);
 
-    // sleep for the simulated duration
-    double sleepTime = this.latencyGenerator.getSimulatedLatency(nodeId, destinationId, true);
+    return this.sendEncoded(destinationId, encodedEvent, EventType.of(event));
+  }
+
+  /**
+   * Called by the overlay to send requests to the underlay, addressing the destination by its index in the directory.
+   *
+   * @param destinationIndex index of the destination node in the directory.
+   * @param event            the event.
+   * @return true if event was sent successfully. false, otherwise.
+   */
+  public boolean send(int destinationIndex, Event event) {
+    byte[] encodedEvent;
     try {
-      // TODO: fix this, we don't need to sleep!
-      Thread.sleep((int) sleepTime);
-    } catch (InterruptedException ex) {
-      this.logger.fatal("failed to sleep thread for the simulated delay, sleep time {}", sleepTime, ex);
+      encodedEvent = this.encode(event);
+    } catch (UncheckedIOException ex) {
+      this.logger.error("failed to encode event", ex);
+      return false;
+    }
+
+    return this.sendEncoded(destinationIndex, encodedEvent, EventType.of(event));
+  }
+
+  /**
+   * Encodes the event using the encoder of this network. The encoded event can be sent (possibly many times, and to
+   * different destinations) through sendEncoded, which spares re-encoding identical responses.
+   *
+   * @param event the event.
+   * @return the encoded event.
+   * @throws UncheckedIOException if the event could not be encoded.
+   */
+  public byte[] encode(Event event) throws UncheckedIOException {
+    EncoderEvent jfrEvent = new EncoderEvent();
+    jfrEvent.begin();
+    long encodeStart = System.nanoTime();
+    byte[] encodedEvent = this.encoder.encode(event);
+    this.metricsCollector.onEventEncoded(EventType.of(event), System.nanoTime() - encodeStart);
+    if (jfrEvent.shouldCommit()) {
+      jfrEvent.nodeId = this.nodeId.toString();
+      jfrEvent.operation = EncoderEvent.ENCODE;
+      jfrEvent.eventType = EventType.of(event).getLabel();
+      jfrEvent.size = encodedEvent.length;
+      jfrEvent.commit();
+    }
+    return encodedEvent;
+  }
+
+  /**
+   * Called by the overlay to send an already encoded event to the underlay.
+   *
+   * @param destinationId destination node unique identifier.
+   * @param encodedEvent  the event encoded by encode.
+   * @param eventType     type of the encoded event, e.g., EventType.of(event).
+   * @return true if event was sent successfully. false, otherwise.
+   */
+  public boolean sendEncoded(Identifier destinationId, byte[] encodedEvent, EventType eventType) {
+    int destinationIndex = this.directory.indexOf(destinationId);
+    if (destinationIndex < 0) {
+      this.logger.error("failed to send event to {}, node is not in the directory", destinationId);
+      return false;
+    }
+    return this.sendEncoded(destinationIndex, encodedEvent, eventType);
+  }
+
+  /**
+   * Called by the overlay to send an already encoded event to the underlay, addressing the destination by its index in
+   * the directory, which spares resolving its identifier on each message.
+   *
+   * @param destinationIndex index of the destination node in the directory.
+   * @param encodedEvent     the event encoded by encode.
+   * @param eventType        type of the encoded event, e.g., EventType.of(event).
+   * @return true if event was sent successfully. false, otherwise.
+   */
+  public boolean sendEncoded(int destinationIndex, byte[] encodedEvent, EventType eventType) {
+    NetworkSendEvent jfrEvent = new NetworkSendEvent();
+    jfrEvent.begin();
+    Identifier destinationId = this.directory.getIdentifier(destinationIndex);
+    boolean success = this.sendEncodedTimed(destinationIndex, destinationId, this.directory.getAddress(destinationIndex), encodedEvent, eventType);
+    if (jfrEvent.shouldCommit()) {
+      jfrEvent.nodeId = this.nodeId.toString();
+      jfrEvent.targetId = destinationId.toString();
+      jfrEvent.eventType = eventType.getLabel();
+      jfrEvent.size = encodedEvent.length;
+      jfrEvent.success = success;
+      jfrEvent.commit();
+    }
+    return success;
+  }
+
+  private boolean sendEncodedTimed(int destinationIndex, Identifier destinationId, InetSocketAddress targetAddress, byte[] encodedEvent, EventType eventType) {
+    if (underlay.isSuspended()) {
+      this.logger.debug("dropped event to {}, node is offline", destinationId);
+      return false;
+    }
+    Message msg = new Message(encodedEvent, this.nodeId, destinationId, underlay.nowNanos(), Tracer.contextForSend());
+
+    // latencies are cached by the indices of the nodes, unless this node is not in the directory.
+    double latency = this.selfIndex < 0
+        ? this.latencyGenerator.getSimulatedLatency(nodeId, destinationId, true)
+        : this.latencyGenerator.getSimulatedLatency(this.selfIndex, nodeId, destinationIndex, destinationId, true);
+    boolean latencyAware = underlay.isLatencyAware();
+    if (!latencyAware) {
+      // sleep for the simulated duration
+      try {
+        // TODO: fix this, we don't need to sleep!
+        SimulationClock.sleep(latency);
+      } catch (InterruptedException ex) {
+        // e.g., a timer task of the node interrupted as the node stops.
+        Thread.currentThread().interrupt();
+        this.logger.debug("interrupted while sending event to {}, event dropped", destinationId);
+        return false;
+      }
     }
 
     // TODO: Bounce the request up.
+    UnderlaySendEvent jfrEvent = new UnderlaySendEvent();
+    jfrEvent.begin();
+    boolean sent = false;
     try {
-      underlay.send(targetAddress, msg);
+      if (latencyAware) {
+        // the underlay delays the message on its own clock.
+        underlay.send(targetAddress, msg, latency);
+      } else {
+        underlay.send(targetAddress, msg);
+      }
+      sent = true;
     } catch (OperaNetworkingException ex) {
       this.logger.error("failed to send event to {}", destinationId, ex);
       return false;
+    } finally {
+      // failed sends are recorded as well, e.g., to tell a slow underlay from a failing one.
+      if (jfrEvent.shouldCommit()) {
+        jfrEvent.nodeId = this.nodeId.toString();
+        jfrEvent.targetAddress = String.valueOf(targetAddress);
+        jfrEvent.underlay = underlay.getClass().getSimpleName();
+        jfrEvent.eventType = eventType.getLabel();
+        jfrEvent.size = encodedEvent.length;
+        jfrEvent.success = sent;
+        jfrEvent.commit();
+      }
     }
 
-    this.metricsCollector.onMessageSent(nodeId, encodedEvent.length);
-    this.logger.trace("sent event to {}, event size {}", destinationId, encodedEvent.length);
+    this.metricsCollector.onMessageSent(nodeId, eventType, encodedEvent.length);
+    if (this.logger.isTraceEnabled()) {
+      this.logger.trace("sent event to {}, event size {}", destinationId, encodedEvent.length);
+    }
     return true;
   }
 
   /**
-   * Called by the underlay to collect the response from the overlay.
+   * Called by the underlay to collect the response from the overlay. While the node is quiesced, the message is held
+   * until resumeDelivery instead.
    */
   public void receive(final Message msg) {
-    this.metricsCollector.onMessageReceived(nodeId, msg.getEncodedEvent().length, msg.getSentTimeStamp());
-    this.logger.trace("received event from {}, event size {}, event timestamp",
-                      msg.getOriginId(),
-                      msg.getEncodedEvent().length,
-                      msg.getSentTimeStamp());
+    while (!this.enter()) {
+      synchronized (this.held) {
+        if (this.quiesced) {
+          this.held.add(msg);
+          return;
+        }
+      }
+    }
+    try {
+      this.handle(msg);
+    } finally {
+      this.exit();
+    }
+  }
+
+  private void handle(final Message msg) {
+    NetworkReceiveEvent jfrEvent = new NetworkReceiveEvent();
+    jfrEvent.begin();
+    long receivedAt = System.nanoTime();
+    // the propagation delay is measured on the clock of the underlay, which stamped the message.
+    long propagationDelay = underlay.nowNanos() - msg.getSentTimeNanos();
+    byte[] encodedEvent = msg.getEncodedEvent();
+    if (this.logger.isTraceEnabled()) {
+      this.logger.trace("received event from {}, event size {}, event sent time {} ns",
+                        msg.getOriginId(),
+                        encodedEvent.length,
+                        msg.getSentTimeNanos());
+    }
 
+    EncoderEvent decodeJfrEvent = new EncoderEvent();
+    decodeJfrEvent.begin();
     Event event;
     try {
-      event = this.encoder.decode(msg.getEncodedEvent());
-      node.onNewMessage(msg.getOriginId(), event);
+      event = this.encoder.decode(encodedEvent);
     } catch (IllegalStateException | UncheckedIOException e) {
+      this.metricsCollector.onMessageReceived(nodeId,
+                                              EventType.UNKNOWN,
+                                              encodedEvent.length,
+                                              propagationDelay,
+                                              System.nanoTime() - receivedAt);
       this.logger.error("failed to decode the event from {}", msg.getOriginId(), e);
+      this.commitReceived(jfrEvent, msg, EventType.UNKNOWN, encodedEvent.length, propagationDelay);
       return;
     }
+    EventType eventType = EventType.of(event);
+    this.metricsCollector.onMessageReceived(nodeId,
+                                            eventType,
+                                            encodedEvent.length,
+                                            propagationDelay,
+                                            System.nanoTime() - receivedAt);
+    if (decodeJfrEvent.shouldCommit()) {
+      decodeJfrEvent.nodeId = this.nodeId.toString();
+      decodeJfrEvent.operation = EncoderEvent.DECODE;
+      decodeJfrEvent.eventType = eventType.getLabel();
+      decodeJfrEvent.size = encodedEvent.length;
+      decodeJfrEvent.commit();
+    }
 
-    this.logger.debug("event received from {} event type {}", msg.getOriginId(), event.getClass().getName());
+    // messages sent by the handler are child hops of this one.
+    TraceContext traceContext = msg.getTraceContext();
+    TraceContext previousContext = Tracer.enter(traceContext);
+    try {
+      long handlerToken = this.metricsCollector.onHandlerStarted();
+      long handlerStart = System.nanoTime();
+      node.onNewMessage(msg.getOriginId(), event);
+      this.metricsCollector.onMessageHandled(nodeId, eventType, System.nanoTime() - handlerStart, handlerToken);
+    } catch (IllegalStateException | UncheckedIOException e) {
+      this.logger.error("failed to handle the event from {}", msg.getOriginId(), e);
+      this.commitReceived(jfrEvent, msg, eventType, encodedEvent.length, propagationDelay);
+      return;
+    } finally {
+      Tracer.restore(previousContext);
+      if (traceContext != null) {
+        // the whole span is laid on the clock of the underlay, so that the handling time is scaled like the latencies.
+        long spanReceived = msg.getSentTimeNanos() + propagationDelay;
+        Tracer.record(new Span(traceContext,
+                               eventType.getLabel(),
+                               msg.getOriginId().toString(),
+                               nodeId.toString(),
+                               msg.getSentTimeNanos(),
+                               spanReceived,
+                               Math.max(spanReceived, underlay.nowNanos())));
+      }
+    }
+
+    this.commitReceived(jfrEvent, msg, eventType, encodedEvent.length, propagationDelay);
+    this.logger.debug("event received from {} event type {}", msg.getOriginId(), eventType);
   }
 
+  private void commitReceived(NetworkReceiveEvent jfrEvent, Message msg, EventType eventType, int size, long propagationDelay) {
+    if (jfrEvent.shouldCommit()) {
+      jfrEvent.nodeId = this.nodeId.toString();
+      jfrEvent.originId = msg.getOriginId().toString();
+      jfrEvent.eventType = eventType.getLabel();
+      jfrEvent.size = size;
+      jfrEvent.propagationDelay = propagationDelay;
+      jfrEvent.commit();
+    }
+  }
 
   /**
    * start the node in a new thread.
    * This method will be called once the simulator send a start event to the node
    */
   public void start() {
-    this.logger.info("starting node on address {}", this.allFullAddresses.get(nodeId).toString());
-    new Thread(() -> node.onStart()).start();
+    this.logger.info("starting node on address {}", this.directory.getAddress(nodeId).toString());
+    this.timersOpen = true;
+    new Thread(() -> this.onLifecycle(NodeLifecycleEvent.START, node::onStart)).start();
   }
 
   /**
-   * Terminates the node in a new thread.
+   * Stops the node, e.g., on a churn departure. The underlay is suspended right away, rather than terminated, so that
+   * the node may rejoin through initUnderLay without binding its port again; onStop then runs in a new thread, which a
+   * rejoin waits for.
    */
   public void stop() {
-    new Thread(() -> {
-      node.onStop();
-      try {
-        underlay.terminate();
-      } catch (IllegalStateException e) {
-        logger.fatal("failed to terminate the underlay", e);
-      }
-    }).start();
+    this.cancelTimers();
+    underlay.suspend();
+    this.startStopThread(() -> this.onLifecycle(NodeLifecycleEvent.STOP, node::onStop));
+  }
+
+  /**
+   * Stops the node and terminates its underlay in a new thread, once the simulation ends.
+   */
+  public void terminate() {
+    this.cancelTimers();
+    underlay.suspend();
+    this.startStopThread(() -> {
+      this.onLifecycle(NodeLifecycleEvent.STOP, node::onStop);
+      this.terminateUnderlay();
+    });
+  }
+
+  private synchronized void startStopThread(Runnable stop) {
+    Thread thread = new Thread(stop);
+    this.stopThread = thread;
+    thread.start();
+  }
+
+  /**
+   * Waits for the last onStop of the node to return, so that a rejoining node is never stopped by its previous session.
+   *
+   * @throws IllegalStateException if the calling thread is interrupted while waiting.
+   */
+  private void awaitStopped() throws IllegalStateException {
+    Thread thread = this.stopThread;
+    if (thread == null || thread == Thread.currentThread()) {
+      return;
+    }
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for node " + nodeId + " to stop", e);
+    }
+  }
+
+  /**
+   * Terminates the underlay, unless it is already terminated, e.g., once the simulation ends for a node which is offline
+   * and hence already stopped.
+   */
+  public void terminateUnderlay() {
+    underlay.suspend();
+    if (!this.underlayTerminated.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      underlay.terminate();
+    } catch (IllegalStateException e) {
+      logger.fatal("failed to terminate the underlay", e);
+    }
   }
 
   /**
    * declare the node as ready (called by the overlay).
    */
   public void ready() {
-    this.logger.info("node is ready and has started on {}", this.allFullAddresses.get(nodeId).toString());
+    this.logger.info("node is ready and has started on {}", this.directory.getAddress(nodeId).toString());
     this.orchestrator.ready(this.nodeId);
   }
 
@@ -218,13 +724,111 @@ public class Network {
   }
 
   /**
-   * Underlay initializer.
+   * Quiesces the node for a checkpoint: the messages it receives from now on are held rather than handled, and its
+   * timers which fire are deferred rather than run, until resumeDelivery. Handlers and timer tasks which are already
+   * running go on, see awaitIdle.
+   */
+  public void quiesce() {
+    this.quiesced = true;
+  }
+
+  /**
+   * Waits for the handlers and timer tasks of a quiesced node which were already running to return.
+   *
+   * @param deadlineNanos wall-clock deadline of the wait, on the clock of System.nanoTime.
+   * @return true if the node is idle, false if the deadline passed first, e.g., a task waits for a held reply.
+   * @throws InterruptedException if the calling thread is interrupted.
+   */
+  public boolean awaitIdle(long deadlineNanos) throws InterruptedException {
+    synchronized (this.idle) {
+      while (this.active.get() > 0) {
+        long left = deadlineNanos - System.nanoTime();
+        if (left <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this.idle, left);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the messages the node received since it was quiesced, i.e., the messages in flight to the node.
+   *
+   * @return the held messages, in the order of their arrival.
+   */
+  public ArrayList<Message> getHeldMessages() {
+    synchronized (this.held) {
+      return new ArrayList<>(this.held);
+    }
+  }
+
+  /**
+   * Ends a quiesce: the timer tasks deferred meanwhile are scheduled again to run right away, and the held messages are
+   * handled in a new thread.
+   */
+  public void resumeDelivery() {
+    ArrayList<Message> messages;
+    ArrayList<GatedTask> tasks;
+    synchronized (this.held) {
+      this.quiesced = false;
+      messages = new ArrayList<>(this.held);
+      this.held.clear();
+      tasks = new ArrayList<>(this.deferred);
+      this.deferred.clear();
+    }
+    for (GatedTask task : tasks) {
+      this.track(HashedTimerWheel.getShared().schedule(0, task));
+    }
+    this.deliverAll(messages);
+  }
+
+  /**
+   * Delivers the messages which were in flight to the node when a checkpoint was taken, as if they were sent now.
+   *
+   * @param messages the messages, in the order of their arrival.
    */
-  public void initUnderLay() {
-    logger.info("initializing middlelayer for node {} on address {}", nodeId, this.allFullAddresses.get(nodeId).toString());
+  public void replay(List<Message> messages) {
+    ArrayList<Message> restamped = new ArrayList<>(messages.size());
+    for (Message msg : messages) {
+      restamped.add(new Message(msg.getEncodedEvent(), msg.getOriginId(), msg.getTargetId(), underlay.nowNanos(), msg.getTraceContext()));
+    }
+    this.deliverAll(restamped);
+  }
+
+  private void deliverAll(List<Message> messages) {
+    if (messages.isEmpty()) {
+      return;
+    }
+    new Thread(() -> {
+      for (Message msg : messages) {
+        if (underlay.isSuspended()) {
+          // the node left meanwhile, like the messages it would have received offline.
+          return;
+        }
+        this.receive(msg);
+      }
+    }).start();
+  }
 
-    int port = this.allFullAddresses.get(this.nodeId).getPort();
-    this.underlay.initUnderlay(port);
+  /**
+   * Brings the underlay of a node back online, e.g., on a churn arrival. A suspended underlay is resumed in O(1), as it
+   * is still bound to its port; a terminated one is initialized again on its port.
+   *
+   * @throws IllegalStateException if the underlay could not be bound to its port again.
+   */
+  public void initUnderLay() throws IllegalStateException {
+    logger.info("initializing middlelayer for node {} on address {}", nodeId, this.directory.getAddress(nodeId).toString());
+    this.awaitStopped();
+
+    if (this.underlayTerminated.compareAndSet(true, false)) {
+      int port = this.directory.getAddress(this.nodeId).getPort();
+      if (!this.underlay.initUnderlay(port)) {
+        this.underlayTerminated.set(true);
+        throw new IllegalStateException("could not bind the underlay of node " + nodeId + " to port " + port);
+      }
+    }
+    this.underlay.resume();
   }
 
   /**
@@ -233,7 +837,69 @@ public class Network {
    * @param allId List of IDs of all nodes.
    */
   public void create(ArrayList<Identifier> allId) {
-    logger.info("creating node {} on address {}", nodeId, this.allFullAddresses.get(nodeId).toString());
-    new Thread(() -> node.onCreate(allId)).start();
+    this.create(allId, r -> new Thread(r).start());
+  }
+
+  /**
+   * Call the node onCreate on the given executor, e.g., a bounded pool bootstrapping many nodes.
+   *
+   * @param allId    List of IDs of all nodes.
+   * @param executor executor running the onCreate of the node.
+   * @throws IllegalStateException if the calling thread is interrupted while waiting for the node to stop.
+   */
+  public void create(ArrayList<Identifier> allId, Executor executor) throws IllegalStateException {
+    this.awaitStopped();
+    this.timersOpen = true;
+    logger.info("creating node {} on address {}", nodeId, this.directory.getAddress(nodeId).toString());
+    executor.execute(() -> this.onLifecycle(NodeLifecycleEvent.CREATE, () -> node.onCreate(allId)));
+  }
+
+  /**
+   * Runs a lifecycle callback of the node, recording it as a flight recorder event.
+   *
+   * @param phase    the lifecycle phase, e.g., NodeLifecycleEvent.START.
+   * @param callback the lifecycle callback of the node.
+   */
+  private void onLifecycle(String phase, Runnable callback) {
+    NodeLifecycleEvent jfrEvent = new NodeLifecycleEvent();
+    jfrEvent.begin();
+    try {
+      callback.run();
+    } finally {
+      if (jfrEvent.shouldCommit()) {
+        jfrEvent.nodeId = this.nodeId.toString();
+        jfrEvent.phase = phase;
+        jfrEvent.commit();
+      }
+    }
+  }
+
+  /**
+   * Timer task of the node, which is deferred rather than run while the node is quiesced, so that it never blocks a
+   * thread of the shared timer pool.
+   */
+  private final class GatedTask implements Runnable {
+    private final Runnable task;
+
+    private GatedTask(Runnable task) {
+      this.task = task;
+    }
+
+    @Override
+    public void run() {
+      while (!Network.this.enter()) {
+        synchronized (Network.this.held) {
+          if (Network.this.quiesced) {
+            Network.this.deferred.add(this);
+            return;
+          }
+        }
+      }
+      try {
+        this.task.run();
+      } finally {
+        Network.this.exit();
+      }
+    }
   }
 }
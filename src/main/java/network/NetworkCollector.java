@@ -1,16 +1,16 @@
 package network;
 
-import java.sql.Timestamp;
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import metrics.Constants;
 import metrics.Counter;
 import metrics.Histogram;
-import metrics.opera.OperaCounter;
 import metrics.opera.OperaHistogram;
+import metrics.opera.OperaPercentileHistogram;
+import metrics.opera.OperaStripedCounter;
+import network.model.EventType;
 import node.Identifier;
-import org.jetbrains.annotations.NotNull;
 
 /**
  * A singleton class which collects metrics for the network layer.
@@ -18,22 +18,45 @@ import org.jetbrains.annotations.NotNull;
  */
 public class NetworkCollector {
   public static final String SUBSYSTEM_NETWORK = "network";
-  private final Histogram propagationDelay;
+  /**
+   * Highest propagation delay tracked with bounded error, i.e., one hour in microseconds.
+   */
+  private static final long MAX_PROPAGATION_DELAY_US = 3_600_000_000L;
+  /**
+   * Highest message size tracked with bounded error, i.e., 100 MB.
+   */
+  private static final long MAX_MESSAGE_SIZE_BYTES = 100_000_000L;
+  /**
+   * Highest handler time tracked with bounded error, i.e., one hour in microseconds.
+   */
+  private static final long MAX_HANDLER_TIME_US = 3_600_000_000L;
+  private final OperaPercentileHistogram propagationDelay;
+  private final OperaPercentileHistogram messageSize;
+  private final OperaPercentileHistogram handlerTime;
   private final Histogram receivedMessageSize;
   private final Histogram sentMessageSize;
   private final Counter messageReceivedTotal;
   private final Counter messageSentTotal;
+  private final EventTypeCollector eventTypeCollector;
+  private final HandlerCpuCollector handlerCpuCollector;
 
 
   /**
    * Atomically initiates metric collector for networking layer exactly once.
    */
   public NetworkCollector() {
-    this.propagationDelay = new OperaHistogram(Name.PROPAGATION_DELAY,
-                                               Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
-                                               HelpMsg.PROPAGATION_DELAY,
-                                               Constants.Histogram.getDefaultHistogram(),
-                                               Constants.IDENTIFIER);
+    this.propagationDelay = new OperaPercentileHistogram(Name.PROPAGATION_DELAY,
+                                                         Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
+                                                         HelpMsg.PROPAGATION_DELAY,
+                                                         MAX_PROPAGATION_DELAY_US);
+    this.messageSize = new OperaPercentileHistogram(Name.MESSAGE_SIZE,
+                                                    Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
+                                                    HelpMsg.MESSAGE_SIZE,
+                                                    MAX_MESSAGE_SIZE_BYTES);
+    this.handlerTime = new OperaPercentileHistogram(Name.HANDLER_TIME,
+                                                    Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
+                                                    HelpMsg.HANDLER_TIME,
+                                                    MAX_HANDLER_TIME_US);
     this.receivedMessageSize = new OperaHistogram(Name.RECEIVED_MESSAGE_SIZE,
                                                   Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
                                                   HelpMsg.RECEIVED_MESSAGE_SIZE,
@@ -44,58 +67,114 @@ public class NetworkCollector {
                                               HelpMsg.SENT_MESSAGE_SIZE,
                                               Constants.Histogram.getMessageSizeHistogram(),
                                               Constants.IDENTIFIER);
-    this.messageReceivedTotal = new OperaCounter(Name.MESSAGE_RECEIVED_TOTAL,
-                                                 Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
-                                                 HelpMsg.MESSAGE_RECEIVED_TOTAL,
-                                                 Constants.IDENTIFIER);
-    this.messageSentTotal = new OperaCounter(Name.MESSAGE_SENT_TOTAL,
-                                             Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
-                                             HelpMsg.MESSAGE_SENT_TOTAL,
-                                             Constants.IDENTIFIER);
+    this.eventTypeCollector = new EventTypeCollector();
+    this.handlerCpuCollector = new HandlerCpuCollector();
+    // message totals are incremented on every message, hence they are striped and only folded on scrape.
+    this.messageReceivedTotal = new OperaStripedCounter(Name.MESSAGE_RECEIVED_TOTAL,
+                                                        Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
+                                                        HelpMsg.MESSAGE_RECEIVED_TOTAL);
+    this.messageSentTotal = new OperaStripedCounter(Name.MESSAGE_SENT_TOTAL,
+                                                    Constants.Namespace.NETWORK, SUBSYSTEM_NETWORK,
+                                                    HelpMsg.MESSAGE_SENT_TOTAL);
   }
 
   /**
    * onMessageReceived is called whenever a new message received by a node.
    * It increments number of messages received by this node, as well as stops the timer for propagation delay.
-   * It also records size of the message in bytes.
+   * It also records size of the message in bytes, and breaks the message down by its event type.
    *
-   * @param receiverId identifier of receiver.
-   * @param size       size of message in bytes.
+   * @param receiverId            identifier of receiver.
+   * @param type                  type of the event carried by the message.
+   * @param size                  size of message in bytes.
+   * @param propagationDelayNanos propagation delay of the message in nanoseconds, i.e., the time between the message
+   *                              is sent and received on the clock of the underlay, i.e., in modelled time.
+   * @param decodeNanos           time spent in decoding the event of the message in nanoseconds.
    */
-  public void onMessageReceived(Identifier receiverId, int size, @NotNull Timestamp sentTimeStamp) {
+  public void onMessageReceived(Identifier receiverId, EventType type, int size, long propagationDelayNanos, long decodeNanos) {
     messageReceivedTotal.increment(receiverId);
     receivedMessageSize.observe(receiverId, size);
-    propagationDelay.observe(receiverId, Duration.between(sentTimeStamp.toLocalDateTime(), LocalDateTime.now()).toMillis());
+    messageSize.observe(size);
+    propagationDelay.observe(TimeUnit.NANOSECONDS.toMicros(propagationDelayNanos));
+    eventTypeCollector.onMessageReceived(type, size, propagationDelayNanos, decodeNanos);
+  }
+
+  /**
+   * onEventEncoded is called whenever a node encodes an event to be sent.
+   *
+   * @param type        type of the event.
+   * @param encodeNanos time spent in encoding the event in nanoseconds.
+   */
+  public void onEventEncoded(EventType type, long encodeNanos) {
+    eventTypeCollector.onEventEncoded(type, encodeNanos);
+  }
+
+  /**
+   * onHandlerStarted is called right before a node handles a received message, on the thread that handles it.
+   *
+   * @return a token to be passed to onMessageHandled, i.e., the CPU time of the thread if the call is sampled.
+   */
+  public long onHandlerStarted() {
+    return this.handlerCpuCollector.startCpuSample();
+  }
+
+  /**
+   * onMessageHandled is called whenever a node is done handling a received message, on the thread that handled it.
+   * It records the wall time the node spent in handling the message, and its thread CPU time if the call is sampled.
+   *
+   * @param receiverId       identifier of receiver.
+   * @param type             type of the handled event.
+   * @param handlerTimeNanos wall time spent by the node in handling the message in nanoseconds.
+   * @param handlerToken     value returned by onHandlerStarted before handling the message.
+   */
+  public void onMessageHandled(Identifier receiverId, EventType type, long handlerTimeNanos, long handlerToken) {
+    handlerTime.observe(TimeUnit.NANOSECONDS.toMicros(handlerTimeNanos));
+    handlerCpuCollector.onHandled(receiverId, type, handlerTimeNanos, handlerToken);
+  }
+
+  /**
+   * Returns a human-readable report of the nodes and event types spending the most CPU time in handlers.
+   *
+   * @param limit maximum number of nodes and of event types reported.
+   * @return one line per node and per event type, from the hottest.
+   */
+  public List<String> handlerReport(int limit) {
+    return this.handlerCpuCollector.report(limit);
   }
 
   /**
    * onMessageSent is called whenever a new message is sent by a node.
    * It increments the number of messages sent.
-   * It also records size of the message in bytes.
+   * It also records size of the message in bytes, and breaks the message down by its event type.
    *
    * @param senderId identifier of sender.
+   * @param type     type of the event carried by the message.
    * @param size     size of message in bytes.
    */
-  public void onMessageSent(Identifier senderId, int size) {
+  public void onMessageSent(Identifier senderId, EventType type, int size) {
     this.messageSentTotal.increment(senderId);
     this.sentMessageSize.observe(senderId, size);
+    this.eventTypeCollector.onMessageSent(type, size);
   }
 
   private static class Name {
-    public static final String PROPAGATION_DELAY = "propagation_delay";
+    public static final String PROPAGATION_DELAY = "propagation_delay_us";
     public static final String MESSAGE_SENT_TOTAL = "message_sent_total";
     public static final String MESSAGE_RECEIVED_TOTAL = "message_received_total";
     public static final String RECEIVED_MESSAGE_SIZE = "received_message_size";
     public static final String SENT_MESSAGE_SIZE = "sent_message_size";
+    public static final String MESSAGE_SIZE = "message_size_bytes";
+    public static final String HANDLER_TIME = "handler_time_us";
   }
 
   private static class HelpMsg {
-    public static final String PROPAGATION_DELAY = "inter-node network.latency";
+    public static final String PROPAGATION_DELAY = "inter-node network latency in microseconds";
     public static final String MESSAGE_SENT_TOTAL = "total messages sent by a node";
     public static final String MESSAGE_RECEIVED_TOTAL = "total messages received by a node";
     public static final String RECEIVED_MESSAGE_SIZE = "size of received message by a node";
 
     public static final String SENT_MESSAGE_SIZE = "size of sent message by a node";
+    public static final String MESSAGE_SIZE = "size of messages received by all nodes in bytes";
+    public static final String HANDLER_TIME = "time spent by nodes in handling a received message in microseconds";
   }
 
 }
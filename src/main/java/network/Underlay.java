@@ -6,6 +6,7 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import network.exception.OperaNetworkingException;
 import network.model.Message;
 import node.Identifier;
+import simulator.SimulationClock;
 
 /**
  * Represents the underlay layer of the simulator.
@@ -13,6 +14,10 @@ import node.Identifier;
 
 public abstract class Underlay {
   protected Network network; // TODO: make this final.
+  /**
+   * Whether the node of the underlay is offline, in which case the underlay stays bound but delivers no message.
+   */
+  private volatile boolean suspended;
 
   /**
    * Sends a message to a remote node.
@@ -23,6 +28,39 @@ public abstract class Underlay {
    */
   public abstract void send(InetSocketAddress targetAddress, Message message) throws OperaNetworkingException;
 
+  /**
+   * Sends a message to a remote node, which should receive it after the given simulated latency. It is only called on
+   * latency-aware underlays, i.e., underlays which delay messages on their own, e.g., on a simulated clock, rather than
+   * the network layer sleeping for the latency before sending.
+   *
+   * @param targetAddress address of the remote node who should receive the message.
+   * @param message       the message to be sent.
+   * @param latencyMs     simulated latency of the message in milliseconds.
+   * @throws OperaNetworkingException if it could not send the message.
+   */
+  public void send(InetSocketAddress targetAddress, Message message, double latencyMs) throws OperaNetworkingException {
+    send(targetAddress, message);
+  }
+
+  /**
+   * Returns true if this underlay delays messages by their simulated latency on its own, see send with latency.
+   *
+   * @return true if this underlay is latency aware, false otherwise.
+   */
+  public boolean isLatencyAware() {
+    return false;
+  }
+
+  /**
+   * Returns the current time of the clock messages are stamped with, i.e., the modelled clock of SimulationClock unless
+   * the underlay runs on a simulated clock.
+   *
+   * @return the current time in nanoseconds.
+   */
+  public long nowNanos() {
+    return SimulationClock.nanoTime();
+  }
+
   public abstract int getPort();
 
   public abstract String getAddress();
@@ -32,12 +70,36 @@ public abstract class Underlay {
   }
 
   /**
-   * Dispatches a request to the middle layer.
+   * Dispatches a request to the middle layer, or drops it if the underlay is suspended, i.e., the request reached the
+   * node while it was offline.
    */
   public void dispatchRequest(Message request) {
+    if (this.suspended) {
+      return;
+    }
     network.receive(request);
   }
 
+  /**
+   * Suspends the underlay while its node is offline, e.g., on a churn departure. Unlike terminate, the underlay stays
+   * bound to its port and keeps its connections, but the messages it receives are dropped, and its node does not send
+   * any; hence the node rejoins by resume without binding the port again.
+   */
+  public void suspend() {
+    this.suspended = true;
+  }
+
+  /**
+   * Resumes a suspended underlay, delivering the messages it receives from now on.
+   */
+  public void resume() {
+    this.suspended = false;
+  }
+
+  public boolean isSuspended() {
+    return suspended;
+  }
+
   /**
    * Initializes the underlay.
    *
@@ -60,7 +122,8 @@ public abstract class Underlay {
   protected abstract boolean initUnderlay(int port);
 
   /**
-   * Terminates the node.
+   * Terminates the node, unbinding the underlay from its port. It is called once, when the simulation ends; nodes going
+   * offline in between suspend their underlay instead.
    *
    * @throws IllegalStateException if it could not terminate the node.
    */
@@ -1,6 +1,7 @@
 package network.latency;
 
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import node.Identifier;
 import utils.churn.GaussianGenerator;
@@ -11,10 +12,81 @@ import utils.churn.GaussianGenerator;
 public class LatencyGenerator {
   public static final int MeanLatency = 159;
   public static final int StdLatency = 96;
+  /**
+   * System property of the mean simulated latency in milliseconds, MeanLatency if unset.
+   */
+  public static final String MEAN_PROPERTY = "opera.latency.mean.ms";
+  /**
+   * System property of the standard deviation of the simulated latency in milliseconds, StdLatency if unset.
+   */
+  public static final String STD_PROPERTY = "opera.latency.std.ms";
+  /**
+   * Lowest simulated latency in milliseconds, it bounds the lookahead of conservative parallel simulations.
+   */
+  public static final int MinLatency = 1;
   private final HashMap<String, Double> nodesSimulatedLatency;
+  /**
+   * Latencies between the nodes of a directory, keyed by the indices of the nodes, see indexKey. Only the latencies of
+   * an unseeded generator are cached, those of a seeded one are computed on each call.
+   */
+  private final ConcurrentHashMap<Long, Double> indexedLatency = new ConcurrentHashMap<>();
+  /**
+   * Seed of the latencies, or null if latencies are drawn at random on first use.
+   */
+  private final Long seed;
+  private final double mean;
+  private final double std;
 
   public LatencyGenerator() {
     this.nodesSimulatedLatency = new HashMap<>();
+    this.seed = null;
+    this.mean = latencyProperty(MEAN_PROPERTY, MeanLatency);
+    this.std = latencyProperty(STD_PROPERTY, StdLatency);
+  }
+
+  /**
+   * Creates a latency generator whose latency between two nodes only depends on the seed and the two nodes, i.e., not on
+   * the order in which latencies are asked, so that all generators with the same seed agree on every latency. Latencies
+   * are a pure function of the seed and the two nodes, hence they are computed on each call rather than cached, and the
+   * generator can be shared by any number of threads and networks.
+   *
+   * @param seed seed of the latencies.
+   */
+  public LatencyGenerator(long seed) {
+    this.nodesSimulatedLatency = new HashMap<>();
+    this.seed = seed;
+    this.mean = latencyProperty(MEAN_PROPERTY, MeanLatency);
+    this.std = latencyProperty(STD_PROPERTY, StdLatency);
+  }
+
+  /**
+   * Returns the value of a latency property, e.g., to sweep latencies across simulations.
+   *
+   * @throws IllegalArgumentException if the value is not a non-negative number.
+   */
+  private static double latencyProperty(String property, double defaultValue) throws IllegalArgumentException {
+    String value = System.getProperty(property);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      double latency = Double.parseDouble(value);
+      if (latency < 0 || Double.isNaN(latency)) {
+        throw new IllegalArgumentException(property + " must be a non-negative number: " + value);
+      }
+      return latency;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(property + " must be a non-negative number: " + value, e);
+    }
+  }
+
+  /**
+   * Returns the lowest latency this generator returns, i.e., the lookahead of a conservative parallel simulation.
+   *
+   * @return the lowest latency in milliseconds.
+   */
+  public double getMinLatency() {
+    return MinLatency;
   }
 
   private static String concat(Identifier a, Identifier b) {
@@ -30,6 +102,9 @@ public class LatencyGenerator {
    * @return new simulated latency.
    */
   public double getSimulatedLatency(Identifier nodeA, Identifier nodeB, boolean bidirectional) {
+    if (this.seed != null) {
+      return this.seededLatency(nodeA, nodeB, bidirectional);
+    }
     if (bidirectional && nodeA.compareTo(nodeB) < 0) {
       Identifier tmp = nodeA;
       nodeA = nodeB;
@@ -37,9 +112,74 @@ public class LatencyGenerator {
     }
     String hash = concat(nodeA, nodeB);
     if (!this.nodesSimulatedLatency.containsKey(hash)) {
-      GaussianGenerator generator = new GaussianGenerator(MeanLatency, StdLatency);
-      this.nodesSimulatedLatency.put(hash, Math.abs(generator.next()));
+      this.nodesSimulatedLatency.put(hash, this.newLatency());
     }
     return this.nodesSimulatedLatency.get(hash);
   }
+
+  /**
+   * Returns the simulated latency between two nodes of a directory, like getSimulatedLatency, with the latencies of an
+   * unseeded generator cached by the indices of the nodes rather than by their identifiers, which spares building a key
+   * on each message. A seeded generator returns the same latencies through both methods.
+   *
+   * @param indexA        index of the first node in the directory.
+   * @param nodeA         identifier of the first node.
+   * @param indexB        index of the second node in the directory.
+   * @param nodeB         identifier of the second node.
+   * @param bidirectional True, if simulated latency from A to B is the same as from B to A, false otherwise.
+   * @return new simulated latency.
+   */
+  public double getSimulatedLatency(int indexA, Identifier nodeA, int indexB, Identifier nodeB, boolean bidirectional) {
+    if (this.seed != null) {
+      return this.seededLatency(nodeA, nodeB, bidirectional);
+    }
+    long key = bidirectional && indexA > indexB ? indexKey(indexB, indexA) : indexKey(indexA, indexB);
+    Double latency = this.indexedLatency.get(key);
+    if (latency == null) {
+      latency = this.indexedLatency.computeIfAbsent(key, k -> this.newLatency());
+    }
+    return latency;
+  }
+
+  private static long indexKey(int indexA, int indexB) {
+    return (long) indexA << 32 | (indexB & 0xffffffffL);
+  }
+
+  /**
+   * Draws an unseeded latency at random.
+   */
+  private double newLatency() {
+    return Math.max(MinLatency, Math.abs(new GaussianGenerator(this.mean, this.std).next()));
+  }
+
+  /**
+   * Computes the seeded latency from nodeA to nodeB without allocating, the nodes of a bidirectional latency being
+   * ordered by their hash codes: a normal value is derived by the Box-Muller transform from two uniform values, which
+   * are mixed from the seed and the hash codes of the nodes.
+   */
+  private double seededLatency(Identifier nodeA, Identifier nodeB, boolean bidirectional) {
+    int hashA = nodeA.hashCode();
+    int hashB = nodeB.hashCode();
+    if (bidirectional && hashA > hashB) {
+      int tmp = hashA;
+      hashA = hashB;
+      hashB = tmp;
+    }
+    long first = mix((this.seed * 31 + hashA) * 31 + hashB);
+    long second = mix(first);
+    // uniform values in (0, 1] and [0, 1) from the 53 high bits of each mixed value.
+    double u1 = ((first >>> 11) + 1) * 0x1.0p-53;
+    double u2 = (second >>> 11) * 0x1.0p-53;
+    double gaussian = Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    return Math.max(MinLatency, Math.abs(gaussian * this.std + this.mean));
+  }
+
+  /**
+   * Scrambles the bits of a value, i.e., the finalizer of the SplitMix64 generator.
+   */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
 }
@@ -1,7 +1,7 @@
 package network.local;
 
 import java.net.InetSocketAddress;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import network.model.Message;
 
@@ -11,13 +11,16 @@ import network.model.Message;
  * of nodes on a single machine. The LocalHub is used to route messages to the correct local underlay.
  */
 public class LocalHub {
-  private final HashMap<InetSocketAddress, LocalUnderlay> allUnderlays;
+  /**
+   * Underlays by address, concurrent since nodes register and route on their own threads.
+   */
+  private final ConcurrentHashMap<InetSocketAddress, LocalUnderlay> allUnderlays;
 
   /**
    * Constructs a new LocalHub instance.
    */
   public LocalHub() {
-    this.allUnderlays = new HashMap<>();
+    this.allUnderlays = new ConcurrentHashMap<>();
   }
 
   /**
@@ -28,13 +31,22 @@ public class LocalHub {
    * @return The local underlay instance.
    */
   public LocalUnderlay registerUnderlay(final InetSocketAddress selfAddress, final LocalUnderlay underlay) {
-    if (this.allUnderlays.containsKey(selfAddress)) {
+    if (this.allUnderlays.putIfAbsent(selfAddress, underlay) != null) {
       throw new IllegalStateException("Underlay already registered.");
     }
-    this.allUnderlays.put(selfAddress, underlay);
     return underlay;
   }
 
+  /**
+   * Deregisters the local underlay instance registered with the given address, if any.
+   *
+   * @param selfAddress The address of the local underlay instance.
+   * @param underlay The local underlay instance.
+   */
+  public void deregisterUnderlay(final InetSocketAddress selfAddress, final LocalUnderlay underlay) {
+    this.allUnderlays.remove(selfAddress, underlay);
+  }
+
   /**
    * Routes a message to the given target address.
    *
@@ -42,9 +54,10 @@ public class LocalHub {
    * @param message The message to route.
    */
   public void routeMessage(final InetSocketAddress targetAddress, final Message message) {
-    if (!this.allUnderlays.containsKey(targetAddress)) {
+    LocalUnderlay target = this.allUnderlays.get(targetAddress);
+    if (target == null) {
       throw new IllegalStateException("Target underlay not registered.");
     }
-    this.allUnderlays.get(targetAddress).dispatchRequest(message);
+    target.dispatchRequest(message);
   }
 }
@@ -27,8 +27,12 @@ public class LocalUnderlay extends Underlay {
     this.hub = hub;
   }
 
+  /**
+   * Deregisters the underlay from the hub, so that it may be initialized again on the same address.
+   */
   @Override
   public void terminate() {
+    this.hub.deregisterUnderlay(this.selfAddress, this);
   }
 
   /**
@@ -0,0 +1,104 @@
+package network.model;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * EventType is the interned type of an Event class, i.e., a small dense id along with a label (the simple name of the
+ * class), meant for breaking down metrics by event type. Types are resolved through a ClassValue, hence resolving the
+ * type of an event costs a single lookup in the class and no string operation. Classes sharing a simple name share
+ * their type, and the number of types is capped at MAX_EVENT_TYPES, beyond which all classes fall into the OTHER type,
+ * so the cardinality of the breakdown stays bounded regardless of the number of nodes and event classes.
+ */
+public final class EventType {
+  /**
+   * Maximum number of distinct event types, including UNKNOWN and OTHER.
+   */
+  public static final int MAX_EVENT_TYPES = 64;
+  private static final AtomicReferenceArray<EventType> types = new AtomicReferenceArray<>(MAX_EVENT_TYPES);
+  private static final HashMap<String, EventType> byLabel = new HashMap<>();
+  /**
+   * Type of messages whose event could not be decoded.
+   */
+  public static final EventType UNKNOWN = intern("unknown");
+  /**
+   * Type of all event classes beyond the first MAX_EVENT_TYPES types.
+   */
+  public static final EventType OTHER = intern("other");
+  private static final ClassValue<EventType> byClass = new ClassValue<EventType>() {
+    @Override
+    protected EventType computeValue(Class<?> type) {
+      return intern(type.getSimpleName());
+    }
+  };
+
+  private final int id;
+  private final String label;
+
+  private EventType(int id, String label) {
+    this.id = id;
+    this.label = label;
+  }
+
+  /**
+   * Returns the type of the given event.
+   *
+   * @param event the event.
+   * @return the type of the event.
+   */
+  public static EventType of(Event event) {
+    return byClass.get(event.getClass());
+  }
+
+  /**
+   * Returns the type of the given event class.
+   *
+   * @param eventClass the event class.
+   * @return the type of the event class.
+   */
+  public static EventType of(Class<? extends Event> eventClass) {
+    return byClass.get(eventClass);
+  }
+
+  /**
+   * Returns the type of the given id, or null if no type is interned with this id yet.
+   *
+   * @param id id of the type, in [0, MAX_EVENT_TYPES).
+   * @return the type of the given id, or null if no type is interned with this id yet.
+   */
+  public static EventType get(int id) {
+    return types.get(id);
+  }
+
+  /**
+   * Returns the interned type of the given label, creating it if it does not exist and the cap is not reached yet.
+   * It is invoked at most once per event class, hence it is simply synchronized.
+   */
+  private static synchronized EventType intern(String label) {
+    EventType type = byLabel.get(label);
+    if (type != null) {
+      return type;
+    }
+    int id = byLabel.size();
+    if (id >= MAX_EVENT_TYPES) {
+      return OTHER;
+    }
+    type = new EventType(id, label);
+    byLabel.put(label, type);
+    types.set(id, type);
+    return type;
+  }
+
+  public int getId() {
+    return this.id;
+  }
+
+  public String getLabel() {
+    return this.label;
+  }
+
+  @Override
+  public String toString() {
+    return this.label;
+  }
+}
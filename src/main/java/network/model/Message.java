@@ -1,9 +1,10 @@
 package network.model;
 
 import java.io.Serializable;
-import java.sql.Timestamp;
 
+import modules.tracing.TraceContext;
 import node.Identifier;
+import simulator.SimulationClock;
 
 /**
  * Message is the unit of communications between the nodes at the networking layer of Opera.
@@ -12,9 +13,11 @@ import node.Identifier;
  */
 public class Message implements Serializable {
   /**
-   * The timestamp of when the message was sent.
+   * The time the message was sent in nanoseconds. By default, it is taken from the modelled clock of SimulationClock,
+   * which is shared by all nodes of a simulation since they all run in the same JVM. Hence, it is only meaningful when
+   * compared to another reading of the same clock, e.g., to compute the propagation delay on receipt.
    */
-  private final Timestamp sentTimeStamp;
+  private final long sentTimeNanos;
 
   /**
    * The encoded event.
@@ -31,6 +34,11 @@ public class Message implements Serializable {
    */
   private final Identifier targetId;
 
+  /**
+   * The trace context of the message, or null if the message is not traced.
+   */
+  private final TraceContext traceContext;
+
   /**
    * Constructor for message.
    *
@@ -39,10 +47,36 @@ public class Message implements Serializable {
    * @param targetId identifier of the node receiving the event.
    */
   public Message(final byte[] event, final Identifier origin, final Identifier targetId) {
+    this(event, origin, targetId, SimulationClock.nanoTime());
+  }
+
+  /**
+   * Constructor for message with an explicit send time, e.g., taken from a simulated clock rather than SimulationClock.
+   *
+   * @param event         the encoded event (use Encoder to encode the event into bytes).
+   * @param origin        identifier of the node sending the event.
+   * @param targetId      identifier of the node receiving the event.
+   * @param sentTimeNanos the time the message is sent in nanoseconds.
+   */
+  public Message(final byte[] event, final Identifier origin, final Identifier targetId, final long sentTimeNanos) {
+    this(event, origin, targetId, sentTimeNanos, null);
+  }
+
+  /**
+   * Constructor for a traced message.
+   *
+   * @param event         the encoded event (use Encoder to encode the event into bytes).
+   * @param origin        identifier of the node sending the event.
+   * @param targetId      identifier of the node receiving the event.
+   * @param sentTimeNanos the time the message is sent in nanoseconds.
+   * @param traceContext  the trace context of the message, or null if the message is not traced.
+   */
+  public Message(final byte[] event, final Identifier origin, final Identifier targetId, final long sentTimeNanos, final TraceContext traceContext) {
     this.event = event.clone();
     this.originId = origin;
     this.targetId = targetId;
-    this.sentTimeStamp = new Timestamp(System.currentTimeMillis());
+    this.sentTimeNanos = sentTimeNanos;
+    this.traceContext = traceContext;
   }
 
   /**
@@ -73,11 +107,20 @@ public class Message implements Serializable {
   }
 
   /**
-   * Returns the timestamp of when the message was sent.
+   * Returns the time the message was sent in nanoseconds, on the clock the message was stamped with.
+   *
+   * @return the time the message was sent in nanoseconds.
+   */
+  public long getSentTimeNanos() {
+    return this.sentTimeNanos;
+  }
+
+  /**
+   * Returns the trace context of the message.
    *
-   * @return the timestamp of when the message was sent.
+   * @return the trace context of the message, or null if the message is not traced.
    */
-  public Timestamp getSentTimeStamp() {
-    return new Timestamp(this.sentTimeStamp.getTime());
+  public TraceContext getTraceContext() {
+    return this.traceContext;
   }
 }
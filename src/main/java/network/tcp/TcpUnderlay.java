@@ -82,19 +82,28 @@ public class TcpUnderlay extends Underlay {
   }
 
   /**
-   * Terminates the underlay by unbinding the listener from the port.
+   * Terminates the underlay by unbinding the listener from the port. The outgoing connections are closed on a best
+   * effort basis, since the remote node may already have closed its end, e.g., when all nodes terminate at once.
    *
    * @throws IllegalStateException if it could not terminate the node.
    */
   @Override
   public void terminate() throws IllegalStateException {
-    try {
-      for (ObjectOutputStream o : this.streamCache.values()) {
+    for (ObjectOutputStream o : this.streamCache.values()) {
+      try {
         o.close();
+      } catch (IOException e) {
+        // the remote end is already closed, the socket is closed below.
       }
-      for (Socket s : this.socketCache) {
+    }
+    for (Socket s : this.socketCache) {
+      try {
         s.close();
+      } catch (IOException e) {
+        // the socket is unusable either way.
       }
+    }
+    try {
       serverSocket.close();
       listenerThread.join();
     } catch (IOException | InterruptedException e) {
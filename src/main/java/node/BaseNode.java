@@ -1,5 +1,6 @@
 package node;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 
 import network.model.Event;
@@ -48,4 +49,24 @@ public interface BaseNode {
    */
   BaseNode newInstance(Identifier selfId, String nameSpace, network.Network network);
 
+  /**
+   * This method is called when the simulation is checkpointed. Nodes opt in to checkpoints by returning a snapshot of
+   * their state, which is handed back to onRestore when the simulation resumes from the checkpoint. The snapshot must
+   * not share mutable state with the node, since the node keeps running after the checkpoint.
+   *
+   * @return snapshot of the state of the node, or null (the default) if the node has no state to checkpoint.
+   */
+  default Serializable onSnapshot() {
+    return null;
+  }
+
+  /**
+   * This method is called when the simulation resumes from a checkpoint, after onCreate and before onStart, with the
+   * snapshot the node returned from onSnapshot.
+   *
+   * @param snapshot the snapshot of the state of the node.
+   */
+  default void onRestore(Serializable snapshot) {
+  }
+
 }
@@ -11,9 +11,14 @@ import io.ipfs.multibase.Multibase;
 public class Identifier implements Serializable, Comparable<Identifier> {
   public static final int Size = 32;
   private final byte[] value;
+  /**
+   * Hash code of the value, cached since identifiers are hashed on every lookup of a node.
+   */
+  private final int hash;
 
   public Identifier(byte[] value) {
     this.value = value.clone();
+    this.hash = Arrays.hashCode(this.value);
   }
 
   /**
@@ -41,7 +46,7 @@ public class Identifier implements Serializable, Comparable<Identifier> {
       return false;
     }
     Identifier that = (Identifier) o;
-    return Arrays.equals(value, that.value);
+    return hash == that.hash && Arrays.equals(value, that.value);
   }
 
   /**
@@ -51,7 +56,7 @@ public class Identifier implements Serializable, Comparable<Identifier> {
    */
   @Override
   public int hashCode() {
-    return Arrays.hashCode(value);
+    return hash;
   }
 
   public byte[] getBytes() {
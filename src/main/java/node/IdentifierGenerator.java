@@ -1,5 +1,6 @@
 package node;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Random;
 
@@ -19,7 +20,7 @@ public class IdentifierGenerator {
    *
    * @return random and unique identifier.
    */
-  public static Identifier newIdentifier() {
+  public static synchronized Identifier newIdentifier() {
     Identifier identifier = null;
 
     do {
@@ -30,6 +31,61 @@ public class IdentifierGenerator {
     return identifier;
   }
 
+  /**
+   * Generates the given number of random and unique identifiers at once.
+   *
+   * @param n number of identifiers.
+   * @return list of n random and unique identifiers.
+   */
+  public static synchronized ArrayList<Identifier> newIdentifiers(int n) {
+    ArrayList<Identifier> identifiers = new ArrayList<>(n);
+    while (identifiers.size() < n) {
+      Identifier identifier = generateIdentifier();
+      if (generatedIdentifiers.add(identifier)) {
+        identifiers.add(identifier);
+      }
+    }
+    return identifiers;
+  }
+
+  /**
+   * Generates the given number of identifiers drawn from the given random generator, e.g., a seeded one for
+   * reproducible simulations. Identifiers are unique among themselves, but they are not recorded for the uniqueness of
+   * the other identifiers, since a seeded simulation must draw the same identifiers however many ran before it in the
+   * same JVM; at 32 random bytes, a collision with another identifier is not a practical concern.
+   *
+   * @param n      number of identifiers.
+   * @param random random generator the identifiers are drawn from.
+   * @return list of n unique identifiers.
+   */
+  public static ArrayList<Identifier> newIdentifiers(int n, Random random) {
+    ArrayList<Identifier> identifiers = new ArrayList<>(n);
+    HashSet<Identifier> generated = new HashSet<>(2 * n);
+    byte[] bytes = new byte[Identifier.Size];
+    while (identifiers.size() < n) {
+      random.nextBytes(bytes);
+      Identifier identifier = new Identifier(bytes);
+      if (generated.add(identifier)) {
+        identifiers.add(identifier);
+      }
+    }
+    return identifiers;
+  }
+
+  /**
+   * Generates an identifier drawn from the given random generator, e.g., the seeded random stream of a node, so that the
+   * identifiers of transactions and blocks are the same on every run of a seeded simulation. Like newIdentifiers with a
+   * random generator, the identifier is not recorded for the uniqueness of the other identifiers.
+   *
+   * @param random random generator the identifier is drawn from.
+   * @return random identifier.
+   */
+  public static Identifier newIdentifier(Random random) {
+    byte[] bytes = new byte[Identifier.Size];
+    random.nextBytes(bytes);
+    return new Identifier(bytes);
+  }
+
   /**
    * Generates a random identifier.
    *
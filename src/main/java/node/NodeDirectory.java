@@ -0,0 +1,109 @@
+package node;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * NodeDirectory is the immutable directory of all the nodes of a simulation, shared by all of their layers. Nodes are
+ * identified by a dense index, which maps to their identifier, full address and name space through plain arrays;
+ * resolving an identifier to its index is the only hashed lookup, and is meant to be done once, e.g., when a node
+ * learns of a peer, rather than on each message.
+ */
+public final class NodeDirectory {
+  private final Identifier[] identifiers;
+  private final InetSocketAddress[] addresses;
+  private final String[] nameSpaces;
+  private final HashMap<Identifier, Integer> indices;
+  private final List<Identifier> identifierList;
+
+  /**
+   * Creates a directory, the index of a node is its position in the given lists.
+   *
+   * @param identifiers identifiers of the nodes.
+   * @param addresses   full addresses of the nodes.
+   * @param nameSpaces  name spaces of the nodes, or null if the nodes have no name space.
+   * @throws IllegalArgumentException if the lists differ in size, or an identifier is repeated.
+   */
+  public NodeDirectory(List<Identifier> identifiers, List<InetSocketAddress> addresses, List<String> nameSpaces) throws IllegalArgumentException {
+    int n = identifiers.size();
+    if (addresses.size() != n || (nameSpaces != null && nameSpaces.size() != n)) {
+      throw new IllegalArgumentException("identifiers, addresses and name spaces must be as many: " + n + ", "
+                                         + addresses.size() + ", " + (nameSpaces == null ? "none" : nameSpaces.size()));
+    }
+    this.identifiers = identifiers.toArray(new Identifier[0]);
+    this.addresses = addresses.toArray(new InetSocketAddress[0]);
+    this.nameSpaces = nameSpaces == null ? new String[n] : nameSpaces.toArray(new String[0]);
+    this.indices = new HashMap<>(2 * n);
+    for (int i = 0; i < n; i++) {
+      if (this.indices.put(this.identifiers[i], i) != null) {
+        throw new IllegalArgumentException("identifier is repeated: " + this.identifiers[i]);
+      }
+    }
+    this.identifierList = Collections.unmodifiableList(Arrays.asList(this.identifiers));
+  }
+
+  /**
+   * Returns the number of nodes.
+   *
+   * @return the number of nodes.
+   */
+  public int size() {
+    return this.identifiers.length;
+  }
+
+  /**
+   * Returns the index of the node with the given identifier.
+   *
+   * @param id identifier of the node.
+   * @return index of the node, or -1 if the node is not in the directory.
+   */
+  public int indexOf(Identifier id) {
+    Integer index = this.indices.get(id);
+    return index == null ? -1 : index;
+  }
+
+  public Identifier getIdentifier(int index) {
+    return this.identifiers[index];
+  }
+
+  public InetSocketAddress getAddress(int index) {
+    return this.addresses[index];
+  }
+
+  public String getNameSpace(int index) {
+    return this.nameSpaces[index];
+  }
+
+  /**
+   * Returns the full address of the node with the given identifier.
+   *
+   * @param id identifier of the node.
+   * @return full address of the node, or null if the node is not in the directory.
+   */
+  public InetSocketAddress getAddress(Identifier id) {
+    int index = this.indexOf(id);
+    return index < 0 ? null : this.addresses[index];
+  }
+
+  /**
+   * Returns the identifiers of all the nodes, in the order of their index.
+   *
+   * @return unmodifiable view of the identifiers.
+   */
+  public List<Identifier> getIdentifiers() {
+    return this.identifierList;
+  }
+
+  /**
+   * Returns a new list of the identifiers of all the nodes, in the order of their index, e.g., for BaseNode.onCreate.
+   *
+   * @return new list of the identifiers.
+   */
+  public ArrayList<Identifier> toIdentifierList() {
+    return new ArrayList<>(this.identifierList);
+  }
+}
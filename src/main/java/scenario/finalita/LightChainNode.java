@@ -1,23 +1,33 @@
 package scenario.finalita;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import modules.logger.Logger;
 import modules.logger.OperaLogger;
 import network.model.Event;
+import network.model.EventType;
 import node.BaseNode;
 import node.Identifier;
 import node.IdentifierGenerator;
 import scenario.finalita.events.*;
+import scenario.finalita.ledger.Ledger;
+import scenario.finalita.ledger.LedgerEntry;
 import scenario.finalita.metrics.LightChainMetrics;
+import simulator.SimulationClock;
+import utils.sampling.FloydSampler;
 
 
 /**
@@ -35,7 +45,15 @@ import scenario.finalita.metrics.LightChainMetrics;
  * one type of nodes.
  */
 public class LightChainNode implements BaseNode {
-  private static final Random random = new Random();
+  /**
+   * System property of the directory the ledger file of the registry is created in, the temporary directory by default.
+   */
+  public static final String LEDGER_DIR_PROPERTY = "opera.lightchain.ledger.dir";
+  /**
+   * System property keeping the ledger file of the registry once it stops, e.g., to replay it, the file is deleted if
+   * unset.
+   */
+  public static final String LEDGER_KEEP_PROPERTY = "opera.lightchain.ledger.keep";
   final int transactionInsertions = 100;
   final int blockIterations = 50;
   final int numValidators = 1;
@@ -43,29 +61,55 @@ public class LightChainNode implements BaseNode {
   final int transactionInsertionDelay = 1000; // (ms)
   final int blockInsertionDelay = 2000; // (ms)
   final int updateWaitTime = 500; // (ms)
+  final int replyTimeout = 5000; // (ms)
   private Logger logger;
   private List<Identifier> allId;
   private Identifier identifier;
   private network.Network network;
   private boolean isRegistry;
+  // node state is accessed concurrently by the insertion threads and the underlay handler threads, hence it is kept
+  // in concurrent maps with per-entry atomic counters rather than behind node-wide locks.
+  // pending transactions and blocks of this node, removed once submitted to the registry.
   private Map<Identifier, Transaction> transactions;
   private Map<Identifier, Block> blocks;
-  private Map<Identifier, Integer> transactionValidationCount;
-  private Map<Identifier, Integer> blockValidationCount;
-  private Block latestBlock;
-  private List<Transaction> requestedTransactions;
-  private CountDownLatch blockLatch;
-  private CountDownLatch transactionLatch;
+  private Map<Identifier, AtomicInteger> transactionValidationCount;
+  private Map<Identifier, AtomicInteger> blockValidationCount;
+  private volatile Block latestBlock;
+  private volatile List<Transaction> requestedTransactions;
+  private volatile CountDownLatch blockLatch;
+  private volatile CountDownLatch transactionLatch;
+  // both insertion threads request the latest block, this lock keeps at most one such request in flight so that
+  // they do not overwrite each other's latch.
+  private ReentrantLock latestBlockRequestLock;
   private Integer maximumHeight;
   private Integer totalTransactionCount;
   private LightChainMetrics lightChainMetrics;
   // only for registry node
-  private List<Transaction> availableTransactions;
-  private List<Block> insertedBlocks;
+  /**
+   * Blocks and transactions submitted to the registry are persisted in the ledger file, the registry itself only keeps
+   * their index entries and loads full records on demand.
+   */
+  private Ledger ledger;
+  private List<LedgerEntry> availableTransactions;
+  private List<LedgerEntry> insertedBlocks;
   private Map<Integer, Integer> heightToUniquePrevCount;
   private Map<Integer, Map<Identifier, Integer>> heightToUniquePrev;
-  private ReadWriteLock transactionValidationLock;
-  private ReadWriteLock blockValidationLock;
+  private ReentrantLock registryLock;
+  /**
+   * Number of blocks appended to the ledger so far, used to tell whether the cached latest block response is stale.
+   */
+  private volatile long ledgerVersion;
+  /**
+   * Cached response to latest block requests, computed and encoded once per ledger version. Requests arriving while
+   * the response is being (re)computed wait on latestBlockResponseLock and reuse the result instead of recomputing it.
+   */
+  private volatile LatestBlockResponse latestBlockResponse;
+  private ReentrantLock latestBlockResponseLock;
+  /**
+   * Samples validators as indices of allId, which is a random-access list shared by all the nodes, so that validator
+   * selection neither walks nor copies the list of all nodes.
+   */
+  private FloydSampler validatorSampler;
 
   /**
    * Constructor of LightChain Node.
@@ -77,13 +121,13 @@ public class LightChainNode implements BaseNode {
   public LightChainNode(Identifier nodeId, network.Network network) {
     this.identifier = nodeId;
     this.network = network;
-    this.transactions = new HashMap<>();
-    this.blocks = new HashMap<>();
-    this.transactionValidationCount = new HashMap<>();
-    this.blockValidationCount = new HashMap<>();
-    this.transactionValidationLock = new ReentrantReadWriteLock();
-    this.blockValidationLock = new ReentrantReadWriteLock();
+    this.transactions = new ConcurrentHashMap<>();
+    this.blocks = new ConcurrentHashMap<>();
+    this.transactionValidationCount = new ConcurrentHashMap<>();
+    this.blockValidationCount = new ConcurrentHashMap<>();
+    this.latestBlockRequestLock = new ReentrantLock();
     this.lightChainMetrics = new LightChainMetrics();
+    this.validatorSampler = new FloydSampler(network.getRandom());
     this.logger = OperaLogger.getLoggerForNodeComponent(LightChainNode.class.getCanonicalName(),
                                                         nodeId,
                                                         "lightchain-node");
@@ -93,6 +137,8 @@ public class LightChainNode implements BaseNode {
     this.insertedBlocks = new ArrayList<>();
     this.heightToUniquePrev = new HashMap<>();
     this.heightToUniquePrevCount = new HashMap<>();
+    this.registryLock = new ReentrantLock();
+    this.latestBlockResponseLock = new ReentrantLock();
     this.maximumHeight = 0;
     this.totalTransactionCount = 0;
   }
@@ -137,10 +183,21 @@ public class LightChainNode implements BaseNode {
 
 
       this.logger.info("the registry node is created");
-      Block genesisBlock = new Block(IdentifierGenerator.newIdentifier(),
+      try {
+        String ledgerDir = System.getProperty(LEDGER_DIR_PROPERTY, System.getProperty("java.io.tmpdir"));
+        this.ledger = new Ledger(Files.createTempFile(Files.createDirectories(Paths.get(ledgerDir)), "lightchain-ledger-", ".bin"));
+      } catch (IOException | UncheckedIOException e) {
+        throw new IllegalStateException("could not create ledger file", e);
+      }
+      this.logger.info("registry ledger is persisted at {}", this.ledger.getPath());
+      if (!Boolean.getBoolean(LEDGER_KEEP_PROPERTY)) {
+        // onStop deletes the file, but it runs in a stop thread which the JVM may not wait for once the simulation ends.
+        this.ledger.getPath().toFile().deleteOnExit();
+      }
+      Block genesisBlock = new Block(IdentifierGenerator.newIdentifier(this.network.getRandom()),
                                      0,
                                      this.identifier,
-                                     IdentifierGenerator.newIdentifier(),
+                                     IdentifierGenerator.newIdentifier(this.network.getRandom()),
                                      new ArrayList<>(),
                                      new ArrayList<>());
       this.appendBlock(genesisBlock);
@@ -160,9 +217,9 @@ public class LightChainNode implements BaseNode {
     }
     logger.info("lightchain node starts");
 
-    // TODO: keep track of threads and stop them on stop.
-    new Thread(this::startTransactionInsertions).start();
-    new Thread(this::startBlockInsertion).start();
+    // both insertions run on timers of the network, which are cancelled when the node stops.
+    this.startTransactionInsertions();
+    this.startBlockInsertion();
   }
 
   /**
@@ -171,6 +228,19 @@ public class LightChainNode implements BaseNode {
   @Override
   public void onStop() {
     logger.info("lightchain node stops");
+    if (this.ledger != null) {
+      this.ledger.close();
+      if (Boolean.getBoolean(LEDGER_KEEP_PROPERTY)) {
+        logger.info("registry ledger is closed, ledger file is kept at {}", this.ledger.getPath());
+      } else {
+        try {
+          Files.deleteIfExists(this.ledger.getPath());
+          logger.info("registry ledger is closed and its file is deleted, set {} to keep it", LEDGER_KEEP_PROPERTY);
+        } catch (IOException e) {
+          logger.warn("could not delete ledger file {}", e, this.ledger.getPath());
+        }
+      }
+    }
   }
 
   /**
@@ -252,31 +322,44 @@ public class LightChainNode implements BaseNode {
       this.logger.fatal("only registry node can append block, block id {}", block.getId());
     }
 
-    this.insertedBlocks.add(block);
-    this.maximumHeight = Math.max(this.maximumHeight, block.getHeight());
+    LedgerEntry entry = this.ledger.appendBlock(block);
+    int maximumHeight;
+    int totalBlocks;
+    this.registryLock.lock();
+    try {
+      this.insertedBlocks.add(entry);
+      this.maximumHeight = Math.max(this.maximumHeight, block.getHeight());
 
-    if (!this.heightToUniquePrev.containsKey(block.getHeight())) {
-      this.heightToUniquePrev.put(block.getHeight(), new HashMap<>());
-    }
-    if (!this.heightToUniquePrev.get(block.getHeight()).containsKey(block.getPrev())) {
-      Integer oldValue = this.heightToUniquePrevCount.get(block.getHeight());
-      if (oldValue == null) {
-        oldValue = 0;
+      if (!this.heightToUniquePrev.containsKey(block.getHeight())) {
+        this.heightToUniquePrev.put(block.getHeight(), new HashMap<>());
+      }
+      if (!this.heightToUniquePrev.get(block.getHeight()).containsKey(block.getPrev())) {
+        Integer oldValue = this.heightToUniquePrevCount.get(block.getHeight());
+        if (oldValue == null) {
+          oldValue = 0;
+        }
+        this.heightToUniquePrevCount.put(block.getHeight(), oldValue + 1);
       }
-      this.heightToUniquePrevCount.put(block.getHeight(), oldValue + 1);
-    }
 
-    Integer old = this.heightToUniquePrev.get(block.getHeight()).get(block.getPrev());
-    if (old == null) {
-      old = 0;
+      Integer old = this.heightToUniquePrev.get(block.getHeight()).get(block.getPrev());
+      if (old == null) {
+        old = 0;
+      }
+      this.heightToUniquePrev.get(block.getHeight()).put(block.getPrev(), old + 1);
+
+      maximumHeight = this.maximumHeight;
+      totalBlocks = this.insertedBlocks.size();
+      // invalidates the cached latest block response.
+      this.ledgerVersion = totalBlocks;
+    } finally {
+      this.registryLock.unlock();
     }
-    this.heightToUniquePrev.get(block.getHeight()).put(block.getPrev(), old + 1);
 
     this.logger.info("registry node added new block to the ledger, block id {}, height {}, maximum height {}, blocks in {}",
                      block.getId(),
                      block.getHeight(),
-                     this.maximumHeight,
-                     this.insertedBlocks.size());
+                     maximumHeight,
+                     totalBlocks);
     this.lightChainMetrics.onNewFinalizedBlock(block.getHeight(), block.getId(), block.getOwner());
   }
 
@@ -289,50 +372,74 @@ public class LightChainNode implements BaseNode {
    * above and that function will take care of inserting the transaction.
    *
    *
-   * <p>TODO: This function is supposed to run either on a different thread from the block insertion, or incorporate the
-   * block insertion within it somehow
+   * <p>Each insertion runs on a timer of the network, transactionInsertionDelay after the previous one, separately
+   * from the block insertions.
    */
-  public void startTransactionInsertions() {
-    for (int i = 0; i < this.transactionInsertions; ++i) {
+  public void startTransactionInsertions() throws IllegalStateException {
+    network.schedule(0, () -> this.insertTransaction(0));
+  }
 
-      this.logger.info("inserting transaction number {}", i + 1);
+  /**
+   * Inserts the transaction number i, and schedules the next insertion.
+   *
+   * @param i the number of the transaction, starting from zero.
+   */
+  private void insertTransaction(int i) throws IllegalStateException {
+    this.logger.info("inserting transaction number {}", i + 1);
+
+    // update the latest block
+    Identifier latestBlockId = this.requestLatestBlock();
+    if (latestBlockId == null) {
+      this.logger.warn("skipping transaction number {}, latest block not received", i + 1);
+      this.scheduleTransactionInsertion(i);
+      return;
+    }
 
-      // update the latest block
-      Identifier latestBlockId = this.requestLatestBlock();
+    this.logger.info("latest block id {} updated", latestBlockId);
 
-      this.logger.info("latest block id {} updated", latestBlockId);
+    // get the validators
+    List<Identifier> validators = this.getValidators();
+    // create the transaction
+    Transaction tx = new Transaction(IdentifierGenerator.newIdentifier(this.network.getRandom()),
+                                     this.identifier,
+                                     this.latestBlock,
+                                     validators);
+    // initialize the counter of the transaction and store the transaction for insertion later
+    this.transactions.put(tx.getId(), tx);
+    this.transactionValidationCount.put(tx.getId(), new AtomicInteger());
 
-      // get the validators
-      List<Identifier> validators = this.getValidators();
-      // create the transaction
-      Transaction tx = new Transaction(IdentifierGenerator.newIdentifier(),
-                                       this.identifier,
-                                       this.latestBlock,
-                                       validators);
-      // initialize the counter of the transaction and store the transaction for insertion later
-      this.transactionValidationCount.put(tx.getId(), 0);
-      this.transactions.put(tx.getId(), tx);
 
+    for (Identifier validator : validators) {
+      // send an asynchronous validation request
+      network.send(validator, new ValidateTransactionEvent(tx));
+      this.logger.info("requesting validator {} for transaction {}", validator, tx.getId());
+    }
 
-      for (Identifier validator : validators) {
-        // send an asynchronous validation request
-        network.send(validator, new ValidateTransactionEvent(tx));
-        this.logger.info("requesting validator {} for transaction {}", validator, tx.getId());
-      }
+    this.scheduleTransactionInsertion(i);
+  }
 
-      // wait for some time in between insertions
-      // TODO: this is a hack, we should use a proper synchronization mechanism.
-      try {
-        Thread.sleep(this.transactionInsertionDelay);
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      }
+  /**
+   * Schedules the insertion after the transaction number i, or the final count once all of them are inserted.
+   *
+   * @param i the number of the last transaction, starting from zero.
+   */
+  private void scheduleTransactionInsertion(int i) throws IllegalStateException {
+    // insertions are spaced by a timer of the network rather than a sleeping thread.
+    if (i + 1 < this.transactionInsertions) {
+      network.schedule(this.transactionInsertionDelay, () -> this.insertTransaction(i + 1));
+    } else {
+      network.schedule(this.transactionInsertionDelay, this::logPendingTransactions);
     }
+  }
 
+  /**
+   * Logs the number of transactions of this node which are not validated once all of them are inserted.
+   */
+  private void logPendingTransactions() {
     int count = 0;
-    for (Map.Entry<Identifier, Integer> e : this.transactionValidationCount.entrySet()) {
+    for (Map.Entry<Identifier, AtomicInteger> e : this.transactionValidationCount.entrySet()) {
 
-      if (e.getValue() < this.numValidators) {
+      if (e.getValue().get() < this.numValidators) {
         count += 1;
       }
     }
@@ -345,48 +452,57 @@ public class LightChainNode implements BaseNode {
    * to the registry
    */
   public void startBlockInsertion() throws IllegalStateException {
-    for (int i = 0; i < this.blockIterations; ++i) {
+    network.schedule(this.blockInsertionDelay, () -> this.insertBlock(0));
+  }
 
-      try {
-        Thread.sleep(this.blockInsertionDelay);
-      } catch (InterruptedException e) {
-        throw new IllegalStateException("block insertion thread interrupted", e);
-      }
+  /**
+   * Runs the block collection attempt number i, and schedules the next attempt blockInsertionDelay after it.
+   *
+   * @param i the number of the attempt, starting from zero.
+   */
+  private void insertBlock(int i) throws IllegalStateException {
+    this.collectBlock(i);
+    if (i + 1 < this.blockIterations) {
+      network.schedule(this.blockInsertionDelay, () -> this.insertBlock(i + 1));
+    }
+  }
 
-      this.logger.info("block collection attempt is {}", i + 1);
+  private void collectBlock(int i) {
+    this.logger.info("block collection attempt is {}", i + 1);
 
-      this.requestTransactions();
-      this.requestLatestBlock();
+    if (!this.requestTransactions() || this.requestLatestBlock() == null) {
+      this.logger.warn("skipping block collection attempt {}, registry did not reply", i + 1);
+      return;
+    }
 
-      List<Transaction> collectedTransaction = this.requestedTransactions;
+    List<Transaction> collectedTransaction = this.requestedTransactions;
 
-      List<Identifier> transactionIds = new ArrayList<>();
-      for (Transaction tx : collectedTransaction) {
-        transactionIds.add(tx.getId());
-      }
+    List<Identifier> transactionIds = new ArrayList<>();
+    for (Transaction tx : collectedTransaction) {
+      transactionIds.add(tx.getId());
+    }
 
-      if (collectedTransaction.isEmpty()) {
-        this.logger.info("transaction collection attempt is {}", i + 1);
-        continue;
-      }
+    if (collectedTransaction.isEmpty()) {
+      this.logger.info("transaction collection attempt is {}", i + 1);
+      return;
+    }
 
-      List<Identifier> validators = getValidators();
-      Block block = new Block(IdentifierGenerator.newIdentifier(),
-                              this.latestBlock.getHeight() + 1,
-                              this.identifier,
-                              this.latestBlock.getId(),
-                              validators,
-                              transactionIds);
+    List<Identifier> validators = getValidators();
+    Block block = new Block(IdentifierGenerator.newIdentifier(this.network.getRandom()),
+                            this.latestBlock.getHeight() + 1,
+                            this.identifier,
+                            this.latestBlock.getId(),
+                            validators,
+                            transactionIds);
 
-      this.blockValidationCount.put(block.getId(), 0);
-      this.blocks.put(block.getId(), block);
+    this.blocks.put(block.getId(), block);
+    this.blockValidationCount.put(block.getId(), new AtomicInteger());
 
 
-      for (Identifier validator : validators) {
-        // send an asynchronous validation request
-        network.send(validator, new ValidateBlockEvent(block));
-        this.logger.info("node is requesting validator {} for block {}", validator, block.getId());
-      }
+    for (Identifier validator : validators) {
+      // send an asynchronous validation request
+      network.send(validator, new ValidateBlockEvent(block));
+      this.logger.info("node is requesting validator {} for block {}", validator, block.getId());
     }
   }
 
@@ -397,28 +513,27 @@ public class LightChainNode implements BaseNode {
    * that is being verified, and it increases its counter. Once the counter of a transaction is equal to the number of
    * validators, this means the transaction has been validated and is ready to be inserted. So this function attempts
    * to insert the transaction into the network by sending submit transaction event to the registry node.
+   * Confirmations may be processed in parallel, the counter is atomic and the transaction is submitted exactly once by
+   * the confirmation that completes its validation.
    *
    * @param txId unique Id of the trasaction.
    */
   public void confirmTransactionValidation(Identifier txId) throws IllegalStateException {
-    if (!transactionValidationCount.containsKey(txId)) {
+    AtomicInteger counter = transactionValidationCount.get(txId);
+    if (counter == null) {
       throw new IllegalStateException("received confirmation for a non-existing transaction: " + txId);
     }
 
-    // TODO: encapsulate this in a function.
-    this.transactionValidationLock.writeLock().lock();
-    Integer validationCount = transactionValidationCount.get(txId);
-    validationCount = validationCount + 1;
+    int validationCount = counter.incrementAndGet();
     this.logger.info("node received confirmation for transaction {} from validator, validation count is {}",
                      txId,
-                     validationCount + 1);
-    transactionValidationCount.put(txId, validationCount);
-    this.transactionValidationLock.writeLock().unlock();
+                     validationCount);
 
-    if (validationCount + 1 >= this.numValidators) {
-      // TODO: we should remove transaction from the validation count map and add its id to a processed transaction map.
+    if (validationCount == this.numValidators) {
       this.logger.info("node is inserting transaction {} on the overlay network", txId);
-      this.network.send(this.getRegistryId(), new SubmitTransactionEvent(this.transactions.get(txId)));
+      // the registry keeps the transaction from now on, hence it is no longer held by this node.
+      Transaction transaction = this.transactions.remove(txId);
+      this.network.send(this.getRegistryId(), new SubmitTransactionEvent(transaction));
     }
   }
 
@@ -437,24 +552,21 @@ public class LightChainNode implements BaseNode {
    * @param blockId Identifier of the block.
    */
   public void confirmBlockValidation(Identifier blockId) throws IllegalStateException {
-    if (!blockValidationCount.containsKey(blockId)) {
+    AtomicInteger counter = blockValidationCount.get(blockId);
+    if (counter == null) {
       throw new IllegalStateException("received confirmation for a non-existing block: " + blockId);
     }
 
-    // TODO: encapsulate this in a function.
-    this.blockValidationLock.writeLock().lock();
-    Integer validationCount = blockValidationCount.get(blockId);
-    validationCount = validationCount + 1;
+    int validationCount = counter.incrementAndGet();
     this.logger.info("node received confirmation for block {} from validator, validation count is {}",
                      blockId,
-                     validationCount + 1);
-    blockValidationCount.put(blockId, validationCount);
-    this.blockValidationLock.writeLock().unlock();
+                     validationCount);
 
-    if (validationCount + 1 >= this.numValidators) {
-      // TODO: we should remove block from the validation count map and add its id to a processed block map.
-      this.logger.info("node is inserting block {} on the overlay network", this.identifier, blockId);
-      this.network.send(this.getRegistryId(), new SubmitBlockEvent(this.blocks.get(blockId)));
+    if (validationCount == this.numValidators) {
+      this.logger.info("node is inserting block {} on the overlay network", blockId);
+      // the registry keeps the block from now on, hence it is no longer held by this node.
+      Block block = this.blocks.remove(blockId);
+      this.network.send(this.getRegistryId(), new SubmitBlockEvent(block));
     }
   }
 
@@ -475,31 +587,20 @@ public class LightChainNode implements BaseNode {
   }
 
   /**
-   * This function randomly chooses validators of a certain transaction using the Reservoir Sampling Algorithm
-   * see https://www.geeksforgeeks.org/reservoir-sampling/
+   * This function randomly chooses validators of a certain transaction using Floyd's sampling algorithm, which draws
+   * numValidators distinct nodes (excluding the registry) in O(numValidators) time regardless of the number of nodes.
    *
    * @return a list of Identifiers of randomly chosen nodes from the network
    */
   // TODO: this function must be a random persistent oracle, not a random function.
   public List<Identifier> getValidators() {
 
-    logger.info("fetching validators for node");
-
-    // add the first numValidators nodes
-    List<Integer> randomIndexes = new ArrayList<>();
-    for (int i = 1; i <= this.numValidators; ++i) {
-      randomIndexes.add(i);
-    }
-
-    for (int i = this.numValidators + 1; i < this.allId.size(); ++i) {
-      int j = random.nextInt(i + 1);
-      if (j < this.numValidators) {
-        randomIndexes.set(j, i);
-      }
-    }
+    logger.debug("fetching validators for node");
 
-    List<Identifier> validators = new ArrayList<>();
-    for (Integer index : randomIndexes) {
+    // validators are sampled from [1, n), hence the registry at index 0 is never chosen.
+    int[] indices = this.validatorSampler.sample(1, this.allId.size(), this.numValidators);
+    List<Identifier> validators = new ArrayList<>(indices.length);
+    for (int index : indices) {
       validators.add(this.allId.get(index));
     }
 
@@ -533,7 +634,7 @@ public class LightChainNode implements BaseNode {
    */
   public void updateWait() {
     try {
-      Thread.sleep(this.updateWaitTime);
+      network.sleep(this.updateWaitTime);
     } catch (InterruptedException e) {
       e.printStackTrace();
     }
@@ -542,26 +643,43 @@ public class LightChainNode implements BaseNode {
   /**
    * This function is called by this node to request the latest block from the registry node asynchronously, then it
    * sleeps the thread for a while to give time for the registry node to send the latest block. This is necessary given
-   * that the simulator only support asynchronous events.
+   * that the simulator only support asynchronous events. It waits at most replyTimeout, e.g., since the reply is lost
+   * when the node goes offline, so that a lost reply never holds the request lock of the next callers.
+   *
+   * @return the identifier of the latest block, or null if the registry did not reply in time.
    */
   public Identifier requestLatestBlock() {
 
     this.logger.info("node requesting latest block");
 
-    blockLatch = new CountDownLatch(1);
-    network.send(this.getRegistryId(), new GetLatestBlockEvent(this.identifier));
+    Block block;
+    this.latestBlockRequestLock.lock();
+    try {
+      blockLatch = new CountDownLatch(1);
+      if (!network.send(this.getRegistryId(), new GetLatestBlockEvent(this.identifier))) {
+        this.logger.warn("could not request the latest block");
+        return null;
+      }
 
-    this.logger.info("node is waiting for latest block");
+      this.logger.info("node is waiting for latest block");
 
-    try {
-      blockLatch.await();
-    } catch (InterruptedException e) {
-      e.printStackTrace();
+      try {
+        if (!blockLatch.await(SimulationClock.toWallNanos(this.replyTimeout), TimeUnit.NANOSECONDS)) {
+          this.logger.warn("latest block not received within {} ms", this.replyTimeout);
+          return null;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+      block = this.latestBlock;
+    } finally {
+      this.latestBlockRequestLock.unlock();
     }
 
-    this.logger.info("latest block received: {}", this.latestBlock.getId());
+    this.logger.info("latest block received: {}", block.getId());
 
-    return this.latestBlock.getId();
+    return block.getId();
   }
 
 
@@ -570,20 +688,31 @@ public class LightChainNode implements BaseNode {
    */
 
   /**
-   * This function is called to request a collection of transactions from the registry node.
+   * This function is called to request a collection of transactions from the registry node. It waits at most
+   * replyTimeout for the registry to deliver them.
+   *
+   * @return true if the transactions were delivered, false if the request could not be sent, or the registry did not
+   *     reply in time.
    */
-  public void requestTransactions() {
+  public boolean requestTransactions() {
 
     this.transactionLatch = new CountDownLatch(1);
 
-    network.send(this.getRegistryId(), new CollectTransactionsEvent(this.identifier, this.txMin));
+    if (!network.send(this.getRegistryId(), new CollectTransactionsEvent(this.identifier, this.txMin))) {
+      this.logger.warn("could not request transactions");
+      return false;
+    }
 
     try {
-      transactionLatch.await();
+      if (!transactionLatch.await(SimulationClock.toWallNanos(this.replyTimeout), TimeUnit.NANOSECONDS)) {
+        this.logger.warn("transactions not received within {} ms", this.replyTimeout);
+        return false;
+      }
     } catch (InterruptedException e) {
-      e.printStackTrace();
+      Thread.currentThread().interrupt();
+      return false;
     }
-
+    return true;
   }
 
   /**
@@ -611,17 +740,21 @@ public class LightChainNode implements BaseNode {
     }
 
 
-    // TODO: do we need lock?
-    //  this.transactionLock.writeLock().lock();
-
-    this.availableTransactions.add(transaction);
-    this.totalTransactionCount += 1;
+    int availableCount;
+    int totalCount;
+    this.registryLock.lock();
+    try {
+      this.availableTransactions.add(this.ledger.appendTransaction(transaction, this.maximumHeight));
+      this.totalTransactionCount += 1;
+      availableCount = this.availableTransactions.size();
+      totalCount = this.totalTransactionCount;
+    } finally {
+      this.registryLock.unlock();
+    }
     logger.info("new transaction inserted on the registry node, available transactions: {} total transactions: {}",
-                this.availableTransactions.size(),
-                this.totalTransactionCount);
+                availableCount,
+                totalCount);
     this.lightChainMetrics.onNewTransactions(1);
-
-    //  this.transactionLock.writeLock().unlock();
   }
 
   /**
@@ -637,33 +770,40 @@ public class LightChainNode implements BaseNode {
       throw new IllegalStateException("collect transactions is called from a non-registry node");
     }
 
-    // TODO: do we need lock?
+    List<LedgerEntry> requestedEntries = new ArrayList<>();
+    int availableCount;
+    this.registryLock.lock();
+    try {
+      availableCount = this.availableTransactions.size();
+      if (availableCount >= requiredNumber) {
+        // TODO: revisit this part
+        requestedEntries.addAll(this.availableTransactions);
+
+        List<LedgerEntry> temporary = new ArrayList<>();
+        for (int i = requiredNumber; i < this.availableTransactions.size(); ++i) {
+          temporary.add(this.availableTransactions.get(i));
+        }
+        this.availableTransactions = temporary;
+      }
+    } finally {
+      this.registryLock.unlock();
+    }
 
-    //   this.transactionLock.writeLock().lock();
-    List<Transaction> requestedTransactions = new ArrayList<>();
-    if (this.availableTransactions.size() < requiredNumber) {
+    // loads the collected transactions from the ledger outside the registry lock.
+    List<Transaction> requestedTransactions = new ArrayList<>(requestedEntries.size());
+    for (LedgerEntry entry : requestedEntries) {
+      requestedTransactions.add(this.ledger.loadTransaction(entry));
+    }
+
+    if (availableCount < requiredNumber) {
       logger.info("number of available transactions ({}) in registry is less than requested ({}) by node ({})",
-                  this.availableTransactions.size(),
+                  availableCount,
                   requiredNumber,
                   requester);
-      //    this.transactionLock.writeLock().unlock();
       network.send(requester, new DeliverTransactionsEvent(requestedTransactions));
       return requestedTransactions;
     }
 
-    // TODO: revisit this part
-    for (Transaction availableTransaction : this.availableTransactions) {
-      requestedTransactions.add(availableTransaction);
-    }
-
-    List<Transaction> temporary = new ArrayList<>();
-    for (int i = requiredNumber; i < this.availableTransactions.size(); ++i) {
-      temporary.add(this.availableTransactions.get(i));
-    }
-    this.availableTransactions = temporary;
-
-    //  this.transactionLock.writeLock().unlock();
-
     network.send(requester, new DeliverTransactionsEvent(requestedTransactions));
 
     return null;
@@ -671,6 +811,8 @@ public class LightChainNode implements BaseNode {
 
   /**
    * This function is invoked as a result of a node requesting the latest block from the registry.
+   * The response is computed and encoded at most once per appended block, all requests in between are served from
+   * the cache.
    *
    * @param requester of the node requesting the latest block so that its request can be delivered
    * @return the latest block on the ledger
@@ -681,32 +823,98 @@ public class LightChainNode implements BaseNode {
     }
     logger.debug("registry received a request for latest block from node {}", requester);
 
-    Block latestBlock;
+    LatestBlockResponse response = this.latestBlockResponse;
+    if (response == null || response.version != this.ledgerVersion) {
+      response = this.computeLatestBlockResponse();
+    }
+    logger.debug("registry found {} block as the latest block for request of node {}", response.chosenBlock.getId(), requester);
 
-    // this.blockLock.readLock().lock();
-    latestBlock = this.insertedBlocks.get(this.insertedBlocks.size() - 1);
-    long hash = latestBlock.getId().hashCode();
-    int height = latestBlock.getHeight();
-    Block chosenBlock = latestBlock;
-    for (int i = this.insertedBlocks.size() - 1; i >= 0; --i) {
+    if (response.encodedEvent != null) {
+      this.network.sendEncoded(requester, response.encodedEvent, EventType.of(DeliverLatestBlockEvent.class));
+    } else {
+      // the response could not be encoded once for all requests, each request is encoded on its own instead.
+      this.network.send(requester, new DeliverLatestBlockEvent(response.latestBlock));
+    }
+    this.logger.info("registry delivered latest block {} to node {}", response.latestBlock.getId(), requester);
+
+    return response.chosenBlock;
+  }
 
-      if (this.insertedBlocks.get(i).getHeight() != height) {
-        break;
+  /**
+   * Computes and caches the response to latest block requests for the current ledger version. Concurrent callers are
+   * coalesced: only the first one computes the response, the others wait for it and return the cached one.
+   *
+   * @return the latest block response for the current ledger version.
+   */
+  private LatestBlockResponse computeLatestBlockResponse() {
+    this.latestBlockResponseLock.lock();
+    try {
+      LatestBlockResponse cached = this.latestBlockResponse;
+      if (cached != null && cached.version == this.ledgerVersion) {
+        // computed by another request while this one was waiting.
+        return cached;
       }
-      long blockHash = this.insertedBlocks.get(i).getId().hashCode();
 
-      if (blockHash < hash) {
-        hash = blockHash;
-        chosenBlock = this.insertedBlocks.get(i);
+      LedgerEntry latestEntry;
+      LedgerEntry chosenEntry;
+      long version;
+      this.registryLock.lock();
+      try {
+        // the scan only touches index entries, full blocks are loaded from the ledger once it is done.
+        version = this.ledgerVersion;
+        latestEntry = this.insertedBlocks.get(this.insertedBlocks.size() - 1);
+        long hash = latestEntry.getId().hashCode();
+        int height = latestEntry.getHeight();
+        chosenEntry = latestEntry;
+        for (int i = this.insertedBlocks.size() - 1; i >= 0; --i) {
+
+          if (this.insertedBlocks.get(i).getHeight() != height) {
+            break;
+          }
+          long blockHash = this.insertedBlocks.get(i).getId().hashCode();
+
+          if (blockHash < hash) {
+            hash = blockHash;
+            chosenEntry = this.insertedBlocks.get(i);
+          }
+        }
+      } finally {
+        this.registryLock.unlock();
       }
-    }
-    logger.debug("registry found {} block as the latest block for request of node {}", chosenBlock.getId(), requester);
 
-    // this.blockLock.readLock().unlock();
+      Block latestBlock = this.ledger.loadBlock(latestEntry);
+      Block chosenBlock = chosenEntry == latestEntry ? latestBlock : this.ledger.loadBlock(chosenEntry);
 
-    this.network.send(requester, new DeliverLatestBlockEvent(latestBlock));
-    this.logger.info("registry delivered latest block {} to node {}", latestBlock.getId(), requester);
+      byte[] encodedEvent;
+      try {
+        encodedEvent = this.network.encode(new DeliverLatestBlockEvent(latestBlock));
+      } catch (UncheckedIOException e) {
+        this.logger.error("could not encode latest block {}, its response is sent uncached", e, latestBlock.getId());
+        encodedEvent = null;
+      }
+      LatestBlockResponse response = new LatestBlockResponse(version, latestBlock, chosenBlock, encodedEvent);
+      this.latestBlockResponse = response;
+      return response;
+    } finally {
+      this.latestBlockResponseLock.unlock();
+    }
+  }
 
-    return chosenBlock;
+  /**
+   * Immutable response of the registry to latest block requests, valid for a single ledger version. Its encoded event is
+   * null if the response could not be encoded.
+   */
+  private static class LatestBlockResponse {
+    private final long version;
+    private final Block latestBlock;
+    private final Block chosenBlock;
+    private final byte[] encodedEvent;
+
+    LatestBlockResponse(long version, Block latestBlock, Block chosenBlock, byte[] encodedEvent) {
+      this.version = version;
+      this.latestBlock = latestBlock;
+      this.chosenBlock = chosenBlock;
+      this.encodedEvent = encodedEvent;
+    }
   }
 }
@@ -0,0 +1,151 @@
+package scenario.finalita.ledger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import scenario.finalita.Block;
+import scenario.finalita.Transaction;
+
+/**
+ * Ledger persists the blocks and transactions of a LightChain simulation in an append-only memory-mapped file.
+ * Appending a record returns a compact LedgerEntry (identifier, height and file offset) that callers keep in memory
+ * in place of the record itself; the full record is only deserialized when it is loaded back through its entry.
+ * This keeps the heap footprint of the registry proportional to the number of records rather than their size,
+ * and leaves the ledger file behind for analysis after the run (see replay).
+ */
+public class Ledger implements Closeable {
+  private static final byte BLOCK = 1;
+  private static final byte TRANSACTION = 2;
+
+  private final MappedLedgerFile file;
+
+  /**
+   * Creates a new ledger at the given path. An existing file is truncated.
+   *
+   * @param path path of the ledger file.
+   * @throws UncheckedIOException if the file cannot be created.
+   */
+  public Ledger(Path path) throws UncheckedIOException {
+    this(new MappedLedgerFile(path));
+  }
+
+  /**
+   * Creates a new ledger on top of the given ledger file.
+   *
+   * @param file ledger file to append the records to.
+   */
+  public Ledger(MappedLedgerFile file) {
+    this.file = file;
+  }
+
+  /**
+   * Appends a block to the ledger.
+   *
+   * @param block block to append.
+   * @return entry of the block, to be passed to loadBlock.
+   */
+  public LedgerEntry appendBlock(Block block) {
+    long offset = this.file.append(BLOCK, serialize(block));
+    return new LedgerEntry(block.getId(), block.getHeight(), offset);
+  }
+
+  /**
+   * Appends a transaction to the ledger.
+   *
+   * @param transaction transaction to append.
+   * @param height      height of the ledger at the time the transaction is appended.
+   * @return entry of the transaction, to be passed to loadTransaction.
+   */
+  public LedgerEntry appendTransaction(Transaction transaction, int height) {
+    long offset = this.file.append(TRANSACTION, serialize(transaction));
+    return new LedgerEntry(transaction.getId(), height, offset);
+  }
+
+  /**
+   * Loads the block of the given entry from the ledger.
+   *
+   * @param entry entry of the block as returned by appendBlock.
+   * @return the block.
+   * @throws IllegalStateException if the entry does not refer to a block of this ledger.
+   */
+  public Block loadBlock(LedgerEntry entry) throws IllegalStateException {
+    return deserialize(this.file.read(entry.getOffset()), Block.class);
+  }
+
+  /**
+   * Loads the transaction of the given entry from the ledger.
+   *
+   * @param entry entry of the transaction as returned by appendTransaction.
+   * @return the transaction.
+   * @throws IllegalStateException if the entry does not refer to a transaction of this ledger.
+   */
+  public Transaction loadTransaction(LedgerEntry entry) throws IllegalStateException {
+    return deserialize(this.file.read(entry.getOffset()), Transaction.class);
+  }
+
+  public Path getPath() {
+    return this.file.getPath();
+  }
+
+  /**
+   * Flushes the ledger to the disk and closes it. The ledger file is kept.
+   */
+  @Override
+  public void close() {
+    this.file.close();
+  }
+
+  /**
+   * Replays a ledger file, e.g., for analysis after a simulation, passing its blocks and transactions in append order
+   * to the given consumers.
+   *
+   * @param path          path of the ledger file.
+   * @param onBlock       consumer of the blocks.
+   * @param onTransaction consumer of the transactions.
+   * @throws UncheckedIOException if the file cannot be read.
+   */
+  public static void replay(Path path, Consumer<Block> onBlock, Consumer<Transaction> onTransaction) throws UncheckedIOException {
+    MappedLedgerFile.scan(path, MappedLedgerFile.DEFAULT_SEGMENT_SIZE, (offset, type, payload) -> {
+      if (type == BLOCK) {
+        onBlock.accept(deserialize(payload, Block.class));
+      } else if (type == TRANSACTION) {
+        onTransaction.accept(deserialize(payload, Transaction.class));
+      } else {
+        throw new IllegalStateException("unknown ledger record type " + type + " at offset " + offset);
+      }
+    });
+  }
+
+  private static byte[] serialize(Object record) throws UncheckedIOException {
+    try (ByteArrayOutputStream bos = new ByteArrayOutputStream();
+         ObjectOutputStream out = new ObjectOutputStream(bos)) {
+      out.writeObject(record);
+      out.flush();
+      return bos.toByteArray();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static <T> T deserialize(byte[] bytes, Class<T> type) throws IllegalStateException {
+    try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
+         ObjectInputStream in = new ObjectInputStream(bis)) {
+      Object record = in.readObject();
+      if (!type.isInstance(record)) {
+        throw new IllegalStateException("ledger record is not an instance of " + type.getSimpleName());
+      }
+      return type.cast(record);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("could not decode ledger record", e);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package scenario.finalita.ledger;
+
+import node.Identifier;
+
+/**
+ * LedgerEntry is the in-memory index entry of a record in the ledger file. It only keeps what is needed to look the
+ * record up without loading it, i.e., the identifier and height of the record, and its offset in the ledger file.
+ */
+public class LedgerEntry {
+  private final Identifier id;
+  private final int height;
+  private final long offset;
+
+  /**
+   * Constructor of LedgerEntry.
+   *
+   * @param id     identifier of the record.
+   * @param height height of the record.
+   * @param offset offset of the record in the ledger file.
+   */
+  public LedgerEntry(Identifier id, int height, long offset) {
+    this.id = id;
+    this.height = height;
+    this.offset = offset;
+  }
+
+  public Identifier getId() {
+    return this.id;
+  }
+
+  public int getHeight() {
+    return this.height;
+  }
+
+  public long getOffset() {
+    return this.offset;
+  }
+}
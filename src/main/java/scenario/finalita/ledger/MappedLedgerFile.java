@@ -0,0 +1,247 @@
+package scenario.finalita.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MappedLedgerFile is an append-only file of typed records, memory-mapped in fixed size segments. A record is laid out
+ * as a one byte type, a four bytes payload length and the payload itself. Records never span two segments; when a
+ * record does not fit in the remainder of the current segment, a padding marker is written and the record starts at
+ * the next segment. The unwritten part of the file is zero-filled, hence a zero type marks the end of the ledger, which
+ * lets the file be scanned after the run without any external index.
+ * Appends are serialized, reads of already appended records are lock-free.
+ */
+public class MappedLedgerFile implements Closeable {
+  /**
+   * Default size of a mapped segment in bytes.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+  /**
+   * Type marker of the end of the ledger, i.e., the zero-filled unwritten part of the file.
+   */
+  public static final byte END = 0;
+  /**
+   * Type marker of the unused tail of a segment, the next record starts at the next segment.
+   */
+  public static final byte PADDING = -1;
+  private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+  private final FileChannel channel;
+  private final Path path;
+  private final int segmentSize;
+  private final ArrayList<MappedByteBuffer> segments;
+  private final ReentrantLock appendLock;
+  /**
+   * Offset of the next record to append, i.e., the number of bytes written so far including padding.
+   */
+  private volatile long size;
+
+  /**
+   * Creates a new ledger file at the given path with the default segment size. An existing file is truncated.
+   *
+   * @param path path of the ledger file.
+   * @throws UncheckedIOException if the file cannot be created.
+   */
+  public MappedLedgerFile(Path path) throws UncheckedIOException {
+    this(path, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Creates a new ledger file at the given path. An existing file is truncated.
+   *
+   * @param path        path of the ledger file.
+   * @param segmentSize size of each mapped segment in bytes, which also bounds the size of a single record.
+   * @throws UncheckedIOException if the file cannot be created.
+   */
+  public MappedLedgerFile(Path path, int segmentSize) throws UncheckedIOException {
+    if (segmentSize <= HEADER_SIZE) {
+      throw new IllegalArgumentException("segment size must be greater than the record header size: " + segmentSize);
+    }
+    this.path = path;
+    this.segmentSize = segmentSize;
+    this.segments = new ArrayList<>();
+    this.appendLock = new ReentrantLock();
+    try {
+      this.channel = FileChannel.open(path,
+                                      StandardOpenOption.CREATE,
+                                      StandardOpenOption.TRUNCATE_EXISTING,
+                                      StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not open ledger file " + path, e);
+    }
+  }
+
+  /**
+   * Appends a record to the ledger.
+   *
+   * @param type    type of the record, must be positive.
+   * @param payload payload of the record.
+   * @return offset of the record, to be passed to read.
+   * @throws IllegalArgumentException if the type is not positive, or the record does not fit in a segment.
+   * @throws UncheckedIOException     if the file cannot be extended.
+   */
+  public long append(byte type, byte[] payload) throws IllegalArgumentException, UncheckedIOException {
+    if (type <= 0) {
+      throw new IllegalArgumentException("record type must be positive: " + type);
+    }
+    int recordSize = HEADER_SIZE + payload.length;
+    if (recordSize > segmentSize) {
+      throw new IllegalArgumentException(String.format("record of %d bytes exceeds segment size %d", recordSize, segmentSize));
+    }
+
+    this.appendLock.lock();
+    try {
+      long offset = this.size;
+      int remaining = segmentSize - (int) (offset % segmentSize);
+      if (remaining < recordSize) {
+        // record does not fit, pads the rest of the segment and moves to the next one.
+        segment(offset).put((int) (offset % segmentSize), PADDING);
+        offset += remaining;
+      }
+
+      ByteBuffer buffer = segment(offset).duplicate();
+      buffer.position((int) (offset % segmentSize));
+      buffer.put(type);
+      buffer.putInt(payload.length);
+      buffer.put(payload);
+
+      this.size = offset + recordSize;
+      return offset;
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  /**
+   * Reads the payload of the record at the given offset.
+   *
+   * @param offset offset of the record as returned by append.
+   * @return payload of the record.
+   * @throws IllegalArgumentException if there is no record at the given offset.
+   */
+  public byte[] read(long offset) throws IllegalArgumentException {
+    if (offset < 0 || offset >= this.size) {
+      throw new IllegalArgumentException("no record at offset " + offset);
+    }
+    ByteBuffer buffer = segment(offset).duplicate();
+    buffer.position((int) (offset % segmentSize));
+    if (buffer.get() <= 0) {
+      throw new IllegalArgumentException("no record at offset " + offset);
+    }
+    byte[] payload = new byte[buffer.getInt()];
+    buffer.get(payload);
+    return payload;
+  }
+
+  /**
+   * Returns the number of bytes written to the ledger so far, including padding.
+   *
+   * @return the number of bytes written to the ledger so far.
+   */
+  public long size() {
+    return this.size;
+  }
+
+  public Path getPath() {
+    return this.path;
+  }
+
+  /**
+   * Flushes the mapped segments to the disk and closes the file.
+   *
+   * @throws UncheckedIOException if the file cannot be closed.
+   */
+  @Override
+  public void close() throws UncheckedIOException {
+    this.appendLock.lock();
+    try {
+      synchronized (this.segments) {
+        for (MappedByteBuffer segment : this.segments) {
+          segment.force();
+        }
+      }
+      this.channel.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not close ledger file " + path, e);
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  /**
+   * Returns the mapped segment containing the given offset, mapping new segments as needed.
+   */
+  private MappedByteBuffer segment(long offset) throws UncheckedIOException {
+    int index = (int) (offset / segmentSize);
+    synchronized (this.segments) {
+      while (this.segments.size() <= index) {
+        try {
+          this.segments.add(this.channel.map(FileChannel.MapMode.READ_WRITE,
+                                             (long) this.segments.size() * segmentSize,
+                                             segmentSize));
+        } catch (IOException e) {
+          throw new UncheckedIOException("could not map ledger segment " + this.segments.size(), e);
+        }
+      }
+      return this.segments.get(index);
+    }
+  }
+
+  /**
+   * Scans a ledger file written by MappedLedgerFile, e.g., for analysis after a simulation, and passes every record to
+   * the given visitor in append order.
+   *
+   * @param path        path of the ledger file.
+   * @param segmentSize segment size the ledger was written with.
+   * @param visitor     visitor receiving the records.
+   * @throws UncheckedIOException if the file cannot be read.
+   */
+  public static void scan(Path path, int segmentSize, RecordVisitor visitor) throws UncheckedIOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long fileSize = channel.size();
+      for (long segmentStart = 0; segmentStart < fileSize; segmentStart += segmentSize) {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                                        segmentStart,
+                                        Math.min(segmentSize, fileSize - segmentStart));
+        while (buffer.hasRemaining()) {
+          long offset = segmentStart + buffer.position();
+          byte type = buffer.get();
+          if (type == END) {
+            return;
+          }
+          if (type == PADDING) {
+            break;
+          }
+          byte[] payload = new byte[buffer.getInt()];
+          buffer.get(payload);
+          visitor.visit(offset, type, payload);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not scan ledger file " + path, e);
+    }
+  }
+
+  /**
+   * Receives the records of a scanned ledger file.
+   */
+  public interface RecordVisitor {
+    /**
+     * Is invoked for each record of the ledger in append order.
+     *
+     * @param offset  offset of the record.
+     * @param type    type of the record.
+     * @param payload payload of the record.
+     */
+    void visit(long offset, byte type, byte[] payload);
+  }
+}
@@ -1,24 +1,23 @@
 package scenario.finalita.metrics;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import node.Identifier;
 
 /**
- * Collects the identifiers of unique blocks at each height.
+ * Collects the identifiers of unique blocks at each height. The inventory is shared by all nodes of the simulation,
+ * hence it is backed by concurrent per-height sets instead of a single lock, so that nodes finalizing blocks at
+ * different heights (or different blocks at the same height) do not serialize on each other.
  */
 public class BlockInventory {
   private static final BlockInventory instance = new BlockInventory();
-  private final HashMap<Integer, List<Identifier>> inventory;
-  private final ReentrantLock lock;
+  private final ConcurrentHashMap<Integer, Height> inventory;
 
   private BlockInventory() {
-    this.inventory = new HashMap<>();
-    this.lock = new ReentrantLock();
+    this.inventory = new ConcurrentHashMap<>();
   }
 
   @SuppressFBWarnings(value = "MS_EXPOSE_REP", justification = "instance is exposed externally")
@@ -34,20 +33,25 @@ public class BlockInventory {
    * @return true if there is no duplicate block with the same identifier at the same height, and false otherwise.
    */
   public boolean addBlock(int height, Identifier id) {
-    lock.lock();
-    try {
-      if (!inventory.containsKey(height)) {
-        inventory.put(height, new ArrayList<>());
-      }
-      if (inventory.get(height).contains(id)) {
-        // Block already exists.
-        return false;
-      }
-      inventory.get(height).add(id);
-    } finally {
-      lock.unlock();
+    return addUniqueBlock(height, id) > 0;
+  }
+
+  /**
+   * Adds a block to the inventory and returns the number of unique blocks at its height right after the insertion.
+   * As opposed to calling addBlock followed by getBlockCount, the returned count is taken atomically with the
+   * insertion, hence each unique count is returned exactly once even when several nodes add blocks concurrently.
+   *
+   * @param height block height.
+   * @param id     block id.
+   * @return the number of unique blocks at the given height including this block, or 0 if the block is a duplicate.
+   */
+  public int addUniqueBlock(int height, Identifier id) {
+    Height entry = inventory.computeIfAbsent(height, h -> new Height());
+    if (!entry.ids.add(id)) {
+      // Block already exists.
+      return 0;
     }
-    return true;
+    return entry.count.incrementAndGet();
   }
 
   /**
@@ -57,14 +61,18 @@ public class BlockInventory {
    * @return the number of unique blocks at the given height.
    */
   public int getBlockCount(int height) {
-    lock.lock();
-    try {
-      if (!inventory.containsKey(height)) {
-        return 0;
-      }
-      return inventory.get(height).size();
-    } finally {
-      lock.unlock();
+    Height entry = inventory.get(height);
+    if (entry == null) {
+      return 0;
     }
+    return entry.count.get();
+  }
+
+  /**
+   * Unique block identifiers of a single height, along with their incrementally maintained count.
+   */
+  private static class Height {
+    private final Set<Identifier> ids = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger count = new AtomicInteger();
   }
 }
@@ -60,10 +60,10 @@ public class LightChainMetrics {
   public void onNewFinalizedBlock(int blockHeight, Identifier blockId, Identifier nodeId) {
     this.finalizedBlockHeightPerNode.set(nodeId, blockHeight);
 
-    boolean unique = BlockInventory.getInstance().addBlock(blockHeight, blockId);
-    if (unique) {
+    int uniqueCount = BlockInventory.getInstance().addUniqueBlock(blockHeight, blockId);
+    if (uniqueCount > 0) {
       // If the block is unique, we increment the total number of unique blocks per height in the system.
-      this.blockIdsPerHeight.observe(BlockInventory.getInstance().getBlockCount(blockHeight));
+      this.blockIdsPerHeight.observe(uniqueCount);
     }
   }
 
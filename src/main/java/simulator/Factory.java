@@ -3,19 +3,36 @@ package simulator;
 import java.util.ArrayList;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import utils.random.RandomStreams;
 
 /**
  * Factory supports creating several types of nodes each with a certain instances.
  */
 public class Factory {
   private final ArrayList<Recipe> recipes;
+  private final RandomStreams randomStreams;
   private int total;
 
   /**
-   * Constructor of factory, creates an empty one.
+   * Constructor of factory, creates an empty one whose simulation seed is set through RandomStreams.SEED_PROPERTY, or
+   * picked at random if the property is unset.
    */
   public Factory() {
+    this(RandomStreams.fromProperty());
+  }
+
+  /**
+   * Constructor of factory, creates an empty one with the given simulation seed, e.g., for reproducible benchmarks.
+   *
+   * @param seed seed all the random streams of the simulation are derived from.
+   */
+  public Factory(long seed) {
+    this(new RandomStreams(seed));
+  }
+
+  private Factory(RandomStreams randomStreams) {
     this.recipes = new ArrayList<>();
+    this.randomStreams = randomStreams;
     this.total = 0;
   }
 
@@ -39,4 +56,8 @@ public class Factory {
   public int getTotalNodes() {
     return this.total;
   }
+
+  public RandomStreams getRandomStreams() {
+    return this.randomStreams;
+  }
 }
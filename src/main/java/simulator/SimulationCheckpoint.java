@@ -0,0 +1,178 @@
+package simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import network.model.Message;
+import node.Identifier;
+import utils.SharedVariable;
+
+/**
+ * SimulationCheckpoint is a consistent snapshot of the state of a simulation: the identifiers of the nodes, which of
+ * them are online and the remaining length of their sessions, the snapshots of the nodes which opted in through
+ * BaseNode.onSnapshot, the queues of the shared variables, and the messages in flight to each node. It is written by Simulator.checkpoint, and a simulation
+ * resumes from it through Simulator.resume; a checkpoint can be resumed many times, e.g., to fork experiments off a
+ * single warm-up.
+ *
+ * <p>The nodes are quiesced while the checkpoint is taken, see Network.quiesce: the messages in flight are the ones they
+ * receive meanwhile, which were sent before the snapshots of their senders and arrive after the snapshots of their
+ * receivers. They are delivered again on resume.
+ */
+public final class SimulationCheckpoint implements Serializable {
+  /**
+   * Version of the checkpoint format, a checkpoint of another version cannot be resumed.
+   */
+  public static final int VERSION = 2;
+  /**
+   * Remaining session length of the nodes with no scheduled departure.
+   */
+  public static final long NO_SESSION = -1;
+  private static final long serialVersionUID = 1L;
+
+  private final int version;
+  private final long elapsedMs;
+  private final ArrayList<Identifier> identifiers;
+  private final boolean[] online;
+  private final long[] remainingSessionMs;
+  private final Serializable[] nodeSnapshots;
+  private final SharedVariable.Snapshot sharedVariables;
+  private final ArrayList<ArrayList<Message>> inFlightMessages;
+
+  /**
+   * Creates a checkpoint, all arrays are indexed like the identifiers.
+   *
+   * @param elapsedMs          simulated time elapsed since the beginning of the simulation in milliseconds.
+   * @param identifiers        identifiers of the nodes.
+   * @param online             whether each node is online.
+   * @param remainingSessionMs remaining session length of each node in milliseconds, or NO_SESSION.
+   * @param nodeSnapshots      snapshot of each node, or null for nodes with no snapshot.
+   * @param sharedVariables    snapshot of the shared variables.
+   * @param inFlightMessages   messages in flight to each node, in the order of their arrival.
+   * @throws IllegalArgumentException if the arrays are not as many as the nodes.
+   */
+  public SimulationCheckpoint(long elapsedMs,
+                              List<Identifier> identifiers,
+                              boolean[] online,
+                              long[] remainingSessionMs,
+                              Serializable[] nodeSnapshots,
+                              SharedVariable.Snapshot sharedVariables,
+                              List<? extends List<Message>> inFlightMessages) throws IllegalArgumentException {
+    int n = identifiers.size();
+    if (online.length != n || remainingSessionMs.length != n || nodeSnapshots.length != n || inFlightMessages.size() != n) {
+      throw new IllegalArgumentException("checkpoint arrays must be as many as the nodes: " + n);
+    }
+    this.version = VERSION;
+    this.elapsedMs = elapsedMs;
+    this.identifiers = new ArrayList<>(identifiers);
+    this.online = online.clone();
+    this.remainingSessionMs = remainingSessionMs.clone();
+    this.nodeSnapshots = nodeSnapshots.clone();
+    this.sharedVariables = sharedVariables;
+    this.inFlightMessages = new ArrayList<>(n);
+    for (List<Message> messages : inFlightMessages) {
+      this.inFlightMessages.add(new ArrayList<>(messages));
+    }
+  }
+
+  /**
+   * Writes the checkpoint to the given file. The checkpoint is written to a temporary file first, which then replaces
+   * the given file, so a crash while writing leaves the previous checkpoint intact.
+   *
+   * @param file the checkpoint file.
+   * @throws UncheckedIOException if the checkpoint cannot be written, e.g., a node snapshot is not serializable.
+   */
+  public void write(Path file) throws UncheckedIOException {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      Path dir = file.toAbsolutePath().getParent();
+      if (dir != null) {
+        Files.createDirectories(dir);
+      }
+      try (OutputStream out = Files.newOutputStream(tmp);
+           ObjectOutputStream objects = new ObjectOutputStream(out)) {
+        objects.writeObject(this);
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not write checkpoint to " + file, e);
+    }
+  }
+
+  /**
+   * Reads a checkpoint from the given file.
+   *
+   * @param file the checkpoint file.
+   * @return the checkpoint.
+   * @throws UncheckedIOException  if the checkpoint cannot be read.
+   * @throws IllegalStateException if the file is not a checkpoint of the current version.
+   */
+  public static SimulationCheckpoint read(Path file) throws UncheckedIOException, IllegalStateException {
+    Object checkpoint;
+    try (InputStream in = Files.newInputStream(file);
+         ObjectInputStream objects = new ObjectInputStream(in)) {
+      checkpoint = objects.readObject();
+    } catch (InvalidClassException e) {
+      throw new IllegalStateException("checkpoint " + file + " was written by an incompatible version", e);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("checkpoint " + file + " refers to an unknown class", e);
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not read checkpoint from " + file, e);
+    }
+    if (!(checkpoint instanceof SimulationCheckpoint)) {
+      throw new IllegalStateException(file + " is not a simulation checkpoint");
+    }
+    SimulationCheckpoint c = (SimulationCheckpoint) checkpoint;
+    if (c.version != VERSION) {
+      throw new IllegalStateException("checkpoint " + file + " has version " + c.version + ", expected " + VERSION);
+    }
+    return c;
+  }
+
+  public long getElapsedMs() {
+    return elapsedMs;
+  }
+
+  /**
+   * Returns the number of nodes of the checkpoint.
+   *
+   * @return the number of nodes.
+   */
+  public int size() {
+    return this.identifiers.size();
+  }
+
+  public ArrayList<Identifier> getIdentifiers() {
+    return new ArrayList<>(identifiers);
+  }
+
+  public boolean isOnline(int index) {
+    return online[index];
+  }
+
+  public long getRemainingSessionMs(int index) {
+    return remainingSessionMs[index];
+  }
+
+  public Serializable getNodeSnapshot(int index) {
+    return nodeSnapshots[index];
+  }
+
+  public SharedVariable.Snapshot getSharedVariables() {
+    return sharedVariables;
+  }
+
+  public ArrayList<Message> getInFlightMessages(int index) {
+    return new ArrayList<>(inFlightMessages.get(index));
+  }
+}
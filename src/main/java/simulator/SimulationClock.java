@@ -0,0 +1,126 @@
+package simulator;
+
+/**
+ * SimulationClock is the modelled clock of real-time simulations. The modelled time runs timeScale times faster than
+ * the wall clock, e.g., a scale of 10 fits 10 modelled minutes into one minute, while keeping all the modelled
+ * durations in proportion: the simulated latencies, the churn timings, and the sleeps of the nodes. Timestamps and
+ * metrics are taken on the modelled clock; the scale defaults to 1, i.e., modelled time is wall-clock time.
+ *
+ * <p>The scale is meant to be set before the simulation starts, either through TIME_SCALE_PROPERTY or setTimeScale; a
+ * faster scale leaves less wall-clock time to the nodes to handle each message, hence it is bounded in practice by how
+ * fast the host runs the handlers.
+ */
+public final class SimulationClock {
+  /**
+   * System property of the time scale, i.e., how many times faster than the wall clock the modelled time runs.
+   */
+  public static final String TIME_SCALE_PROPERTY = "opera.time.scale";
+  private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+  private static volatile Timeline timeline = new Timeline(System.nanoTime(), System.nanoTime(), scaleProperty());
+
+  private SimulationClock() {
+  }
+
+  /**
+   * Returns the time scale.
+   *
+   * @return how many times faster than the wall clock the modelled time runs.
+   */
+  public static double getTimeScale() {
+    return timeline.scale;
+  }
+
+  /**
+   * Sets the time scale. The modelled clock carries on from its current time at the new pace.
+   *
+   * @param scale how many times faster than the wall clock the modelled time runs.
+   * @throws IllegalArgumentException if the scale is not a positive number.
+   */
+  public static synchronized void setTimeScale(double scale) throws IllegalArgumentException {
+    checkScale(scale, TIME_SCALE_PROPERTY);
+    long wall = System.nanoTime();
+    timeline = new Timeline(wall, timeline.modelledAt(wall), scale);
+  }
+
+  /**
+   * Returns the current time of the modelled clock. Like System.nanoTime, its origin is arbitrary, hence only the
+   * difference between two of its values is meaningful.
+   *
+   * @return the current modelled time in nanoseconds.
+   */
+  public static long nanoTime() {
+    return timeline.modelledAt(System.nanoTime());
+  }
+
+  /**
+   * Converts a modelled duration into the wall-clock duration it lasts.
+   *
+   * @param modelledMs modelled duration in milliseconds.
+   * @return wall-clock duration in nanoseconds.
+   */
+  public static long toWallNanos(double modelledMs) {
+    return (long) (modelledMs * NANOS_PER_MILLI / timeline.scale);
+  }
+
+  /**
+   * Converts a wall-clock duration into the modelled duration it stands for.
+   *
+   * @param wallNanos wall-clock duration in nanoseconds.
+   * @return modelled duration in milliseconds.
+   */
+  public static double toModelledMillis(long wallNanos) {
+    return wallNanos * timeline.scale / NANOS_PER_MILLI;
+  }
+
+  /**
+   * Sleeps the calling thread for a modelled duration.
+   *
+   * @param modelledMs modelled duration in milliseconds.
+   * @throws InterruptedException if the calling thread is interrupted.
+   */
+  public static void sleep(double modelledMs) throws InterruptedException {
+    long nanos = toWallNanos(modelledMs);
+    if (nanos > 0) {
+      Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+    }
+  }
+
+  private static double scaleProperty() throws IllegalArgumentException {
+    String value = System.getProperty(TIME_SCALE_PROPERTY);
+    if (value == null) {
+      return 1;
+    }
+    try {
+      return checkScale(Double.parseDouble(value), TIME_SCALE_PROPERTY);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(TIME_SCALE_PROPERTY + " must be a positive number: " + value, e);
+    }
+  }
+
+  private static double checkScale(double scale, String name) throws IllegalArgumentException {
+    if (!(scale > 0) || Double.isInfinite(scale)) {
+      throw new IllegalArgumentException(name + " must be a positive number: " + scale);
+    }
+    return scale;
+  }
+
+  /**
+   * Maps the wall clock to the modelled clock from a common origin, swapped as a whole when the scale changes.
+   */
+  private static final class Timeline {
+    private final long wallOrigin;
+    private final long modelledOrigin;
+    private final double scale;
+
+    private Timeline(long wallOrigin, long modelledOrigin, double scale) {
+      this.wallOrigin = wallOrigin;
+      this.modelledOrigin = modelledOrigin;
+      this.scale = scale;
+    }
+
+    private long modelledAt(long wall) {
+      return this.modelledOrigin + (long) ((wall - this.wallOrigin) * this.scale);
+    }
+  }
+}
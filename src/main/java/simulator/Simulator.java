@@ -1,31 +1,63 @@
 package simulator;
 
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.net.Inet4Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.PriorityQueue;
-import java.util.Random;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import metrics.integration.MetricServer;
-import metrics.integration.MetricsNetwork;
+import jdk.jfr.Recording;
+import metrics.MetricsConfig;
+import metrics.integration.MetricsBackend;
+import metrics.integration.MetricsBackendFactory;
+import metrics.opera.OperaPercentileHistogram;
+import modules.jfr.ChurnEvent;
+import modules.jfr.OperaFlightRecorder;
 import modules.logger.Logger;
 import modules.logger.OperaLogger;
+import modules.tracing.ChromeTraceExporter;
+import modules.tracing.CriticalPathAnalyzer;
+import modules.tracing.Span;
+import modules.tracing.SpanRingBuffer;
+import modules.tracing.Tracer;
 import network.NetworkProtocol;
+import network.OperaMiddlewareCollector;
 import network.UnderlayFactory;
+import network.latency.LatencyGenerator;
 import network.local.LocalUnderlay;
+import network.model.Message;
 import node.BaseNode;
 import node.Identifier;
 import node.IdentifierGenerator;
-import utils.SimpleEntryComparable;
+import node.NodeDirectory;
+import utils.SharedVariable;
 import utils.churn.ChurnGenerator;
+import utils.random.RandomStreams;
 
 /**
  * Simulator simulates situations between nodes with actions performed between the nodes.
@@ -33,29 +65,118 @@ import utils.churn.ChurnGenerator;
  * Simulator can simulate in two ways: churn-based, time-based.
  */
 public class Simulator implements Orchestrator {
-  private static final Random rand = new Random();
+  /**
+   * System property of the number of threads bootstrapping the nodes, the number of processors by default.
+   */
+  public static final String BOOTSTRAP_THREADS_PROPERTY = "opera.bootstrap.threads";
+  /**
+   * System property of the file the simulation is periodically checkpointed to, no checkpoint is taken if unset.
+   */
+  public static final String CHECKPOINT_FILE_PROPERTY = "opera.checkpoint.file";
+  /**
+   * System property of the period of the checkpoints in milliseconds.
+   */
+  public static final String CHECKPOINT_INTERVAL_PROPERTY = "opera.checkpoint.interval.ms";
+  /**
+   * System property of the port after which the ports of the nodes are allocated, e.g., so that concurrent simulations
+   * on the same host do not collide.
+   */
+  public static final String START_PORT_PROPERTY = "opera.ports.start";
   private static final Logger log = OperaLogger.getLoggerForSimulator(Simulator.class.getName());
+  /**
+   * Number of the longest critical paths of message traces logged on termination.
+   */
+  private static final int CRITICAL_PATH_REPORT_LIMIT = 10;
+  /**
+   * Timeout for the churn scheduler to stop at the end of a churn simulation in milliseconds.
+   */
+  private static final long CHURN_SHUTDOWN_TIMEOUT_MS = 1000;
+  /**
+   * Number of chunks of nodes per bootstrap thread, more chunks balance uneven node creation costs.
+   */
+  private static final int BOOTSTRAP_CHUNKS_PER_THREAD = 4;
+  /**
+   * Timeout for waiting for all nodes to be ready is READY_TIMEOUT_BASE_MS plus READY_TIMEOUT_PER_NODE_MS per node.
+   */
+  private static final long READY_TIMEOUT_BASE_MS = 1000;
+  private static final long READY_TIMEOUT_PER_NODE_MS = 1;
+  private static final long DEFAULT_CHECKPOINT_INTERVAL_MS = 60_000;
+  /**
+   * Modelled time in milliseconds a checkpoint waits for the running handlers and timer tasks of the nodes to return.
+   */
+  private static final long QUIESCE_TIMEOUT_MS = 1000;
+  private static final int DEFAULT_START_PORT = 2000;
   /**
    * Timeout for waiting for all nodes to be ready in milliseconds.
    */
-  private final int readyTimeoutMs = 1000;
+  private final long readyTimeoutMs;
   private final ArrayList<Identifier> allId;
-  private final HashMap<Identifier, InetSocketAddress> allFullAddresses;
-  private final HashMap<InetSocketAddress, Boolean> isReady;
+  /**
+   * Directory of all the nodes, shared by all the networks, the following arrays are indexed like it.
+   */
+  private final NodeDirectory directory;
+  /**
+   * 1 if the node is ready, 0 otherwise.
+   */
+  private final AtomicIntegerArray isReady;
   private final Factory factory;
+  /**
+   * Random streams of the simulation, derived from the seed of the factory.
+   */
+  private final RandomStreams randomStreams;
+  /**
+   * Picks the offline node of each arrival, confined to the churn thread.
+   */
+  private final SplittableRandom arrivalRandom;
+  /**
+   * Nodes which left the simulation, guarded by its own lock since nodes may leave on their own threads.
+   */
   private final ArrayList<Identifier> offlineNodes = new ArrayList<>();
   private final CountDownLatch allNodesReady;
   // TODO: do we need this? we already have allNetworks
   private final HashMap<InetSocketAddress, LocalUnderlay> allLocalUnderlay = new HashMap<>();
   private final SimulatorMetricsCollector simulatorMetricsCollector;
-  private final MetricsNetwork metricsNetwork;
-  private final MetricServer metricServer;
+  private final MetricsBackend metricsBackend;
 
   /**
    * All the network instances of the nodes in the simulation.
    */
-  private HashMap<InetSocketAddress, network.Network> allNetworks;
-  private PriorityQueue<SimpleEntryComparable<Double, Identifier>> onlineNodes = new PriorityQueue<>();
+  private network.Network[] allNetworks;
+  /**
+   * Nodes online in a churn simulation, with their scheduled departure.
+   */
+  private final ConcurrentHashMap<Identifier, ScheduledFuture<?>> onlineNodes = new ConcurrentHashMap<>();
+  /**
+   * Scheduler of the departures and arrivals of a churn simulation, all of which run on its single thread.
+   */
+  private volatile ScheduledExecutorService churnScheduler;
+  private ChurnGenerator sessionLengthGenerator;
+  private ChurnGenerator interArrivalGenerator;
+  /**
+   * True if an arrival found no offline node, it then happens as soon as a node goes offline. Guarded by offlineNodes.
+   */
+  private boolean arrivalPending;
+  /**
+   * Whether the simulation is ending, in which case stopped nodes terminate their underlays rather than suspend them.
+   */
+  private volatile boolean terminating;
+  /**
+   * Flight recording of the Opera events, if requested through OperaFlightRecorder.RECORDING_FILE_PROPERTY.
+   */
+  private Recording recording;
+  /**
+   * Checkpoint the simulation resumes from, or null for a new simulation.
+   */
+  private final SimulationCheckpoint resumedFrom;
+  /**
+   * Metrics mode and group resolver in force before this simulator configured its own, restored on termination.
+   */
+  private MetricsConfig.Mode previousMetricsMode;
+  private Function<Identifier, String> previousGroupResolver;
+  /**
+   * Time at which the nodes were started, on the modelled clock of SimulationClock.
+   */
+  private volatile long startNanos;
 
   /**
    * Initializes a new simulation.
@@ -64,101 +185,203 @@ public class Simulator implements Orchestrator {
    * @param networkType the type of simulated communication protocol(**tcp**, **javarmi**,
    *                    **udp**, and **mockNetwork*)
    */
-  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "factory is externally mutable")
   public Simulator(Factory factory, NetworkProtocol networkType) {
+    this(factory, networkType, null);
+  }
+
+  @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "factory is externally mutable")
+  private Simulator(Factory factory, NetworkProtocol networkType, SimulationCheckpoint resumedFrom) {
     this.factory = factory;
-    this.isReady = new HashMap<>();
-    int startPort = 2000;
-    this.allId = generateIds(factory.getTotalNodes());
-    this.allFullAddresses = generateFullAddressed(factory.getTotalNodes(), startPort + 1);
-    this.metricsNetwork = new MetricsNetwork();
-    this.metricServer = new MetricServer();
+    this.resumedFrom = resumedFrom;
+    this.randomStreams = factory.getRandomStreams();
+    this.arrivalRandom = this.randomStreams.split(RandomStreams.ARRIVALS);
+    log.info("simulation seed is {}, set {} to reproduce this simulation", this.randomStreams.getSeed(), RandomStreams.SEED_PROPERTY);
+    if (SimulationClock.getTimeScale() != 1) {
+      log.info("simulation runs {} times faster than modelled time", SimulationClock.getTimeScale());
+    }
+    this.isReady = new AtomicIntegerArray(factory.getTotalNodes());
+    int startPort = Integer.getInteger(START_PORT_PROPERTY, DEFAULT_START_PORT);
+    this.allId = resumedFrom == null ? generateIds(factory.getTotalNodes()) : resumedFrom.getIdentifiers();
+    this.directory = generateDirectory(factory.getTotalNodes(), startPort + 1);
+    this.configureMetrics();
+    this.metricsBackend = MetricsBackendFactory.newBackend();
 
     allNodesReady = new CountDownLatch(factory.getTotalNodes());
+    this.readyTimeoutMs = READY_TIMEOUT_BASE_MS + READY_TIMEOUT_PER_NODE_MS * factory.getTotalNodes();
     this.simulatorMetricsCollector = new SimulatorMetricsCollector();
     this.generateNodesInstances(networkType);
   }
 
   /**
-   * Generate new random identifier for the nodes.
+   * Initializes a simulation resuming from a checkpoint. The nodes get the identifiers they had in the checkpoint, and
+   * once started, the nodes online in the checkpoint are restored and started, while the others stay offline; a churn
+   * simulation resumes the sessions of the nodes where the checkpoint left them.
+   *
+   * @param factory     factory object to create nodes based on inventory, same as the one of the checkpoint.
+   * @param networkType the type of simulated communication protocol.
+   * @param file        the checkpoint file written by checkpoint.
+   * @return the resumed simulation.
+   * @throws IllegalArgumentException if the checkpoint does not have as many nodes as the factory.
+   * @throws IllegalStateException    if the file is not a checkpoint of the current version.
+   * @throws UncheckedIOException     if the checkpoint cannot be read.
+   */
+  public static Simulator resume(Factory factory, NetworkProtocol networkType, Path file) throws IllegalArgumentException,
+      IllegalStateException, UncheckedIOException {
+    SimulationCheckpoint checkpoint = SimulationCheckpoint.read(file);
+    if (checkpoint.size() != factory.getTotalNodes()) {
+      throw new IllegalArgumentException("checkpoint has " + checkpoint.size() + " nodes, factory has " + factory.getTotalNodes());
+    }
+    log.info("resuming simulation of {} nodes from checkpoint {} at {} ms", checkpoint.size(), file, checkpoint.getElapsedMs());
+    return new Simulator(factory, networkType, checkpoint);
+  }
+
+  /**
+   * Generate new random identifier for the nodes, drawn from the seed of the simulation.
    *
    * @param n number of nodes
    * @return ArrayList of random n ids
    */
   private ArrayList<Identifier> generateIds(int n) {
     log.info("generating identifiers of {} nodes for simulation", n);
-
-    ArrayList<Identifier> identifiers = new ArrayList<>();
-    for (int i = 0; i < n; i++) {
-      Identifier id = IdentifierGenerator.newIdentifier();
-      log.info("generated identifier {} for node#{}", id, i);
-      identifiers.add(id);
-    }
-
-    return identifiers;
+    return IdentifierGenerator.newIdentifiers(n, this.randomStreams.random(RandomStreams.IDENTIFIERS));
   }
 
   /**
-   * Creates identifier and address mapping for the nodes.
+   * Creates the directory of the nodes, i.e., their identifier, address and name space by index.
    *
    * @param n         number of nodes in the simulation.
    * @param startPort starting port for the nodes.
-   * @return HashMap of identifier to address mapping.
+   * @return directory of the nodes.
    */
-  private HashMap<Identifier, InetSocketAddress> generateFullAddressed(int n, int startPort) {
+  private NodeDirectory generateDirectory(int n, int startPort) {
     log.info("generating full addresses of {} nodes for simulation", n);
 
-    HashMap<Identifier, InetSocketAddress> identifierToAddress = new HashMap<>();
+    ArrayList<InetSocketAddress> addresses = new ArrayList<>(n);
     try {
       // TODO: replace with localhost.
-      String address = Inet4Address.getLocalHost().getHostAddress();
+      InetAddress address = InetAddress.getByName(Inet4Address.getLocalHost().getHostAddress());
       for (int i = 0; i < n; i++) {
-        identifierToAddress.put(allId.get(i), new InetSocketAddress(address, startPort + i));
+        addresses.add(new InetSocketAddress(address, startPort + i));
       }
     } catch (UnknownHostException e) {
       log.fatal("failed to get localhost address", e);
     }
-    return identifierToAddress;
+
+    ArrayList<String> nameSpaces = new ArrayList<>(n);
+    for (Recipe r : this.factory.getRecipes()) {
+      for (int i = 0; i < r.getTotal(); i++) {
+        nameSpaces.add(r.getNameSpace());
+      }
+    }
+    return new NodeDirectory(this.allId, addresses, nameSpaces);
   }
 
   /**
-   * Generate new instances for the nodes and add them to the network.
+   * Generate new instances for the nodes and add them to the network. The networks, nodes and underlays are built in
+   * parallel on a bounded pool, hence recipes must support concurrent calls to newInstance; once all of them are
+   * built, the onCreate of the nodes is run on the same pool.
    */
   private void generateNodesInstances(NetworkProtocol networkType) {
-    this.allNetworks = new HashMap<>();
-
-    // generate nodes, and middle layers instances
+    int n = this.factory.getTotalNodes();
+    Recipe[] recipes = new Recipe[n];
     int globalIndex = 0;
     for (Recipe r : this.factory.getRecipes()) {
       for (int i = 0; i < r.getTotal(); i++) {
-        Identifier id = allId.get(globalIndex++);
+        recipes[globalIndex++] = r;
+      }
+    }
 
-        isReady.put(this.allFullAddresses.get(id), false);
-        network.Network network = new network.Network(id, this.allFullAddresses, this);
+    int threads = bootstrapThreads();
+    log.info("bootstrapping {} nodes on {} threads", n, threads);
+    ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger();
 
-        BaseNode node = r.getBaseNode().newInstance(id, r.getNameSpace(), network);
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "bootstrap-" + count.getAndIncrement());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    // generate nodes, middle layers and underlays instances, each task writes the slots of its own nodes only.
+    network.Network[] networks = new network.Network[n];
+    // seeded latencies are computed rather than cached, hence a single generator serves all the networks.
+    LatencyGenerator latencyGenerator = new LatencyGenerator(this.randomStreams.seedOf(RandomStreams.LATENCY));
+    try {
+      forEachInParallel(pool, threads, n, i -> {
+        Identifier id = this.directory.getIdentifier(i);
+        InetSocketAddress address = this.directory.getAddress(i);
+        network.Network network = new network.Network(id, this.directory, this, latencyGenerator);
+        network.setRandom(this.randomStreams.random(RandomStreams.NODE, i));
+        BaseNode node = recipes[i].getBaseNode().newInstance(id, recipes[i].getNameSpace(), network);
         network.setNode(node);
-        this.allNetworks.put(this.allFullAddresses.get(id), network);
+        if (networkType != NetworkProtocol.MOCK_NETWORK) {
+          network.setUnderlay(UnderlayFactory.newUnderlay(networkType, address.getPort(), network));
+        } else {
+          network.setUnderlay(UnderlayFactory.createMockUnderlay(address, network));
+        }
+        networks[i] = network;
+      });
+    } catch (IllegalStateException e) {
+      pool.shutdownNow();
+      throw e;
+    }
+
+    this.allNetworks = networks;
+    if (networkType == NetworkProtocol.MOCK_NETWORK) {
+      for (int i = 0; i < n; i++) {
+        allLocalUnderlay.put(this.directory.getAddress(i), (LocalUnderlay) networks[i].getUnderlay());
       }
     }
 
-    // generate new underlays and assign them to the nodes middles layers.
-    for (Map.Entry<InetSocketAddress, network.Network> node : this.allNetworks.entrySet()) {
-      network.Network network = node.getValue();
-      InetSocketAddress address = node.getKey();
-      int port = node.getKey().getPort();
-      if (networkType != NetworkProtocol.MOCK_NETWORK) {
-        network.setUnderlay(UnderlayFactory.newUnderlay(networkType, port, network));
-      } else {
-        LocalUnderlay underlay = UnderlayFactory.createMockUnderlay(address, network);
-        network.setUnderlay(underlay);
-        allLocalUnderlay.put(node.getKey(), underlay);
+    // call the node onCreat method of the nodes, the pool winds down once all of them returned.
+    for (network.Network network : networks) {
+      network.create(this.allId, pool);
+    }
+    pool.shutdown();
+  }
+
+  /**
+   * Runs the action on every index from 0 to n, split in chunks across the pool, and waits for all of them.
+   *
+   * @throws IllegalStateException if an action fails, or the calling thread is interrupted.
+   */
+  private static void forEachInParallel(ExecutorService pool, int threads, int n, IntConsumer action) throws IllegalStateException {
+    int chunk = Math.max(1, (n + threads * BOOTSTRAP_CHUNKS_PER_THREAD - 1) / (threads * BOOTSTRAP_CHUNKS_PER_THREAD));
+    List<Future<?>> futures = new ArrayList<>();
+    for (int start = 0; start < n; start += chunk) {
+      int from = start;
+      int to = Math.min(n, start + chunk);
+      futures.add(pool.submit(() -> {
+        for (int i = from; i < to; i++) {
+          action.accept(i);
+        }
+      }));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
       }
-      // call the node onCreat method of the nodes
-      network.create(this.allId);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while bootstrapping nodes", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("failed to bootstrap nodes", e.getCause());
     }
   }
 
+  /**
+   * Returns the number of bootstrap threads, i.e., BOOTSTRAP_THREADS_PROPERTY or the number of processors.
+   */
+  private static int bootstrapThreads() {
+    int threads = Integer.getInteger(BOOTSTRAP_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+    if (threads < 1) {
+      throw new IllegalArgumentException(BOOTSTRAP_THREADS_PROPERTY + " must be positive: " + threads);
+    }
+    return threads;
+  }
+
   /**
    * Starts the simulator and spawns the identified number of nodes.
    */
@@ -166,14 +389,22 @@ public class Simulator implements Orchestrator {
     log.info("simulation started");
     boolean isAllReady = false;
 
+    Path recordingFile = OperaFlightRecorder.recordingFile();
+    if (recordingFile != null) {
+      try {
+        this.recording = OperaFlightRecorder.start(recordingFile);
+        log.info("flight recording of opera events started, dumped to {}", recordingFile);
+      } catch (IllegalStateException | UncheckedIOException e) {
+        log.fatal("flight recording failed to start", e);
+      }
+    }
+
     try {
-      this.metricServer.start();
+      this.metricsBackend.start();
     } catch (IllegalStateException e) {
-      log.fatal("metric server failed to start", e);
+      log.fatal("metrics backend failed to start", e);
     }
 
-    this.metricsNetwork.runMetricsTestNet();
-
     try {
       isAllReady = allNodesReady.await(readyTimeoutMs, TimeUnit.MILLISECONDS);
     } catch (InterruptedException e) {
@@ -181,13 +412,174 @@ public class Simulator implements Orchestrator {
     }
 
     if (!isAllReady) {
-      log.fatal("{} ms timeout on starting all nodes", readyTimeoutMs);
+      log.fatal("{} ms timeout on starting all nodes, {} nodes are not ready", readyTimeoutMs, allNodesReady.getCount());
+    }
+
+    if (this.resumedFrom != null) {
+      this.restore(this.resumedFrom);
     }
 
     // start all nodes in new threads
-    for (network.Network middleNetwork : this.allNetworks.values()) {
+    this.startNanos = SimulationClock.nanoTime();
+    for (int i = 0; i < this.allNetworks.length; i++) {
+      if (this.resumedFrom != null && !this.resumedFrom.isOnline(i)) {
+        continue;
+      }
       // TODO: this should also have a timeout.
-      middleNetwork.start();
+      this.allNetworks[i].start();
+      if (this.resumedFrom != null) {
+        this.allNetworks[i].replay(this.resumedFrom.getInFlightMessages(i));
+      }
+    }
+  }
+
+  /**
+   * Restores the shared variables and the nodes from the checkpoint, and takes the nodes offline in the checkpoint
+   * offline again before any node starts.
+   */
+  private void restore(SimulationCheckpoint checkpoint) {
+    SharedVariable.getInstance().restore(checkpoint.getSharedVariables());
+    for (int i = 0; i < this.allNetworks.length; i++) {
+      Serializable snapshot = checkpoint.getNodeSnapshot(i);
+      if (snapshot != null) {
+        this.allNetworks[i].getNode().onRestore(snapshot);
+      }
+      if (!checkpoint.isOnline(i)) {
+        isReady.set(i, 0);
+        synchronized (this.offlineNodes) {
+          this.offlineNodes.add(this.directory.getIdentifier(i));
+        }
+        // the node rejoins by resuming its underlay on a later arrival.
+        this.allNetworks[i].getUnderlay().suspend();
+      }
+    }
+  }
+
+  /**
+   * Checkpoints the simulation to the given file, see SimulationCheckpoint. In a churn simulation, the checkpoint is
+   * taken on the churn thread, so that no node arrives or departs while it is taken. The nodes are quiesced meanwhile:
+   * the messages they receive are held and recorded as in flight, and their timers are deferred, see Network.quiesce. A node
+   * whose handlers or timer tasks do not return within QUIESCE_TIMEOUT_MS is snapshot while running, hence it should
+   * still take a consistent snapshot of its own state.
+   *
+   * @param file the checkpoint file, replaced if it exists.
+   * @throws IllegalStateException if the checkpoint cannot be taken, e.g., the calling thread is interrupted.
+   * @throws UncheckedIOException  if the checkpoint cannot be written.
+   */
+  public void checkpoint(Path file) throws IllegalStateException, UncheckedIOException {
+    SimulationCheckpoint checkpoint = null;
+    ScheduledExecutorService scheduler = this.churnScheduler;
+    if (scheduler != null) {
+      try {
+        checkpoint = scheduler.submit(this::takeCheckpoint).get();
+      } catch (RejectedExecutionException e) {
+        // the churn simulation is over, nothing can race with the checkpoint anymore.
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while checkpointing the simulation", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("failed to checkpoint the simulation", e.getCause());
+      }
+    }
+    if (checkpoint == null) {
+      checkpoint = this.takeCheckpoint();
+    }
+    checkpoint.write(file);
+    log.info("simulation checkpointed to {} at {} ms", file, checkpoint.getElapsedMs());
+  }
+
+  private SimulationCheckpoint takeCheckpoint() throws IllegalStateException {
+    int n = this.directory.size();
+    // all the nodes are quiesced before any is snapshot, so that every message sent before a snapshot is either handled
+    // before the snapshot of its receiver, or held by the receiver and recorded.
+    for (network.Network network : this.allNetworks) {
+      network.quiesce();
+    }
+    try {
+      long deadline = System.nanoTime() + SimulationClock.toWallNanos(QUIESCE_TIMEOUT_MS);
+      for (int i = 0; i < n; i++) {
+        if (!this.allNetworks[i].awaitIdle(deadline)) {
+          log.warn("node {} is still running after {} ms, it is checkpointed while running", this.directory.getIdentifier(i), QUIESCE_TIMEOUT_MS);
+        }
+      }
+
+      boolean[] online = new boolean[n];
+      long[] remainingSessionMs = new long[n];
+      Serializable[] nodeSnapshots = new Serializable[n];
+      ArrayList<ArrayList<Message>> inFlightMessages = new ArrayList<>(n);
+      for (int i = 0; i < n; i++) {
+        online[i] = isReady.get(i) == 1;
+        ScheduledFuture<?> departure = this.onlineNodes.get(this.directory.getIdentifier(i));
+        remainingSessionMs[i] = departure == null ? SimulationCheckpoint.NO_SESSION : Math.max(0, (long) SimulationClock.toModelledMillis(departure.getDelay(TimeUnit.NANOSECONDS)));
+        nodeSnapshots[i] = this.allNetworks[i].getNode().onSnapshot();
+      }
+      SharedVariable.Snapshot sharedVariables = SharedVariable.getInstance().snapshot();
+      // messages keep arriving until the snapshots are over, so they are collected last.
+      for (int i = 0; i < n; i++) {
+        inFlightMessages.add(this.allNetworks[i].getHeldMessages());
+      }
+      long elapsedMs = (this.resumedFrom == null ? 0 : this.resumedFrom.getElapsedMs())
+                       + TimeUnit.NANOSECONDS.toMillis(SimulationClock.nanoTime() - this.startNanos);
+      return new SimulationCheckpoint(elapsedMs, this.allId, online, remainingSessionMs, nodeSnapshots, sharedVariables,
+                                      inFlightMessages);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while quiescing the nodes", e);
+    } finally {
+      for (network.Network network : this.allNetworks) {
+        network.resumeDelivery();
+      }
+    }
+  }
+
+  /**
+   * Lets the simulation run for the given duration, checkpointing it every CHECKPOINT_INTERVAL_PROPERTY milliseconds
+   * to CHECKPOINT_FILE_PROPERTY if set. Both are modelled durations, run at the time scale of SimulationClock.
+   *
+   * @param durationMs modelled duration in milliseconds.
+   * @throws InterruptedException if the calling thread is interrupted.
+   */
+  private void runFor(long durationMs) throws InterruptedException {
+    String file = System.getProperty(CHECKPOINT_FILE_PROPERTY);
+    if (file == null) {
+      SimulationClock.sleep(durationMs);
+      return;
+    }
+    long interval = Long.getLong(CHECKPOINT_INTERVAL_PROPERTY, DEFAULT_CHECKPOINT_INTERVAL_MS);
+    if (interval <= 0) {
+      throw new IllegalArgumentException(CHECKPOINT_INTERVAL_PROPERTY + " must be positive: " + interval);
+    }
+    for (long left = durationMs; left > 0; left -= interval) {
+      SimulationClock.sleep(Math.min(left, interval));
+      if (left > interval) {
+        try {
+          this.checkpoint(Paths.get(file));
+        } catch (RuntimeException e) {
+          // e.g., a node failing to snapshot its state; the simulation goes on without this checkpoint.
+          log.error("failed to checkpoint the simulation to {}", file, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Configures the metric collectors before any of them is created. Nodes are grouped by the name space of their recipe
+   * for metric rollups, and large simulations switch to the aggregated metrics mode so that the number of exported
+   * series does not grow with the number of nodes. The former configuration is restored on termination, so that it does
+   * not leak into the next simulator of the JVM.
+   */
+  private void configureMetrics() {
+    this.previousMetricsMode = MetricsConfig.getMode();
+    this.previousGroupResolver = MetricsConfig.getGroupResolver();
+    NodeDirectory nodes = this.directory;
+    MetricsConfig.setGroupResolver(id -> {
+      int index = nodes.indexOf(id);
+      return index < 0 ? null : nodes.getNameSpace(index);
+    });
+
+    if (this.factory.getTotalNodes() >= MetricsConfig.AGGREGATION_NODE_THRESHOLD && !MetricsConfig.isAggregated()) {
+      log.info("switching to aggregated metrics for {} nodes", this.factory.getTotalNodes());
+      MetricsConfig.setMode(MetricsConfig.Mode.AGGREGATED);
     }
   }
 
@@ -196,20 +588,78 @@ public class Simulator implements Orchestrator {
    */
   public void terminate() {
     log.info("terminating simulation");
+    this.terminating = true;
+    List<Identifier> offline;
+    synchronized (this.offlineNodes) {
+      offline = new ArrayList<>(this.offlineNodes);
+    }
 
     //terminating all nodes
-    while (!onlineNodes.isEmpty()) {
-      Identifier id = onlineNodes.poll().getValue();
+    for (Identifier id : new ArrayList<>(onlineNodes.keySet())) {
       log.debug("terminating node {}", id);
       this.done(id);
       log.info("node {} terminated", id);
     }
+    // offline nodes are already stopped, only their suspended underlays are still bound.
+    for (Identifier id : offline) {
+      this.getMiddleLayer(id).terminateUnderlay();
+    }
+
+    for (String line : OperaPercentileHistogram.report()) {
+      log.info("percentile report: {}", line);
+    }
+
+    for (String line : OperaMiddlewareCollector.getInstance().handlerReport(MetricsConfig.getTopK())) {
+      log.info("hot handlers: {}", line);
+    }
+
+    this.exportTraces();
 
     try {
-      this.metricServer.terminate();
-      log.info("metric server terminated");
+      this.metricsBackend.terminate();
+      log.info("metrics backend terminated");
     } catch (IllegalStateException e) {
-      log.fatal("metric server failed to stop", e);
+      log.fatal("metrics backend failed to stop", e);
+    }
+
+    if (this.recording != null) {
+      // stopping the recording dumps it to its destination.
+      this.recording.stop();
+      this.recording.close();
+      this.recording = null;
+      log.info("flight recording of opera events stopped");
+    }
+
+    MetricsConfig.setMode(this.previousMetricsMode);
+    MetricsConfig.setGroupResolver(this.previousGroupResolver);
+  }
+
+  /**
+   * Exports the recorded message traces to the Chrome trace-event file set by Tracer.TRACE_FILE_PROPERTY, and logs the
+   * longest critical paths, if tracing is enabled.
+   */
+  private void exportTraces() {
+    SpanRingBuffer buffer = Tracer.getBuffer();
+    if (buffer == null) {
+      return;
+    }
+    List<Span> spans = buffer.snapshot();
+    if (buffer.getRecorded() > buffer.getCapacity()) {
+      log.warn("{} spans recorded, only the latest {} are kept", buffer.getRecorded(), buffer.getCapacity());
+    }
+    for (String line : CriticalPathAnalyzer.report(spans, CRITICAL_PATH_REPORT_LIMIT)) {
+      log.info("critical path: {}", line);
+    }
+
+    String traceFile = System.getProperty(Tracer.TRACE_FILE_PROPERTY);
+    if (traceFile == null) {
+      return;
+    }
+    try {
+      ChromeTraceExporter.export(spans, Paths.get(traceFile));
+      log.info("{} spans exported to {}", spans.size(), traceFile);
+    } catch (IOException e) {
+      log.error("could not export traces to {}", traceFile, e);
     }
   }
 
@@ -220,7 +670,7 @@ public class Simulator implements Orchestrator {
    */
   @Override
   public void ready(Identifier nodeId) {
-    this.isReady.put(this.allFullAddresses.get(nodeId), true);
+    this.isReady.set(this.directory.indexOf(nodeId), 1);
     log.info("node {} is ready", nodeId);
 
     // start the nodes directly if the simulation is running, or wait for all nodes to be ready
@@ -234,8 +684,8 @@ public class Simulator implements Orchestrator {
 
   // TODO: do we need this?
   public network.Network getMiddleLayer(Identifier id) {
-    InetSocketAddress address = this.allFullAddresses.get(id);
-    return this.allNetworks.get(address);
+    int index = this.directory.indexOf(id);
+    return index < 0 ? null : this.allNetworks[index];
   }
 
   /**
@@ -247,17 +697,39 @@ public class Simulator implements Orchestrator {
   public void done(Identifier nodeId) {
     log.info("node {} is done", nodeId);
 
-    // mark the nodes as not ready
-    isReady.put(this.allFullAddresses.get(nodeId), false);
-    InetSocketAddress address = allFullAddresses.get(nodeId);
+    // move the node to the offline nodes list, cancel its departure, and bring a node back if an arrival is waiting
+    // for an offline node.
+    boolean arrival;
+    synchronized (this.offlineNodes) {
+      if (this.offlineNodes.contains(nodeId)) {
+        log.debug("node {} is already offline", nodeId);
+        return;
+      }
+      ScheduledFuture<?> departure = this.onlineNodes.remove(nodeId);
+      if (departure != null) {
+        departure.cancel(false);
+      }
+      this.offlineNodes.add(nodeId);
+      arrival = this.arrivalPending;
+      this.arrivalPending = false;
+    }
 
-    // stop the nodes on a new thread
-    network.Network network = this.allNetworks.get(address);
-    if (network != null) {
+    // mark the nodes as not ready
+    int index = this.directory.indexOf(nodeId);
+    isReady.set(index, 0);
+
+    // stop the nodes on a new thread, keeping the underlay bound for the node to rejoin unless the simulation ends.
+    network.Network network = this.allNetworks[index];
+    if (network != null && this.terminating) {
+      network.terminate();
+    } else if (network != null) {
       network.stop();
     }
-    // add the offline nodes list
-    this.offlineNodes.add(nodeId);
+
+    ScheduledExecutorService scheduler = this.churnScheduler;
+    if (arrival && scheduler != null && !scheduler.isShutdown()) {
+      scheduler.execute(this::arrive);
+    }
 
     log.info("node {} has been stopped", nodeId);
   }
@@ -273,7 +745,7 @@ public class Simulator implements Orchestrator {
     log.info("constant time simulation started for a lifetime of {} ms", duration);
 
     try {
-      Thread.sleep(duration);
+      this.runFor(duration);
     } catch (Exception e) {
       log.fatal("could not continue simulation", e);
     }
@@ -284,7 +756,9 @@ public class Simulator implements Orchestrator {
   }
 
   /**
-   * Simulate churn based on inter-arrival time and session length.
+   * Simulate churn based on inter-arrival time and session length. Departures and arrivals are scheduled on a single
+   * churn thread at the end of the session of each node and at each inter-arrival time respectively, so the
+   * orchestrator stays idle in between two churn events.
    *
    * @param lifeTime               duration of the simulation.
    * @param interArrivalGen        inter-arrival generator, i.e., time between two consecutive
@@ -298,81 +772,175 @@ public class Simulator implements Orchestrator {
     this.start();
     log.info("churn simulation started for a lifetime of {} ms", lifeTime);
 
-    // hold the current online nodes, with their termination time stamp.
-    this.onlineNodes = new PriorityQueue<>();
-
-    // assign initial terminate time stamp for all nodes
-    long startTime = System.currentTimeMillis();
-    for (Identifier id : this.allId) {
-      if (isReady.get(this.allFullAddresses.get(id))) {
-        double sessionLength = sessionLengthGenerator.next();
-        log.info("generated new session length of {} ms for node {}, termination at {}", id,
-                 sessionLength, startTime + sessionLength);
-        onlineNodes.add(new SimpleEntryComparable<>(startTime + sessionLength, id));
-        this.simulatorMetricsCollector.onNewSessionLengthGenerated(id, sessionLength);
+    this.churnScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "churn-scheduler");
+      t.setDaemon(true);
+      return t;
+    });
+    this.sessionLengthGenerator = sessionLengthGenerator;
+    this.interArrivalGenerator = interArrivalGen;
+    this.sessionLengthGenerator.setSeed(this.randomStreams.seedOf(RandomStreams.SESSION_LENGTH));
+    this.interArrivalGenerator.setSeed(this.randomStreams.seedOf(RandomStreams.INTER_ARRIVAL));
+
+    // assign initial terminate time stamp for all nodes, resumed nodes carry on with the rest of their session.
+    this.churnScheduler.execute(() -> {
+      for (int i = 0; i < this.directory.size(); i++) {
+        Identifier id = this.directory.getIdentifier(i);
+        // the departure is registered along with the check, so that a node which is done meanwhile gets no session.
+        synchronized (this.offlineNodes) {
+          if (isReady.get(i) != 1 || this.offlineNodes.contains(id)) {
+            continue;
+          }
+          long remainingSessionMs = this.resumedFrom == null ? SimulationCheckpoint.NO_SESSION : this.resumedFrom.getRemainingSessionMs(i);
+          if (remainingSessionMs == SimulationCheckpoint.NO_SESSION) {
+            this.scheduleDeparture(id);
+          } else {
+            this.scheduleDeparture(id, remainingSessionMs);
+          }
+        }
+      }
+      this.scheduleArrival();
+      this.updateChurnMetrics();
+    });
+
+    try {
+      this.runFor(lifeTime);
+    } catch (InterruptedException e) {
+      log.fatal("could not continue simulation", e);
+    }
+
+    this.churnScheduler.shutdownNow();
+    try {
+      if (!this.churnScheduler.awaitTermination(CHURN_SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        log.warn("churn scheduler did not stop within {} ms", CHURN_SHUTDOWN_TIMEOUT_MS);
       }
+    } catch (InterruptedException e) {
+      log.fatal("interrupted while stopping the churn scheduler", e);
     }
+    log.info("churn simulation has ended, total lifetime was {} ms", lifeTime);
+
+    this.terminate();
+  }
+
+  /**
+   * Puts the node online for a new session, and schedules its departure at the end of the session.
+   *
+   * @param id identifier of the node.
+   * @return the length of the session in milliseconds.
+   */
+  private double scheduleDeparture(Identifier id) {
+    double sessionLength = this.sessionLengthGenerator.next();
+    this.simulatorMetricsCollector.onNewSessionLengthGenerated(id, sessionLength);
+    log.info("generated new session length of {} ms for node {}, termination in {} ms", sessionLength, id, sessionLength);
+    this.scheduleDeparture(id, (long) sessionLength);
+    return sessionLength;
+  }
 
-    // hold next arrival time
-    double interArrivalTime = interArrivalGen.next();
+  /**
+   * Schedules the departure of the node, replacing its pending departure if any. Must be called holding offlineNodes,
+   * so that the node cannot be done in between, see done.
+   */
+  private void scheduleDeparture(Identifier id, long remainingSessionMs) {
+    ScheduledFuture<?> departure = this.churnScheduler.schedule(() -> this.depart(id), SimulationClock.toWallNanos(remainingSessionMs), TimeUnit.NANOSECONDS);
+    ScheduledFuture<?> previous = this.onlineNodes.put(id, departure);
+    if (previous != null) {
+      previous.cancel(false);
+    }
+  }
+
+  /**
+   * Schedules the next arrival after a new inter-arrival time.
+   */
+  private void scheduleArrival() {
+    double interArrivalTime = this.interArrivalGenerator.next();
     this.simulatorMetricsCollector.onNewInterArrivalGenerated(interArrivalTime);
-    double nextArrival = System.currentTimeMillis() + interArrivalTime;
-
-    while (System.currentTimeMillis() - startTime < lifeTime) {
-      this.simulatorMetricsCollector.updateOnlineNodes(onlineNodes.size());
-      this.simulatorMetricsCollector.updateOfflineNodes(offlineNodes.size());
-
-      if (!onlineNodes.isEmpty()) {
-        assert onlineNodes.peek() != null;
-        if (System.currentTimeMillis() > onlineNodes.peek().getKey()) {
-          // terminate the node with the nearest termination time (if the time met)
-          // `done` will add the node to the offline nodes
-          Identifier id = Objects.requireNonNull(onlineNodes.poll()).getValue();
-          log.info("session length is done, switching node {} to offline", id);
-          this.done(id);
-        }
+    this.churnScheduler.schedule(this::arrive, SimulationClock.toWallNanos(interArrivalTime), TimeUnit.NANOSECONDS);
+    Duration nextArrivalDuration = Duration.ofMillis((long) interArrivalTime);
+    log.info("next node in {} hours {} minutes {} seconds {} milliseconds",
+             nextArrivalDuration.toHoursPart(), nextArrivalDuration.toMinutesPart(),
+             nextArrivalDuration.toSecondsPart(), nextArrivalDuration.toMillisPart());
+  }
+
+  /**
+   * Terminates the node at the end of its session, the departure is cancelled if the node leaves on its own before.
+   *
+   * @param id identifier of the node.
+   */
+  private void depart(Identifier id) {
+    log.info("session length is done, switching node {} to offline", id);
+    ChurnEvent jfrEvent = new ChurnEvent();
+    jfrEvent.begin();
+    // `done` will add the node to the offline nodes
+    this.done(id);
+    if (jfrEvent.shouldCommit()) {
+      jfrEvent.nodeId = id.toString();
+      jfrEvent.kind = ChurnEvent.DEPARTURE;
+      jfrEvent.onlineNodes = onlineNodes.size();
+      jfrEvent.commit();
+    }
+    this.updateChurnMetrics();
+  }
+
+  /**
+   * Brings a random offline node back online. If there is no offline node, the arrival is deferred until a node
+   * goes offline.
+   */
+  private void arrive() {
+    Identifier id;
+    double sessionLength;
+    synchronized (this.offlineNodes) {
+      if (this.offlineNodes.isEmpty()) {
+        this.arrivalPending = true;
+        return;
       }
-      if (System.currentTimeMillis() >= nextArrival) {
-        // pool a random node from the offline nodes (if exists) and start it in a new thread.
-        if (this.offlineNodes.isEmpty()) {
-          continue;
-        }
+      id = this.offlineNodes.remove(this.arrivalRandom.nextInt(this.offlineNodes.size()));
+      // the node is online as soon as it leaves the offline nodes, so that done cancels this session, e.g., if the node
+      // is done within onCreate.
+      sessionLength = this.scheduleDeparture(id);
+    }
 
-        int ind = rand.nextInt(this.offlineNodes.size());
-        Identifier id = this.offlineNodes.get(ind);
-        log.info("(arrival) switching node {} to online", id);
-        this.offlineNodes.remove(ind);
-
-        // creat the new node in a new thread
-        // Once the node call `ready` method, the node's onStart method will be called
-        network.Network network = this.getMiddleLayer(id);
-        network.initUnderLay();
-        network.create(this.allId);
-
-        // TODO: this logic has a repetition (see earlier in the code)
-        // assign a termination time
-        double sessionLength = sessionLengthGenerator.next();
-        // TODO: fix this
-        this.simulatorMetricsCollector.onNewSessionLengthGenerated(id, sessionLength);
-        log.info("generated new session length of {} ms for node {}, termination at {}", id,
-                 sessionLength, startTime + sessionLength);
-        this.onlineNodes.add(
-          new SimpleEntryComparable<>(System.currentTimeMillis() + sessionLength, id));
-
-        // assign a next node arrival time
-        interArrivalTime = interArrivalGen.next();
-        this.simulatorMetricsCollector.onNewInterArrivalGenerated(interArrivalTime);
-        nextArrival = System.currentTimeMillis() + interArrivalTime;
-        Duration nextArrivalDuration = Duration.ofMillis((int) interArrivalTime);
-        log.info("next node {} in {} hours {} minutes {} seconds {} milliseconds", id,
-                 nextArrivalDuration.toHoursPart(), nextArrivalDuration.toMinutesPart(),
-                 nextArrivalDuration.toSecondsPart(), nextArrivalDuration.toMillisPart());
+    ChurnEvent jfrEvent = new ChurnEvent();
+    jfrEvent.begin();
+    log.info("(arrival) switching node {} to online", id);
+
+    try {
+      // creat the new node in a new thread, its underlay is still bound hence it is only resumed.
+      // Once the node call `ready` method, the node's onStart method will be called
+      network.Network network = this.getMiddleLayer(id);
+      network.initUnderLay();
+      network.create(this.allId);
+    } catch (IllegalStateException e) {
+      // an exception would silently cancel all the next arrivals.
+      log.error("failed to switch node {} to online", id, e);
+      synchronized (this.offlineNodes) {
+        ScheduledFuture<?> departure = this.onlineNodes.remove(id);
+        if (departure != null) {
+          departure.cancel(false);
+        }
+        if (!this.offlineNodes.contains(id)) {
+          this.offlineNodes.add(id);
+        }
       }
+      this.scheduleArrival();
+      return;
     }
 
-    log.info("churn simulation has ended, total lifetime was {} ms", lifeTime);
+    if (jfrEvent.shouldCommit()) {
+      jfrEvent.nodeId = id.toString();
+      jfrEvent.kind = ChurnEvent.ARRIVAL;
+      jfrEvent.sessionLength = (long) sessionLength;
+      jfrEvent.onlineNodes = onlineNodes.size();
+      jfrEvent.commit();
+    }
+    this.updateChurnMetrics();
+    this.scheduleArrival();
+  }
 
-    this.terminate();
+  private void updateChurnMetrics() {
+    this.simulatorMetricsCollector.updateOnlineNodes(this.onlineNodes.size());
+    synchronized (this.offlineNodes) {
+      this.simulatorMetricsCollector.updateOfflineNodes(this.offlineNodes.size());
+    }
   }
 
   /**
@@ -0,0 +1,83 @@
+package simulator.des;
+
+import network.model.Message;
+
+/**
+ * DesEvent is a timestamped event of the discrete-event simulation, i.e., either the delivery of a message to a node,
+ * or an action of the simulator on a node, e.g., starting it. Events are totally ordered by their time, then by their
+ * source node, then by the sequence number of the event at its source; this order does not depend on how nodes are
+ * split across workers, which keeps parallel runs identical to sequential ones.
+ */
+final class DesEvent implements Comparable<DesEvent> {
+  /**
+   * Simulated time of the event in nanoseconds.
+   */
+  final long time;
+  /**
+   * Index of the node that caused the event.
+   */
+  final int sourceIndex;
+  /**
+   * Sequence number of the event at its source.
+   */
+  final long sourceSeq;
+  /**
+   * Index of the node the event happens at.
+   */
+  final int targetIndex;
+  /**
+   * Message delivered by the event, or null if the event runs an action.
+   */
+  final Message message;
+  /**
+   * Action run by the event, or null if the event delivers a message.
+   */
+  final Runnable action;
+
+  private DesEvent(long time, int sourceIndex, long sourceSeq, int targetIndex, Message message, Runnable action) {
+    this.time = time;
+    this.sourceIndex = sourceIndex;
+    this.sourceSeq = sourceSeq;
+    this.targetIndex = targetIndex;
+    this.message = message;
+    this.action = action;
+  }
+
+  static DesEvent delivery(long time, int sourceIndex, long sourceSeq, int targetIndex, Message message) {
+    return new DesEvent(time, sourceIndex, sourceSeq, targetIndex, message, null);
+  }
+
+  static DesEvent action(long time, int sourceIndex, long sourceSeq, int targetIndex, Runnable action) {
+    return new DesEvent(time, sourceIndex, sourceSeq, targetIndex, null, action);
+  }
+
+  @Override
+  public int compareTo(DesEvent o) {
+    int c = Long.compare(this.time, o.time);
+    if (c != 0) {
+      return c;
+    }
+    c = Integer.compare(this.sourceIndex, o.sourceIndex);
+    if (c != 0) {
+      return c;
+    }
+    return Long.compare(this.sourceSeq, o.sourceSeq);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DesEvent)) {
+      return false;
+    }
+    DesEvent that = (DesEvent) o;
+    return this.time == that.time && this.sourceIndex == that.sourceIndex && this.sourceSeq == that.sourceSeq;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(this.time) * 961 + this.sourceIndex * 31 + Long.hashCode(this.sourceSeq);
+  }
+}
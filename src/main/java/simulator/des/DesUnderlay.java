@@ -0,0 +1,79 @@
+package simulator.des;
+
+import java.net.InetSocketAddress;
+
+import network.Underlay;
+import network.exception.OperaNetworkingException;
+import network.model.Message;
+
+/**
+ * DesUnderlay is the underlay of the nodes of a parallel discrete-event simulation. Rather than sleeping for the
+ * simulated latency, it schedules the delivery of each message on the simulated clock of its receiver, and stamps the
+ * messages with the simulated time of their sender.
+ */
+final class DesUnderlay extends Underlay {
+  private final ParallelSimulation simulation;
+  private final int nodeIndex;
+  private final InetSocketAddress selfAddress;
+
+  DesUnderlay(ParallelSimulation simulation, int nodeIndex, InetSocketAddress selfAddress) {
+    this.simulation = simulation;
+    this.nodeIndex = nodeIndex;
+    this.selfAddress = selfAddress;
+  }
+
+  /**
+   * Sends a message with the lowest latency of the simulation.
+   *
+   * @param targetAddress address of the remote node who should receive the message.
+   * @param message       the message to be sent.
+   * @throws OperaNetworkingException if the target address is not a node of the simulation.
+   */
+  @Override
+  public void send(InetSocketAddress targetAddress, Message message) throws OperaNetworkingException {
+    this.send(targetAddress, message, 0);
+  }
+
+  @Override
+  public void send(InetSocketAddress targetAddress, Message message, double latencyMs) throws OperaNetworkingException {
+    int targetIndex = this.simulation.indexOf(targetAddress);
+    if (targetIndex < 0) {
+      throw new OperaNetworkingException("target address is not a node of the simulation: " + targetAddress);
+    }
+    this.simulation.send(this.nodeIndex, targetIndex, message, latencyMs);
+  }
+
+  @Override
+  public boolean isLatencyAware() {
+    return true;
+  }
+
+  /**
+   * Returns the simulated time of the logical process running this node.
+   *
+   * @return the simulated time in nanoseconds.
+   */
+  @Override
+  public long nowNanos() {
+    return this.simulation.nowNanos(this.nodeIndex);
+  }
+
+  @Override
+  public int getPort() {
+    return this.selfAddress.getPort();
+  }
+
+  @Override
+  public String getAddress() {
+    return this.selfAddress.getAddress().toString();
+  }
+
+  @Override
+  protected boolean initUnderlay(int port) {
+    return true;
+  }
+
+  @Override
+  public void terminate() {
+  }
+}
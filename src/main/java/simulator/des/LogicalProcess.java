@@ -0,0 +1,104 @@
+package simulator.des;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * LogicalProcess owns the events of a subset of the nodes of a parallel simulation, and runs them on a single worker
+ * thread in the order of DesEvent, on its own local clock. Events scheduled by other logical processes are posted to
+ * its inbox, which is only drained in between two windows of the simulation; the conservative lookahead guarantees
+ * that none of them is earlier than the window they are drained after.
+ */
+final class LogicalProcess {
+  private final int index;
+  private final PriorityQueue<DesEvent> queue = new PriorityQueue<>();
+  private final ConcurrentLinkedQueue<DesEvent> inbox = new ConcurrentLinkedQueue<>();
+  /**
+   * Local clock in simulated nanoseconds, i.e., the time of the event being (or last) processed.
+   */
+  private long now;
+  private long processed;
+
+  LogicalProcess(int index) {
+    this.index = index;
+  }
+
+  int getIndex() {
+    return index;
+  }
+
+  long now() {
+    return now;
+  }
+
+  long getProcessed() {
+    return processed;
+  }
+
+  /**
+   * Posts an event from any thread, it is queued on the next drain of the inbox.
+   */
+  void post(DesEvent event) {
+    this.inbox.add(event);
+  }
+
+  /**
+   * Schedules an event of the thread running this logical process.
+   *
+   * @throws IllegalStateException if the event is in the past of this logical process.
+   */
+  void schedule(DesEvent event) throws IllegalStateException {
+    if (event.time < this.now) {
+      throw new IllegalStateException("event at " + event.time + " ns scheduled in the past of logical process " + index + " at " + now + " ns");
+    }
+    this.queue.add(event);
+  }
+
+  /**
+   * Moves the events posted by the other logical processes into the queue.
+   *
+   * @throws IllegalStateException if a posted event is in the past of this logical process, i.e., a causality violation.
+   */
+  void drainInbox() throws IllegalStateException {
+    DesEvent event;
+    while ((event = this.inbox.poll()) != null) {
+      if (event.time < this.now) {
+        throw new IllegalStateException("causality violation on logical process " + index + ": event at " + event.time
+                                        + " ns from node " + event.sourceIndex + " arrived at " + now + " ns");
+      }
+      this.queue.add(event);
+    }
+  }
+
+  /**
+   * Returns the time of the next event, or Long.MAX_VALUE if there is none.
+   */
+  long nextTime() {
+    DesEvent next = this.queue.peek();
+    return next == null ? Long.MAX_VALUE : next.time;
+  }
+
+  /**
+   * Processes all the events earlier than the end of the window, including the ones scheduled while processing.
+   *
+   * @param windowEnd exclusive end of the window in simulated nanoseconds.
+   * @param handler   handler of the events.
+   */
+  void processUntil(long windowEnd, Consumer<DesEvent> handler) {
+    DesEvent next;
+    while ((next = this.queue.peek()) != null && next.time < windowEnd) {
+      this.queue.poll();
+      this.now = next.time;
+      handler.accept(next);
+      this.processed++;
+    }
+  }
+
+  /**
+   * Moves the local clock forward to the given time, e.g., to the end of the simulation.
+   */
+  void advanceTo(long time) {
+    this.now = Math.max(this.now, time);
+  }
+}
@@ -0,0 +1,434 @@
+package simulator.des;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicReference;
+
+import modules.logger.Logger;
+import modules.logger.OperaLogger;
+import network.Network;
+import network.latency.LatencyGenerator;
+import network.model.Message;
+import node.BaseNode;
+import node.Identifier;
+import node.IdentifierGenerator;
+import node.NodeDirectory;
+import simulator.Factory;
+import simulator.Orchestrator;
+import simulator.Recipe;
+import utils.random.RandomStreams;
+
+/**
+ * ParallelSimulation runs the nodes created from the recipes of a factory as a conservative parallel discrete-event
+ * simulation. Nodes are split round-robin across worker threads, each running a logical process with its own event
+ * queue and simulated clock. Messages are not slept on, they are delivered at the simulated time of their sender plus
+ * their simulated latency, which is at least the lowest latency of the latency generator, i.e., the lookahead.
+ *
+ * <p>Workers advance in windows: at each window, every worker takes in the messages posted to it by the other workers,
+ * then all of them process their events earlier than the earliest pending event plus the lookahead. No message sent
+ * within a window can be due within the same window, so workers never have to roll back. Identifiers and latencies are
+ * drawn from the seed of the simulation, and events are ordered independently of the workers, so a run is identical
+ * to a sequential run (i.e., with a single worker) of the same seed; getDigest summarizes the delivered messages to
+ * check so.
+ *
+ * <p>Nodes are run on the simulated clock, hence they must be event-driven: they must neither sleep nor spawn threads
+ * of their own, and react only to onCreate, onStart, onStop and onNewMessage.
+ */
+public class ParallelSimulation implements Orchestrator {
+  private static final Logger log = OperaLogger.getLoggerForSimulator(ParallelSimulation.class.getName());
+  /**
+   * Port of all the nodes, the synthetic address of a node encodes its index in its IP address instead.
+   */
+  private static final int PORT = 2000;
+  /**
+   * First byte of the synthetic IP addresses of the nodes, i.e., 10.0.0.0/8.
+   */
+  private static final byte ADDRESS_PREFIX = 10;
+  private static final int MAX_NODES = 1 << 24;
+  private static final byte CREATED = 0;
+  private static final byte ONLINE = 1;
+  private static final byte OFFLINE = 2;
+  /**
+   * Logical process of the current thread, i.e., of the events being processed.
+   */
+  private static final ThreadLocal<LogicalProcess> current = new ThreadLocal<>();
+
+  private final int workers;
+  private final long lookaheadNanos;
+  private final ArrayList<Identifier> allId;
+  private final NodeDirectory directory;
+  private final Network[] networks;
+  private final DesUnderlay[] underlays;
+  private final LogicalProcess[] processes;
+  /**
+   * The following arrays are indexed by the node index, and only accessed by the logical process of the node.
+   */
+  private final long[] sequences;
+  private final long[] digests;
+  private final byte[] states;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private volatile long windowEnd;
+  private volatile boolean finished;
+
+  /**
+   * Creates the nodes of a parallel simulation with the seed of the factory, and calls their onCreate on the calling
+   * thread.
+   *
+   * @param factory factory object to create nodes based on inventory.
+   * @param workers number of worker threads.
+   * @throws IllegalArgumentException if the number of workers or nodes is out of range.
+   */
+  public ParallelSimulation(Factory factory, int workers) throws IllegalArgumentException {
+    this(factory, workers, factory.getRandomStreams().getSeed());
+  }
+
+  /**
+   * Creates the nodes of a parallel simulation, and calls their onCreate on the calling thread.
+   *
+   * @param factory factory object to create nodes based on inventory.
+   * @param workers number of worker threads.
+   * @param seed    seed of the identifiers and latencies of the simulation.
+   * @throws IllegalArgumentException if the number of workers or nodes is out of range.
+   */
+  public ParallelSimulation(Factory factory, int workers, long seed) throws IllegalArgumentException {
+    int n = factory.getTotalNodes();
+    if (workers < 1) {
+      throw new IllegalArgumentException("number of workers must be positive: " + workers);
+    }
+    if (n > MAX_NODES) {
+      throw new IllegalArgumentException("too many nodes for a parallel simulation: " + n);
+    }
+    this.workers = workers;
+    RandomStreams randomStreams = new RandomStreams(seed);
+    // seeded latencies are computed rather than cached, hence a single generator serves all the networks.
+    LatencyGenerator latencyGenerator = new LatencyGenerator(randomStreams.seedOf(RandomStreams.LATENCY));
+    this.lookaheadNanos = (long) (latencyGenerator.getMinLatency() * 1_000_000);
+    this.allId = IdentifierGenerator.newIdentifiers(n, randomStreams.random(RandomStreams.IDENTIFIERS));
+    ArrayList<InetSocketAddress> addresses = new ArrayList<>(n);
+    ArrayList<String> nameSpaces = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      addresses.add(addressOf(i));
+    }
+    for (Recipe r : factory.getRecipes()) {
+      for (int i = 0; i < r.getTotal(); i++) {
+        nameSpaces.add(r.getNameSpace());
+      }
+    }
+    this.directory = new NodeDirectory(this.allId, addresses, nameSpaces);
+
+    this.processes = new LogicalProcess[workers];
+    for (int w = 0; w < workers; w++) {
+      this.processes[w] = new LogicalProcess(w);
+    }
+    this.networks = new Network[n];
+    this.underlays = new DesUnderlay[n];
+    this.sequences = new long[n];
+    this.digests = new long[n];
+    this.states = new byte[n];
+
+    int globalIndex = 0;
+    for (Recipe r : factory.getRecipes()) {
+      for (int i = 0; i < r.getTotal(); i++) {
+        int index = globalIndex++;
+        Identifier id = this.allId.get(index);
+        Network network = new Network(id, this.directory, this, latencyGenerator);
+        network.setRandom(randomStreams.random(RandomStreams.NODE, index));
+        BaseNode node = r.getBaseNode().newInstance(id, r.getNameSpace(), network);
+        network.setNode(node);
+        DesUnderlay underlay = new DesUnderlay(this, index, this.directory.getAddress(index));
+        underlay.initialize(PORT, network);
+        network.setUnderlay(underlay);
+        this.networks[index] = network;
+        this.underlays[index] = underlay;
+      }
+    }
+    log.info("created {} nodes on {} workers, lookahead {} ns", n, workers, this.lookaheadNanos);
+
+    // onCreate runs sequentially, in the order of the nodes, at the simulated time zero.
+    for (int i = 0; i < n; i++) {
+      int index = i;
+      this.onProcessOf(index, () -> this.networks[index].getNode().onCreate(this.allId));
+    }
+  }
+
+  /**
+   * Runs the simulation until the given simulated time, or until there is no event left, and then stops the nodes
+   * which are still online.
+   *
+   * @param durationMs simulated duration of the simulation in milliseconds.
+   * @throws IllegalStateException if a worker fails, e.g., a node throws an exception, or is interrupted.
+   */
+  public void run(long durationMs) throws IllegalStateException {
+    long end = durationMs * 1_000_000;
+    log.info("parallel simulation started for a simulated lifetime of {} ms", durationMs);
+    long wallStart = System.nanoTime();
+
+    // even phases end once all workers drained their inbox, odd phases once they processed the window.
+    Phaser phaser = new Phaser(this.workers) {
+      @Override
+      protected boolean onAdvance(int phase, int registeredParties) {
+        if (phase % 2 == 0) {
+          ParallelSimulation.this.advanceWindow(end);
+        }
+        return false;
+      }
+    };
+    Thread[] threads = new Thread[this.workers];
+    for (int w = 0; w < this.workers; w++) {
+      LogicalProcess process = this.processes[w];
+      threads[w] = new Thread(() -> this.work(process, phaser), "des-worker-" + w);
+      threads[w].start();
+    }
+    try {
+      for (Thread thread : threads) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for the workers", e);
+    }
+    Throwable cause = this.failure.get();
+    if (cause != null) {
+      throw new IllegalStateException("parallel simulation failed", cause);
+    }
+
+    for (int i = 0; i < this.networks.length; i++) {
+      int index = i;
+      this.processes[index % this.workers].advanceTo(end);
+      this.onProcessOf(index, () -> this.stop(index));
+    }
+    log.info("parallel simulation has ended, {} events processed in {} ms", this.getProcessedEvents(),
+             (System.nanoTime() - wallStart) / 1_000_000);
+  }
+
+  /**
+   * Should be called by the node to declare itself ready for simulation, it is started at the current simulated time.
+   *
+   * @param nodeId identifier of the node
+   */
+  @Override
+  public void ready(Identifier nodeId) {
+    int index = this.directory.indexOf(nodeId);
+    this.scheduleOwn(index, () -> this.start(index));
+  }
+
+  /**
+   * Should be called by the node when it is done with the simulation, it is stopped at the current simulated time.
+   *
+   * @param nodeId identifier of the node
+   */
+  @Override
+  public void done(Identifier nodeId) {
+    int index = this.directory.indexOf(nodeId);
+    this.scheduleOwn(index, () -> this.stop(index));
+  }
+
+  /**
+   * Returns a digest of all the messages delivered to the nodes, i.e., of their simulated time, sender, and content,
+   * in the order of delivery at each node. Two runs with the same digest delivered the same messages at the same
+   * simulated times.
+   *
+   * @return digest of the delivered messages.
+   */
+  public long getDigest() {
+    long digest = 17;
+    for (long d : this.digests) {
+      digest = digest * 31 + d;
+    }
+    return digest;
+  }
+
+  /**
+   * Returns the number of events processed by all workers, i.e., deliveries and node lifecycle events.
+   *
+   * @return number of processed events.
+   */
+  public long getProcessedEvents() {
+    long total = 0;
+    for (LogicalProcess process : this.processes) {
+      total += process.getProcessed();
+    }
+    return total;
+  }
+
+  /**
+   * get all nodes identifier.
+   *
+   * @return nodes' identifier.
+   */
+  public ArrayList<Identifier> getAllId() {
+    return new ArrayList<>(this.allId);
+  }
+
+  /**
+   * Returns the index of the node with the given synthetic address, or -1 if there is none.
+   */
+  int indexOf(InetSocketAddress address) {
+    byte[] ip = address.getAddress() == null ? null : address.getAddress().getAddress();
+    if (ip == null || ip.length != 4 || ip[0] != ADDRESS_PREFIX || address.getPort() != PORT) {
+      return -1;
+    }
+    int index = (ip[1] & 0xff) << 16 | (ip[2] & 0xff) << 8 | (ip[3] & 0xff);
+    return index < this.networks.length ? index : -1;
+  }
+
+  /**
+   * Returns the simulated time of the logical process of the node.
+   */
+  long nowNanos(int nodeIndex) {
+    return this.processes[nodeIndex % this.workers].now();
+  }
+
+  /**
+   * Schedules the delivery of a message at the simulated time of its sender plus its latency, which is at least the
+   * lookahead. Messages sent once the simulation is finished, e.g., by onStop, are dropped.
+   */
+  void send(int sourceIndex, int targetIndex, Message message, double latencyMs) {
+    if (this.finished) {
+      return;
+    }
+    LogicalProcess source = this.ownProcess(sourceIndex);
+    long time = source.now() + Math.max(this.lookaheadNanos, (long) (latencyMs * 1_000_000));
+    DesEvent event = DesEvent.delivery(time, sourceIndex, this.sequences[sourceIndex]++, targetIndex, message);
+    this.processes[targetIndex % this.workers].post(event);
+  }
+
+  private void work(LogicalProcess process, Phaser phaser) {
+    current.set(process);
+    try {
+      while (true) {
+        process.drainInbox();
+        if (!awaitWorkers(phaser) || this.finished) {
+          return;
+        }
+        process.processUntil(this.windowEnd, this::handle);
+        if (!awaitWorkers(phaser)) {
+          return;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      this.fail(e, phaser);
+    } catch (RuntimeException | Error e) {
+      this.fail(e, phaser);
+    } finally {
+      current.remove();
+    }
+  }
+
+  /**
+   * Waits for all workers to end the current phase.
+   *
+   * @return false if the phaser is terminated, i.e., another worker failed, whose failure is reported.
+   */
+  private static boolean awaitWorkers(Phaser phaser) throws InterruptedException {
+    return phaser.awaitAdvanceInterruptibly(phaser.arrive()) >= 0;
+  }
+
+  /**
+   * Records the failure of a worker, and terminates the phaser so that every other worker returns, whether it is
+   * waiting or still processing its window.
+   */
+  private void fail(Throwable cause, Phaser phaser) {
+    this.failure.compareAndSet(null, cause);
+    phaser.forceTermination();
+  }
+
+  /**
+   * Computes the next window once all workers drained their inbox, i.e., from the earliest pending event up to the
+   * lookahead later, or finishes the simulation.
+   */
+  private void advanceWindow(long end) {
+    long next = Long.MAX_VALUE;
+    for (LogicalProcess process : this.processes) {
+      next = Math.min(next, process.nextTime());
+    }
+    if (next >= end) {
+      this.finished = true;
+    } else {
+      this.windowEnd = Math.min(next + this.lookaheadNanos, end);
+    }
+  }
+
+  private void handle(DesEvent event) {
+    if (event.action != null) {
+      event.action.run();
+      return;
+    }
+    int target = event.targetIndex;
+    if (this.states[target] == OFFLINE) {
+      return;
+    }
+    long digest = this.digests[target];
+    digest = digest * 31 + event.time;
+    digest = digest * 31 + event.sourceIndex;
+    digest = digest * 31 + event.sourceSeq;
+    digest = digest * 31 + Arrays.hashCode(event.message.getEncodedEvent());
+    this.digests[target] = digest;
+    this.underlays[target].dispatchRequest(event.message);
+  }
+
+  private void start(int index) {
+    if (this.states[index] == CREATED) {
+      this.states[index] = ONLINE;
+      this.networks[index].getNode().onStart();
+    }
+  }
+
+  private void stop(int index) {
+    if (this.states[index] != OFFLINE) {
+      this.states[index] = OFFLINE;
+      this.networks[index].getNode().onStop();
+    }
+  }
+
+  /**
+   * Schedules an action of the node at the current simulated time of its logical process.
+   */
+  private void scheduleOwn(int index, Runnable action) {
+    LogicalProcess process = this.ownProcess(index);
+    process.schedule(DesEvent.action(process.now(), index, this.sequences[index]++, index, action));
+  }
+
+  /**
+   * Returns the logical process of the node, which must be the one of the current thread.
+   *
+   * @throws IllegalStateException if the current thread does not run the logical process of the node.
+   */
+  private LogicalProcess ownProcess(int index) throws IllegalStateException {
+    LogicalProcess process = this.processes[index % this.workers];
+    if (current.get() != process) {
+      throw new IllegalStateException("node " + this.allId.get(index) + " called the simulation outside of its own events,"
+                                      + " nodes of a parallel simulation must neither sleep nor spawn threads");
+    }
+    return process;
+  }
+
+  /**
+   * Runs an action of the node on the calling thread, as if it was run by the logical process of the node.
+   */
+  private void onProcessOf(int index, Runnable action) {
+    current.set(this.processes[index % this.workers]);
+    try {
+      action.run();
+    } finally {
+      current.remove();
+    }
+  }
+
+  /**
+   * Returns the synthetic address of the node with the given index, i.e., 10.x.y.z with x.y.z the index.
+   */
+  private static InetSocketAddress addressOf(int index) {
+    byte[] ip = {ADDRESS_PREFIX, (byte) (index >>> 16), (byte) (index >>> 8), (byte) index};
+    try {
+      return new InetSocketAddress(InetAddress.getByAddress(ip), PORT);
+    } catch (UnknownHostException e) {
+      throw new IllegalStateException("could not create the address of node " + index, e);
+    }
+  }
+}
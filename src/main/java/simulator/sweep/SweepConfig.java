@@ -0,0 +1,280 @@
+package simulator.sweep;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import network.NetworkProtocol;
+import network.latency.LatencyGenerator;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+/**
+ * SweepConfig is a parameter sweep read from a YAML file. The grid is the cartesian product of its recipes, node
+ * counts, protocols, latencies and churn settings, run repetitions times each; repetition r of every point runs with
+ * the seed seed + r, so that points are compared on the same random draws. For instance:
+ * <pre>
+ * name: lightchain-capacity
+ * output: sweep-out
+ * durationMs: 60000
+ * repetitions: 3
+ * seed: 42
+ * timeoutMs: 300000
+ * budget:
+ *   cpus: 16
+ *   cpusPerRun: 2
+ *   heapMb: 32768
+ *   heapPerRunMb: 2048
+ * jvmArgs: ["-XX:+UseParallelGC"]
+ * grid:
+ *   recipes:
+ *     - {node: scenario.finalita.LightChainNode, nameSpace: lightchain}
+ *   nodes: [21, 50, 100]
+ *   protocols: [MOCK_NETWORK, tcp]
+ *   latencies:
+ *     - {mean: 159, std: 96}
+ *     - {mean: 20, std: 5}
+ *   churn:
+ *     - none
+ *     - {interArrival: "uniform:100:500", sessionLength: "gaussian:10000:2000"}
+ * </pre>
+ * Only recipes and nodes are required. Protocols default to MOCK_NETWORK, latencies to the ones of LatencyGenerator,
+ * churn to none, the budget to all the processors with one per run and 1024 MB of heap per run, and the seed to a
+ * random one.
+ */
+public final class SweepConfig {
+  private static final String NO_CHURN = "none";
+  private static final int DEFAULT_HEAP_PER_RUN_MB = 1024;
+  private static final long DEFAULT_TIMEOUT_MS = 3_600_000;
+
+  private final String name;
+  private final Path output;
+  private final int cpus;
+  private final int cpusPerRun;
+  private final long heapMb;
+  private final long heapPerRunMb;
+  private final long timeoutMs;
+  private final List<String> jvmArgs;
+  private final List<SweepPoint> points;
+
+  private SweepConfig(String name, Path output, int cpus, int cpusPerRun, long heapMb, long heapPerRunMb, long timeoutMs,
+                      List<String> jvmArgs, List<SweepPoint> points) {
+    this.name = name;
+    this.output = output;
+    this.cpus = cpus;
+    this.cpusPerRun = cpusPerRun;
+    this.heapMb = heapMb;
+    this.heapPerRunMb = heapPerRunMb;
+    this.timeoutMs = timeoutMs;
+    this.jvmArgs = Collections.unmodifiableList(jvmArgs);
+    this.points = Collections.unmodifiableList(points);
+  }
+
+  /**
+   * Reads a sweep from a YAML file.
+   *
+   * @param file the YAML file.
+   * @return the sweep.
+   * @throws UncheckedIOException     if the file cannot be read.
+   * @throws IllegalArgumentException if the file is not a valid sweep.
+   */
+  public static SweepConfig read(Path file) throws UncheckedIOException, IllegalArgumentException {
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return parse(new Yaml().load(reader));
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not read sweep " + file, e);
+    } catch (YAMLException e) {
+      throw new IllegalArgumentException("sweep " + file + " is not valid YAML", e);
+    }
+  }
+
+  /**
+   * Parses a sweep from the YAML document, e.g., as loaded by snakeyaml.
+   *
+   * @param document the YAML document.
+   * @return the sweep.
+   * @throws IllegalArgumentException if the document is not a valid sweep.
+   */
+  static SweepConfig parse(Object document) throws IllegalArgumentException {
+    Map<?, ?> root = map(document, "sweep");
+    String name = string(root, "name", "sweep");
+    Path output = Paths.get(string(root, "output", "sweep-out"));
+    long durationMs = number(root, "durationMs", null).longValue();
+    int repetitions = number(root, "repetitions", 1).intValue();
+    if (repetitions < 1) {
+      throw new IllegalArgumentException("repetitions must be positive: " + repetitions);
+    }
+    long seed = number(root, "seed", new SplittableRandom().nextLong()).longValue();
+    long timeoutMs = number(root, "timeoutMs", DEFAULT_TIMEOUT_MS).longValue();
+
+    Map<?, ?> budget = root.containsKey("budget") ? map(root.get("budget"), "budget") : Collections.emptyMap();
+    int cpus = number(budget, "cpus", Runtime.getRuntime().availableProcessors()).intValue();
+    int cpusPerRun = number(budget, "cpusPerRun", 1).intValue();
+    long heapPerRunMb = number(budget, "heapPerRunMb", DEFAULT_HEAP_PER_RUN_MB).longValue();
+    long heapMb = number(budget, "heapMb", heapPerRunMb * Math.max(1, cpus / Math.max(1, cpusPerRun))).longValue();
+    if (cpus < 1 || cpusPerRun < 1 || cpusPerRun > cpus || heapPerRunMb < 1 || heapPerRunMb > heapMb) {
+      throw new IllegalArgumentException("budget must fit at least one run: " + budget);
+    }
+
+    List<String> jvmArgs = new ArrayList<>();
+    for (Object arg : list(root.get("jvmArgs"), "jvmArgs", Collections.emptyList())) {
+      jvmArgs.add(String.valueOf(arg));
+    }
+
+    Map<?, ?> grid = map(root.get("grid"), "grid");
+    List<?> recipes = list(grid.get("recipes"), "grid.recipes", null);
+    List<?> nodes = list(grid.get("nodes"), "grid.nodes", null);
+    List<?> protocols = list(grid.get("protocols"), "grid.protocols", Collections.singletonList(NetworkProtocol.MOCK_NETWORK.name()));
+    List<?> latencies = grid.containsKey("latencies") ? list(grid.get("latencies"), "grid.latencies", null) : null;
+    List<?> churns = list(grid.get("churn"), "grid.churn", Collections.singletonList(NO_CHURN));
+
+    List<SweepPoint> points = new ArrayList<>();
+    for (int repetition = 0; repetition < repetitions; repetition++) {
+      for (Object recipeValue : recipes) {
+        Map<?, ?> recipe = map(recipeValue, "grid.recipes[]");
+        String node = string(recipe, "node", null);
+        String nameSpace = string(recipe, "nameSpace", node.substring(node.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT));
+        for (Object count : nodes) {
+          for (Object protocol : protocols) {
+            for (double[] latency : latencies(latencies)) {
+              for (Object churnValue : churns) {
+                String interArrival = null;
+                String sessionLength = null;
+                if (!NO_CHURN.equals(churnValue)) {
+                  Map<?, ?> churn = map(churnValue, "grid.churn[]");
+                  interArrival = string(churn, "interArrival", null);
+                  sessionLength = string(churn, "sessionLength", null);
+                }
+                points.add(new SweepPoint(points.size(), node, nameSpace, integer(count, "grid.nodes[]"), protocol(protocol),
+                                          latency[0], latency[1], interArrival, sessionLength, durationMs, seed + repetition));
+              }
+            }
+          }
+        }
+      }
+    }
+    return new SweepConfig(name, output, cpus, cpusPerRun, heapMb, heapPerRunMb, timeoutMs, jvmArgs, points);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Path getOutput() {
+    return output;
+  }
+
+  public int getCpusPerRun() {
+    return cpusPerRun;
+  }
+
+  public long getHeapPerRunMb() {
+    return heapPerRunMb;
+  }
+
+  public long getTimeoutMs() {
+    return timeoutMs;
+  }
+
+  public List<String> getJvmArgs() {
+    return jvmArgs;
+  }
+
+  public List<SweepPoint> getPoints() {
+    return points;
+  }
+
+  /**
+   * Returns the number of runs executed concurrently, i.e., as many as fit in both the CPU and the heap budget.
+   *
+   * @return the number of concurrent runs.
+   */
+  public int getParallelism() {
+    return (int) Math.max(1, Math.min(this.cpus / this.cpusPerRun, this.heapMb / this.heapPerRunMb));
+  }
+
+  private static List<double[]> latencies(List<?> latencies) throws IllegalArgumentException {
+    List<double[]> values = new ArrayList<>();
+    if (latencies == null) {
+      values.add(new double[]{LatencyGenerator.MeanLatency, LatencyGenerator.StdLatency});
+      return values;
+    }
+    for (Object latencyValue : latencies) {
+      Map<?, ?> latency = map(latencyValue, "grid.latencies[]");
+      values.add(new double[]{number(latency, "mean", null).doubleValue(), number(latency, "std", 0).doubleValue()});
+    }
+    return values;
+  }
+
+  private static NetworkProtocol protocol(Object value) throws IllegalArgumentException {
+    String protocol = String.valueOf(value);
+    for (NetworkProtocol candidate : NetworkProtocol.values()) {
+      if (candidate.name().equalsIgnoreCase(protocol) || candidate.label.equalsIgnoreCase(protocol)) {
+        return candidate;
+      }
+    }
+    throw new IllegalArgumentException("unknown protocol: " + protocol);
+  }
+
+  private static Map<?, ?> map(Object value, String key) throws IllegalArgumentException {
+    if (!(value instanceof Map)) {
+      throw new IllegalArgumentException(key + " must be a mapping: " + value);
+    }
+    return (Map<?, ?>) value;
+  }
+
+  private static List<?> list(Object value, String key, List<?> defaultValue) throws IllegalArgumentException {
+    if (value == null) {
+      if (defaultValue == null) {
+        throw new IllegalArgumentException("missing " + key);
+      }
+      return defaultValue;
+    }
+    if (!(value instanceof List) || ((List<?>) value).isEmpty()) {
+      throw new IllegalArgumentException(key + " must be a non-empty list: " + value);
+    }
+    return (List<?>) value;
+  }
+
+  private static String string(Map<?, ?> map, String key, String defaultValue) throws IllegalArgumentException {
+    Object value = map.get(key);
+    if (value == null) {
+      if (defaultValue == null) {
+        throw new IllegalArgumentException("missing " + key + " in " + map);
+      }
+      return defaultValue;
+    }
+    return String.valueOf(value);
+  }
+
+  private static Number number(Map<?, ?> map, String key, Number defaultValue) throws IllegalArgumentException {
+    Object value = map.get(key);
+    if (value == null) {
+      if (defaultValue == null) {
+        throw new IllegalArgumentException("missing " + key + " in " + map);
+      }
+      return defaultValue;
+    }
+    if (!(value instanceof Number)) {
+      throw new IllegalArgumentException(key + " must be a number: " + value);
+    }
+    return (Number) value;
+  }
+
+  private static int integer(Object value, String key) throws IllegalArgumentException {
+    if (!(value instanceof Integer)) {
+      throw new IllegalArgumentException(key + " must be an integer: " + value);
+    }
+    return (Integer) value;
+  }
+}
@@ -0,0 +1,285 @@
+package simulator.sweep;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import modules.logger.Logger;
+import modules.logger.OperaLogger;
+import network.NetworkProtocol;
+import network.latency.LatencyGenerator;
+import node.BaseNode;
+import simulator.Factory;
+import simulator.Recipe;
+import simulator.Simulator;
+import utils.churn.ChurnGenerator;
+import utils.churn.ExponentialGenerator;
+import utils.churn.GaussianGenerator;
+import utils.churn.UniformGenerator;
+import utils.churn.WeibullGenerator;
+
+/**
+ * SweepPoint is a single simulation of a parameter sweep, i.e., one point of its grid. The sweep runner passes a point
+ * to a forked JVM as the arguments of main, which runs the simulation of the point and exits.
+ *
+ * <p>Churn generators are given as a distribution name followed by its parameters, separated by colons:
+ * uniform:min:max, gaussian:mean:std, exponential:lambda:min:max, or weibull:min:max:shape:scale.
+ */
+public final class SweepPoint {
+  private static final Logger log = OperaLogger.getLoggerForSimulator(SweepPoint.class.getCanonicalName());
+
+  private final int run;
+  private final String node;
+  private final String nameSpace;
+  private final int nodes;
+  private final NetworkProtocol protocol;
+  private final double latencyMeanMs;
+  private final double latencyStdMs;
+  private final String interArrival;
+  private final String sessionLength;
+  private final long durationMs;
+  private final long seed;
+
+  /**
+   * Creates a point of a sweep.
+   *
+   * @param run           index of the run in the sweep.
+   * @param node          class name of the fixture node, which must have a public no-argument constructor.
+   * @param nameSpace     name space of the nodes.
+   * @param nodes         number of nodes.
+   * @param protocol      communication protocol of the nodes.
+   * @param latencyMeanMs mean simulated latency in milliseconds.
+   * @param latencyStdMs  standard deviation of the simulated latency in milliseconds.
+   * @param interArrival  inter-arrival generator, or null for a simulation without churn.
+   * @param sessionLength session length generator, or null for a simulation without churn.
+   * @param durationMs    duration of the simulation in milliseconds.
+   * @param seed          seed of the simulation.
+   * @throws IllegalArgumentException if a parameter is out of range, or only one churn generator is given.
+   */
+  public SweepPoint(int run,
+                    String node,
+                    String nameSpace,
+                    int nodes,
+                    NetworkProtocol protocol,
+                    double latencyMeanMs,
+                    double latencyStdMs,
+                    String interArrival,
+                    String sessionLength,
+                    long durationMs,
+                    long seed) throws IllegalArgumentException {
+    if (nodes < 1) {
+      throw new IllegalArgumentException("number of nodes must be positive: " + nodes);
+    }
+    if (durationMs < 1 || durationMs > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("duration must be between 1 and " + Integer.MAX_VALUE + " ms: " + durationMs);
+    }
+    if (latencyMeanMs < 0 || latencyStdMs < 0) {
+      throw new IllegalArgumentException("latencies must be non-negative: " + latencyMeanMs + ", " + latencyStdMs);
+    }
+    if ((interArrival == null) != (sessionLength == null)) {
+      throw new IllegalArgumentException("churn needs both an inter-arrival and a session length generator");
+    }
+    if (interArrival != null) {
+      // fails fast on the runner rather than in the forked JVM.
+      churnGenerator(interArrival);
+      churnGenerator(sessionLength);
+    }
+    this.run = run;
+    this.node = node;
+    this.nameSpace = nameSpace;
+    this.nodes = nodes;
+    this.protocol = protocol;
+    this.latencyMeanMs = latencyMeanMs;
+    this.latencyStdMs = latencyStdMs;
+    this.interArrival = interArrival;
+    this.sessionLength = sessionLength;
+    this.durationMs = durationMs;
+    this.seed = seed;
+  }
+
+  /**
+   * Runs the simulation of the point given as arguments, then exits the JVM, since nodes may leave non-daemon threads
+   * behind. The exit status is 0 if the simulation ran to its end, and 1 otherwise.
+   *
+   * @param args the point, as returned by toArguments.
+   */
+  public static void main(String[] args) {
+    try {
+      fromArguments(args).run();
+    } catch (RuntimeException e) {
+      log.fatal("sweep point failed", e);
+      System.exit(1);
+    }
+    System.exit(0);
+  }
+
+  /**
+   * Runs the simulation of this point in the current JVM. The latencies are taken from the LatencyGenerator system
+   * properties, which the runner sets from systemProperties.
+   *
+   * @throws IllegalArgumentException if the fixture node cannot be instantiated.
+   */
+  public void run() throws IllegalArgumentException {
+    Factory factory = new Factory(this.seed);
+    factory.addRecipe(new Recipe(newFixture(this.node), this.nameSpace, this.nodes));
+    Simulator simulator = new Simulator(factory, this.protocol);
+    log.info("running sweep point {}", this.toArguments());
+    if (this.interArrival == null) {
+      simulator.constantSimulation((int) this.durationMs);
+    } else {
+      simulator.churnSimulation(this.durationMs, churnGenerator(this.interArrival), churnGenerator(this.sessionLength));
+    }
+  }
+
+  /**
+   * Returns the arguments of main running this point.
+   *
+   * @return the arguments, as key=value pairs.
+   */
+  public List<String> toArguments() {
+    List<String> args = new ArrayList<>();
+    for (Map.Entry<String, String> parameter : this.parameters().entrySet()) {
+      if (!parameter.getValue().isEmpty()) {
+        args.add(parameter.getKey() + "=" + parameter.getValue());
+      }
+    }
+    return args;
+  }
+
+  /**
+   * Returns the point given as arguments of main.
+   *
+   * @param args the arguments, as key=value pairs.
+   * @return the point.
+   * @throws IllegalArgumentException if an argument is missing or malformed.
+   */
+  public static SweepPoint fromArguments(String[] args) throws IllegalArgumentException {
+    HashMap<String, String> parameters = new HashMap<>();
+    for (String arg : args) {
+      int split = arg.indexOf('=');
+      if (split < 0) {
+        throw new IllegalArgumentException("sweep point argument is not a key=value pair: " + arg);
+      }
+      parameters.put(arg.substring(0, split), arg.substring(split + 1));
+    }
+    try {
+      return new SweepPoint(Integer.parseInt(required(parameters, "run")),
+                            required(parameters, "node"),
+                            required(parameters, "nameSpace"),
+                            Integer.parseInt(required(parameters, "nodes")),
+                            NetworkProtocol.valueOf(required(parameters, "protocol")),
+                            Double.parseDouble(required(parameters, "latencyMeanMs")),
+                            Double.parseDouble(required(parameters, "latencyStdMs")),
+                            parameters.get("interArrival"),
+                            parameters.get("sessionLength"),
+                            Long.parseLong(required(parameters, "durationMs")),
+                            Long.parseLong(required(parameters, "seed")));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("malformed sweep point argument", e);
+    }
+  }
+
+  /**
+   * Returns the system properties of the JVM running this point.
+   *
+   * @return system properties by name.
+   */
+  public Map<String, String> systemProperties() {
+    Map<String, String> properties = new LinkedHashMap<>();
+    properties.put(LatencyGenerator.MEAN_PROPERTY, Double.toString(this.latencyMeanMs));
+    properties.put(LatencyGenerator.STD_PROPERTY, Double.toString(this.latencyStdMs));
+    return properties;
+  }
+
+  /**
+   * Returns the parameters of this point in a stable order, e.g., as the leading columns of a results table. Absent
+   * churn generators are empty.
+   *
+   * @return parameters by name.
+   */
+  public Map<String, String> parameters() {
+    Map<String, String> parameters = new LinkedHashMap<>();
+    parameters.put("run", Integer.toString(this.run));
+    parameters.put("node", this.node);
+    parameters.put("nameSpace", this.nameSpace);
+    parameters.put("nodes", Integer.toString(this.nodes));
+    parameters.put("protocol", this.protocol.name());
+    parameters.put("latencyMeanMs", Double.toString(this.latencyMeanMs));
+    parameters.put("latencyStdMs", Double.toString(this.latencyStdMs));
+    parameters.put("interArrival", this.interArrival == null ? "" : this.interArrival);
+    parameters.put("sessionLength", this.sessionLength == null ? "" : this.sessionLength);
+    parameters.put("durationMs", Long.toString(this.durationMs));
+    parameters.put("seed", Long.toString(this.seed));
+    return parameters;
+  }
+
+  public int getRun() {
+    return run;
+  }
+
+  public int getNodes() {
+    return nodes;
+  }
+
+  public long getDurationMs() {
+    return durationMs;
+  }
+
+  /**
+   * Creates a churn generator from its description, see the class documentation.
+   *
+   * @param spec description of the generator.
+   * @return the generator.
+   * @throws IllegalArgumentException if the description is malformed.
+   */
+  static ChurnGenerator churnGenerator(String spec) throws IllegalArgumentException {
+    String[] parts = spec.trim().split(":");
+    try {
+      switch (parts[0].toLowerCase()) {
+        case "uniform":
+          checkParameters(spec, parts, 2);
+          return new UniformGenerator(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        case "gaussian":
+          checkParameters(spec, parts, 2);
+          return new GaussianGenerator(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+        case "exponential":
+          checkParameters(spec, parts, 3);
+          return new ExponentialGenerator(Double.parseDouble(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        case "weibull":
+          checkParameters(spec, parts, 4);
+          return new WeibullGenerator(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                                      Double.parseDouble(parts[3]), Double.parseDouble(parts[4]));
+        default:
+          throw new IllegalArgumentException("unknown churn distribution: " + spec);
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("malformed churn parameters: " + spec, e);
+    }
+  }
+
+  private static void checkParameters(String spec, String[] parts, int expected) throws IllegalArgumentException {
+    if (parts.length != expected + 1) {
+      throw new IllegalArgumentException("churn distribution takes " + expected + " parameters: " + spec);
+    }
+  }
+
+  private static String required(Map<String, String> parameters, String key) throws IllegalArgumentException {
+    String value = parameters.get(key);
+    if (value == null) {
+      throw new IllegalArgumentException("missing sweep point argument: " + key);
+    }
+    return value;
+  }
+
+  private static BaseNode newFixture(String node) throws IllegalArgumentException {
+    try {
+      return (BaseNode) Class.forName(node).getDeclaredConstructor().newInstance();
+    } catch (ClassNotFoundException | NoSuchMethodException | InstantiationException | IllegalAccessException
+             | InvocationTargetException | ClassCastException e) {
+      throw new IllegalArgumentException("cannot instantiate fixture node " + node, e);
+    }
+  }
+}
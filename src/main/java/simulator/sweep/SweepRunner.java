@@ -0,0 +1,397 @@
+package simulator.sweep;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import metrics.MetricsConfig;
+import metrics.integration.InProcessMetricsSink;
+import metrics.integration.MetricsBackendType;
+import modules.logger.Logger;
+import modules.logger.OperaLogger;
+import simulator.Simulator;
+import utils.random.RandomStreams;
+
+/**
+ * SweepRunner runs the points of a parameter sweep, each in a forked JVM, as many at once as the CPU and heap budget
+ * of the sweep allow. Forked JVMs isolate the runs from each other, since the simulator keeps process-wide state, e.g.,
+ * metric registries and shared variables; each of them is capped to its share of the budget, gets its own range of
+ * ports, and records its metrics in process. Once all runs are over, their metrics are collected into a single
+ * results table, see RESULTS_FILE.
+ *
+ * <p>Usage: java simulator.sweep.SweepRunner sweep.yml
+ */
+public final class SweepRunner {
+  /**
+   * Name of the results table, with one row per run and metric series: the parameters of the run, its status and
+   * wall-clock time, and the last, mean and max value of the series over the samples of the run. Runs without any
+   * metric have a single row with empty series columns.
+   */
+  public static final String RESULTS_FILE = "results.csv";
+  /**
+   * Name of the log of each run, i.e., its standard output and error, in the directory of the run.
+   */
+  public static final String RUN_LOG_FILE = "run.log";
+  private static final int BASE_PORT = 2000;
+  private static final int MAX_PORT = 65535;
+  /**
+   * Time given to the runs to destroy their forked JVMs once the sweep is aborted.
+   */
+  private static final long ABORT_TIMEOUT_MS = 10_000;
+  private static final Logger log = OperaLogger.getLoggerForSimulator(SweepRunner.class.getCanonicalName());
+
+  private final SweepConfig config;
+  private final int parallelism;
+  private final int portsPerRun;
+
+  /**
+   * Status of a finished run.
+   */
+  enum Status {
+    OK, FAILED, TIMEOUT
+  }
+
+  /**
+   * Creates a runner of the given sweep.
+   *
+   * @param config the sweep.
+   * @throws IllegalArgumentException if the concurrent runs do not fit in the range of ports.
+   */
+  public SweepRunner(SweepConfig config) throws IllegalArgumentException {
+    this.config = config;
+    this.parallelism = Math.min(config.getParallelism(), Math.max(1, config.getPoints().size()));
+    int maxNodes = 0;
+    for (SweepPoint point : config.getPoints()) {
+      maxNodes = Math.max(maxNodes, point.getNodes());
+    }
+    this.portsPerRun = maxNodes + 1;
+    if ((long) BASE_PORT + (long) this.parallelism * this.portsPerRun > MAX_PORT) {
+      throw new IllegalArgumentException(this.parallelism + " concurrent runs of " + maxNodes + " nodes do not fit in the ports");
+    }
+  }
+
+  /**
+   * Runs the sweep given as first argument.
+   *
+   * @param args path of the sweep YAML file.
+   */
+  public static void main(String[] args) {
+    if (args.length != 1) {
+      System.err.println("usage: java " + SweepRunner.class.getName() + " <sweep.yml>");
+      System.exit(2);
+    }
+    Path results = new SweepRunner(SweepConfig.read(Paths.get(args[0]))).run();
+    System.out.println("results written to " + results);
+  }
+
+  /**
+   * Runs all the points of the sweep, and writes the results table.
+   *
+   * @return the path of the results table.
+   * @throws IllegalStateException if the calling thread is interrupted.
+   * @throws UncheckedIOException  if the output directory or the results table cannot be written.
+   */
+  public Path run() throws IllegalStateException, UncheckedIOException {
+    List<SweepPoint> points = this.config.getPoints();
+    log.info("running sweep {} of {} points, {} at once", this.config.getName(), points.size(), this.parallelism);
+
+    // each concurrent run holds a slot, which owns a range of ports.
+    BlockingQueue<Integer> slots = new ArrayBlockingQueue<>(this.parallelism);
+    for (int slot = 0; slot < this.parallelism; slot++) {
+      slots.add(slot);
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+      Thread t = new Thread(r, "sweep-run");
+      t.setDaemon(true);
+      return t;
+    });
+    List<Future<RunResult>> futures = new ArrayList<>();
+    for (SweepPoint point : points) {
+      futures.add(pool.submit(() -> {
+        int slot = slots.take();
+        try {
+          return this.runPoint(point, slot);
+        } finally {
+          slots.add(slot);
+        }
+      }));
+    }
+    pool.shutdown();
+
+    List<RunResult> results = new ArrayList<>();
+    try {
+      for (Future<RunResult> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      abort(pool);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while running the sweep", e);
+    } catch (ExecutionException e) {
+      abort(pool);
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw (UncheckedIOException) e.getCause();
+      }
+      throw new IllegalStateException("sweep run failed", e.getCause());
+    }
+
+    Path resultsFile = this.config.getOutput().resolve(RESULTS_FILE);
+    try {
+      writeResults(resultsFile, results);
+    } catch (IOException e) {
+      throw new UncheckedIOException("could not write sweep results to " + resultsFile, e);
+    }
+    log.info("sweep {} is done, results written to {}", this.config.getName(), resultsFile);
+    return resultsFile;
+  }
+
+  /**
+   * Interrupts the runs of an aborted sweep, and waits for them to destroy their forked JVMs, which would otherwise
+   * outlive the sweep.
+   */
+  private static void abort(ExecutorService pool) {
+    pool.shutdownNow();
+    try {
+      if (!pool.awaitTermination(ABORT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        log.warn("sweep runs did not stop within {} ms, their JVMs may be left running", ABORT_TIMEOUT_MS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Runs a point in a forked JVM, and waits for it to exit or time out. The forked JVM is destroyed on any abnormal
+   * exit, e.g., if the waiting thread is interrupted. A JVM that cannot be launched is reported as a failed run, so that
+   * it does not abort the rest of the sweep.
+   */
+  private RunResult runPoint(SweepPoint point, int slot) throws IOException, InterruptedException {
+    Path runDir = this.config.getOutput().resolve("run-" + point.getRun()).toAbsolutePath();
+    Files.createDirectories(runDir);
+
+    List<String> command = new ArrayList<>();
+    command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+    command.add("-Xmx" + this.config.getHeapPerRunMb() + "m");
+    command.add("-XX:ActiveProcessorCount=" + this.config.getCpusPerRun());
+    command.addAll(this.config.getJvmArgs());
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(property(MetricsConfig.BACKEND_PROPERTY, MetricsBackendType.IN_PROCESS.name()));
+    command.add(property(MetricsConfig.OUTPUT_DIR_PROPERTY, runDir.toString()));
+    command.add(property(Simulator.START_PORT_PROPERTY, Integer.toString(BASE_PORT + slot * this.portsPerRun)));
+    command.add(property(RandomStreams.SEED_PROPERTY, point.parameters().get("seed")));
+    for (Map.Entry<String, String> property : point.systemProperties().entrySet()) {
+      command.add(property(property.getKey(), property.getValue()));
+    }
+    command.add(SweepPoint.class.getName());
+    command.addAll(point.toArguments());
+
+    File runLog = runDir.resolve(RUN_LOG_FILE).toFile();
+    long start = System.nanoTime();
+    Process process;
+    try {
+      process = new ProcessBuilder(command)
+          .directory(runDir.toFile())
+          .redirectErrorStream(true)
+          .redirectOutput(runLog)
+          .start();
+    } catch (IOException e) {
+      log.error("could not launch sweep run {}", point.getRun(), e);
+      return new RunResult(point, Status.FAILED, 0, runDir.resolve(InProcessMetricsSink.CSV_FILE));
+    }
+    Status status;
+    try {
+      if (!process.waitFor(this.config.getTimeoutMs(), TimeUnit.MILLISECONDS)) {
+        process.destroyForcibly().waitFor();
+        status = Status.TIMEOUT;
+      } else {
+        status = process.exitValue() == 0 ? Status.OK : Status.FAILED;
+      }
+    } finally {
+      if (process.isAlive()) {
+        process.destroyForcibly();
+      }
+    }
+    long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    log.info("sweep run {} finished with status {} in {} ms, log in {}", point.getRun(), status, wallMs, runLog);
+    return new RunResult(point, status, wallMs, runDir.resolve(InProcessMetricsSink.CSV_FILE));
+  }
+
+  private static String property(String name, String value) {
+    return "-D" + name + "=" + value;
+  }
+
+  /**
+   * Writes the results table, see RESULTS_FILE.
+   */
+  static void writeResults(Path file, List<RunResult> results) throws IOException {
+    Path dir = file.toAbsolutePath().getParent();
+    if (dir != null) {
+      Files.createDirectories(dir);
+    }
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      boolean header = true;
+      for (RunResult result : results) {
+        Map<String, String> parameters = result.point.parameters();
+        if (header) {
+          writer.write(String.join(",", parameters.keySet()));
+          writer.write(",status,wallMs,series,last,mean,max\n");
+          header = false;
+        }
+        StringBuilder prefix = new StringBuilder();
+        for (String value : parameters.values()) {
+          prefix.append(escapeCsv(value)).append(',');
+        }
+        prefix.append(result.status).append(',').append(result.wallMs).append(',');
+
+        List<SeriesSummary> summaries = Files.exists(result.metricsFile) ? summarize(result.metricsFile) : new ArrayList<>();
+        if (summaries.isEmpty()) {
+          writer.write(prefix + ",,,\n");
+        }
+        for (SeriesSummary summary : summaries) {
+          writer.write(prefix + escapeCsv(summary.series) + ',' + format(summary.last) + ',' + format(summary.mean()) + ','
+                       + format(summary.max) + '\n');
+        }
+      }
+    }
+  }
+
+  /**
+   * Summarizes every series of a metrics CSV file written by InProcessMetricsSink, skipping its timestamp column.
+   */
+  static List<SeriesSummary> summarize(Path metricsFile) throws IOException {
+    List<SeriesSummary> summaries = new ArrayList<>();
+    try (BufferedReader reader = Files.newBufferedReader(metricsFile, StandardCharsets.UTF_8)) {
+      String line = reader.readLine();
+      if (line == null) {
+        return summaries;
+      }
+      List<String> header = splitCsv(line);
+      for (int column = 1; column < header.size(); column++) {
+        summaries.add(new SeriesSummary(header.get(column)));
+      }
+      while ((line = reader.readLine()) != null) {
+        List<String> values = splitCsv(line);
+        for (int column = 1; column < values.size() && column <= summaries.size(); column++) {
+          if (!values.get(column).isEmpty()) {
+            summaries.get(column - 1).add(Double.parseDouble(values.get(column)));
+          }
+        }
+      }
+    }
+    return summaries;
+  }
+
+  /**
+   * Splits a CSV line, unquoting the quoted fields.
+   */
+  static List<String> splitCsv(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  private static String escapeCsv(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private static String format(double value) {
+    return Double.isNaN(value) ? "" : Double.toString(value);
+  }
+
+  /**
+   * Outcome of a run of the sweep.
+   */
+  static final class RunResult {
+    private final SweepPoint point;
+    private final Status status;
+    private final long wallMs;
+    private final Path metricsFile;
+
+    RunResult(SweepPoint point, Status status, long wallMs, Path metricsFile) {
+      this.point = point;
+      this.status = status;
+      this.wallMs = wallMs;
+      this.metricsFile = metricsFile;
+    }
+  }
+
+  /**
+   * Last, mean and max value of a metric series over the samples of a run.
+   */
+  static final class SeriesSummary {
+    private final String series;
+    private double last = Double.NaN;
+    private double max = Double.NaN;
+    private double sum;
+    private int count;
+
+    SeriesSummary(String series) {
+      this.series = series;
+    }
+
+    void add(double value) {
+      this.last = value;
+      this.max = this.count == 0 ? value : Math.max(this.max, value);
+      this.sum += value;
+      this.count++;
+    }
+
+    double mean() {
+      return this.count == 0 ? Double.NaN : this.sum / this.count;
+    }
+
+    String getSeries() {
+      return series;
+    }
+
+    double getLast() {
+      return last;
+    }
+
+    double getMax() {
+      return max;
+    }
+  }
+}
@@ -1,8 +1,11 @@
 package utils;
 
+import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -15,6 +18,7 @@ import node.IdentifierGenerator;
 /**
  * local static variable between the nodes with a buffer size of 1
  * (any two consecutive writing on the same variable is forbidden).
+ * All the accesses to the variables are synchronized on the instance, as the queues are not thread-safe.
  */
 public class SharedVariable {
   // singleton instance
@@ -61,7 +65,7 @@ public class SharedVariable {
    * @param allId the IDs of the nodes that should have access to this variable
    * @return false if variable already registered, true otherwise
    */
-  public boolean register(String name, ArrayList<Identifier> allId) {
+  public synchronized boolean register(String name, ArrayList<Identifier> allId) {
     if (variablesIds.containsKey(name)) {
       // TODO: throw illegal state exception
       return false;
@@ -139,7 +143,7 @@ public class SharedVariable {
    * @param name   name of the variable
    * @return value if there is a value for the given name null otherwise.
    */
-  public AbstractMap.SimpleEntry<Identifier, Object> read(Identifier nodeId, String name) throws IllegalArgumentException {
+  public synchronized AbstractMap.SimpleEntry<Identifier, Object> read(Identifier nodeId, String name) throws IllegalArgumentException {
     if (!variablesIds.containsKey(name)) {
       throw new IllegalArgumentException("no variable with name " + name + " is registered to read on shared variable");
     }
@@ -161,7 +165,7 @@ public class SharedVariable {
    * @param name name of the variable
    * @return owner of the variable
    */
-  public Identifier getOwner(String name) {
+  public synchronized Identifier getOwner(String name) {
     int variableId = variablesIds.get(name);
     lock.get(variableId).lock();
     Identifier owner = lockHolders.get(variableId);
@@ -176,7 +180,7 @@ public class SharedVariable {
    * @param name   name of the variable
    * @return true if empty false otherwise
    */
-  public boolean isEmpty(Identifier nodeId, String name) throws IllegalArgumentException {
+  public synchronized boolean isEmpty(Identifier nodeId, String name) throws IllegalArgumentException {
     if (!variablesIds.containsKey(name)) {
       throw new IllegalArgumentException("no variable with name " + name + " is registered");
     }
@@ -187,16 +191,85 @@ public class SharedVariable {
     return nodeQueues.get(nodeId).get(variableId).isEmpty();
   }
 
+  /**
+   * Takes a snapshot of all the variables, i.e., their clusters, lock holders, and the values queued for each node.
+   * The queued values must be serializable for the snapshot to be written in a checkpoint.
+   *
+   * @return snapshot of all the variables.
+   */
+  public synchronized Snapshot snapshot() {
+    Snapshot snapshot = new Snapshot();
+    ArrayList<String> names = new ArrayList<>(clusters.size());
+    for (int i = 0; i < clusters.size(); i++) {
+      names.add(null);
+    }
+    for (Map.Entry<String, Integer> variable : variablesIds.entrySet()) {
+      names.set(variable.getValue(), variable.getKey());
+    }
+    for (int variableId = 0; variableId < clusters.size(); variableId++) {
+      snapshot.names.add(names.get(variableId));
+      snapshot.clusters.add(new ArrayList<>(clusters.get(variableId)));
+      Identifier holder = getOwner(names.get(variableId));
+      snapshot.lockHolders.add(holder.equals(fixtureOwner) ? null : holder);
+    }
+    for (Map.Entry<Identifier, ConcurrentHashMap<Integer, ArrayDeque<SimpleEntryComparable<Identifier, Object>>>> node : nodeQueues.entrySet()) {
+      HashMap<Integer, ArrayList<SimpleEntryComparable<Identifier, Object>>> queues = new HashMap<>();
+      for (Map.Entry<Integer, ArrayDeque<SimpleEntryComparable<Identifier, Object>>> queue : node.getValue().entrySet()) {
+        queues.put(queue.getKey(), new ArrayList<>(queue.getValue()));
+      }
+      snapshot.queues.put(node.getKey(), queues);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Replaces all the variables with the ones of the given snapshot.
+   *
+   * @param snapshot snapshot taken by snapshot.
+   */
+  public synchronized void restore(Snapshot snapshot) {
+    variablesIds.clear();
+    clusters.clear();
+    lockHolders.clear();
+    lock.clear();
+    nodeQueues.clear();
+    for (int variableId = 0; variableId < snapshot.names.size(); variableId++) {
+      variablesIds.put(snapshot.names.get(variableId), variableId);
+      clusters.add(new ArrayList<>(snapshot.clusters.get(variableId)));
+      Identifier holder = snapshot.lockHolders.get(variableId);
+      lockHolders.add(holder == null ? fixtureOwner : holder);
+      lock.add(new ReentrantLock());
+    }
+    for (Map.Entry<Identifier, HashMap<Integer, ArrayList<SimpleEntryComparable<Identifier, Object>>>> node : snapshot.queues.entrySet()) {
+      ConcurrentHashMap<Integer, ArrayDeque<SimpleEntryComparable<Identifier, Object>>> queues = new ConcurrentHashMap<>();
+      for (Map.Entry<Integer, ArrayList<SimpleEntryComparable<Identifier, Object>>> queue : node.getValue().entrySet()) {
+        queues.put(queue.getKey(), new ArrayDeque<>(queue.getValue()));
+      }
+      nodeQueues.put(node.getKey(), queues);
+    }
+  }
+
   /**
    * releases lock for given name and identifier.
    *
    * @param nodeId identifier of the node.
    * @param name   name of the variable.
    */
-  public void releaseLock(Identifier nodeId, String name) {
+  public synchronized void releaseLock(Identifier nodeId, String name) {
     if (getOwner(name).equals(nodeId)) {
       int variableId = variablesIds.get(name);
       lockHolders.set(variableId, fixtureOwner);
     }
   }
+
+  /**
+   * Snapshot of the shared variables, written in simulation checkpoints. Lock holders are null for free variables.
+   */
+  public static final class Snapshot implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<ArrayList<Identifier>> clusters = new ArrayList<>();
+    private final ArrayList<Identifier> lockHolders = new ArrayList<>();
+    private final HashMap<Identifier, HashMap<Integer, ArrayList<SimpleEntryComparable<Identifier, Object>>>> queues = new HashMap<>();
+  }
 }
@@ -12,4 +12,14 @@ public interface ChurnGenerator {
    * @return the next churn value in milliseconds (ms).
    */
   double next();
+
+  /**
+   * Reseeds the generator, so that it generates the same values as any generator of the same distribution with the same
+   * seed. Simulations reseed their churn generators from the simulation seed before using them. The default does
+   * nothing, hence a generator which does not override it is not reproducible from the simulation seed.
+   *
+   * @param seed the seed.
+   */
+  default void setSeed(long seed) {
+  }
 }
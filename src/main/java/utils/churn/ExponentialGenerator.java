@@ -146,4 +146,9 @@ public class ExponentialGenerator implements ChurnGenerator {
     // returns the next value as an integer.
     return Math.round(e);
   }
+
+  @Override
+  public void setSeed(long seed) {
+    this.rand.setSeed(seed);
+  }
 }
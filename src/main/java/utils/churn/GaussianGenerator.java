@@ -92,4 +92,9 @@ public class GaussianGenerator implements ChurnGenerator {
       return Math.min(value, this.max);
     }
   }
+
+  @Override
+  public void setSeed(long seed) {
+    this.rand.setSeed(seed);
+  }
 }
@@ -36,4 +36,9 @@ public class UniformGenerator implements ChurnGenerator {
   public double next() {
     return min + rand.nextInt(max - min);
   }
+
+  @Override
+  public void setSeed(long seed) {
+    this.rand.setSeed(seed);
+  }
 }
@@ -33,6 +33,8 @@ public class WeibullGenerator implements ChurnGenerator {
    */
   private final double max;
 
+  private final JDKRandomGenerator rand;
+
   private final WeibullDistribution generator;
 
   /**
@@ -46,9 +48,9 @@ public class WeibullGenerator implements ChurnGenerator {
   public WeibullGenerator(double min, double max, double shapeParameter, double scaleParameter) {
     this.min = min;
     this.max = max;
-    JDKRandomGenerator rand = new JDKRandomGenerator();
+    this.rand = new JDKRandomGenerator();
     this.generator = new WeibullDistribution(
-      rand,
+      this.rand,
       shapeParameter,
       scaleParameter,
       WeibullDistribution.DEFAULT_INVERSE_ABSOLUTE_ACCURACY);
@@ -69,4 +71,9 @@ public class WeibullGenerator implements ChurnGenerator {
     }
     return sample;
   }
+
+  @Override
+  public void setSeed(long seed) {
+    this.rand.setSeed(seed);
+  }
 }
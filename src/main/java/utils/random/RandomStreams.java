@@ -0,0 +1,132 @@
+package utils.random;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * RandomStreams derives all the random streams of a simulation from a single seed, so that two runs of the same seed
+ * draw exactly the same values. Each stream is keyed by the subsystem it serves (e.g., IDENTIFIERS) and, for per-node
+ * streams, by the index of the node; the seed of a stream only depends on the simulation seed and its key, not on the
+ * order in which streams are asked for, hence nodes bootstrapped in parallel still get the same streams on every run.
+ */
+public final class RandomStreams {
+  /**
+   * System property of the simulation seed, a random seed is picked if unset.
+   */
+  public static final String SEED_PROPERTY = "opera.seed";
+  /**
+   * Stream of the node identifiers.
+   */
+  public static final String IDENTIFIERS = "identifiers";
+  /**
+   * Stream of the simulated latencies between nodes.
+   */
+  public static final String LATENCY = "latency";
+  /**
+   * Stream of the choice of the offline node brought back on each arrival.
+   */
+  public static final String ARRIVALS = "arrivals";
+  /**
+   * Stream of the inter-arrival times of a churn simulation.
+   */
+  public static final String INTER_ARRIVAL = "inter-arrival";
+  /**
+   * Stream of the session lengths of a churn simulation.
+   */
+  public static final String SESSION_LENGTH = "session-length";
+  /**
+   * Per-node streams, handed to the nodes through network.Network.getRandom.
+   */
+  public static final String NODE = "node";
+  /**
+   * Odd constant of the SplitMix64 sequence, i.e., the golden ratio in 64 bits.
+   */
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  private final long seed;
+
+  /**
+   * Creates the streams of the given simulation seed.
+   *
+   * @param seed simulation seed.
+   */
+  public RandomStreams(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * Creates the streams of the seed set through SEED_PROPERTY, or of a random seed if the property is unset.
+   *
+   * @return the streams of the simulation.
+   */
+  public static RandomStreams fromProperty() {
+    Long seed = Long.getLong(SEED_PROPERTY);
+    return new RandomStreams(seed != null ? seed : new SplittableRandom().nextLong());
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Returns the seed of the stream of a subsystem.
+   *
+   * @param subsystem key of the stream.
+   * @return seed of the stream.
+   */
+  public long seedOf(String subsystem) {
+    return this.seedOf(subsystem, -1);
+  }
+
+  /**
+   * Returns the seed of the stream of a subsystem of a node.
+   *
+   * @param subsystem key of the stream.
+   * @param index     index of the node.
+   * @return seed of the stream.
+   */
+  public long seedOf(String subsystem, long index) {
+    return mix64(mix64(this.seed ^ mix64(subsystem.hashCode())) + GOLDEN_GAMMA * (index + 2));
+  }
+
+  /**
+   * Returns a new stream of a subsystem. SplittableRandom is not thread-safe, hence the stream must be confined to a
+   * single thread, e.g., the churn thread.
+   *
+   * @param subsystem key of the stream.
+   * @return new stream, every call returns a stream of the same values.
+   */
+  public SplittableRandom split(String subsystem) {
+    return new SplittableRandom(this.seedOf(subsystem));
+  }
+
+  /**
+   * Returns a new stream of a subsystem as a Random, for the APIs that take one, or to share a stream between threads.
+   *
+   * @param subsystem key of the stream.
+   * @return new stream, every call returns a stream of the same values.
+   */
+  public Random random(String subsystem) {
+    return new Random(this.seedOf(subsystem));
+  }
+
+  /**
+   * Returns a new stream of a subsystem of a node as a Random, which may be shared by the threads of the node.
+   *
+   * @param subsystem key of the stream.
+   * @param index     index of the node.
+   * @return new stream, every call returns a stream of the same values.
+   */
+  public Random random(String subsystem, long index) {
+    return new Random(this.seedOf(subsystem, index));
+  }
+
+  /**
+   * Finalizer of SplitMix64, spreads every bit of the input over the output.
+   */
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,88 @@
+package utils.sampling;
+
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * FloydSampler draws k distinct indices uniformly at random from a dense index range using Robert Floyd's
+ * sampling algorithm. As opposed to reservoir sampling, which walks over the entire range, Floyd's algorithm only
+ * performs k random draws, hence its cost is independent of the size of the range.
+ * See https://doi.org/10.1145/30401.315746 for the original description.
+ */
+public class FloydSampler {
+  /**
+   * Up to this sample size, the membership check is done by a linear scan of the sample itself, which is both faster
+   * and allocation-free for the small samples we typically draw (e.g., validators of a transaction).
+   */
+  private static final int LINEAR_SCAN_THRESHOLD = 32;
+
+  /**
+   * Random generator.
+   */
+  private final Random random;
+
+  /**
+   * Creates a sampler backed by a random generator with the given seed.
+   *
+   * @param seed seed of the random generator.
+   */
+  public FloydSampler(long seed) {
+    this(new Random(seed));
+  }
+
+  /**
+   * Creates a sampler backed by the given random generator.
+   *
+   * @param random random generator used for the draws.
+   */
+  public FloydSampler(Random random) {
+    this.random = random;
+  }
+
+  /**
+   * Samples k distinct indices uniformly at random from [from, to). Each k-subset of the range is equally likely to be
+   * returned. The order of the returned indices is not random and should not be relied upon.
+   *
+   * @param from inclusive lower bound of the range.
+   * @param to   exclusive upper bound of the range.
+   * @param k    number of indices to sample.
+   * @return array of k distinct indices in [from, to).
+   * @throws IllegalArgumentException if k is negative or greater than the size of the range.
+   */
+  public int[] sample(int from, int to, int k) throws IllegalArgumentException {
+    int n = to - from;
+    if (k < 0 || k > n) {
+      throw new IllegalArgumentException(String.format("cannot sample %d distinct indices from [%d, %d)", k, from, to));
+    }
+
+    int[] sample = new int[k];
+    HashSet<Integer> chosen = k > LINEAR_SCAN_THRESHOLD ? new HashSet<>(k * 2) : null;
+    for (int i = 0, j = n - k; j < n; i++, j++) {
+      int t = random.nextInt(j + 1);
+      boolean duplicate = chosen != null ? chosen.contains(t) : contains(sample, i, t);
+      // if t was already chosen, j cannot have been chosen before, since all earlier draws are smaller than j.
+      int pick = duplicate ? j : t;
+      sample[i] = pick;
+      if (chosen != null) {
+        chosen.add(pick);
+      }
+    }
+
+    for (int i = 0; i < k; i++) {
+      sample[i] += from;
+    }
+    return sample;
+  }
+
+  /**
+   * Returns true if value is among the first length elements of array.
+   */
+  private static boolean contains(int[] array, int length, int value) {
+    for (int i = 0; i < length; i++) {
+      if (array[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
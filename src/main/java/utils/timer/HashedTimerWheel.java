@@ -0,0 +1,297 @@
+package utils.timer;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import modules.logger.Logger;
+import modules.logger.OperaLogger;
+
+/**
+ * HashedTimerWheel runs delayed and periodic tasks off a single ticking thread, rather than a sleeping thread per task.
+ * Timers are hashed into a ring of buckets by their deadline; every tick, the ticking thread expires the timers of one
+ * bucket and hands their tasks to an executor, hence scheduling and cancelling a timer is O(1) regardless of the number
+ * of timers, and a timer fires within one tick after its deadline.
+ *
+ * <p>Periodic timers run with a fixed delay, i.e., the next run is scheduled once the previous one completes, so that
+ * the runs of a timer never overlap. Tasks run on the executor, which they hold for as long as they block, e.g., while
+ * waiting for a reply; the size of the shared pool is set by TIMER_THREADS_PROPERTY. A task which may block should
+ * bound its wait, and give up once interrupted, see Timeout.cancel(boolean).
+ */
+public final class HashedTimerWheel {
+  /**
+   * System property of the tick duration of the shared wheel in wall-clock milliseconds, i.e., its resolution.
+   */
+  public static final String TICK_PROPERTY = "opera.timer.tick.ms";
+  /**
+   * System property of the number of threads running the tasks of the shared wheel.
+   */
+  public static final String TIMER_THREADS_PROPERTY = "opera.timer.threads";
+  private static final long DEFAULT_TICK_MS = 5;
+  private static final int WHEEL_SIZE = 512;
+  private static final int PENDING = 0;
+  private static final int CANCELLED = 1;
+  private static final int EXPIRED = 2;
+  private static HashedTimerWheel shared = null;
+
+  private final Logger logger = OperaLogger.getLoggerForSimulator(HashedTimerWheel.class.getCanonicalName());
+  private final long tickNanos;
+  private final Executor executor;
+  private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+  private final ArrayDeque<Timeout>[] buckets;
+  private final Thread ticker;
+  private final long startNanos;
+  private volatile boolean stopped;
+
+  /**
+   * Creates and starts a timer wheel.
+   *
+   * @param tickNanos duration of a tick in nanoseconds, i.e., the resolution of the timers.
+   * @param executor  executor running the tasks of the expired timers.
+   * @throws IllegalArgumentException if the tick is not positive.
+   */
+  @SuppressWarnings("unchecked")
+  public HashedTimerWheel(long tickNanos, Executor executor) throws IllegalArgumentException {
+    if (tickNanos <= 0) {
+      throw new IllegalArgumentException("tick must be positive: " + tickNanos);
+    }
+    this.tickNanos = tickNanos;
+    this.executor = executor;
+    this.buckets = new ArrayDeque[WHEEL_SIZE];
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      this.buckets[i] = new ArrayDeque<>();
+    }
+    this.startNanos = System.nanoTime();
+    this.ticker = new Thread(this::tickLoop, "timer-wheel");
+    this.ticker.setDaemon(true);
+    this.ticker.start();
+  }
+
+  /**
+   * Returns the wheel shared by all the nodes of the simulation, creating it on first use with the tick of
+   * TICK_PROPERTY and a pool of TIMER_THREADS_PROPERTY daemon threads.
+   *
+   * @return the shared timer wheel.
+   * @throws IllegalArgumentException if the properties are not positive numbers.
+   */
+  public static synchronized HashedTimerWheel getShared() throws IllegalArgumentException {
+    if (shared == null) {
+      long tickMs = Long.getLong(TICK_PROPERTY, DEFAULT_TICK_MS);
+      int threads = Integer.getInteger(TIMER_THREADS_PROPERTY, Math.max(4, 4 * Runtime.getRuntime().availableProcessors()));
+      if (threads <= 0) {
+        throw new IllegalArgumentException(TIMER_THREADS_PROPERTY + " must be positive: " + threads);
+      }
+      AtomicInteger count = new AtomicInteger();
+      ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+        Thread t = new Thread(r, "timer-worker-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+      shared = new HashedTimerWheel(TimeUnit.MILLISECONDS.toNanos(tickMs), pool);
+    }
+    return shared;
+  }
+
+  /**
+   * Schedules a task to run once after the given delay.
+   *
+   * @param delayNanos wall-clock delay in nanoseconds.
+   * @param task       the task.
+   * @return the timer of the task, which cancels it.
+   * @throws IllegalStateException if the wheel is stopped.
+   */
+  public Timeout schedule(long delayNanos, Runnable task) throws IllegalStateException {
+    return this.add(new Timeout(task, delayNanos, 0));
+  }
+
+  /**
+   * Schedules a task to run periodically, with a fixed delay between the end of a run and the start of the next one.
+   *
+   * @param initialDelayNanos wall-clock delay of the first run in nanoseconds.
+   * @param periodNanos       wall-clock delay between two runs in nanoseconds.
+   * @param task              the task.
+   * @return the timer of the task, which cancels all of its next runs.
+   * @throws IllegalArgumentException if the period is not positive.
+   * @throws IllegalStateException    if the wheel is stopped.
+   */
+  public Timeout schedulePeriodically(long initialDelayNanos, long periodNanos, Runnable task) throws IllegalArgumentException, IllegalStateException {
+    if (periodNanos <= 0) {
+      throw new IllegalArgumentException("period must be positive: " + periodNanos);
+    }
+    return this.add(new Timeout(task, initialDelayNanos, periodNanos));
+  }
+
+  /**
+   * Stops the ticking thread. The timers which are not expired yet never fire.
+   */
+  public void stop() {
+    this.stopped = true;
+    this.ticker.interrupt();
+  }
+
+  private Timeout add(Timeout timeout) throws IllegalStateException {
+    if (this.stopped) {
+      throw new IllegalStateException("timer wheel is stopped");
+    }
+    this.pending.add(timeout);
+    return timeout;
+  }
+
+  private void tickLoop() {
+    long tick = 0;
+    while (!this.stopped) {
+      long tickDeadline = this.startNanos + (tick + 1) * this.tickNanos;
+      long sleepNanos = tickDeadline - System.nanoTime();
+      if (sleepNanos > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          if (this.stopped) {
+            return;
+          }
+          continue;
+        }
+      }
+      this.transferPending(tick);
+      this.expire(this.buckets[(int) (tick % WHEEL_SIZE)]);
+      tick++;
+    }
+  }
+
+  /**
+   * Hashes the timers scheduled since the last tick into their buckets; a timer which is already due goes to the
+   * bucket of the current tick.
+   */
+  private void transferPending(long currentTick) {
+    for (Timeout timeout = this.pending.poll(); timeout != null; timeout = this.pending.poll()) {
+      if (timeout.state.get() == CANCELLED) {
+        continue;
+      }
+      long dueTick = Math.max(currentTick, (timeout.deadlineNanos - this.startNanos + this.tickNanos - 1) / this.tickNanos - 1);
+      timeout.remainingRounds = (dueTick - currentTick) / WHEEL_SIZE;
+      this.buckets[(int) (dueTick % WHEEL_SIZE)].add(timeout);
+    }
+  }
+
+  private void expire(ArrayDeque<Timeout> bucket) {
+    for (int i = bucket.size(); i > 0; i--) {
+      Timeout timeout = bucket.poll();
+      if (timeout.state.get() == CANCELLED) {
+        continue;
+      }
+      if (timeout.remainingRounds > 0) {
+        timeout.remainingRounds--;
+        bucket.add(timeout);
+        continue;
+      }
+      if (timeout.periodNanos == 0 && !timeout.state.compareAndSet(PENDING, EXPIRED)) {
+        continue;
+      }
+      this.executor.execute(() -> this.run(timeout));
+    }
+  }
+
+  private void run(Timeout timeout) {
+    synchronized (timeout) {
+      timeout.runner = Thread.currentThread();
+    }
+    try {
+      if (!timeout.isCancelled()) {
+        timeout.task.run();
+      }
+    } catch (RuntimeException e) {
+      this.logger.error("timer task failed", e);
+    } finally {
+      synchronized (timeout) {
+        timeout.runner = null;
+      }
+      // an interrupt meant for the task must not reach the next task of the pool thread.
+      Thread.interrupted();
+    }
+    if (timeout.periodNanos > 0 && timeout.state.get() == PENDING && !this.stopped) {
+      timeout.deadlineNanos = System.nanoTime() + timeout.periodNanos;
+      this.pending.add(timeout);
+    } else {
+      timeout.completed = true;
+    }
+  }
+
+  /**
+   * Timeout is the handle of a scheduled task.
+   */
+  public static final class Timeout {
+    private final Runnable task;
+    private final long periodNanos;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    private volatile long deadlineNanos;
+    /**
+     * Thread running the task, or null if the task is not running, guarded by the timeout.
+     */
+    private Thread runner;
+    /**
+     * Whether the timer will not run its task anymore, and its last run has returned.
+     */
+    private volatile boolean completed;
+    /**
+     * Number of turns of the wheel left before the timer is due, only accessed by the ticking thread.
+     */
+    private long remainingRounds;
+
+    private Timeout(Runnable task, long delayNanos, long periodNanos) {
+      this.task = task;
+      this.periodNanos = periodNanos;
+      this.deadlineNanos = System.nanoTime() + Math.max(0, delayNanos);
+    }
+
+    /**
+     * Cancels the timer. A run which has already started completes, but no further run starts.
+     *
+     * @return true if the timer was cancelled, false if it had already been cancelled or fired its only run.
+     */
+    public boolean cancel() {
+      return this.cancel(false);
+    }
+
+    /**
+     * Cancels the timer, and interrupts the run of its task if it has already started, e.g., a task blocked on a reply
+     * which will never come.
+     *
+     * @param interruptIfRunning whether to interrupt the thread running the task.
+     * @return true if the timer was cancelled, false if it had already been cancelled or fired its only run.
+     */
+    public boolean cancel(boolean interruptIfRunning) {
+      boolean cancelled = this.state.compareAndSet(PENDING, CANCELLED);
+      if (interruptIfRunning) {
+        synchronized (this) {
+          if (this.runner != null) {
+            this.runner.interrupt();
+          }
+        }
+      }
+      return cancelled;
+    }
+
+    public boolean isCancelled() {
+      return this.state.get() == CANCELLED;
+    }
+
+    /**
+     * Returns whether the timer is over, i.e., it is cancelled or it fired its only run, and its task is not running.
+     *
+     * @return true if the timer is cancelled or expired, and its task is not running.
+     */
+    public boolean isDone() {
+      synchronized (this) {
+        if (this.runner != null) {
+          return false;
+        }
+      }
+      return this.completed || this.state.get() == CANCELLED;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package metrics;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for LogLinearHistogram class.
+ */
+class LogLinearHistogramTest {
+  /**
+   * Relative error bound of the histogram, i.e., one over the number of sub-buckets per power of two.
+   */
+  private static final double RELATIVE_ERROR = 1.0 / 128;
+
+  /**
+   * Checks that small values are tracked exactly.
+   */
+  @Test
+  void smallValues_areExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000);
+    for (long value = 1; value <= 100; value++) {
+      histogram.record(value);
+    }
+
+    assertEquals(100, histogram.getCount());
+    assertEquals(5050, histogram.getSum());
+    assertEquals(100, histogram.getMax());
+    assertEquals(50, histogram.getValueAtPercentile(50));
+    assertEquals(90, histogram.getValueAtPercentile(90));
+    assertEquals(99, histogram.getValueAtPercentile(99));
+    assertEquals(100, histogram.getValueAtPercentile(100));
+    assertEquals(1, histogram.getValueAtPercentile(0));
+  }
+
+  /**
+   * Checks that percentiles of random values spanning several orders of magnitude are within the relative error bound
+   * of the exact percentiles.
+   */
+  @Test
+  void percentiles_areWithinRelativeError() {
+    LogLinearHistogram histogram = new LogLinearHistogram(3_600_000_000L);
+    Random random = new Random(42);
+    long[] values = new long[100_000];
+    for (int i = 0; i < values.length; i++) {
+      // log-uniform values in [1, 10^9).
+      values[i] = (long) Math.pow(10, random.nextDouble() * 9);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    double[] percentiles = new double[]{50, 90, 99, 99.9};
+    long[] reported = histogram.getValuesAtPercentiles(percentiles);
+    for (int i = 0; i < percentiles.length; i++) {
+      long exact = values[(int) Math.ceil(percentiles[i] / 100 * values.length) - 1];
+      assertTrue(reported[i] >= exact, "percentile " + percentiles[i] + " is underestimated");
+      assertTrue(reported[i] <= exact + exact * RELATIVE_ERROR,
+                 "percentile " + percentiles[i] + " reported " + reported[i] + " exact " + exact);
+    }
+    assertEquals(values[values.length - 1], histogram.getMax());
+  }
+
+  /**
+   * Checks that values beyond the highest trackable value are clamped into the last bucket while the exact maximum
+   * is kept, and that negative values are recorded as zero.
+   */
+  @Test
+  void outOfRangeValues_areClamped() {
+    LogLinearHistogram histogram = new LogLinearHistogram(1000);
+    histogram.record(-5);
+    histogram.record(1_000_000);
+
+    assertEquals(2, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals(1_000_000, histogram.getMax());
+    long top = histogram.getValueAtPercentile(100);
+    assertTrue(top >= 1000 && top <= 1000 + 1000 * RELATIVE_ERROR, "clamped value reported as " + top);
+
+    assertThrows(IllegalArgumentException.class, () -> new LogLinearHistogram(0));
+    assertThrows(IllegalArgumentException.class, () -> histogram.getValuesAtPercentiles(90, 50));
+  }
+
+  /**
+   * Checks that concurrent recordings are not lost.
+   */
+  @Test
+  void concurrentRecords_areNotLost() throws InterruptedException {
+    LogLinearHistogram histogram = new LogLinearHistogram(1_000_000);
+    int threads = 8;
+    int records = 10_000;
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < records; i++) {
+          histogram.record(i);
+        }
+        done.countDown();
+      }).start();
+    }
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+
+    assertEquals(threads * records, histogram.getCount());
+    assertEquals(records - 1, histogram.getMax());
+  }
+}
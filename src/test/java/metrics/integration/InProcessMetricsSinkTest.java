@@ -0,0 +1,134 @@
+package metrics.integration;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for InProcessMetricsSink class.
+ */
+class InProcessMetricsSinkTest {
+  private static final String COUNTER = "test_messages_total";
+  private static final String LATE = "test_late_gauge";
+  private Path dir;
+
+  @AfterEach
+  void deleteOutputDir() throws IOException {
+    if (this.dir == null) {
+      return;
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir)) {
+      for (Path file : files) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(this.dir);
+    this.dir = null;
+  }
+
+  /**
+   * Checks that every sample of every series is written column-wise, and series appearing later on are left empty on
+   * the samples before their appearance.
+   */
+  @Test
+  void terminate_writesColumnarCsvAndBinary() throws IOException {
+    CollectorRegistry registry = new CollectorRegistry();
+    TestCollector collector = new TestCollector();
+    collector.register(registry);
+    this.dir = Files.createTempDirectory("opera-metrics-");
+    InProcessMetricsSink sink = new InProcessMetricsSink(registry, this.dir, 60_000);
+
+    sink.sample();
+    collector.counter.incrementAndGet();
+    collector.late = true;
+    sink.sample();
+    collector.counter.incrementAndGet();
+    // terminate takes the final sample.
+    sink.terminate();
+
+    assertEquals(3, sink.getRows());
+    String counterSeries = COUNTER + "{id=\"a,b\"}";
+    assertEquals(List.of(counterSeries, LATE), sink.getSeriesNames());
+
+    List<String> lines = Files.readAllLines(this.dir.resolve(InProcessMetricsSink.CSV_FILE), StandardCharsets.UTF_8);
+    assertEquals(4, lines.size());
+    assertEquals("timestamp_ms,\"" + counterSeries.replace("\"", "\"\"") + "\"," + LATE, lines.get(0));
+    assertTrue(lines.get(1).endsWith(",0.0,"));
+    assertTrue(lines.get(2).endsWith(",1.0,7.0"));
+    assertTrue(lines.get(3).endsWith(",2.0,7.0"));
+
+    try (InputStream file = Files.newInputStream(this.dir.resolve(InProcessMetricsSink.BINARY_FILE));
+         DataInputStream in = new DataInputStream(file)) {
+      assertEquals(InProcessMetricsSink.BINARY_MAGIC, in.readInt());
+      assertEquals(InProcessMetricsSink.BINARY_VERSION, in.readInt());
+      assertEquals(3, in.readInt());
+      assertEquals(2, in.readInt());
+      for (int i = 0; i < 3; i++) {
+        assertTrue(in.readLong() > 0);
+      }
+      assertEquals(counterSeries, in.readUTF());
+      for (int i = 0; i < 3; i++) {
+        assertEquals(i, in.readDouble());
+      }
+      assertEquals(LATE, in.readUTF());
+      assertTrue(Double.isNaN(in.readDouble()));
+      assertEquals(7.0, in.readDouble());
+      assertEquals(7.0, in.readDouble());
+    }
+  }
+
+  /**
+   * Checks that the columns keep growing past their initial capacity.
+   */
+  @Test
+  void sample_growsColumns() {
+    CollectorRegistry registry = new CollectorRegistry();
+    TestCollector collector = new TestCollector();
+    collector.register(registry);
+    InProcessMetricsSink sink = new InProcessMetricsSink(registry, Paths.get("unused"), 60_000);
+
+    for (int i = 0; i < 1000; i++) {
+      sink.sample();
+      collector.counter.incrementAndGet();
+    }
+
+    double[] column = sink.getColumn(COUNTER + "{id=\"a,b\"}");
+    assertEquals(1000, column.length);
+    for (int i = 0; i < column.length; i++) {
+      assertEquals(i, column[i]);
+    }
+  }
+
+  private static class TestCollector extends Collector {
+    private final AtomicInteger counter = new AtomicInteger();
+    private volatile boolean late;
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+      List<MetricFamilySamples> families = new ArrayList<>();
+      families.add(new MetricFamilySamples(COUNTER, Type.COUNTER, "counter", Collections.singletonList(
+          new MetricFamilySamples.Sample(COUNTER, List.of("id"), List.of("a,b"), counter.get()))));
+      if (late) {
+        families.add(new MetricFamilySamples(LATE, Type.GAUGE, "late", Collections.singletonList(
+            new MetricFamilySamples.Sample(LATE, Collections.emptyList(), Collections.emptyList(), 7))));
+      }
+      return families;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package metrics.opera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import io.prometheus.client.Collector;
+import metrics.MetricsConfig;
+import node.Identifier;
+import node.IdentifierGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for NodeValuesCollector class.
+ */
+class NodeValuesCollectorTest {
+  private static final int NODES = 1000;
+
+  @AfterEach
+  void resetConfig() {
+    MetricsConfig.setMode(MetricsConfig.Mode.PER_NODE);
+    MetricsConfig.setTopK(10);
+    MetricsConfig.setGroupResolver(id -> MetricsConfig.DEFAULT_GROUP);
+  }
+
+  /**
+   * Checks that in the per-node mode, each node is exported as a distinct series.
+   */
+  @Test
+  void perNodeMode_exportsOneSeriesPerNode() {
+    NodeValuesCollector collector = new NodeValuesCollector("test_per_node_total", "per node test", true);
+    for (int i = 0; i < NODES; i++) {
+      collector.add(IdentifierGenerator.newIdentifier(), i);
+    }
+
+    List<Collector.MetricFamilySamples> families = collector.collect();
+    assertEquals(1, families.size());
+    assertEquals(NODES, families.get(0).samples.size());
+  }
+
+  /**
+   * Checks that in the aggregated mode, nodes are rolled up per group and only the top-k nodes are exported, while the
+   * exact per-node values are kept in-process.
+   */
+  @Test
+  void aggregatedMode_exportsRollupsAndTopK() {
+    MetricsConfig.setMode(MetricsConfig.Mode.AGGREGATED);
+    MetricsConfig.setTopK(5);
+    HashMap<Identifier, String> groups = new HashMap<>();
+    MetricsConfig.setGroupResolver(groups::get);
+
+    NodeValuesCollector collector = new NodeValuesCollector("test_aggregated", "aggregated test", false);
+    HashSet<String> topIds = new HashSet<>();
+    double evenSum = 0;
+    double oddSum = 0;
+    for (int i = 0; i < NODES; i++) {
+      Identifier id = IdentifierGenerator.newIdentifier();
+      groups.put(id, i % 2 == 0 ? "even" : "odd");
+      collector.set(id, i);
+      assertEquals(i, collector.get(id));
+      if (i >= NODES - 5) {
+        topIds.add(id.toString());
+      }
+      if (i % 2 == 0) {
+        evenSum += i;
+      } else {
+        oddSum += i;
+      }
+    }
+
+    List<Collector.MetricFamilySamples> families = collector.collect();
+    assertEquals(3, families.size());
+
+    // rollups per group.
+    List<Collector.MetricFamilySamples.Sample> rollups = families.get(0).samples;
+    assertEquals(2, rollups.size());
+    for (Collector.MetricFamilySamples.Sample sample : rollups) {
+      if (sample.labelValues.get(0).equals("even")) {
+        assertEquals(evenSum, sample.value);
+      } else {
+        assertEquals("odd", sample.labelValues.get(0));
+        assertEquals(oddSum, sample.value);
+      }
+    }
+
+    // top-k outliers.
+    List<Collector.MetricFamilySamples.Sample> outliers = families.get(2).samples;
+    assertEquals(5, outliers.size());
+    List<String> exported = new ArrayList<>();
+    for (Collector.MetricFamilySamples.Sample sample : outliers) {
+      exported.add(sample.labelValues.get(0));
+      assertTrue(sample.value >= NODES - 5);
+    }
+    assertEquals(topIds, new HashSet<>(exported));
+  }
+
+  /**
+   * Checks that in the aggregated mode, the distribution over nodes follows the values of nodes as they change, up to
+   * the relative error of the sketch.
+   */
+  @Test
+  void aggregatedMode_distributionFollowsWrites() {
+    MetricsConfig.setMode(MetricsConfig.Mode.AGGREGATED);
+    NodeValuesCollector collector = new NodeValuesCollector("test_distribution_total", "distribution test", true);
+    List<Identifier> ids = new ArrayList<>();
+    for (int i = 1; i <= NODES; i++) {
+      Identifier id = IdentifierGenerator.newIdentifier();
+      ids.add(id);
+      collector.add(id, i);
+    }
+    assertDistribution(collector.collect().get(1), NODES, NODES * (NODES + 1) / 2.0, 500, 900, 990);
+
+    // every node moves to the same value.
+    for (int i = 1; i <= NODES; i++) {
+      collector.add(ids.get(i - 1), 2 * NODES - i);
+    }
+    assertDistribution(collector.collect().get(1), NODES, 2.0 * NODES * NODES, 2 * NODES, 2 * NODES, 2 * NODES);
+  }
+
+  /**
+   * Asserts the count and sum of a distribution over nodes, and its quantiles up to a relative error of 1%.
+   */
+  private static void assertDistribution(Collector.MetricFamilySamples distribution, long count, double sum, double... quantiles) {
+    HashMap<String, Double> values = new HashMap<>();
+    for (Collector.MetricFamilySamples.Sample sample : distribution.samples) {
+      String key = sample.name.substring(distribution.name.length());
+      values.put(sample.labelNames.contains("quantile") ? sample.labelValues.get(sample.labelNames.indexOf("quantile")) : key, sample.value);
+    }
+    assertEquals(count, (double) values.get("_count"));
+    assertEquals(sum, (double) values.get("_sum"));
+    String[] labels = {"0.5", "0.9", "0.99"};
+    for (int i = 0; i < quantiles.length; i++) {
+      double value = values.get(labels[i]);
+      assertTrue(Math.abs(value - quantiles[i]) <= quantiles[i] / 100, "quantile " + labels[i] + " is " + value);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package metrics.opera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import io.prometheus.client.Collector;
+import metrics.Constants;
+import node.Identifier;
+import node.IdentifierGenerator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for OperaStripedCounter class.
+ */
+class OperaStripedCounterTest {
+  private static final int THREADS = 8;
+  private static final int INCREMENTS = 10_000;
+
+  /**
+   * Checks that concurrent increments are not lost, and that each identifier is folded into a single sample on collect.
+   */
+  @Test
+  void concurrentIncrements_areFoldedOnCollect() throws InterruptedException {
+    OperaStripedCounter counter = new OperaStripedCounter("striped_counter_test_total",
+                                                          Constants.Namespace.TEST,
+                                                          "striped",
+                                                          "striped counter test");
+    Identifier first = IdentifierGenerator.newIdentifier();
+    Identifier second = IdentifierGenerator.newIdentifier();
+
+    CountDownLatch done = new CountDownLatch(THREADS);
+    for (int t = 0; t < THREADS; t++) {
+      new Thread(() -> {
+        for (int i = 0; i < INCREMENTS; i++) {
+          counter.increment(first);
+          counter.increment("striped_counter_test_total", second, 2);
+        }
+        done.countDown();
+      }).start();
+    }
+    assertTrue(done.await(60, TimeUnit.SECONDS));
+
+    assertEquals(THREADS * INCREMENTS, counter.get(first));
+    assertEquals(2 * THREADS * INCREMENTS, counter.get(second));
+
+    List<Collector.MetricFamilySamples> families = counter.collect();
+    assertEquals(1, families.size());
+    List<String> labelValues = new ArrayList<>();
+    for (Collector.MetricFamilySamples.Sample sample : families.get(0).samples) {
+      labelValues.addAll(sample.labelValues);
+      if (sample.labelValues.contains(first.toString())) {
+        assertEquals(THREADS * INCREMENTS, sample.value);
+      } else {
+        assertEquals(2 * THREADS * INCREMENTS, sample.value);
+      }
+    }
+    assertEquals(2, labelValues.size());
+    assertTrue(labelValues.contains(first.toString()));
+    assertTrue(labelValues.contains(second.toString()));
+  }
+}
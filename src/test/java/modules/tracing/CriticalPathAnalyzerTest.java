@@ -0,0 +1,89 @@
+package modules.tracing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for CriticalPathAnalyzer class.
+ */
+class CriticalPathAnalyzerTest {
+  @AfterEach
+  void disableTracing() {
+    Tracer.disable();
+  }
+
+  /**
+   * Checks that the critical path of a trace is the chain of hops ending last, and branches ending earlier are left out.
+   */
+  @Test
+  void analyze_followsChainEndingLast() {
+    TraceContext submit = TraceContext.newTrace();
+    TraceContext validate = submit.child();
+    TraceContext confirm = validate.child();
+    TraceContext register = confirm.child();
+    // a branch of the trace which ends before the last hop.
+    TraceContext gossip = submit.child();
+
+    Span submitSpan = new Span(submit, "SubmitTransaction", "client", "validator", 0, 10, 20);
+    Span validateSpan = new Span(validate, "ValidateTransaction", "validator", "replica", 15, 40, 60);
+    Span confirmSpan = new Span(confirm, "ConfirmTransaction", "replica", "validator", 55, 1_000, 1_010);
+    Span registerSpan = new Span(register, "SubmitToRegistry", "validator", "registry", 1_005, 1_020, 1_100);
+    Span gossipSpan = new Span(gossip, "Gossip", "validator", "peer", 18, 30, 900);
+    // an unrelated single-hop trace.
+    Span otherSpan = new Span(TraceContext.newTrace(), "Ping", "a", "b", 0, 5, 10);
+
+    List<CriticalPath> paths = CriticalPathAnalyzer.analyze(
+        Arrays.asList(gossipSpan, registerSpan, otherSpan, submitSpan, confirmSpan, validateSpan));
+
+    assertEquals(2, paths.size());
+    CriticalPath path = paths.get(0);
+    assertEquals(submit.getTraceId(), path.getTraceId());
+    assertEquals(Arrays.asList(submitSpan, validateSpan, confirmSpan, registerSpan), path.getHops());
+    assertEquals(1_100, path.getDurationNanos());
+    // the confirm hop waited the longest in the network.
+    assertSame(confirmSpan, path.getSlowestHop());
+    assertEquals(Arrays.asList(otherSpan), paths.get(1).getHops());
+  }
+
+  /**
+   * Checks that messages sent while handling a traced message are its child hops, and that spans are recorded in the
+   * ring buffer, overwriting the oldest ones once it is full.
+   */
+  @Test
+  void tracer_propagatesContextAndRecordsSpans() {
+    assertNull(Tracer.contextForSend());
+
+    Tracer.enable(4);
+    TraceContext root = Tracer.contextForSend();
+    assertEquals(TraceContext.NO_PARENT, root.getParentSpanId());
+    assertEquals(0, root.getHopCount());
+
+    TraceContext previous = Tracer.enter(root);
+    TraceContext child = Tracer.contextForSend();
+    List<TraceContext> wrapped = new ArrayList<>();
+    Tracer.wrap(() -> wrapped.add(Tracer.contextForSend())).run();
+    Tracer.restore(previous);
+
+    assertEquals(root.getTraceId(), child.getTraceId());
+    assertEquals(root.getSpanId(), child.getParentSpanId());
+    assertEquals(1, child.getHopCount());
+    assertEquals(root.getSpanId(), wrapped.get(0).getParentSpanId());
+    assertNull(Tracer.current());
+
+    for (int i = 0; i < 6; i++) {
+      Tracer.record(new Span(root, "span" + i, "a", "b", i, i, i));
+    }
+    List<Span> spans = Tracer.getBuffer().snapshot();
+    assertEquals(6, Tracer.getBuffer().getRecorded());
+    assertEquals(4, spans.size());
+    assertEquals("span2", spans.get(0).getName());
+    assertEquals("span5", spans.get(3).getName());
+  }
+}
@@ -24,6 +24,10 @@ public class FixtureNode implements BaseNode {
   }
 
 
+  public Network getNetwork() {
+    return network;
+  }
+
   @Override
   public void onCreate(ArrayList<Identifier> allId) {
   }
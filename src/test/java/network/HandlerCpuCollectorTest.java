@@ -0,0 +1,80 @@
+package network;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import io.prometheus.client.Collector;
+import network.model.Event;
+import network.model.EventType;
+import node.Identifier;
+import node.IdentifierGenerator;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for HandlerCpuCollector class.
+ */
+class HandlerCpuCollectorTest {
+  private static final long HANDLER_MILLIS = 50;
+  /**
+   * Result of the spinning handlers, stored so that the computation is not optimized away.
+   */
+  private static volatile long spinResult;
+
+  /**
+   * Checks that a handler computing is told apart from a handler sleeping: both take the same wall time, but only the
+   * computing one is reported as the hottest node by CPU time.
+   */
+  @Test
+  void computingHandler_isHotterThanSleepingHandler() throws InterruptedException {
+    HandlerCpuCollector collector = new HandlerCpuCollector(1);
+    Identifier computing = IdentifierGenerator.newIdentifier();
+    Identifier sleeping = IdentifierGenerator.newIdentifier();
+    EventType computeEvent = EventType.of(ComputeEvent.class);
+    EventType sleepEvent = EventType.of(SleepEvent.class);
+
+    for (int i = 0; i < 3; i++) {
+      long token = collector.startCpuSample();
+      long start = System.nanoTime();
+      spin(HANDLER_MILLIS);
+      collector.onHandled(computing, computeEvent, System.nanoTime() - start, token);
+
+      token = collector.startCpuSample();
+      start = System.nanoTime();
+      Thread.sleep(HANDLER_MILLIS);
+      collector.onHandled(sleeping, sleepEvent, System.nanoTime() - start, token);
+    }
+
+    List<String> report = collector.report(2);
+    assertEquals(4, report.size());
+    assertTrue(report.get(0).startsWith("node " + computing), report.get(0));
+    assertTrue(report.get(1).startsWith("node " + sleeping), report.get(1));
+    assertTrue(report.get(2).startsWith("handler " + computeEvent.getLabel()), report.get(2));
+
+    List<Collector.MetricFamilySamples> families = collector.collect();
+    // calls, wall time, cpu time per event type, then hot nodes by cpu and by wall time.
+    assertEquals(5, families.size());
+    Collector.MetricFamilySamples.Sample hottest = families.get(3).samples.get(0);
+    assertEquals(computing.toString(), hottest.labelValues.get(0));
+    double sleepingCpu = families.get(3).samples.get(1).value;
+    assertTrue(hottest.value > 2 * sleepingCpu, hottest.value + " vs " + sleepingCpu);
+    for (Collector.MetricFamilySamples.Sample wall : families.get(4).samples) {
+      assertTrue(wall.value >= 3 * HANDLER_MILLIS / 1000.0);
+    }
+  }
+
+  private static void spin(long millis) {
+    long end = System.nanoTime() + millis * 1_000_000;
+    long x = 0;
+    while (System.nanoTime() < end) {
+      x += x * 31 + 7;
+    }
+    spinResult = x;
+  }
+
+  private static class ComputeEvent implements Event {
+  }
+
+  private static class SleepEvent implements Event {
+  }
+}
@@ -8,17 +8,22 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static utils.Fixtures.nodeListFixture;
 import network.local.LocalHub;
 import network.local.LocalUnderlay;
 import node.Identifier;
+import node.NodeDirectory;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import utils.Fixtures;
 import utils.NoopOrchestrator;
 import utils.timeouts.Eventually;
+import utils.timer.HashedTimerWheel;
 
 /**
  * Tests the communication and termination of every network underlay.
@@ -127,6 +132,109 @@ public class UnderlayTest {
     stopNodes(instances, 60, TimeUnit.SECONDS);
   }
 
+  /**
+   * Checks that a suspended underlay neither delivers messages nor lets its node send, that the node rejoins by
+   * resuming it, and that a terminated underlay is bound again on its address.
+   */
+  @Test
+  void localSuspendResumeTest() {
+    ArrayList<FixtureNode> instances = generateLocalNodes(2);
+    Network sender = instances.get(0).getNetwork();
+    Network receiver = instances.get(1).getNetwork();
+
+    receiver.getUnderlay().suspend();
+    assertTrue(sender.send(receiver.getNodeId(), new FixtureEvent()));
+    assertFalse(receiver.send(sender.getNodeId(), new FixtureEvent()));
+    assertEquals(0, instances.get(1).receivedMessages.get());
+
+    receiver.initUnderLay();
+    assertTrue(sender.send(receiver.getNodeId(), new FixtureEvent()));
+    assertEquals(1, instances.get(1).receivedMessages.get());
+
+    // terminating twice is a no-op, and the local hub lets the address be registered again.
+    receiver.terminateUnderlay();
+    receiver.terminateUnderlay();
+    receiver.initUnderLay();
+    assertTrue(receiver.send(sender.getNodeId(), new FixtureEvent()));
+    assertEquals(1, instances.get(0).receivedMessages.get());
+  }
+
+  /**
+   * Checks that a quiesced node holds the messages it receives, and handles them once its delivery resumes.
+   */
+  @Test
+  void localQuiesceTest() {
+    ArrayList<FixtureNode> instances = generateLocalNodes(2);
+    Network sender = instances.get(0).getNetwork();
+    Network receiver = instances.get(1).getNetwork();
+
+    receiver.quiesce();
+    assertTrue(sender.send(receiver.getNodeId(), new FixtureEvent()));
+    assertEquals(0, instances.get(1).receivedMessages.get());
+    assertEquals(1, receiver.getHeldMessages().size());
+    assertEquals(sender.getNodeId(), receiver.getHeldMessages().get(0).getOriginId());
+
+    receiver.resumeDelivery();
+    assertTrue(receiver.getHeldMessages().isEmpty());
+    try {
+      Eventually.eventually(5_000, 10, () -> instances.get(1).receivedMessages.get() == 1);
+    } catch (Exception e) {
+      Assertions.fail("Held message not delivered: ", e);
+    }
+  }
+
+  /**
+   * Checks that a timer of a quiesced node which fires is deferred rather than run, without holding a thread of the
+   * timer pool, and runs once its delivery resumes.
+   */
+  @Test
+  void localQuiesceDefersTimersTest() throws InterruptedException {
+    Network network = generateLocalNodes(1).get(0).getNetwork();
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch fired = new CountDownLatch(1);
+
+    network.quiesce();
+    network.schedule(0, runs::incrementAndGet);
+    // the timer of the node fires before this one, and is deferred rather than counted as active.
+    HashedTimerWheel.getShared().schedule(TimeUnit.MILLISECONDS.toNanos(100), fired::countDown);
+    assertTrue(fired.await(5, TimeUnit.SECONDS));
+    assertTrue(network.awaitIdle(System.nanoTime() + TimeUnit.SECONDS.toNanos(1)));
+    assertEquals(0, runs.get());
+
+    network.resumeDelivery();
+    try {
+      Eventually.eventually(5_000, 10, () -> runs.get() == 1);
+    } catch (Exception e) {
+      Assertions.fail("Deferred timer not run: ", e);
+    }
+  }
+
+  /**
+   * Checks that a tcp node rejoins on the same port by resuming its suspended underlay, and keeps communicating.
+   */
+  @Test
+  void tcpSuspendResumeTest() {
+    ArrayList<FixtureNode> tcpNodes = nodeListFixture(NetworkProtocol.TCP_PROTOCOL, 2);
+    Network sender = tcpNodes.get(0).getNetwork();
+    Network receiver = tcpNodes.get(1).getNetwork();
+    int port = receiver.getUnderlay().getPort();
+
+    receiver.getUnderlay().suspend();
+    assertFalse(receiver.send(sender.getNodeId(), new FixtureEvent()));
+    receiver.initUnderLay();
+    assertEquals(port, receiver.getUnderlay().getPort());
+    assertTrue(receiver.send(sender.getNodeId(), new FixtureEvent()));
+    try {
+      Eventually.eventually(20_000, 100, () -> tcpNodes.get(0).receivedMessages.get() == 1);
+    } catch (Exception e) {
+      Assertions.fail("Communication not resumed: ", e);
+    }
+
+    sender.terminateUnderlay();
+    receiver.terminateUnderlay();
+    receiver.terminateUnderlay();
+  }
+
   /**
    * Generates local nodes for testing.
    *
@@ -138,26 +246,27 @@ public class UnderlayTest {
     HashMap<InetSocketAddress, LocalUnderlay> allLocalUnderlay = new HashMap<>();
     ArrayList<FixtureNode> instances = new ArrayList<>();
     ArrayList<Identifier> allId = Fixtures.identifierListFixture(nodeCount);
-    HashMap<Identifier, InetSocketAddress> allFullAddresses = new HashMap<>();
+    ArrayList<InetSocketAddress> addresses = new ArrayList<>();
     HashMap<AbstractMap.SimpleEntry<String, Integer>, Boolean> isReady = new HashMap<>();
 
     // Generate full addresses
     try {
       String address = Inet4Address.getLocalHost().getHostAddress();
       for (int i = 0; i < nodeCount; i++) {
-        allFullAddresses.put(allId.get(i), new InetSocketAddress(address, i));
+        addresses.add(new InetSocketAddress(address, i));
         isReady.put(new AbstractMap.SimpleEntry<>(address, i), true);
       }
     } catch (UnknownHostException e) {
       Assertions.fail("Failed to generate full addresses: ", e);
     }
+    NodeDirectory directory = new NodeDirectory(allId, addresses, null);
 
     LocalHub localHub = new LocalHub();
     for (int i = 0; i < nodeCount; i++) {
       Identifier id = allId.get(i);
-      InetSocketAddress address = allFullAddresses.get(id);
+      InetSocketAddress address = directory.getAddress(i);
 
-      Network network = new Network(id, allFullAddresses, new NoopOrchestrator());
+      Network network = new Network(id, directory, new NoopOrchestrator());
       FixtureNode node = new FixtureNode(id, allId, network);
       network.setNode(node);
 
@@ -27,6 +27,26 @@ public class LatencyGeneratorTest {
     }
   }
 
+  /**
+   * Checks that latencies cached by the indices of the nodes are symmetric, and the same as by their identifiers for a
+   * seeded generator.
+   */
+  @Test
+  void TestIndexedDelay() {
+    final int nodes = 50;
+    ArrayList<Identifier> ids = Fixtures.identifierListFixture(nodes);
+    LatencyGenerator byIdentifier = new LatencyGenerator(42);
+    LatencyGenerator byIndex = new LatencyGenerator(42);
+
+    for (int i = 0; i < nodes; i++) {
+      for (int j = 0; j < nodes; j++) {
+        double delay = byIndex.getSimulatedLatency(i, ids.get(i), j, ids.get(j), true);
+        assertEquals(byIdentifier.getSimulatedLatency(ids.get(i), ids.get(j), true), delay);
+        assertEquals(byIndex.getSimulatedLatency(j, ids.get(j), i, ids.get(i), true), delay);
+      }
+    }
+  }
+
   @Test
   void TestDelayDistribution() {
     final int ITERATIONS = 20000;
@@ -48,4 +68,28 @@ public class LatencyGeneratorTest {
 
     // TODO: add std test
   }
+
+  /**
+   * Checks that the latencies of a seeded generator, which are computed rather than drawn, follow the latency
+   * distribution over pairs of nodes.
+   */
+  @Test
+  void TestSeededDelayDistribution() {
+    final int EPS = 10;
+    ArrayList<Identifier> ids = Fixtures.identifierListFixture(NODE_CNT);
+    LatencyGenerator latencyGenerator = new LatencyGenerator(42);
+
+    double totalDelay = 0;
+    int pairs = 0;
+    for (int i = 0; i < NODE_CNT; i++) {
+      for (int j = 0; j < i; j++) {
+        double delay = latencyGenerator.getSimulatedLatency(ids.get(i), ids.get(j), true);
+        assertTrue(delay >= LatencyGenerator.MinLatency);
+        totalDelay += delay;
+        pairs++;
+      }
+    }
+    double mean = totalDelay / pairs;
+    assertTrue(Math.abs(mean - LatencyGenerator.MeanLatency) <= EPS);
+  }
 }
@@ -0,0 +1,37 @@
+package network.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for EventType class.
+ */
+class EventTypeTest {
+
+  /**
+   * Checks that an event class always resolves to the same interned type, labelled by its simple name.
+   */
+  @Test
+  void of_resolvesToInternedType() {
+    EventType type = EventType.of(network.FixtureEvent.class);
+    assertSame(type, EventType.of(new network.FixtureEvent()));
+    assertSame(type, EventType.get(type.getId()));
+    assertEquals("FixtureEvent", type.getLabel());
+  }
+
+  /**
+   * Checks that distinct event classes sharing a simple name share their type, so that they are not exported as two
+   * series with the same label, whereas classes with distinct names get distinct types.
+   */
+  @Test
+  void of_sharesTypesBySimpleName() {
+    assertSame(EventType.of(network.FixtureEvent.class), EventType.of(utils.FixtureEvent.class));
+    assertNotEquals(EventType.of(network.FixtureEvent.class).getId(), EventType.of(OtherEvent.class).getId());
+    assertNotEquals(EventType.UNKNOWN.getId(), EventType.OTHER.getId());
+  }
+
+  private static class OtherEvent implements Event {
+  }
+}
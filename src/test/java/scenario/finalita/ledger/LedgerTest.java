@@ -0,0 +1,140 @@
+package scenario.finalita.ledger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import node.Identifier;
+import node.IdentifierGenerator;
+import org.junit.jupiter.api.Test;
+import scenario.finalita.Block;
+import scenario.finalita.Transaction;
+
+/**
+ * Test class for Ledger and MappedLedgerFile classes.
+ */
+class LedgerTest {
+
+  /**
+   * Checks that blocks and transactions appended to the ledger are loaded back through their entries, and that their
+   * entries carry their identifiers and heights.
+   */
+  @Test
+  void appendAndLoad_roundTripsRecords() throws IOException {
+    Path path = Files.createTempFile("ledger-test-", ".bin");
+    try (Ledger ledger = new Ledger(path)) {
+      List<Block> blocks = new ArrayList<>();
+      List<LedgerEntry> blockEntries = new ArrayList<>();
+      List<LedgerEntry> transactionEntries = new ArrayList<>();
+      for (int height = 0; height < 50; height++) {
+        Block block = newBlock(height);
+        blocks.add(block);
+        blockEntries.add(ledger.appendBlock(block));
+        Transaction transaction = new Transaction(IdentifierGenerator.newIdentifier(), block.getOwner(), block, new ArrayList<>());
+        transactionEntries.add(ledger.appendTransaction(transaction, height));
+      }
+
+      // loads in reverse order to make sure records are looked up by offset rather than read sequentially.
+      for (int i = blocks.size() - 1; i >= 0; i--) {
+        LedgerEntry entry = blockEntries.get(i);
+        assertEquals(blocks.get(i).getId(), entry.getId());
+        assertEquals(i, entry.getHeight());
+
+        Block loaded = ledger.loadBlock(entry);
+        assertEquals(blocks.get(i).getId(), loaded.getId());
+        assertEquals(blocks.get(i).getHeight(), loaded.getHeight());
+        assertEquals(blocks.get(i).getPrev(), loaded.getPrev());
+
+        Transaction transaction = ledger.loadTransaction(transactionEntries.get(i));
+        assertEquals(transactionEntries.get(i).getId(), transaction.getId());
+        assertEquals(blocks.get(i).getOwner(), transaction.getOwner());
+      }
+
+      // a block entry does not resolve to a transaction.
+      assertThrows(IllegalStateException.class, () -> ledger.loadTransaction(blockEntries.get(0)));
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * Checks that the ledger file can be replayed after it is closed, with records in append order.
+   */
+  @Test
+  void replay_visitsRecordsInAppendOrder() throws IOException {
+    Path path = Files.createTempFile("ledger-test-", ".bin");
+    try {
+      List<Identifier> appended = new ArrayList<>();
+      try (Ledger ledger = new Ledger(path)) {
+        for (int height = 0; height < 10; height++) {
+          Block block = newBlock(height);
+          appended.add(ledger.appendBlock(block).getId());
+        }
+      }
+
+      List<Identifier> replayed = new ArrayList<>();
+      Ledger.replay(path, block -> replayed.add(block.getId()), transaction -> {
+        throw new IllegalStateException("no transaction was appended");
+      });
+      assertEquals(appended, replayed);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * Checks that records which do not fit in the remainder of a segment start at the next segment, and that both
+   * reads and scans skip the padding in between.
+   */
+  @Test
+  void append_padsRecordsAcrossSegments() throws IOException {
+    Path path = Files.createTempFile("ledger-test-", ".bin");
+    int segmentSize = 64;
+    try {
+      List<byte[]> payloads = new ArrayList<>();
+      List<Long> offsets = new ArrayList<>();
+      try (MappedLedgerFile file = new MappedLedgerFile(path, segmentSize)) {
+        for (int i = 0; i < 20; i++) {
+          // records of 5 to 44 bytes, so that many of them cross a segment boundary.
+          byte[] payload = new byte[(i * 7) % 40];
+          for (int j = 0; j < payload.length; j++) {
+            payload[j] = (byte) (i + j);
+          }
+          long offset = file.append((byte) 1, payload);
+          assertEquals(offset / segmentSize, (offset + 5 + payload.length - 1) / segmentSize, "record spans two segments");
+          payloads.add(payload);
+          offsets.add(offset);
+        }
+
+        for (int i = 0; i < payloads.size(); i++) {
+          assertArrayEquals(payloads.get(i), file.read(offsets.get(i)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> file.append((byte) 1, new byte[segmentSize]));
+        assertThrows(IllegalArgumentException.class, () -> file.append(MappedLedgerFile.PADDING, new byte[1]));
+      }
+
+      List<Long> scanned = new ArrayList<>();
+      MappedLedgerFile.scan(path, segmentSize, (offset, type, payload) -> {
+        assertArrayEquals(payloads.get(scanned.size()), payload);
+        scanned.add(offset);
+      });
+      assertEquals(offsets, scanned);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  private static Block newBlock(int height) {
+    return new Block(IdentifierGenerator.newIdentifier(),
+                     height,
+                     IdentifierGenerator.newIdentifier(),
+                     IdentifierGenerator.newIdentifier(),
+                     new ArrayList<>(),
+                     new ArrayList<>());
+  }
+}
@@ -0,0 +1,140 @@
+package simulator;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import network.model.Message;
+import node.Identifier;
+import node.IdentifierGenerator;
+import org.junit.jupiter.api.Test;
+import utils.SharedVariable;
+
+/**
+ * Test class for SimulationCheckpoint class.
+ */
+class SimulationCheckpointTest {
+  private static final int NODES = 4;
+  private static final String VARIABLE = "CheckpointTest";
+
+  /**
+   * Checks that a checkpoint read back from its file has the same nodes, sessions, node snapshots, shared variables
+   * and messages in flight, and that restoring the shared variables brings back the queued values and lock holders of the snapshot.
+   */
+  @Test
+  void writeRead_roundTrip() throws IOException {
+    Path file = Files.createTempFile("checkpoint-test-", ".ckpt");
+    SharedVariable shared = SharedVariable.getInstance();
+    SharedVariable.Snapshot original = shared.snapshot();
+    try {
+      ArrayList<Identifier> allId = IdentifierGenerator.newIdentifiers(NODES);
+      assertTrue(shared.register(VARIABLE, allId));
+      assertTrue(shared.requestLock(allId.get(0), VARIABLE));
+      assertTrue(shared.write(allId.get(0), VARIABLE, 7L));
+
+      boolean[] online = {true, false, true, true};
+      long[] remainingSessionMs = {1500, SimulationCheckpoint.NO_SESSION, 0, 42};
+      Serializable[] nodeSnapshots = {"zero", null, 2, null};
+      Message inFlight = new Message(new byte[] {1, 2, 3}, allId.get(0), allId.get(2), 99);
+      ArrayList<ArrayList<Message>> inFlightMessages = new ArrayList<>();
+      for (int i = 0; i < NODES; i++) {
+        inFlightMessages.add(i == 2 ? new ArrayList<>(Collections.singletonList(inFlight)) : new ArrayList<>());
+      }
+      SimulationCheckpoint checkpoint = new SimulationCheckpoint(12_345, allId, online, remainingSessionMs, nodeSnapshots,
+                                                                 shared.snapshot(), inFlightMessages);
+      checkpoint.write(file);
+
+      // consume the value and the lock after the checkpoint.
+      assertEquals(new AbstractMap.SimpleEntry<>(allId.get(0), 7L), shared.read(allId.get(1), VARIABLE));
+      shared.releaseLock(allId.get(0), VARIABLE);
+
+      SimulationCheckpoint read = SimulationCheckpoint.read(file);
+      assertEquals(12_345, read.getElapsedMs());
+      assertEquals(allId, read.getIdentifiers());
+      for (int i = 0; i < NODES; i++) {
+        assertEquals(online[i], read.isOnline(i));
+        assertEquals(remainingSessionMs[i], read.getRemainingSessionMs(i));
+        assertEquals(nodeSnapshots[i], read.getNodeSnapshot(i));
+        assertEquals(i == 2 ? 1 : 0, read.getInFlightMessages(i).size());
+      }
+      Message readInFlight = read.getInFlightMessages(2).get(0);
+      assertTrue(Arrays.equals(inFlight.getEncodedEvent(), readInFlight.getEncodedEvent()));
+      assertEquals(allId.get(0), readInFlight.getOriginId());
+      assertEquals(allId.get(2), readInFlight.getTargetId());
+
+      shared.restore(read.getSharedVariables());
+      assertEquals(allId.get(0), shared.getOwner(VARIABLE));
+      assertFalse(shared.isEmpty(allId.get(1), VARIABLE));
+      assertEquals(new AbstractMap.SimpleEntry<>(allId.get(0), 7L), shared.read(allId.get(1), VARIABLE));
+      assertNull(shared.read(allId.get(1), VARIABLE));
+      assertFalse(shared.requestLock(allId.get(1), VARIABLE));
+    } finally {
+      shared.restore(original);
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Checks that snapshots taken while nodes keep writing and reading a variable neither fail nor see a torn queue.
+   */
+  @Test
+  void snapshot_whileReadingAndWriting() throws InterruptedException {
+    SharedVariable shared = SharedVariable.getInstance();
+    SharedVariable.Snapshot original = shared.snapshot();
+    try {
+      ArrayList<Identifier> allId = IdentifierGenerator.newIdentifiers(NODES);
+      assertTrue(shared.register(VARIABLE, allId));
+      AtomicReference<Throwable> failure = new AtomicReference<>();
+      Thread writer = new Thread(() -> {
+        try {
+          for (long i = 0; i < 20_000; i++) {
+            shared.requestLock(allId.get(0), VARIABLE);
+            shared.write(allId.get(0), VARIABLE, i);
+            shared.releaseLock(allId.get(0), VARIABLE);
+            shared.read(allId.get(1), VARIABLE);
+          }
+        } catch (RuntimeException e) {
+          failure.set(e);
+        }
+      });
+      writer.start();
+      while (writer.isAlive()) {
+        shared.snapshot();
+      }
+      writer.join();
+      assertNull(failure.get());
+    } finally {
+      shared.restore(original);
+    }
+  }
+
+  /**
+   * Checks that a file holding anything else than a checkpoint is rejected.
+   */
+  @Test
+  void read_rejectsOtherObjects() throws IOException {
+    Path file = Files.createTempFile("checkpoint-test-", ".ckpt");
+    try {
+      try (OutputStream out = Files.newOutputStream(file);
+           ObjectOutputStream objects = new ObjectOutputStream(out)) {
+        objects.writeObject("not a checkpoint");
+      }
+      assertThrows(IllegalStateException.class, () -> SimulationCheckpoint.read(file));
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
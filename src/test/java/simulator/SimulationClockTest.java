@@ -0,0 +1,65 @@
+package simulator;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for SimulationClock class.
+ */
+class SimulationClockTest {
+
+  @AfterEach
+  void resetTimeScale() {
+    SimulationClock.setTimeScale(1);
+  }
+
+  /**
+   * Checks that a modelled sleep lasts scale times less on the wall clock, while the modelled clock advances by the
+   * whole modelled duration.
+   */
+  @Test
+  void sleep_runsFasterThanModelledTime() throws InterruptedException {
+    SimulationClock.setTimeScale(100);
+    long wallStart = System.nanoTime();
+    long modelledStart = SimulationClock.nanoTime();
+    SimulationClock.sleep(2000);
+    long wallMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wallStart);
+    long modelledMs = TimeUnit.NANOSECONDS.toMillis(SimulationClock.nanoTime() - modelledStart);
+
+    assertTrue(wallMs >= 20 && wallMs < 1000, "wall-clock sleep of " + wallMs + " ms");
+    assertTrue(modelledMs >= 2000, "modelled sleep of " + modelledMs + " ms");
+    assertEquals(20_000_000L, SimulationClock.toWallNanos(2000));
+    assertEquals(2000.0, SimulationClock.toModelledMillis(20_000_000L), 1e-9);
+  }
+
+  /**
+   * Checks that changing the scale carries the modelled clock on from its current time rather than jumping.
+   */
+  @Test
+  void setTimeScale_keepsClockContinuous() {
+    SimulationClock.setTimeScale(1000);
+    long before = SimulationClock.nanoTime();
+    SimulationClock.setTimeScale(1);
+    long after = SimulationClock.nanoTime();
+
+    assertTrue(after >= before);
+    assertTrue(after - before < TimeUnit.SECONDS.toNanos(1), "modelled clock jumped by " + (after - before) + " ns");
+  }
+
+  /**
+   * Checks that scales which are not positive numbers are rejected.
+   */
+  @Test
+  void setTimeScale_rejectsInvalidScales() {
+    assertThrows(IllegalArgumentException.class, () -> SimulationClock.setTimeScale(0));
+    assertThrows(IllegalArgumentException.class, () -> SimulationClock.setTimeScale(-2));
+    assertThrows(IllegalArgumentException.class, () -> SimulationClock.setTimeScale(Double.NaN));
+    assertThrows(IllegalArgumentException.class, () -> SimulationClock.setTimeScale(Double.POSITIVE_INFINITY));
+    assertEquals(1, SimulationClock.getTimeScale());
+  }
+}
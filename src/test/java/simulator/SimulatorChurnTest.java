@@ -0,0 +1,91 @@
+package simulator;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import metrics.MetricsConfig;
+import metrics.integration.MetricsBackendType;
+import network.Network;
+import network.NetworkProtocol;
+import network.model.Event;
+import node.BaseNode;
+import node.Identifier;
+import org.junit.jupiter.api.Test;
+import utils.churn.UniformGenerator;
+
+/**
+ * Test class for the churn of Simulator class.
+ */
+class SimulatorChurnTest {
+  private static final int STOP_MS = 300;
+  private static final int CHECK_MS = 500;
+  private static final AtomicInteger creates = new AtomicInteger();
+  private static final AtomicBoolean sawSuspended = new AtomicBoolean();
+
+  /**
+   * Checks that a node which departs while an arrival is pending, and hence rejoins right away, is online for its new
+   * session: the end of its previous session, which takes a while to stop, must not suspend its underlay again.
+   */
+  @Test
+  void departure_withPendingArrival_rejoinsOnline() {
+    MetricsBackendType backend = MetricsConfig.getBackendType();
+    MetricsConfig.setBackendType(MetricsBackendType.NONE);
+    try {
+      Factory factory = new Factory(7);
+      factory.addRecipe(new Recipe(new SlowStopNode(), "slowstop", 1));
+      Simulator simulator = new Simulator(factory, NetworkProtocol.MOCK_NETWORK);
+      // the single node is online when the first arrival comes, which is hence pending until the node departs.
+      simulator.churnSimulation(2600, new UniformGenerator(50, 60), new UniformGenerator(1000, 1010));
+    } finally {
+      MetricsConfig.setBackendType(backend);
+    }
+
+    assertTrue(creates.get() >= 2, "node did not rejoin");
+    assertFalse(sawSuspended.get(), "rejoined node is suspended while online");
+  }
+
+  /**
+   * A node which takes a while to stop, and checks that its underlay is not suspended once started.
+   */
+  private static class SlowStopNode implements BaseNode {
+    private Network network;
+
+    @Override
+    public void onCreate(ArrayList<Identifier> allId) {
+      creates.incrementAndGet();
+      this.network.ready();
+    }
+
+    @Override
+    public void onStart() {
+      this.network.schedule(CHECK_MS, () -> {
+        if (this.network.getUnderlay().isSuspended()) {
+          sawSuspended.set(true);
+        }
+      });
+    }
+
+    @Override
+    public void onStop() {
+      try {
+        Thread.sleep(STOP_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    public BaseNode newInstance(Identifier selfId, String nameSpace, Network network) {
+      SlowStopNode node = new SlowStopNode();
+      node.network = network;
+      return node;
+    }
+
+    @Override
+    public void onNewMessage(Identifier originId, Event msg) {
+    }
+  }
+}
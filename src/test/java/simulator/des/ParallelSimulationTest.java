@@ -0,0 +1,140 @@
+package simulator.des;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import network.Network;
+import network.model.Event;
+import node.BaseNode;
+import node.Identifier;
+import org.junit.jupiter.api.Test;
+import simulator.Factory;
+import simulator.Recipe;
+
+/**
+ * Test class for ParallelSimulation class.
+ */
+class ParallelSimulationTest {
+  private static final int NODES = 64;
+  private static final long SEED = 42;
+  private static final long DURATION_MS = 5_000;
+  /**
+   * Position of a node which receives a rumor from a starter, hence handles the first messages of the simulation.
+   */
+  private static final int FAILING_POSITION = 8;
+
+  /**
+   * Checks that splitting the nodes across several workers delivers exactly the same messages at the same simulated
+   * times as a sequential run of the same seed.
+   */
+  @Test
+  void parallelRun_isIdenticalToSequentialRun() {
+    ParallelSimulation sequential = new ParallelSimulation(gossipFactory(), 1, SEED);
+    sequential.run(DURATION_MS);
+    ParallelSimulation parallel = new ParallelSimulation(gossipFactory(), 4, SEED);
+    parallel.run(DURATION_MS);
+
+    assertTrue(sequential.getProcessedEvents() > NODES);
+    assertEquals(sequential.getAllId(), parallel.getAllId());
+    assertEquals(sequential.getProcessedEvents(), parallel.getProcessedEvents());
+    assertEquals(sequential.getDigest(), parallel.getDigest());
+  }
+
+  /**
+   * Checks that a node throwing while the other workers are processing their window ends the run with its failure,
+   * rather than leaving the other workers waiting for it.
+   */
+  @Test
+  void failingNode_endsParallelRun() {
+    Factory factory = new Factory();
+    factory.addRecipe(new Recipe(new GossipNode(FAILING_POSITION), "gossip", NODES));
+    ParallelSimulation parallel = new ParallelSimulation(factory, 4, SEED);
+
+    assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+      IllegalStateException e = assertThrows(IllegalStateException.class, () -> parallel.run(DURATION_MS));
+      assertTrue(e.getCause() instanceof UnsupportedOperationException, String.valueOf(e.getCause()));
+    });
+  }
+
+  private static Factory gossipFactory() {
+    Factory factory = new Factory();
+    factory.addRecipe(new Recipe(new GossipNode(-1), "gossip", NODES));
+    return factory;
+  }
+
+  /**
+   * A hop-counted gossip: the first nodes start a rumor, which every receiver forwards to two peers picked
+   * deterministically from its position and the hop count; a node leaves once it received enough rumors. The node at
+   * the failing position, if any, throws on its first rumor.
+   */
+  private static class GossipNode implements BaseNode {
+    private static final int STARTERS = 4;
+    private static final int MAX_HOPS = 12;
+    private static final int MAX_RECEIVED = 40;
+    private final int failingPosition;
+    private Identifier selfId;
+    private Network network;
+    private ArrayList<Identifier> allId;
+    private int position;
+    private int received;
+
+    GossipNode(int failingPosition) {
+      this.failingPosition = failingPosition;
+    }
+
+    @Override
+    public void onCreate(ArrayList<Identifier> allId) {
+      this.allId = allId;
+      this.position = allId.indexOf(this.selfId);
+      this.network.ready();
+    }
+
+    @Override
+    public void onStart() {
+      if (this.position < STARTERS) {
+        this.network.send(this.allId.get((this.position * 7 + 1) % this.allId.size()), new RumorEvent(0));
+      }
+    }
+
+    @Override
+    public void onStop() {
+    }
+
+    @Override
+    public void onNewMessage(Identifier originId, Event msg) {
+      if (this.position == this.failingPosition) {
+        throw new UnsupportedOperationException("node " + this.selfId + " failed");
+      }
+      int hops = ((RumorEvent) msg).hops;
+      if (hops < MAX_HOPS) {
+        for (int k = 1; k <= 2; k++) {
+          int peer = (this.position * 31 + hops * 17 + k * (this.received + 1)) % this.allId.size();
+          this.network.send(this.allId.get(peer), new RumorEvent(hops + 1));
+        }
+      }
+      if (++this.received == MAX_RECEIVED) {
+        this.network.done();
+      }
+    }
+
+    @Override
+    public BaseNode newInstance(Identifier selfId, String nameSpace, Network network) {
+      GossipNode node = new GossipNode(this.failingPosition);
+      node.selfId = selfId;
+      node.network = network;
+      return node;
+    }
+  }
+
+  private static class RumorEvent implements Event {
+    private final int hops;
+
+    RumorEvent(int hops) {
+      this.hops = hops;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package simulator.sweep;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import network.NetworkProtocol;
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * Test class for SweepConfig class, and the results table of SweepRunner.
+ */
+class SweepConfigTest {
+  private static final String SWEEP = String.join("\n",
+      "name: test",
+      "durationMs: 1000",
+      "repetitions: 2",
+      "seed: 7",
+      "budget: {cpus: 8, cpusPerRun: 2, heapMb: 3072, heapPerRunMb: 1024}",
+      "grid:",
+      "  recipes:",
+      "    - {node: examples.helloservers.MyNode}",
+      "  nodes: [3, 5]",
+      "  protocols: [mockNetwork, TCP_PROTOCOL]",
+      "  latencies:",
+      "    - {mean: 100, std: 10}",
+      "  churn:",
+      "    - none",
+      "    - {interArrival: \"uniform:100:300\", sessionLength: \"gaussian:500:50\"}");
+
+  /**
+   * Checks that the grid expands to the cartesian product of its dimensions, repetitions running with consecutive
+   * seeds, and that the budget bounds the number of concurrent runs by both CPUs and heap.
+   */
+  @Test
+  void parse_expandsGrid() {
+    SweepConfig config = SweepConfig.parse(new Yaml().load(SWEEP));
+    List<SweepPoint> points = config.getPoints();
+    assertEquals(2 * 2 * 2 * 2, points.size());
+    assertEquals(3, config.getParallelism());
+
+    HashSet<List<String>> distinct = new HashSet<>();
+    for (int i = 0; i < points.size(); i++) {
+      Map<String, String> parameters = points.get(i).parameters();
+      assertEquals(Integer.toString(i), parameters.get("run"));
+      assertEquals("mynode", parameters.get("nameSpace"));
+      assertEquals(Long.toString(i < 8 ? 7 : 8), parameters.get("seed"));
+      assertEquals("100.0", parameters.get("latencyMeanMs"));
+      distinct.add(Arrays.asList(parameters.get("nodes"), parameters.get("protocol"), parameters.get("interArrival"),
+                                 parameters.get("seed")));
+
+      // a point survives the round trip to the forked JVM.
+      SweepPoint copy = SweepPoint.fromArguments(points.get(i).toArguments().toArray(new String[0]));
+      assertEquals(parameters, copy.parameters());
+    }
+    assertEquals(points.size(), distinct.size());
+    assertEquals(NetworkProtocol.MOCK_NETWORK.name(), points.get(0).parameters().get("protocol"));
+  }
+
+  /**
+   * Checks that malformed sweeps are rejected before any run is forked.
+   */
+  @Test
+  void parse_rejectsMalformedSweeps() {
+    assertThrows(IllegalArgumentException.class, () -> SweepConfig.parse(new Yaml().load(SWEEP.replace("nodes: [3, 5]", ""))));
+    assertThrows(IllegalArgumentException.class, () -> SweepConfig.parse(new Yaml().load(SWEEP.replace("mockNetwork", "carrierPigeon"))));
+    assertThrows(IllegalArgumentException.class, () -> SweepConfig.parse(new Yaml().load(SWEEP.replace("uniform:100:300", "uniform:100"))));
+    assertThrows(IllegalArgumentException.class, () -> SweepConfig.parse(new Yaml().load(SWEEP.replace("cpusPerRun: 2", "cpusPerRun: 16"))));
+  }
+
+  /**
+   * Checks that the results table has one row per run and series, summarizing the samples of the series, and a single
+   * row for the runs without metrics.
+   */
+  @Test
+  void writeResults_summarizesSeries() throws IOException {
+    Path dir = Files.createTempDirectory("sweep-test-");
+    Path metrics = dir.resolve("metrics.csv");
+    Files.write(metrics, Arrays.asList("timestamp_ms,\"delay{id=\"\"a,b\"\"}\",count",
+                                       "1000,3.0,",
+                                       "2000,1.0,4.0",
+                                       "3000,,6.0"), StandardCharsets.UTF_8);
+    SweepConfig config = SweepConfig.parse(new Yaml().load(SWEEP));
+    List<SweepRunner.RunResult> results = new ArrayList<>();
+    results.add(new SweepRunner.RunResult(config.getPoints().get(0), SweepRunner.Status.OK, 1234, metrics));
+    results.add(new SweepRunner.RunResult(config.getPoints().get(1), SweepRunner.Status.TIMEOUT, 5678, dir.resolve("missing.csv")));
+    Path table = dir.resolve(SweepRunner.RESULTS_FILE);
+    SweepRunner.writeResults(table, results);
+
+    List<String> lines = Files.readAllLines(table, StandardCharsets.UTF_8);
+    assertEquals(4, lines.size());
+    assertTrue(lines.get(0).endsWith(",status,wallMs,series,last,mean,max"));
+    List<String> delay = SweepRunner.splitCsv(lines.get(1));
+    assertEquals(Arrays.asList("OK", "1234", "delay{id=\"a,b\"}", "1.0", "2.0", "3.0"), delay.subList(delay.size() - 6, delay.size()));
+    List<String> count = SweepRunner.splitCsv(lines.get(2));
+    assertEquals(Arrays.asList("count", "6.0", "5.0", "6.0"), count.subList(count.size() - 4, count.size()));
+    List<String> timeout = SweepRunner.splitCsv(lines.get(3));
+    assertEquals(Arrays.asList("TIMEOUT", "5678", "", "", "", ""), timeout.subList(timeout.size() - 6, timeout.size()));
+
+    Files.delete(table);
+    Files.delete(metrics);
+    Files.delete(dir);
+  }
+}
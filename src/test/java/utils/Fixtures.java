@@ -3,7 +3,6 @@ package utils;
 import java.net.InetSocketAddress;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import network.FixtureNode;
 import network.NetworkProtocol;
@@ -11,6 +10,7 @@ import network.Underlay;
 import network.UnderlayFactory;
 import node.Identifier;
 import node.IdentifierGenerator;
+import node.NodeDirectory;
 
 public class Fixtures {
   /**
@@ -38,21 +38,29 @@ public class Fixtures {
   public static ArrayList<network.FixtureNode> nodeListFixture(NetworkProtocol underlayName, int count) {
     ArrayList<network.FixtureNode> nodes = new ArrayList<>();
     ArrayList<Identifier> allId = identifierListFixture(count);
-    HashMap<Identifier, InetSocketAddress> allFullAddresses = new HashMap<>();
+    ArrayList<InetSocketAddress> addresses = new ArrayList<>();
+    ArrayList<network.Network> networks = new ArrayList<>();
 
     for (int i = 0; i < count; i++) {
       Identifier id = allId.get(i);
 
-      network.Network network = new network.Network(id, allFullAddresses, new NoopOrchestrator());
+      // the directory is set once the addresses of all the underlays are known.
+      network.Network network = new network.Network(id, null, new NoopOrchestrator());
 
       network.FixtureNode node = new FixtureNode(id, allId, network);
       network.setNode(node);
       Underlay underlay = UnderlayFactory.newUnderlay(underlayName, 0, network);
       assert underlay != null;
-      allFullAddresses.put(id, new InetSocketAddress(underlay.getAddress(), underlay.getPort()));
+      addresses.add(new InetSocketAddress(underlay.getAddress(), underlay.getPort()));
       network.setUnderlay(underlay);
 
       nodes.add(node);
+      networks.add(network);
+    }
+
+    NodeDirectory directory = new NodeDirectory(allId, addresses, null);
+    for (network.Network network : networks) {
+      network.setDirectory(directory);
     }
 
     return nodes;
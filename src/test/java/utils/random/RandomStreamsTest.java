@@ -0,0 +1,86 @@
+package utils.random;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import node.IdentifierGenerator;
+import org.junit.jupiter.api.Test;
+import utils.churn.ChurnGenerator;
+import utils.churn.GaussianGenerator;
+import utils.churn.UniformGenerator;
+
+/**
+ * Test class for RandomStreams class.
+ */
+class RandomStreamsTest {
+  private static final long SEED = 42;
+  private static final int NODES = 1000;
+  private static final int DRAWS = 100;
+
+  /**
+   * Checks that two simulations of the same seed draw the same values from every stream, whatever the order in which
+   * the streams are asked for.
+   */
+  @Test
+  void sameSeed_drawsSameValues() {
+    RandomStreams a = new RandomStreams(SEED);
+    RandomStreams b = new RandomStreams(SEED);
+
+    Random late = a.random(RandomStreams.NODE, NODES - 1);
+    for (int i = 0; i < NODES; i++) {
+      assertEquals(a.seedOf(RandomStreams.NODE, i), b.seedOf(RandomStreams.NODE, i));
+    }
+    Random early = b.random(RandomStreams.NODE, NODES - 1);
+    SplittableRandom arrivalsA = a.split(RandomStreams.ARRIVALS);
+    SplittableRandom arrivalsB = b.split(RandomStreams.ARRIVALS);
+    for (int i = 0; i < DRAWS; i++) {
+      assertEquals(early.nextLong(), late.nextLong());
+      assertEquals(arrivalsA.nextLong(), arrivalsB.nextLong());
+    }
+    assertEquals(IdentifierGenerator.newIdentifiers(NODES, a.random(RandomStreams.IDENTIFIERS)),
+                 IdentifierGenerator.newIdentifiers(NODES, b.random(RandomStreams.IDENTIFIERS)));
+  }
+
+  /**
+   * Checks that streams of different subsystems, nodes or seeds are seeded differently.
+   */
+  @Test
+  void differentKeys_areIndependent() {
+    RandomStreams streams = new RandomStreams(SEED);
+    HashSet<Long> seeds = new HashSet<>();
+    for (int i = 0; i < NODES; i++) {
+      seeds.add(streams.seedOf(RandomStreams.NODE, i));
+    }
+    seeds.add(streams.seedOf(RandomStreams.IDENTIFIERS));
+    seeds.add(streams.seedOf(RandomStreams.LATENCY));
+    seeds.add(streams.seedOf(RandomStreams.ARRIVALS));
+    seeds.add(streams.seedOf(RandomStreams.INTER_ARRIVAL));
+    seeds.add(streams.seedOf(RandomStreams.SESSION_LENGTH));
+    assertEquals(NODES + 5, seeds.size());
+
+    assertNotEquals(streams.seedOf(RandomStreams.LATENCY), new RandomStreams(SEED + 1).seedOf(RandomStreams.LATENCY));
+  }
+
+  /**
+   * Checks that churn generators reseeded with the same seed generate the same values.
+   */
+  @Test
+  void churnGenerators_reseedDeterministically() {
+    ChurnGenerator[][] generators = {
+      {new UniformGenerator(100, 500), new UniformGenerator(100, 500)},
+      {new GaussianGenerator(300, 50), new GaussianGenerator(300, 50)},
+    };
+    for (ChurnGenerator[] pair : generators) {
+      // draws before reseeding must not matter.
+      pair[0].next();
+      pair[0].setSeed(SEED);
+      pair[1].setSeed(SEED);
+      for (int i = 0; i < DRAWS; i++) {
+        assertEquals(pair[0].next(), pair[1].next());
+      }
+    }
+  }
+}
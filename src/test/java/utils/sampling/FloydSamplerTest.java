@@ -0,0 +1,85 @@
+package utils.sampling;
+
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for FloydSampler class.
+ */
+class FloydSamplerTest {
+
+  /**
+   * Checks that every sample consists of k distinct indices within the requested range, both for small samples
+   * (linear scan membership) and large ones (hash set membership).
+   */
+  @Test
+  void sample_returnsDistinctIndicesInRange() {
+    FloydSampler sampler = new FloydSampler(42);
+    int[] sampleSizes = new int[]{0, 1, 5, 32, 33, 100, 999};
+
+    for (int k : sampleSizes) {
+      for (int round = 0; round < 100; round++) {
+        int[] sample = sampler.sample(1, 1000, k);
+        assertEquals(k, sample.length);
+
+        HashSet<Integer> distinct = new HashSet<>();
+        for (int index : sample) {
+          assertTrue(index >= 1 && index < 1000, "sampled index out of range: " + index);
+          distinct.add(index);
+        }
+        assertEquals(k, distinct.size(), "sampled indices are not distinct");
+      }
+    }
+  }
+
+  /**
+   * Checks that every index of the range is sampled with (roughly) the same frequency.
+   */
+  @Test
+  void sample_isUniform() {
+    final int range = 50;
+    final int k = 3;
+    final int rounds = 500_000;
+    FloydSampler sampler = new FloydSampler(7);
+    int[] counts = new int[range];
+
+    for (int i = 0; i < rounds; i++) {
+      for (int index : sampler.sample(0, range, k)) {
+        counts[index]++;
+      }
+    }
+
+    double expected = (double) rounds * k / range;
+    for (int count : counts) {
+      assertTrue(Math.abs(count - expected) < expected * 0.05, "index frequency out of tolerance: " + count);
+    }
+  }
+
+  /**
+   * Checks that two samplers with the same seed draw the same samples.
+   */
+  @Test
+  void sample_isReproducibleForSameSeed() {
+    FloydSampler first = new FloydSampler(1234);
+    FloydSampler second = new FloydSampler(1234);
+
+    for (int i = 0; i < 100; i++) {
+      assertArrayEquals(first.sample(0, 10_000, 10), second.sample(0, 10_000, 10));
+    }
+  }
+
+  /**
+   * Checks that sampling more indices than the range holds is rejected.
+   */
+  @Test
+  void sample_rejectsOversizedSample() {
+    FloydSampler sampler = new FloydSampler(0);
+    assertThrows(IllegalArgumentException.class, () -> sampler.sample(0, 5, 6));
+    assertThrows(IllegalArgumentException.class, () -> sampler.sample(0, 5, -1));
+  }
+}
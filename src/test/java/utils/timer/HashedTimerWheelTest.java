@@ -0,0 +1,133 @@
+package utils.timer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for HashedTimerWheel class.
+ */
+class HashedTimerWheelTest {
+  private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private ExecutorService executor;
+  private HashedTimerWheel wheel;
+
+  @BeforeEach
+  void setUp() {
+    this.executor = Executors.newFixedThreadPool(2);
+    this.wheel = new HashedTimerWheel(TICK_NANOS, this.executor);
+  }
+
+  @AfterEach
+  void tearDown() {
+    this.wheel.stop();
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Checks that timers fire once, not before their deadline, including a timer due after more than a turn of the
+   * wheel, and that cancelled timers never fire.
+   */
+  @Test
+  void schedule_firesOnceAfterDelay() throws InterruptedException {
+    CountDownLatch fired = new CountDownLatch(2);
+    AtomicInteger cancelledRuns = new AtomicInteger();
+    long start = System.nanoTime();
+    long[] firedAt = new long[2];
+    this.wheel.schedule(TimeUnit.MILLISECONDS.toNanos(20), () -> {
+      firedAt[0] = System.nanoTime();
+      fired.countDown();
+    });
+    // 600 ticks is more than one turn of the 512 buckets.
+    HashedTimerWheel.Timeout late = this.wheel.schedule(TimeUnit.MILLISECONDS.toNanos(600), () -> {
+      firedAt[1] = System.nanoTime();
+      fired.countDown();
+    });
+    HashedTimerWheel.Timeout cancelled = this.wheel.schedule(TimeUnit.MILLISECONDS.toNanos(10), cancelledRuns::incrementAndGet);
+    assertTrue(cancelled.cancel());
+
+    assertTrue(fired.await(5, TimeUnit.SECONDS));
+    assertTrue(firedAt[0] - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    assertTrue(firedAt[1] - start >= TimeUnit.MILLISECONDS.toNanos(600));
+    // the run is done once the task returns, which is shortly after the latch is counted down.
+    long doneDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!late.isDone() && System.nanoTime() < doneDeadline) {
+      Thread.sleep(1);
+    }
+    assertTrue(late.isDone());
+    assertFalse(late.cancel());
+    assertEquals(0, cancelledRuns.get());
+  }
+
+  /**
+   * Checks that periodic timers keep firing without overlapping runs until they are cancelled.
+   */
+  @Test
+  void schedulePeriodically_firesUntilCancelled() throws InterruptedException {
+    AtomicInteger runs = new AtomicInteger();
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger overlaps = new AtomicInteger();
+    CountDownLatch fiveRuns = new CountDownLatch(5);
+    HashedTimerWheel.Timeout timeout = this.wheel.schedulePeriodically(0, TimeUnit.MILLISECONDS.toNanos(5), () -> {
+      if (running.incrementAndGet() > 1) {
+        overlaps.incrementAndGet();
+      }
+      runs.incrementAndGet();
+      fiveRuns.countDown();
+      running.decrementAndGet();
+    });
+
+    assertTrue(fiveRuns.await(5, TimeUnit.SECONDS));
+    assertTrue(timeout.cancel());
+    Thread.sleep(50);
+    int afterCancel = runs.get();
+    Thread.sleep(50);
+    assertEquals(afterCancel, runs.get());
+    assertEquals(0, overlaps.get());
+  }
+
+  /**
+   * Checks that cancelling a timer with interruption interrupts its running task, and that the interrupt does not leak
+   * into the next task of the pool thread.
+   */
+  @Test
+  void cancel_interruptsRunningTask() throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch interrupted = new CountDownLatch(1);
+    HashedTimerWheel.Timeout timeout = this.wheel.schedule(0, () -> {
+      started.countDown();
+      try {
+        new CountDownLatch(1).await();
+      } catch (InterruptedException e) {
+        interrupted.countDown();
+      }
+    });
+
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertFalse(timeout.isDone());
+    timeout.cancel(true);
+    assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+
+    AtomicInteger leaked = new AtomicInteger();
+    CountDownLatch next = new CountDownLatch(2);
+    for (int i = 0; i < 2; i++) {
+      this.wheel.schedule(0, () -> {
+        if (Thread.currentThread().isInterrupted()) {
+          leaked.incrementAndGet();
+        }
+        next.countDown();
+      });
+    }
+    assertTrue(next.await(5, TimeUnit.SECONDS));
+    assertEquals(0, leaked.get());
+  }
+}